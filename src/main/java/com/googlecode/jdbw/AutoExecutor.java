@@ -18,13 +18,23 @@
  */
 package com.googlecode.jdbw;
 
+import com.googlecode.jdbw.impl.SQLExecutorImpl;
 import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
+import com.googlecode.jdbw.util.CircuitBreaker;
+import com.googlecode.jdbw.util.CloseableIterator;
 import com.googlecode.jdbw.util.ExecuteResultHandlerAdapter;
+import com.googlecode.jdbw.util.ExponentialBackoffRetryPolicy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * An auto executor will automatically allocate a connection from the pool when its SQL methods are called and return 
@@ -32,17 +42,24 @@ import javax.sql.DataSource;
  * it's classified as a connection error there is logic to automatically allocate a new connection and retry. You can 
  * customize how long to wait between retries, how many time to retry and what transaction isolation to use when 
  * executing the query. All queries are executed in auto-commit mode.
+ * <p>
+ * When retries are exhausted, the last connection error is thrown. If the executor has a {@code CircuitBreaker},
+ * queries fail fast with an {@code SQLTransientConnectionException} while the breaker is open.
  *
+ * @see RetryPolicy
+ * @see CircuitBreaker
  * @author Martin Berglund
  */
 public class AutoExecutor implements SQLExecutor {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AutoExecutor.class);
+
     private final DataSource dataSource;
     private final DatabaseServerType serverType;
     private final TransactionIsolation transactionIsolation;
-    private final int connectionErrorRetryInterval;
-    private final TimeUnit connectionErrorRetryIntervalTimeUnit;
-    private final int connectionErrorNrOfRetries;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private volatile boolean multiRowInsertEnabled;
 
     /**
      * Creates a new AutoExecutor using READ_UNCOMMITTED isolation with an unlimited connection error retry limit and a 
@@ -94,15 +111,39 @@ public class AutoExecutor implements SQLExecutor {
             TimeUnit connectionErrorRetryIntervalTimeUnit, 
             int connectionErrorNrOfRetries) {
         
+        this(dataSource,
+                serverType,
+                transactionIsolation,
+                ExponentialBackoffRetryPolicy.fixedInterval(
+                        connectionErrorRetryInterval, 
+                        connectionErrorRetryIntervalTimeUnit, 
+                        connectionErrorNrOfRetries),
+                null);
+    }
+
+    /**
+     * Creates a new AutoExecutor with a specified isolation, retry policy and circuit breaker.
+     * @param dataSource DataSource to draw connections from
+     * @param serverType Server type of the connections
+     * @param transactionIsolation Transaction isolation level to use when running each statement
+     * @param retryPolicy Decides if and when to retry a query on connection error
+     * @param circuitBreaker Breaker to report connection errors to and to check before each attempt, usually shared by
+     * all executors of the same database, or {@code null} to always attempt
+     */
+    public AutoExecutor(DataSource dataSource,
+            DatabaseServerType serverType,
+            TransactionIsolation transactionIsolation,
+            RetryPolicy retryPolicy,
+            CircuitBreaker circuitBreaker) {
+
         this.dataSource = dataSource;
         this.serverType = serverType;
         this.transactionIsolation = transactionIsolation;
-        this.connectionErrorRetryInterval = connectionErrorRetryInterval;
-        this.connectionErrorRetryIntervalTimeUnit = connectionErrorRetryIntervalTimeUnit;
-        this.connectionErrorNrOfRetries = connectionErrorNrOfRetries;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.multiRowInsertEnabled = true;
         
-        assert this.connectionErrorNrOfRetries >= -1;
-        assert this.connectionErrorRetryIntervalTimeUnit != null;
+        assert this.retryPolicy != null;
     }
 
     @Override
@@ -117,29 +158,70 @@ public class AutoExecutor implements SQLExecutor {
 
     @Override
     public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, String SQL, Object... parameters) throws SQLException {
-        Connection connection = null;
+        execute(handler, maxRowsToFetch, queryTimeoutInSeconds, 0, SQL, parameters);
+    }
+
+    @Override
+    public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object... parameters) throws SQLException {
+        long startTime = System.currentTimeMillis();
         int attempt = 0;
-        while(connectionErrorNrOfRetries == -1 || connectionErrorNrOfRetries > attempt) {
+        while(true) {
+            DataSource target = selectDataSource(SQL);
+            checkCircuitBreaker(target);
+            long retryDelay;
+            Connection connection = null;
             try {
-                connection = getNewConnection();
+                connection = getNewConnection(target);
                 SQLExecutor executor = createSQLExecutor(connection);
-                executor.execute(handler, maxRowsToFetch, queryTimeoutInSeconds, SQL, parameters);
+                executor.execute(handler, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+                onSuccess(target);
                 return;
             }
             catch(SQLException e) {
-                if(serverType.isConnectionError(e)) {
-                    sleep(connectionErrorRetryIntervalTimeUnit.toMillis(connectionErrorRetryInterval));
-                    attempt++;
-                }
-                else {
-                    throw e;  //Syntax error?
+                retryDelay = onError(target, connection, e, ++attempt, startTime);
+            }
+            finally {
+                if(connection != null) {
+                    connection.close();
                 }
             }
+            sleep(retryDelay);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The connection is taken from the pool when this method is called and is given back when the iterator has been
+     * read to the end or is closed. Connection errors are only retried while sending the query; an error while
+     * reading the rows is thrown from the iterator.
+     */
+    @Override
+    public CloseableIterator<Object[]> iterate(int fetchSize, String SQL, Object... parameters) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        int attempt = 0;
+        while(true) {
+            DataSource target = selectDataSource(SQL);
+            checkCircuitBreaker(target);
+            long retryDelay;
+            Connection connection = null;
+            try {
+                connection = getNewConnection(target);
+                SQLExecutor executor = createSQLExecutor(connection);
+                CloseableIterator<Object[]> iterator = new ConnectionClosingIterator(executor.iterate(fetchSize, SQL, parameters), connection);
+                connection = null;
+                onSuccess(target);
+                return iterator;
+            }
+            catch(SQLException e) {
+                retryDelay = onError(target, connection, e, ++attempt, startTime);
+            }
             finally {
                 if(connection != null) {
                     connection.close();
                 }
             }
+            sleep(retryDelay);
         }
     }
 
@@ -150,22 +232,90 @@ public class AutoExecutor implements SQLExecutor {
     
     @Override
     public void batchWrite(BatchUpdateHandler handler, String SQL, List<Object[]> parameters) throws SQLException {
-        Connection connection = null;
+        long startTime = System.currentTimeMillis();
         int attempt = 0;
-        while(connectionErrorNrOfRetries == -1 || connectionErrorNrOfRetries > attempt) {
+        while(true) {
+            DataSource target = selectDataSource(SQL);
+            checkCircuitBreaker(target);
+            long retryDelay;
+            Connection connection = null;
             try {
-                connection = getNewConnection();
+                connection = getNewConnection(target);
                 SQLExecutor executor = createSQLExecutor(connection);
                 executor.batchWrite(handler, SQL, parameters);
+                onSuccess(target);
                 return;
             }
             catch(SQLException e) {
-                if(serverType.isConnectionError(e)) {
-                    sleep(connectionErrorRetryIntervalTimeUnit.toMillis(connectionErrorRetryInterval));
-                    attempt++;
+                retryDelay = onError(target, connection, e, ++attempt, startTime);
+            }
+            finally {
+                if(connection != null) {
+                    connection.close();
                 }
-                else {
-                    throw e;  //Syntax error?
+            }
+            sleep(retryDelay);
+        }
+    }
+
+    @Override
+    public void batchWrite(String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        batchWrite(new BatchUpdateHandlerAdapter(), SQL, parameters, chunkSize);
+    }
+
+    @Override
+    public void batchWrite(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        batchWrite(handler, SQL, parameters, chunkSize, false);
+    }
+
+    /**
+     * Executes a batch query where the SQL is structurally the same but parameters are different, reading the
+     * parameters from an iterator and sending them to the server in chunks of {@code chunkSize} rows.
+     * <p/>
+     * If {@code commitEachChunk} is {@code false}, all chunks are sent over the same connection in auto-commit mode.
+     * Since the rows can't be read from the iterator again, the batch is only retried on connection errors if no rows
+     * had been read from the iterator yet.
+     * <p/>
+     * If {@code commitEachChunk} is {@code true}, each chunk is written in a transaction of its own and committed
+     * before the next chunk is read from the iterator. If there is a connection error, the current chunk is retried
+     * on a new connection, the chunks before it are already committed. Only the rows of the current chunk are kept in
+     * memory.
+     * @param handler Callback interface to use for any results of the query
+     * @param SQL SQL to use for all queries, use ? for the parameter substitution
+     * @param parameters Iterator of object arrays, where one array equals one query sent to the server
+     * @param chunkSize How many rows to send to the server in each batch
+     * @param commitEachChunk If {@code true}, each chunk will be committed in a transaction of its own
+     * @throws SQLException If an error occurred in the JDBC driver or on the remote database server
+     */
+    public void batchWrite(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize, boolean commitEachChunk) throws SQLException {
+        if(chunkSize < 1) {
+            throw new IllegalArgumentException("Illegal batch chunk size " + chunkSize);
+        }
+        if(commitEachChunk) {
+            batchWriteInTransactions(handler, SQL, parameters, chunkSize);
+            return;
+        }
+
+        ReadTrackingIterator rows = new ReadTrackingIterator(parameters);
+        long startTime = System.currentTimeMillis();
+        int attempt = 0;
+        while(true) {
+            DataSource target = selectDataSource(SQL);
+            checkCircuitBreaker(target);
+            long retryDelay;
+            Connection connection = null;
+            try {
+                connection = getNewConnection(target);
+                SQLExecutor executor = createSQLExecutor(connection);
+                executor.batchWrite(handler, SQL, rows, chunkSize);
+                onSuccess(target);
+                return;
+            }
+            catch(SQLException e) {
+                retryDelay = onError(target, connection, e, ++attempt, startTime);
+                //Rows that have already been read from the iterator can't be sent again
+                if(rows.isStarted()) {
+                    throw e;
                 }
             }
             finally {
@@ -173,6 +323,90 @@ public class AutoExecutor implements SQLExecutor {
                     connection.close();
                 }
             }
+            sleep(retryDelay);
+        }
+    }
+
+    private void batchWriteInTransactions(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        List<Object[]> chunk = new ArrayList<Object[]>(chunkSize);
+        int chunkNumber = 0;
+        long totalRowsWritten = 0;
+        DataSource target = null;
+        Connection connection = null;
+        try {
+            while(parameters.hasNext()) {
+                chunk.clear();
+                while(chunk.size() < chunkSize && parameters.hasNext()) {
+                    chunk.add(parameters.next());
+                }
+
+                long startTime = System.currentTimeMillis();
+                int attempt = 0;
+                while(true) {
+                    if(connection == null) {
+                        target = selectDataSource(SQL);
+                        checkCircuitBreaker(target);
+                    }
+                    try {
+                        if(connection == null) {
+                            connection = getNewConnection(target);
+                            connection.setAutoCommit(false);
+                        }
+                        createSQLExecutor(connection).batchWrite(handler, SQL, chunk);
+                        connection.commit();
+                        onSuccess(target);
+                        break;
+                    }
+                    catch(SQLException e) {
+                        Connection failedConnection = connection;
+                        connection = null;
+                        long retryDelay;
+                        try {
+                            retryDelay = onError(target, failedConnection, e, ++attempt, startTime);
+                        }
+                        finally {
+                            discardConnection(failedConnection);
+                        }
+                        sleep(retryDelay);
+                    }
+                }
+
+                totalRowsWritten += chunk.size();
+                if(handler instanceof ChunkedBatchUpdateHandler) {
+                    ((ChunkedBatchUpdateHandler)handler).onChunkCompleted(++chunkNumber, totalRowsWritten);
+                }
+            }
+        }
+        finally {
+            if(connection != null) {
+                try {
+                    connection.setAutoCommit(true);
+                }
+                finally {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rolls back and closes a connection after a failed chunk, ignoring any further errors since the connection may
+     * already be broken
+     */
+    private void discardConnection(Connection connection) {
+        if(connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        catch(SQLException ignored) {
+        }
+        try {
+            connection.close();
+        }
+        catch(SQLException ignored) {
         }
     }
 
@@ -183,49 +417,231 @@ public class AutoExecutor implements SQLExecutor {
     
     @Override
     public void batchWrite(BatchUpdateHandler handler, List<String> batchedSQL) throws SQLException {
-        Connection connection = null;
+        long startTime = System.currentTimeMillis();
         int attempt = 0;
-        while(connectionErrorNrOfRetries == -1 || connectionErrorNrOfRetries > attempt) {
+        while(true) {
+            DataSource target = selectDataSource(null);
+            checkCircuitBreaker(target);
+            long retryDelay;
+            Connection connection = null;
             try {
-                connection = getNewConnection();
+                connection = getNewConnection(target);
                 SQLExecutor executor = createSQLExecutor(connection);
                 executor.batchWrite(handler, batchedSQL);
+                onSuccess(target);
                 return;
             }
             catch(SQLException e) {
-                if(serverType.isConnectionError(e)) {
-                    sleep(connectionErrorRetryIntervalTimeUnit.toMillis(connectionErrorRetryInterval));
-                    attempt++;
-                }
-                else {
-                    throw e;
-                }
+                retryDelay = onError(target, connection, e, ++attempt, startTime);
             }
             finally {
                 if(connection != null) {
                     connection.close();
                 }
             }
+            sleep(retryDelay);
         }
     }
 
+    /**
+     * Turns the rewriting of batched single-row inserts into multi-row inserts on or off for all statements sent
+     * through this executor. It's on by default, for the servers that support it.
+     * @param multiRowInsertEnabled {@code false} to always send batched inserts one row per statement
+     * @see SQLExecutorImpl#setMultiRowInsertEnabled(boolean)
+     */
+    public void setMultiRowInsertEnabled(boolean multiRowInsertEnabled) {
+        this.multiRowInsertEnabled = multiRowInsertEnabled;
+    }
+
     private SQLExecutor createSQLExecutor(Connection connection) {
-        return serverType.createExecutor(connection);
+        SQLExecutor executor = serverType.createExecutor(connection);
+        if(!multiRowInsertEnabled && executor instanceof SQLExecutorImpl) {
+            ((SQLExecutorImpl)executor).setMultiRowInsertEnabled(false);
+        }
+        return executor;
+    }
+
+    /**
+     * Fails fast if the circuit breaker says the database is down; this is checked outside of the retry logic so that
+     * it's never retried
+     */
+    private void checkCircuitBreaker(DataSource target) throws SQLException {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(target);
+        if(circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            throw new SQLTransientConnectionException("Not connecting to " + serverType + ", the circuit breaker is " +
+                    "open after repeated connection errors");
+        }
+    }
+
+    /**
+     * Picks the {@code DataSource} to take the connection for a statement from. This implementation always returns the
+     * {@code DataSource} the executor was created with; subclasses can override it to send different statements to
+     * different databases. It's called again for every retry.
+     * @param SQL The statement about to be run, or {@code null} for a batch of several different statements
+     * @return {@code DataSource} to run the statement against
+     */
+    protected DataSource selectDataSource(String SQL) {
+        return dataSource;
+    }
+
+    /**
+     * Called when a statement fails with a connection error, before the connection is given back and before any
+     * retry. This implementation does nothing; subclasses can override it to tell the {@code DataSource} that the
+     * connection, or the database behind it, is broken.
+     * @param connection Connection the statement was run on
+     * @param error The connection error
+     */
+    protected void onConnectionError(Connection connection, SQLException error) {
+    }
+
+    /**
+     * Picks the {@code CircuitBreaker} to check before running a statement against a {@code DataSource} and to report
+     * the outcome to. This implementation always returns the breaker the executor was created with; subclasses that
+     * override {@code selectDataSource(..)} can override this to keep the databases apart.
+     * @param dataSource {@code DataSource} returned by {@code selectDataSource(..)}
+     * @return Breaker for the database behind {@code dataSource}, or {@code null} to always attempt
+     */
+    protected CircuitBreaker getCircuitBreaker(DataSource dataSource) {
+        return circuitBreaker;
     }
 
-    private Connection getNewConnection() throws SQLException {
-        Connection connection = dataSource.getConnection();
+    private Connection getNewConnection(DataSource target) throws SQLException {
+        Connection connection = target.getConnection();
         connection.setAutoCommit(true);
         //noinspection MagicConstant
         connection.setTransactionIsolation(transactionIsolation.getConstant());
         return connection;
     }
 
-    private void sleep(long milliseconds) {
+    /**
+     * Iterator wrapper that gives the connection back to the pool when the iterator is closed
+     */
+    private static class ConnectionClosingIterator implements CloseableIterator<Object[]> {
+        private final CloseableIterator<Object[]> iterator;
+        private Connection connection;
+
+        ConnectionClosingIterator(CloseableIterator<Object[]> iterator, Connection connection) {
+            this.iterator = iterator;
+            this.connection = connection;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                if(iterator.hasNext()) {
+                    return true;
+                }
+            }
+            catch(RuntimeException e) {
+                close();
+                throw e;
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public Object[] next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+            if(connection != null) {
+                try {
+                    connection.close();
+                }
+                catch(SQLException e) {
+                    LOGGER.error("Unable to give back the connection after iterating over a result", e);
+                }
+                connection = null;
+            }
+        }
+    }
+
+    /**
+     * Iterator wrapper that remembers if anything has been read from it
+     */
+    private static class ReadTrackingIterator implements Iterator<Object[]> {
+        private final Iterator<Object[]> iterator;
+        private boolean started;
+
+        ReadTrackingIterator(Iterator<Object[]> iterator) {
+            this.iterator = iterator;
+            this.started = false;
+        }
+
+        boolean isStarted() {
+            return started;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Object[] next() {
+            started = true;
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+    }
+
+    private void onSuccess(DataSource target) {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(target);
+        if(circuitBreaker != null) {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    /**
+     * Decides what to do about an error from an attempt to run a statement. Errors that aren't connection errors are
+     * thrown right away, as are connection errors once the retry policy gives up.
+     * @param connection Connection the attempt was made on, or {@code null} if no connection could be opened
+     * @return How many milliseconds to wait before the next attempt
+     */
+    private long onError(DataSource target, Connection connection, SQLException e, int attempt, long startTime) throws SQLException {
+        if(!serverType.isConnectionError(e)) {
+            //The server answered, so it's up
+            onSuccess(target);
+            throw e;  //Syntax error?
+        }
+        CircuitBreaker circuitBreaker = getCircuitBreaker(target);
+        if(circuitBreaker != null) {
+            circuitBreaker.onFailure();
+        }
+        if(connection != null) {
+            onConnectionError(connection, e);
+        }
+        long retryDelay = retryPolicy.getRetryDelay(attempt, System.currentTimeMillis() - startTime, e);
+        if(retryDelay < 0) {
+            throw e;
+        }
+        LOGGER.debug("Connection error on attempt " + attempt + ", retrying in " + retryDelay + " ms", e);
+        return retryDelay;
+    }
+
+    private void sleep(long milliseconds) throws SQLException {
         try {
             Thread.sleep(milliseconds);
         }
         catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry after a connection error", e);
         }
     }
 }
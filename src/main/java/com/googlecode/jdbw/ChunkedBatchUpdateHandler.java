@@ -0,0 +1,44 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+
+package com.googlecode.jdbw;
+
+import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
+
+/**
+ * Extension of {@code BatchUpdateHandler} for batches that are sent to the
+ * server in chunks, through the {@code batchWrite(..)} methods taking an
+ * {@code Iterator}. The return codes, generated keys and warnings of each chunk
+ * are reported through the {@code BatchUpdateHandler} methods as soon as the
+ * chunk has been executed, followed by a call to {@code onChunkCompleted(..)}.
+ * {@code BatchUpdateHandlerAdapter} implements this interface.
+ * @see BatchUpdateHandlerAdapter
+ * @author Martin Berglund
+ */
+public interface ChunkedBatchUpdateHandler extends BatchUpdateHandler {
+
+    /**
+     * Called when a chunk of the batch has been executed on the server (and
+     * committed, if the batch is written with a commit for each chunk)
+     * @param chunkNumber Number of the chunk, where the first chunk is 1
+     * @param totalRowsWritten How many rows have been written so far, including
+     * this chunk
+     */
+    public void onChunkCompleted(int chunkNumber, long totalRowsWritten);
+}
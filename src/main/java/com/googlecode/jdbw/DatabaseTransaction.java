@@ -46,4 +46,27 @@ public interface DatabaseTransaction extends SQLExecutor {
      * @throws SQLException If there was an error when trying to rollback the transaction
      */
     void rollback() throws SQLException;
+
+    /**
+     * Turns write buffering on or off for the rest of this transaction. While buffering is on, {@code INSERT},
+     * {@code UPDATE} and {@code DELETE} statements sent through {@code execute(String, Object...)} or
+     * {@code batchWrite(String, List)}, where there is no handler to report results to, are not sent to the server
+     * right away. Instead they are kept until the transaction is committed, a statement that isn't buffered is run or
+     * {@code maxBufferedStatements} statements have been buffered, and are then sent in as few JDBC batches as
+     * possible. Statements are always sent in the order they were given.
+     * <p/>
+     * Since errors in buffered statements are only discovered later, they are thrown from whatever call sends the
+     * buffer to the server; the exception message tells which statement of the transaction failed.
+     * @param maxBufferedStatements How many statements to buffer before sending them, 0 to turn buffering off and
+     * send what has been buffered so far
+     * @throws SQLException If turning buffering off sent buffered statements and one of them failed
+     */
+    void setWriteBuffering(int maxBufferedStatements) throws SQLException;
+
+    /**
+     * Sends any buffered write statements to the server.
+     * @throws SQLException If one of the buffered statements failed
+     * @see #setWriteBuffering(int)
+     */
+    void flush() throws SQLException;
 }
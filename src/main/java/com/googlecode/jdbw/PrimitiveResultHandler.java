@@ -0,0 +1,104 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw;
+
+import com.googlecode.jdbw.util.PrimitiveResultHandlerAdapter;
+
+/**
+ * A variant of {@code ExecuteResultHandler} that receives the values of each
+ * row one column at a time, using the most specific type the column can be
+ * read as. Integer, big integer and double precision columns are delivered as
+ * primitives without boxing them. When you pass a handler implementing this
+ * interface to {@code SQLExecutor.execute(..)}, {@code nextRow(Object[])} will
+ * not be called; instead every column of the row is sent to one of the
+ * {@code on...} methods below, in column order, followed by a call to
+ * {@code onEndOfRow()}.
+ * <p>
+ * Which method a column is sent to is decided once per result set, from the
+ * SQL type and Java class name the JDBC driver reports for the column. Columns
+ * of types without a specialized method are sent to {@code onObject(..)} with
+ * the value from {@code ResultSet.getObject(..)}. SQL {@code NULL} values are
+ * always sent to {@code onNull(..)}.
+ * <p>
+ * All column indexes are 0-based, as in {@code ResultSetInformation}.
+ *
+ * @see PrimitiveResultHandlerAdapter
+ * @author Martin Berglund
+ */
+public interface PrimitiveResultHandler extends ExecuteResultHandler {
+    /**
+     * Called for {@code INTEGER}, {@code SMALLINT} and {@code TINYINT} columns
+     * that the driver reports as {@code java.lang.Integer}
+     * @param columnIndex Index of the column
+     * @param value Value of the column
+     */
+    void onInt(int columnIndex, int value);
+
+    /**
+     * Called for {@code BIGINT} columns that the driver reports as
+     * {@code java.lang.Long}
+     * @param columnIndex Index of the column
+     * @param value Value of the column
+     */
+    void onLong(int columnIndex, long value);
+
+    /**
+     * Called for {@code DOUBLE} and {@code FLOAT} columns that the driver
+     * reports as {@code java.lang.Double}
+     * @param columnIndex Index of the column
+     * @param value Value of the column
+     */
+    void onDouble(int columnIndex, double value);
+
+    /**
+     * Called for character columns
+     * @param columnIndex Index of the column
+     * @param value Value of the column
+     */
+    void onString(int columnIndex, String value);
+
+    /**
+     * Called for binary columns
+     * @param columnIndex Index of the column
+     * @param value Value of the column
+     */
+    void onBytes(int columnIndex, byte[] value);
+
+    /**
+     * Called for all other columns, with the value from
+     * {@code ResultSet.getObject(..)}
+     * @param columnIndex Index of the column
+     * @param value Value of the column
+     */
+    void onObject(int columnIndex, Object value);
+
+    /**
+     * Called when the value of a column is SQL {@code NULL}, no matter what
+     * type the column has
+     * @param columnIndex Index of the column
+     */
+    void onNull(int columnIndex);
+
+    /**
+     * Called after all columns of a row has been delivered
+     * @return true if you want to read more rows, false if you want to close
+     * the result set and skip remaining rows
+     */
+    boolean onEndOfRow();
+}
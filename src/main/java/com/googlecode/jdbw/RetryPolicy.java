@@ -0,0 +1,43 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw;
+
+import com.googlecode.jdbw.util.ExponentialBackoffRetryPolicy;
+import java.sql.SQLException;
+
+/**
+ * Decides if and when an {@code AutoExecutor} should retry a statement that
+ * failed because of a connection error. Implementations must be thread-safe,
+ * since one policy is usually shared by all executors of a
+ * {@code DatabaseConnection}.
+ *
+ * @see ExponentialBackoffRetryPolicy
+ * @author Martin Berglund
+ */
+public interface RetryPolicy {
+    /**
+     * Called every time a statement fails with a connection error.
+     * @param attempt How many times the statement has failed so far, starting at 1
+     * @param elapsedMillis Milliseconds since the statement was first attempted
+     * @param error The connection error of the latest attempt
+     * @return How many milliseconds to wait before the next attempt, or a
+     * negative number to give up and throw the error to the caller
+     */
+    long getRetryDelay(int attempt, long elapsedMillis, SQLException error);
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw;
+
+/**
+ * A view of the current row of a result set, handed to a
+ * {@code RowCursorHandler}. The same cursor object is reused for every row of
+ * the result set and its values are overwritten when the next row is read, so
+ * the cursor is <b>only valid during the {@code nextRow(RowCursor)}
+ * callback</b>. If you need to keep a row around after the callback has
+ * returned, copy it with {@code toArray()}.
+ * <p>
+ * Numeric columns are kept as primitives inside the cursor, so reading them
+ * through {@code getInt(..)}, {@code getLong(..)} or {@code getDouble(..)}
+ * doesn't allocate anything. All column indexes are 0-based, as in
+ * {@code ResultSetInformation}.
+ *
+ * @see RowCursorHandler
+ * @author Martin Berglund
+ */
+public interface RowCursor {
+    /**
+     * @return Number of columns in the row
+     */
+    int getNumberOfColumns();
+
+    /**
+     * @param columnIndex Index of the column
+     * @return {@code true} if the value of the column is SQL {@code NULL}
+     */
+    boolean isNull(int columnIndex);
+
+    /**
+     * Returns the value of a column as it would have been returned by
+     * {@code ResultSet.getObject(..)}
+     * @param columnIndex Index of the column
+     * @return Value of the column, or {@code null}
+     */
+    Object getObject(int columnIndex);
+
+    /**
+     * Returns the value of a column as a string, same as calling
+     * {@code toString()} on the value returned by {@code getObject(..)}
+     * @param columnIndex Index of the column
+     * @return Value of the column as a string, or {@code null}
+     */
+    String getString(int columnIndex);
+
+    /**
+     * Returns the value of a numeric column as an int
+     * @param columnIndex Index of the column
+     * @return Value of the column, or 0 if the value is {@code NULL}
+     * @throws ClassCastException If the value isn't a number and can't be
+     * parsed as one
+     */
+    int getInt(int columnIndex);
+
+    /**
+     * Returns the value of a numeric column as a long
+     * @param columnIndex Index of the column
+     * @return Value of the column, or 0 if the value is {@code NULL}
+     * @throws ClassCastException If the value isn't a number and can't be
+     * parsed as one
+     */
+    long getLong(int columnIndex);
+
+    /**
+     * Returns the value of a numeric column as a double
+     * @param columnIndex Index of the column
+     * @return Value of the column, or 0 if the value is {@code NULL}
+     * @throws ClassCastException If the value isn't a number and can't be
+     * parsed as one
+     */
+    double getDouble(int columnIndex);
+
+    /**
+     * Copies all values of the current row into a new array, the same array as
+     * would have been sent to {@code ExecuteResultHandler.nextRow(Object[])}
+     * @return Values of the current row
+     */
+    Object[] toArray();
+}
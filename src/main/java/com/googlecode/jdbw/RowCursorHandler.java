@@ -0,0 +1,45 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw;
+
+import com.googlecode.jdbw.util.RowCursorHandlerAdapter;
+
+/**
+ * A variant of {@code ExecuteResultHandler} that reads rows through a reusable
+ * {@code RowCursor} instead of getting a new array for every row. When you
+ * pass a handler implementing this interface to {@code SQLExecutor.execute(..)},
+ * {@code nextRow(RowCursor)} is called for every row instead of
+ * {@code nextRow(Object[])}; no objects are allocated per row except for the
+ * values the driver itself creates. This makes a big difference when reading
+ * through large tables where each row is only looked at once.
+ *
+ * @see RowCursorHandlerAdapter
+ * @author Martin Berglund
+ */
+public interface RowCursorHandler extends ExecuteResultHandler {
+    /**
+     * The callback is called once for every row returned by a result set. The
+     * row belongs to the result set defined by the last call to onResultSet.
+     * @param cursor View of the current row, which is only valid until this
+     * method returns
+     * @return true if you want to read more rows, false if you want to close
+     * the result set and skip remaining rows
+     */
+    boolean nextRow(RowCursor cursor);
+}
@@ -153,4 +153,20 @@ public interface SQLDialect {
      * @return A compatible value for the target column, that can be passed in as a parameter in a call on SQLExecutor
      */
     Object convertToCompatibleType(Column targetColumnType, Object object);
+
+    /**
+     * Returns the maximum number of parameters (question marks) the database server or its JDBC driver accepts in a
+     * single prepared statement. This is used to decide how many rows can be packed into one multi-row insert.
+     * @return Maximum number of parameters in one statement
+     */
+    int getMaxParametersPerStatement();
+
+    /**
+     * Tells if the database server supports inserting several rows with one statement, as in
+     * <code>INSERT INTO t (a, b) VALUES (?, ?), (?, ?), (?, ?)</code>. If it does, batched inserts may be rewritten
+     * into statements of this form, which is a lot faster than sending one statement per row. The rewrite can be
+     * turned off through {@code AutoExecutor.setMultiRowInsertEnabled(..)}.
+     * @return True if the server supports multi-row <code>VALUES</code> lists in inserts
+     */
+    boolean isMultiRowInsertSupported();
 }
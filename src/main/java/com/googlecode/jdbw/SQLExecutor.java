@@ -18,7 +18,9 @@
  */
 package com.googlecode.jdbw;
 
+import com.googlecode.jdbw.util.CloseableIterator;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -61,6 +63,38 @@ public interface SQLExecutor {
      */
     void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, String SQL, Object... parameters) throws SQLException;
 
+    /**
+     * Sends a query to the database and handles any results through a callback interface, streaming the result from
+     * the server instead of reading all of it into memory first. How this is done depends on the database server type;
+     * on some servers the rows are fetched through a cursor in {@code fetchSize} large chunks, on others the result is
+     * streamed row by row no matter which fetch size is given. Either way, large results can be read in constant memory.
+     * @param handler Callback interface to use for any results of the query
+     * @param maxRowsToFetch How many rows, at most, to fetch from the remote server, or 0 for no limit (<b>note:</b> 
+     * Not all JDBC driver implement this feature efficiently, some don't honour it at all)
+     * @param queryTimeoutInSeconds Timeout for the query, in seconds, until the driver will throw an exception if the 
+     * query hasn't come back yet (0 means no timeout)
+     * @param fetchSize How many rows to fetch from the server at a time, or 0 to use the driver default and not stream
+     * the result
+     * @param SQL SQL code to send to the database server, use ? for parameter substitution
+     * @param parameters List of parameters to insert into the query, must be one for every ? used
+     * @throws SQLException If an error occurred in the JDBC driver or on the remote database server
+     */
+    void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object... parameters) throws SQLException;
+
+    /**
+     * Sends a query to the database and returns an iterator over the rows of the first result set. Rows are read from
+     * the result set as you step through the iterator, instead of all at once, so together with a fetch size this
+     * lets you go through results too large to keep in memory. The statement (and, for an {@code AutoExecutor}, the
+     * connection) is kept open until the iterator has been read to the end or is closed, so make sure to close it if
+     * you stop early.
+     * @param fetchSize How many rows to fetch from the server at a time, or 0 to use the driver default
+     * @param SQL SQL code to send to the database server, use ? for parameter substitution
+     * @param parameters List of parameters to insert into the query, must be one for every ? used
+     * @return Iterator over the rows of the first result set, empty if the query didn't return any result set
+     * @throws SQLException If an error occurred in the JDBC driver or on the remote database server
+     */
+    CloseableIterator<Object[]> iterate(int fetchSize, String SQL, Object... parameters) throws SQLException;
+
     /**
      * Executes a list of queries as one batch on the remote database server and ignores any results
      * @param batchedSQL List of SQL to send to the remote server
@@ -96,4 +130,29 @@ public interface SQLExecutor {
      * @throws SQLException If an error occurred in the JDBC driver or on the remote database server
      */
     void batchWrite(BatchUpdateHandler handler, String SQL, List<Object[]> parameters) throws SQLException;
+
+    /**
+     * Executes a batch query where the SQL is structurally the same but parameters are different, reading the
+     * parameters from an iterator and sending them to the server in chunks of {@code chunkSize} rows. Only one chunk
+     * is kept in memory at a time, so this can be used for batches of any size. Results are ignored.
+     * @param SQL SQL to use for all queries, use ? for the parameter substitution
+     * @param parameters Iterator of object arrays, where one array equals one query sent to the server
+     * @param chunkSize How many rows to send to the server in each batch
+     * @throws SQLException If an error occurred in the JDBC driver or on the remote database server
+     */
+    void batchWrite(String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException;
+
+    /**
+     * Executes a batch query where the SQL is structurally the same but parameters are different, reading the
+     * parameters from an iterator and sending them to the server in chunks of {@code chunkSize} rows. Only one chunk
+     * is kept in memory at a time, so this can be used for batches of any size. The handler is called with the results
+     * of every chunk as soon as it has been executed; if it is a {@code ChunkedBatchUpdateHandler} it will also be told
+     * about the progress after each chunk.
+     * @param handler Callback interface to use for any results of the query
+     * @param SQL SQL to use for all queries, use ? for the parameter substitution
+     * @param parameters Iterator of object arrays, where one array equals one query sent to the server
+     * @param chunkSize How many rows to send to the server in each batch
+     * @throws SQLException If an error occurred in the JDBC driver or on the remote database server
+     */
+    void batchWrite(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException;
 }
@@ -23,6 +23,7 @@ import com.googlecode.jdbw.DataSourceFactory;
 import com.googlecode.jdbw.DatabaseConnection;
 import com.googlecode.jdbw.DatabaseConnectionFactory;
 import com.googlecode.jdbw.DatabaseServerType;
+import com.googlecode.jdbw.util.PooledDataSource;
 
 import java.util.Properties;
 import javax.sql.DataSource;
@@ -56,6 +57,17 @@ public abstract class BasicDatabaseConnectionFactory implements DatabaseConnecti
         return this;
     }
 
+    /**
+     * Establishes a database connection using the currently configured values of this DatabaseConnectionFactory,
+     * backed by JDBW's own connection pool.
+     * @return DatabaseConnection containing a pooled DataSource configured for the database server this connection
+     * factory has been specified for
+     * @see PooledDataSource
+     */
+    public DatabaseConnection connect() {
+        return connect(new PooledDataSource.Factory());
+    }
+
     @Override
     public DatabaseConnection connect(final DataSourceFactory dataSourceFactory) {
         return new DatabaseConnectionImpl(
@@ -21,6 +21,8 @@ package com.googlecode.jdbw.impl;
 import com.googlecode.jdbw.*;
 import com.googlecode.jdbw.metadata.Catalog;
 import com.googlecode.jdbw.metadata.ServerMetaData;
+import com.googlecode.jdbw.util.CircuitBreaker;
+import com.googlecode.jdbw.util.ExponentialBackoffRetryPolicy;
 import com.googlecode.jdbw.util.OneSharedConnectionDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,10 @@ import javax.sql.DataSource;
  * This is a default implementation of the {@code DatabaseConnection} interface,
  * you can construct objects of this type with a {@code Connection} or a 
  * {@code DataSource}.
+ * <p>
+ * All {@code AutoExecutor}s created from the same {@code DatabaseConnectionImpl}
+ * share one {@code CircuitBreaker}, so that once the database is known to be
+ * down, they all fail fast instead of each retrying on its own.
  * @author Martin Berglund
  */
 public class DatabaseConnectionImpl implements DatabaseConnection {
@@ -41,6 +47,8 @@ public class DatabaseConnectionImpl implements DatabaseConnection {
     private final DatabaseServerType databaseServerType;
     private final DataSource dataSource;
     private final DataSourceCloser dataSourceCloser;
+    private final CircuitBreaker circuitBreaker;
+    private volatile RetryPolicy retryPolicy;
 
     /**
      * Creates a {@code DatabaseConnectionImpl} backed by one physical database
@@ -210,6 +218,8 @@ public class DatabaseConnectionImpl implements DatabaseConnection {
     public DatabaseConnectionImpl(DataSource dataSource, DataSourceCloser dataSourceCloser, DatabaseServerType databaseServerType) {
         this.dataSource = dataSource;
         this.dataSourceCloser = dataSourceCloser;
+        this.circuitBreaker = new CircuitBreaker();
+        this.retryPolicy = new ExponentialBackoffRetryPolicy();
         if(databaseServerType != null) {
             this.databaseServerType = databaseServerType;
         }
@@ -261,12 +271,38 @@ public class DatabaseConnectionImpl implements DatabaseConnection {
 
     @Override
     public AutoExecutor createAutoExecutor() {
-        return new AutoExecutor(dataSource, databaseServerType);
+        return createAutoExecutor(TransactionIsolation.READ_UNCOMMITTED);
     }
 
     @Override
     public AutoExecutor createAutoExecutor(TransactionIsolation isolation) {
-        return new AutoExecutor(dataSource, databaseServerType, isolation);
+        return new AutoExecutor(dataSource, databaseServerType, isolation, retryPolicy, circuitBreaker);
+    }
+
+    /**
+     * @return Retry policy used by the {@code AutoExecutor}s created from this connection
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the retry policy to use for {@code AutoExecutor}s created from now on, by default an
+     * {@code ExponentialBackoffRetryPolicy} with its default settings
+     * @param retryPolicy Retry policy to use
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if(retryPolicy == null) {
+            throw new IllegalArgumentException("Cannot set a null retry policy");
+        }
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return Circuit breaker shared by all {@code AutoExecutor}s created from this connection
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
     }
     
     @Override
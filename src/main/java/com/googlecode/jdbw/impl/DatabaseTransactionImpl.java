@@ -21,12 +21,14 @@ package com.googlecode.jdbw.impl;
 
 import com.googlecode.jdbw.*;
 import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
+import com.googlecode.jdbw.util.CloseableIterator;
 import com.googlecode.jdbw.util.ExecuteResultHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -40,6 +42,8 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
     private Connection connection;
     private SQLExecutor executor;
     private boolean initialized;
+    private WriteBuffer writeBuffer;
+    private int maxBufferedStatements;
 
     DatabaseTransactionImpl(
             Connection connection,
@@ -49,10 +53,39 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
         this.transactionIsolation = transactionIsolation;
         this.executor = executor;
         this.initialized = false;
+        this.writeBuffer = null;
+        this.maxBufferedStatements = 0;
+    }
+
+    @Override
+    public synchronized void setWriteBuffering(int maxBufferedStatements) throws SQLException {
+        if (maxBufferedStatements <= 0) {
+            flush();
+            writeBuffer = null;
+        }
+        else if (writeBuffer == null) {
+            writeBuffer = new WriteBuffer();
+        }
+        this.maxBufferedStatements = maxBufferedStatements;
+    }
+
+    @Override
+    public synchronized void flush() throws SQLException {
+        if (writeBuffer == null || writeBuffer.size() == 0) {
+            return;
+        }
+        if (connection == null) {
+            throw new SQLException("Tried to call DefaultDatabaseTransaction.flush after commit, rollback or revoked!");
+        }
+        if (!initialized) {
+            initialize();
+        }
+        writeBuffer.flush(executor);
     }
 
     @Override
     public synchronized void commit() throws SQLException {
+        flush();
         executor = null;
         try {
             if (initialized) {
@@ -72,6 +105,9 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
 
     @Override
     public synchronized void rollback() throws SQLException {
+        if (writeBuffer != null) {
+            writeBuffer.clear();
+        }
         executor = null;
         try {
             if (initialized) {
@@ -90,7 +126,13 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
     }
 
     @Override
-    public void execute(String SQL, Object... parameters) throws SQLException {
+    public synchronized void execute(String SQL, Object... parameters) throws SQLException {
+        if (writeBuffer != null && WriteBuffer.isBufferable(SQL)) {
+            checkOpen();
+            writeBuffer.add(SQL, parameters);
+            flushIfFull();
+            return;
+        }
         execute(new ExecuteResultHandlerAdapter(), SQL, parameters);
     }
 
@@ -101,6 +143,11 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
 
     @Override
     public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeout, String SQL, Object... parameters) throws SQLException {
+        execute(handler, maxRowsToFetch, queryTimeout, 0, SQL, parameters);
+    }
+
+    @Override
+    public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeout, int fetchSize, String SQL, Object... parameters) throws SQLException {
         if (connection == null) {
             throw new SQLException("Tried to call DefaultDatabaseTransaction.query after commit, rollback or revoked!");
         }
@@ -109,11 +156,32 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
             initialize();
         }
 
-        executor.execute(handler, maxRowsToFetch, queryTimeout, SQL, parameters);
+        flush();
+        executor.execute(handler, maxRowsToFetch, queryTimeout, fetchSize, SQL, parameters);
     }
 
     @Override
-    public void batchWrite(String SQL, List<Object[]> parameters) throws SQLException {
+    public CloseableIterator<Object[]> iterate(int fetchSize, String SQL, Object... parameters) throws SQLException {
+        if (connection == null) {
+            throw new SQLException("Tried to call DefaultDatabaseTransaction.query after commit, rollback or revoked!");
+        }
+
+        if (!initialized) {
+            initialize();
+        }
+
+        flush();
+        return executor.iterate(fetchSize, SQL, parameters);
+    }
+
+    @Override
+    public synchronized void batchWrite(String SQL, List<Object[]> parameters) throws SQLException {
+        if (writeBuffer != null && WriteBuffer.isBufferable(SQL)) {
+            checkOpen();
+            writeBuffer.addAll(SQL, parameters);
+            flushIfFull();
+            return;
+        }
         batchWrite(new BatchUpdateHandlerAdapter(), SQL, parameters);
     }
 
@@ -127,9 +195,29 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
             initialize();
         }
 
+        flush();
         executor.batchWrite(handler, SQL, parameters);
     }
 
+    @Override
+    public void batchWrite(String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        batchWrite(new BatchUpdateHandlerAdapter(), SQL, parameters, chunkSize);
+    }
+
+    @Override
+    public synchronized void batchWrite(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        if (connection == null) {
+            throw new SQLException("Tried to call DefaultDatabaseTransaction.query after commit, rollback or revoked!");
+        }
+
+        if (!initialized) {
+            initialize();
+        }
+
+        flush();
+        executor.batchWrite(handler, SQL, parameters, chunkSize);
+    }
+
     @Override
     public void batchWrite(List<String> batchedSQL) throws SQLException {
         batchWrite(new BatchUpdateHandlerAdapter(), batchedSQL);
@@ -145,9 +233,22 @@ class DatabaseTransactionImpl implements DatabaseTransaction {
             initialize();
         }
 
+        flush();
         executor.batchWrite(handler, batchedSQL);
     }
 
+    private void checkOpen() throws SQLException {
+        if (connection == null) {
+            throw new SQLException("Tried to call DefaultDatabaseTransaction.query after commit, rollback or revoked!");
+        }
+    }
+
+    private void flushIfFull() throws SQLException {
+        if (writeBuffer.size() >= maxBufferedStatements) {
+            flush();
+        }
+    }
+
     private void initialize() throws SQLException {
         connection.setAutoCommit(false);
         connection.setTransactionIsolation(transactionIsolation.getConstant());
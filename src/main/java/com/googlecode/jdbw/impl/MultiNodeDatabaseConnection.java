@@ -0,0 +1,100 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.DataSourceCloser;
+import com.googlecode.jdbw.DatabaseServerType;
+import com.googlecode.jdbw.TransactionIsolation;
+import com.googlecode.jdbw.util.CircuitBreaker;
+import com.googlecode.jdbw.util.MultiNodeDataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * A {@code DatabaseConnection} over several equivalent database nodes, backed
+ * by a {@code MultiNodeDataSource}. On top of what {@code DatabaseConnectionImpl}
+ * does, the {@code AutoExecutor}s created from this connection tell the data
+ * source when a statement fails with a connection error, so that the node is
+ * marked down and the retry goes to another node.
+ * <p>
+ * The connection's {@code CircuitBreaker} is not used by these executors. A
+ * breaker shared by all nodes would be opened by errors from one bad node and
+ * then fail every statement, even though the other nodes are fine; instead,
+ * the {@code MultiNodeDataSource} keeps track of which nodes are down and
+ * probes them until they are back.
+ *
+ * @author Martin Berglund
+ */
+public class MultiNodeDatabaseConnection extends DatabaseConnectionImpl {
+
+    private final MultiNodeDataSource multiNodeDataSource;
+
+    /**
+     * Creates a {@code MultiNodeDatabaseConnection} over the nodes given. Closing this connection stops probing nodes
+     * that are down, but doesn't close the data sources of the nodes.
+     * @param nodeDataSources Data sources of the nodes
+     * @param databaseServerType Type of the database servers
+     */
+    public MultiNodeDatabaseConnection(List<DataSource> nodeDataSources, DatabaseServerType databaseServerType) {
+        this(new MultiNodeDataSource(nodeDataSources), databaseServerType);
+    }
+
+    /**
+     * Creates a {@code MultiNodeDatabaseConnection} backed by a {@code MultiNodeDataSource}. Closing this connection
+     * closes the {@code MultiNodeDataSource}.
+     * @param multiNodeDataSource Data source spreading connections over the nodes
+     * @param databaseServerType Type of the database servers
+     */
+    public MultiNodeDatabaseConnection(MultiNodeDataSource multiNodeDataSource, DatabaseServerType databaseServerType) {
+        super(multiNodeDataSource,
+                new DataSourceCloser() {
+                    @Override
+                    public void closeDataSource(DataSource dataSource) {
+                        ((MultiNodeDataSource)dataSource).close();
+                    }
+                },
+                databaseServerType);
+        this.multiNodeDataSource = multiNodeDataSource;
+    }
+
+    /**
+     * @return The data source spreading connections over the nodes
+     */
+    public MultiNodeDataSource getMultiNodeDataSource() {
+        return multiNodeDataSource;
+    }
+
+    @Override
+    public AutoExecutor createAutoExecutor(TransactionIsolation isolation) {
+        return new AutoExecutor(multiNodeDataSource, getServerType(), isolation, getRetryPolicy(), getCircuitBreaker()) {
+            @Override
+            protected void onConnectionError(Connection connection, SQLException error) {
+                multiNodeDataSource.reportConnectionError(connection);
+            }
+
+            @Override
+            protected CircuitBreaker getCircuitBreaker(DataSource dataSource) {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single-row {@code INSERT INTO ... VALUES (?, ?, ...)} statement that can
+ * be expanded into a multi-row insert, where the parenthesised list of
+ * parameters is repeated once per row. Only inserts where the values are all
+ * parameters and where nothing follows the values list are recognized, for
+ * anything else {@code parse(..)} returns {@code null}.
+ * <p>
+ * Row counts are always powers of two, so that any number of rows can be
+ * written with a handful of different statements and the statement cache
+ * doesn't fill up with one statement for every batch size.
+ *
+ * @author Martin Berglund
+ */
+class MultiRowInsert {
+
+    /**
+     * Upper limit on the number of rows in one statement, regardless of how
+     * many parameters the server allows; very long statements take longer
+     * for the server to parse than what is saved in round-trips
+     */
+    static final int MAX_ROWS_PER_STATEMENT = 512;
+
+    private static final Pattern INSERT_PATTERN = Pattern.compile(
+            "\\s*(INSERT\\s+INTO\\s.+?)\\s*VALUES\\s*(\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\))\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final String prefix;
+    private final String rowSQL;
+    private final int parametersPerRow;
+
+    private MultiRowInsert(String prefix, String rowSQL) {
+        this.prefix = prefix;
+        this.rowSQL = rowSQL;
+        int count = 0;
+        for(int i = 0; i < rowSQL.length(); i++) {
+            if(rowSQL.charAt(i) == '?') {
+                count++;
+            }
+        }
+        this.parametersPerRow = count;
+    }
+
+    /**
+     * @return The insert, or {@code null} if the SQL isn't an insert that can be expanded to several rows
+     */
+    static MultiRowInsert parse(String SQL) {
+        Matcher matcher = INSERT_PATTERN.matcher(SQL);
+        if(!matcher.matches()) {
+            return null;
+        }
+        return new MultiRowInsert(matcher.group(1), matcher.group(2));
+    }
+
+    int getParametersPerRow() {
+        return parametersPerRow;
+    }
+
+    /**
+     * Returns the largest number of rows that fits into one statement
+     * @param maxParameters Maximum number of parameters in one statement
+     * @return Largest power of two rows that fits, or 1 if a multi-row insert isn't possible
+     */
+    int getMaxRowsPerStatement(int maxParameters) {
+        int limit = Math.min(MAX_ROWS_PER_STATEMENT, maxParameters / parametersPerRow);
+        return limit < 1 ? 1 : Integer.highestOneBit(limit);
+    }
+
+    /**
+     * @return SQL inserting {@code rows} rows
+     */
+    String getSQL(int rows) {
+        StringBuilder sb = new StringBuilder(prefix.length() + 8 + rows * (rowSQL.length() + 2));
+        sb.append(prefix).append(" VALUES ").append(rowSQL);
+        for(int i = 1; i < rows; i++) {
+            sb.append(", ").append(rowSQL);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.util.NullValue;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sets one parameter of a prepared statement using the setter matching the
+ * Java class of the value. Which binder to use for a class is decided once,
+ * by going through the same list of types that {@code SQLExecutorImpl} always
+ * supported, and then remembered for the JDK classes and the {@code NullValue}
+ * classes; looking up the binder for a value of these classes is a single map
+ * lookup instead of a chain of {@code instanceof} checks. Other classes are
+ * resolved every time, so that the cache doesn't keep application classes,
+ * and with them their class loaders, from being unloaded.
+ * <p>
+ * The {@code NullValue} classes are bound with {@code setNull(..)} using the
+ * SQL type they stand for, a plain {@code null} is bound as a {@code NULL}
+ * VARCHAR and values of classes not in the list go through
+ * {@code setObject(..)}.
+ *
+ * @author Martin Berglund
+ */
+abstract class ParameterBinder {
+
+    private static final Map<Class<?>, ParameterBinder> BINDERS_BY_CLASS = new ConcurrentHashMap<Class<?>, ParameterBinder>();
+
+    static final ParameterBinder NULL = new NullBinder(Types.VARCHAR);
+
+    private static final ParameterBinder NULL_BINARY = new NullBinder(Types.BINARY);
+    private static final ParameterBinder NULL_DECIMAL = new NullBinder(Types.DECIMAL);
+    private static final ParameterBinder NULL_DOUBLE = new NullBinder(Types.DOUBLE);
+    private static final ParameterBinder NULL_INTEGER = new NullBinder(Types.INTEGER);
+    private static final ParameterBinder NULL_TIMESTAMP = new NullBinder(Types.TIMESTAMP);
+
+    private static final ParameterBinder STRING = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setString(index, (String)value);
+        }
+    };
+
+    private static final ParameterBinder BYTE = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setByte(index, (Byte)value);
+        }
+    };
+
+    private static final ParameterBinder SHORT = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setShort(index, (Short)value);
+        }
+    };
+
+    private static final ParameterBinder INTEGER = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setInt(index, (Integer)value);
+        }
+    };
+
+    private static final ParameterBinder LONG = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setLong(index, (Long)value);
+        }
+    };
+
+    private static final ParameterBinder DECIMAL = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setBigDecimal(index, (BigDecimal)value);
+        }
+    };
+
+    private static final ParameterBinder DATE = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setDate(index, (Date)value);
+        }
+    };
+
+    private static final ParameterBinder DOUBLE = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setDouble(index, (Double)value);
+        }
+    };
+
+    private static final ParameterBinder FLOAT = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setFloat(index, (Float)value);
+        }
+    };
+
+    private static final ParameterBinder BOOLEAN = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setBoolean(index, (Boolean)value);
+        }
+    };
+
+    private static final ParameterBinder TIMESTAMP = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setTimestamp(index, (Timestamp)value);
+        }
+    };
+
+    private static final ParameterBinder JAVA_DATE = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setTimestamp(index, new Timestamp(((java.util.Date)value).getTime()));
+        }
+    };
+
+    private static final ParameterBinder OBJECT = new ParameterBinder() {
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setObject(index, value);
+        }
+    };
+
+    /**
+     * Sets a parameter of the statement
+     * @param statement Statement to set the parameter on
+     * @param index 1-based index of the parameter
+     * @param value Value to set, which is always of the class this binder was picked for
+     */
+    abstract void bind(PreparedStatement statement, int index, Object value) throws SQLException;
+
+    /**
+     * @return Binder for the value, {@code value} may be {@code null}
+     */
+    static ParameterBinder forValue(Object value) {
+        if(value == null) {
+            return NULL;
+        }
+        return forClass(value.getClass());
+    }
+
+    static ParameterBinder forClass(Class<?> type) {
+        ParameterBinder binder = BINDERS_BY_CLASS.get(type);
+        if(binder == null) {
+            binder = resolve(type);
+            if(isCacheable(type)) {
+                BINDERS_BY_CLASS.put(type, binder);
+            }
+        }
+        return binder;
+    }
+
+    /**
+     * @return {@code true} for JDK classes, loaded by the bootstrap class loader or one of the parents of the system
+     * class loader, and for the {@code NullValue} classes; the set of these is small and they are never unloaded
+     */
+    static boolean isCacheable(Class<?> type) {
+        if(type.getDeclaringClass() == NullValue.class) {
+            return true;
+        }
+        ClassLoader classLoader = type.getClassLoader();
+        if(classLoader == null) {
+            return true;
+        }
+        for(ClassLoader jdkClassLoader = ClassLoader.getSystemClassLoader().getParent(); jdkClassLoader != null; jdkClassLoader = jdkClassLoader.getParent()) {
+            if(classLoader == jdkClassLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ParameterBinder resolve(Class<?> type) {
+        if(NullValue.Binary.class.isAssignableFrom(type)) {
+            return NULL_BINARY;
+        }
+        else if(NullValue.Decimal.class.isAssignableFrom(type)) {
+            return NULL_DECIMAL;
+        }
+        else if(NullValue.Double.class.isAssignableFrom(type)) {
+            return NULL_DOUBLE;
+        }
+        else if(NullValue.Integer.class.isAssignableFrom(type)) {
+            return NULL_INTEGER;
+        }
+        else if(NullValue.String.class.isAssignableFrom(type)) {
+            return NULL;
+        }
+        else if(NullValue.Timestamp.class.isAssignableFrom(type)) {
+            return NULL_TIMESTAMP;
+        }
+        else if(String.class.isAssignableFrom(type)) {
+            return STRING;
+        }
+        else if(Byte.class.isAssignableFrom(type)) {
+            return BYTE;
+        }
+        else if(Short.class.isAssignableFrom(type)) {
+            return SHORT;
+        }
+        else if(Integer.class.isAssignableFrom(type)) {
+            return INTEGER;
+        }
+        else if(Long.class.isAssignableFrom(type)) {
+            return LONG;
+        }
+        else if(BigDecimal.class.isAssignableFrom(type)) {
+            return DECIMAL;
+        }
+        else if(Date.class.isAssignableFrom(type)) {
+            return DATE;
+        }
+        else if(Double.class.isAssignableFrom(type)) {
+            return DOUBLE;
+        }
+        else if(Float.class.isAssignableFrom(type)) {
+            return FLOAT;
+        }
+        else if(Boolean.class.isAssignableFrom(type)) {
+            return BOOLEAN;
+        }
+        else if(Timestamp.class.isAssignableFrom(type)) {
+            return TIMESTAMP;
+        }
+        else if(java.util.Date.class.isAssignableFrom(type)) {
+            return JAVA_DATE;
+        }
+        else {
+            return OBJECT;
+        }
+    }
+
+    private static class NullBinder extends ParameterBinder {
+        private final int sqlType;
+
+        NullBinder(int sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setNull(index, sqlType);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.DataSourceCloser;
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerType;
+import com.googlecode.jdbw.DatabaseTransaction;
+import com.googlecode.jdbw.TransactionIsolation;
+import com.googlecode.jdbw.metadata.Catalog;
+import com.googlecode.jdbw.util.CircuitBreaker;
+import com.googlecode.jdbw.util.LoadBalancer;
+import com.googlecode.jdbw.util.RoundRobinLoadBalancer;
+import com.googlecode.jdbw.util.StatementInfo;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * A {@code DatabaseConnection} that sends reads to replicas and everything
+ * else to a primary database. {@code AutoExecutor}s created from this
+ * connection look at each statement; plain {@code SELECT}s go to one of the
+ * replicas, picked by a {@code LoadBalancer}, while writes, DDL and anything
+ * that can't be classified go to the primary. Transactions always run on the
+ * primary, as do metadata lookups.
+ * <p>
+ * Since replicas usually lag behind the primary, reading your own writes from
+ * a replica may return stale data. If you set a read-your-writes window, a
+ * thread that has written to the primary (or started a transaction) keeps
+ * reading from the primary until the window has passed.
+ * <p>
+ * Statements sent to the primary go through the {@code CircuitBreaker} of the
+ * primary connection. Reads sent to the replicas don't use a breaker; a read
+ * failing with a connection error is retried according to the retry policy,
+ * and each retry picks a replica again.
+ *
+ * @author Martin Berglund
+ */
+public class RoutingDatabaseConnection implements DatabaseConnection {
+
+    private final DatabaseConnectionImpl primary;
+    private final DataSource primaryDataSource;
+    private final List<DataSource> replicas;
+    private final DataSourceCloser dataSourceCloser;
+    private final ThreadLocal<Long> lastWriteTime;
+    private volatile LoadBalancer loadBalancer;
+    private volatile long readYourWritesWindowMillis;
+
+    /**
+     * Creates a {@code RoutingDatabaseConnection} where calls to {@code close()} are ignored
+     * @param primaryDataSource Data source of the primary database
+     * @param replicaDataSources Data sources of the replicas, may be empty in which case everything goes to the primary
+     * @param databaseServerType Type of the database servers
+     */
+    public RoutingDatabaseConnection(
+            DataSource primaryDataSource,
+            List<DataSource> replicaDataSources,
+            DatabaseServerType databaseServerType) {
+        this(primaryDataSource, replicaDataSources, null, databaseServerType);
+    }
+
+    /**
+     * Creates a {@code RoutingDatabaseConnection}
+     * @param primaryDataSource Data source of the primary database
+     * @param replicaDataSources Data sources of the replicas, may be empty in which case everything goes to the primary
+     * @param dataSourceCloser Object which knows how to close the data sources, both primary and replicas, or null if
+     * you want calls to {@code close()} be ignored
+     * @param databaseServerType Type of the database servers
+     */
+    public RoutingDatabaseConnection(
+            DataSource primaryDataSource,
+            List<DataSource> replicaDataSources,
+            DataSourceCloser dataSourceCloser,
+            DatabaseServerType databaseServerType) {
+        this.primary = new DatabaseConnectionImpl(primaryDataSource, dataSourceCloser, databaseServerType);
+        this.primaryDataSource = primaryDataSource;
+        this.replicas = Collections.unmodifiableList(new ArrayList<DataSource>(replicaDataSources));
+        this.dataSourceCloser = dataSourceCloser;
+        this.lastWriteTime = new ThreadLocal<Long>();
+        this.loadBalancer = new RoundRobinLoadBalancer();
+        this.readYourWritesWindowMillis = 0;
+    }
+
+    /**
+     * @return The replica data sources reads are sent to
+     */
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Sets how to pick a replica for each read, by default the replicas are used in turn
+     * @param loadBalancer Load balancer to use
+     */
+    public void setLoadBalancer(LoadBalancer loadBalancer) {
+        if(loadBalancer == null) {
+            throw new IllegalArgumentException("Cannot set a null load balancer");
+        }
+        this.loadBalancer = loadBalancer;
+    }
+
+    /**
+     * Sets for how long a thread that has written to the primary keeps reading from the primary
+     * @param window Length of the window, 0 (the default) to always read from the replicas
+     * @param unit Unit of {@code window}
+     */
+    public void setReadYourWritesWindow(long window, TimeUnit unit) {
+        this.readYourWritesWindowMillis = unit.toMillis(window);
+    }
+
+    /**
+     * @return The connection to the primary database, which is used for transactions and metadata
+     */
+    public DatabaseConnectionImpl getPrimary() {
+        return primary;
+    }
+
+    @Override
+    public DatabaseServerType getServerType() {
+        return primary.getServerType();
+    }
+
+    @Override
+    public DatabaseTransaction beginTransaction(TransactionIsolation isolation) throws SQLException {
+        onWrite();
+        return primary.beginTransaction(isolation);
+    }
+
+    @Override
+    public AutoExecutor createAutoExecutor() {
+        return createAutoExecutor(TransactionIsolation.READ_UNCOMMITTED);
+    }
+
+    @Override
+    public AutoExecutor createAutoExecutor(TransactionIsolation isolation) {
+        return new RoutingAutoExecutor(isolation);
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return primaryDataSource;
+    }
+
+    @Override
+    public String getDefaultCatalogName() {
+        return primary.getDefaultCatalogName();
+    }
+
+    @Override
+    public TransactionIsolation getDefaultTransactionIsolation() {
+        return primary.getDefaultTransactionIsolation();
+    }
+
+    @Override
+    public List<Catalog> getCatalogs() throws SQLException {
+        return primary.getCatalogs();
+    }
+
+    @Override
+    public Catalog getCatalog(String catalogName) throws SQLException {
+        return primary.getCatalog(catalogName);
+    }
+
+    @Override
+    public Catalog getCurrentCatalog() throws SQLException {
+        return primary.getCurrentCatalog();
+    }
+
+    @Override
+    public void close() {
+        primary.close();
+        if(dataSourceCloser != null) {
+            for(DataSource replica: replicas) {
+                dataSourceCloser.closeDataSource(replica);
+            }
+        }
+    }
+
+    /**
+     * Picks the data source for a statement run through one of our {@code AutoExecutor}s
+     */
+    DataSource selectDataSource(String SQL) {
+        boolean readOnly = SQL != null && StatementInfo.forSQL(SQL).isReadOnly();
+        if(!readOnly) {
+            onWrite();
+            return primaryDataSource;
+        }
+        if(replicas.isEmpty() || isReadingOwnWrites()) {
+            return primaryDataSource;
+        }
+        return loadBalancer.select(replicas);
+    }
+
+    private void onWrite() {
+        if(readYourWritesWindowMillis > 0) {
+            lastWriteTime.set(System.currentTimeMillis());
+        }
+    }
+
+    private boolean isReadingOwnWrites() {
+        if(readYourWritesWindowMillis <= 0) {
+            return false;
+        }
+        Long lastWrite = lastWriteTime.get();
+        if(lastWrite == null) {
+            return false;
+        }
+        if(System.currentTimeMillis() - lastWrite < readYourWritesWindowMillis) {
+            return true;
+        }
+        lastWriteTime.remove();
+        return false;
+    }
+
+    private class RoutingAutoExecutor extends AutoExecutor {
+        RoutingAutoExecutor(TransactionIsolation transactionIsolation) {
+            super(primaryDataSource, primary.getServerType(), transactionIsolation, primary.getRetryPolicy(),
+                    primary.getCircuitBreaker());
+        }
+
+        @Override
+        protected DataSource selectDataSource(String SQL) {
+            return RoutingDatabaseConnection.this.selectDataSource(SQL);
+        }
+
+        @Override
+        protected CircuitBreaker getCircuitBreaker(DataSource dataSource) {
+            //The breaker only knows about the primary; a read failing on a replica is retried on the next replica
+            return dataSource == primaryDataSource ? super.getCircuitBreaker(dataSource) : null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Binds rows of parameters to a prepared statement, used when the same
+ * statement is executed for many rows such as in a batch. The binders for
+ * each column are picked from the classes of the values in the first row and
+ * reused for the rows after it; a column only gets a new binder when the class
+ * of its value changes, for example from {@code null} to a string.
+ *
+ * @author Martin Berglund
+ */
+class RowBinder {
+
+    private Class<?>[] classes;
+    private ParameterBinder[] binders;
+
+    RowBinder() {
+        this.classes = new Class<?>[0];
+        this.binders = new ParameterBinder[0];
+    }
+
+    /**
+     * Sets the values of a row as parameters of the statement
+     * @param statement Statement to set the parameters on
+     * @param row Values to set
+     * @param firstParameterIndex 1-based index of the parameter to set the first value of the row to
+     */
+    void bind(PreparedStatement statement, Object[] row, int firstParameterIndex) throws SQLException {
+        if(row.length > binders.length) {
+            classes = Arrays.copyOf(classes, row.length);
+            binders = Arrays.copyOf(binders, row.length);
+        }
+        for(int i = 0; i < row.length; i++) {
+            Object value = row[i];
+            Class<?> type = value == null ? null : value.getClass();
+            if(binders[i] == null || classes[i] != type) {
+                classes[i] = type;
+                binders[i] = ParameterBinder.forValue(value);
+            }
+            binders[i].bind(statement, firstParameterIndex + i, value);
+        }
+    }
+}
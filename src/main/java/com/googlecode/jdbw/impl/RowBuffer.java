@@ -0,0 +1,190 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.RowCursor;
+
+/**
+ * {@code RowCursor} implementation that the {@code RowDecoder} reads each row
+ * into. Integer and floating point values are kept in primitive arrays, so
+ * reading a row of numbers into the buffer doesn't allocate anything.
+ *
+ * @author Martin Berglund
+ */
+class RowBuffer implements RowCursor {
+
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte OBJECT = 4;
+
+    private final byte[] kinds;
+    private final long[] longs;
+    private final double[] doubles;
+    private final Object[] objects;
+
+    RowBuffer(int numberOfColumns) {
+        this.kinds = new byte[numberOfColumns];
+        this.longs = new long[numberOfColumns];
+        this.doubles = new double[numberOfColumns];
+        this.objects = new Object[numberOfColumns];
+    }
+
+    void setNull(int columnIndex) {
+        kinds[columnIndex] = NULL;
+        objects[columnIndex] = null;
+    }
+
+    void setInt(int columnIndex, int value) {
+        kinds[columnIndex] = INT;
+        longs[columnIndex] = value;
+    }
+
+    void setLong(int columnIndex, long value) {
+        kinds[columnIndex] = LONG;
+        longs[columnIndex] = value;
+    }
+
+    void setDouble(int columnIndex, double value) {
+        kinds[columnIndex] = DOUBLE;
+        doubles[columnIndex] = value;
+    }
+
+    void setObject(int columnIndex, Object value) {
+        if(value == null) {
+            setNull(columnIndex);
+        }
+        else {
+            kinds[columnIndex] = OBJECT;
+            objects[columnIndex] = value;
+        }
+    }
+
+    @Override
+    public int getNumberOfColumns() {
+        return kinds.length;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return kinds[columnIndex] == NULL;
+    }
+
+    @Override
+    public Object getObject(int columnIndex) {
+        switch(kinds[columnIndex]) {
+            case INT:
+                return Integer.valueOf((int)longs[columnIndex]);
+            case LONG:
+                return Long.valueOf(longs[columnIndex]);
+            case DOUBLE:
+                return Double.valueOf(doubles[columnIndex]);
+            case OBJECT:
+                return objects[columnIndex];
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        switch(kinds[columnIndex]) {
+            case INT:
+            case LONG:
+                return Long.toString(longs[columnIndex]);
+            case DOUBLE:
+                return Double.toString(doubles[columnIndex]);
+            case OBJECT:
+                return objects[columnIndex].toString();
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        switch(kinds[columnIndex]) {
+            case INT:
+            case LONG:
+                return (int)longs[columnIndex];
+            case DOUBLE:
+                return (int)doubles[columnIndex];
+            case OBJECT:
+                return toNumber(columnIndex).intValue();
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        switch(kinds[columnIndex]) {
+            case INT:
+            case LONG:
+                return longs[columnIndex];
+            case DOUBLE:
+                return (long)doubles[columnIndex];
+            case OBJECT:
+                return toNumber(columnIndex).longValue();
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        switch(kinds[columnIndex]) {
+            case INT:
+            case LONG:
+                return longs[columnIndex];
+            case DOUBLE:
+                return doubles[columnIndex];
+            case OBJECT:
+                return toNumber(columnIndex).doubleValue();
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] row = new Object[kinds.length];
+        for(int i = 0; i < row.length; i++) {
+            row[i] = getObject(i);
+        }
+        return row;
+    }
+
+    private Number toNumber(int columnIndex) {
+        Object value = objects[columnIndex];
+        if(value instanceof Number) {
+            return (Number)value;
+        }
+        if(value instanceof String) {
+            try {
+                return new java.math.BigDecimal(((String)value).trim());
+            }
+            catch(NumberFormatException e) {
+            }
+        }
+        throw new ClassCastException("Column " + columnIndex + " has value " + value + " of type " +
+                value.getClass().getName() + " which is not a number");
+    }
+}
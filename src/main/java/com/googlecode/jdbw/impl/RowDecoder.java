@@ -0,0 +1,304 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.PrimitiveResultHandler;
+import com.googlecode.jdbw.ResultSetInformation;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Decoding plan for the rows of one result set. When the result set is
+ * opened, a {@code ColumnReader} is picked for every column based on the SQL
+ * type and the Java class the driver reports for it; every row after that is
+ * read using the typed {@code ResultSet} getters of these readers instead of
+ * going through {@code getObject(..)} for each cell.
+ * <p>
+ * The class name reported by the driver is what {@code getObject(..)} would
+ * have returned, so the specialized readers are only picked when they produce
+ * exactly the same objects; {@code decodeRow(..)} returns the same values as
+ * the generic path would.
+ *
+ * @author Martin Berglund
+ */
+class RowDecoder {
+
+    private final ColumnReader[] readers;
+
+    RowDecoder(ResultSetInformation information) {
+        ResultSetMetaData metaData = information.getResultSetMetaData();
+        readers = new ColumnReader[information.getNumberOfColumns()];
+        for(int i = 0; i < readers.length; i++) {
+            readers[i] = ColumnReader.forColumn(information.getColumnSQLType(i), getColumnClassName(metaData, i + 1));
+        }
+    }
+
+    int getNumberOfColumns() {
+        return readers.length;
+    }
+
+    /**
+     * Reads the current row of the result set into a new array
+     */
+    Object[] decodeRow(ResultSet resultSet) throws SQLException {
+        Object[] row = new Object[readers.length];
+        for(int i = 0; i < readers.length; i++) {
+            row[i] = readers[i].readObject(resultSet, i + 1);
+        }
+        return row;
+    }
+
+    /**
+     * Sends all values of the current row of the result set to a handler, ending with {@code onEndOfRow()}
+     * @return Value returned by {@code onEndOfRow()}
+     */
+    boolean decodeRow(ResultSet resultSet, PrimitiveResultHandler handler) throws SQLException {
+        for(int i = 0; i < readers.length; i++) {
+            readers[i].read(resultSet, i + 1, i, handler);
+        }
+        return handler.onEndOfRow();
+    }
+
+    /**
+     * Reads the current row of the result set into a reusable buffer
+     */
+    void decodeRow(ResultSet resultSet, RowBuffer buffer) throws SQLException {
+        for(int i = 0; i < readers.length; i++) {
+            readers[i].read(resultSet, i + 1, i, buffer);
+        }
+    }
+
+    private static String getColumnClassName(ResultSetMetaData metaData, int column) {
+        if(metaData == null) {
+            return null;
+        }
+        try {
+            return metaData.getColumnClassName(column);
+        }
+        catch(SQLException e) {
+            //Not all drivers supports this, we'll fall back to getObject(..)
+            return null;
+        }
+    }
+
+    /**
+     * Reads one column of the current row of a result set, {@code column} is
+     * the 1-based JDBC column index and {@code columnIndex} the 0-based index
+     * passed on to handlers
+     */
+    static abstract class ColumnReader {
+
+        static final ColumnReader INT = new ColumnReader() {
+            @Override
+            Object readObject(ResultSet resultSet, int column) throws SQLException {
+                int value = resultSet.getInt(column);
+                return resultSet.wasNull() ? null : Integer.valueOf(value);
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException {
+                int value = resultSet.getInt(column);
+                if(resultSet.wasNull()) {
+                    handler.onNull(columnIndex);
+                }
+                else {
+                    handler.onInt(columnIndex, value);
+                }
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException {
+                int value = resultSet.getInt(column);
+                if(resultSet.wasNull()) {
+                    buffer.setNull(columnIndex);
+                }
+                else {
+                    buffer.setInt(columnIndex, value);
+                }
+            }
+        };
+
+        static final ColumnReader LONG = new ColumnReader() {
+            @Override
+            Object readObject(ResultSet resultSet, int column) throws SQLException {
+                long value = resultSet.getLong(column);
+                return resultSet.wasNull() ? null : Long.valueOf(value);
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException {
+                long value = resultSet.getLong(column);
+                if(resultSet.wasNull()) {
+                    handler.onNull(columnIndex);
+                }
+                else {
+                    handler.onLong(columnIndex, value);
+                }
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException {
+                long value = resultSet.getLong(column);
+                if(resultSet.wasNull()) {
+                    buffer.setNull(columnIndex);
+                }
+                else {
+                    buffer.setLong(columnIndex, value);
+                }
+            }
+        };
+
+        static final ColumnReader DOUBLE = new ColumnReader() {
+            @Override
+            Object readObject(ResultSet resultSet, int column) throws SQLException {
+                double value = resultSet.getDouble(column);
+                return resultSet.wasNull() ? null : Double.valueOf(value);
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException {
+                double value = resultSet.getDouble(column);
+                if(resultSet.wasNull()) {
+                    handler.onNull(columnIndex);
+                }
+                else {
+                    handler.onDouble(columnIndex, value);
+                }
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException {
+                double value = resultSet.getDouble(column);
+                if(resultSet.wasNull()) {
+                    buffer.setNull(columnIndex);
+                }
+                else {
+                    buffer.setDouble(columnIndex, value);
+                }
+            }
+        };
+
+        static final ColumnReader STRING = new ColumnReader() {
+            @Override
+            Object readObject(ResultSet resultSet, int column) throws SQLException {
+                return resultSet.getString(column);
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException {
+                String value = resultSet.getString(column);
+                if(value == null) {
+                    handler.onNull(columnIndex);
+                }
+                else {
+                    handler.onString(columnIndex, value);
+                }
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException {
+                buffer.setObject(columnIndex, resultSet.getString(column));
+            }
+        };
+
+        static final ColumnReader BYTES = new ColumnReader() {
+            @Override
+            Object readObject(ResultSet resultSet, int column) throws SQLException {
+                return resultSet.getBytes(column);
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException {
+                byte[] value = resultSet.getBytes(column);
+                if(value == null) {
+                    handler.onNull(columnIndex);
+                }
+                else {
+                    handler.onBytes(columnIndex, value);
+                }
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException {
+                buffer.setObject(columnIndex, resultSet.getBytes(column));
+            }
+        };
+
+        static final ColumnReader OBJECT = new ColumnReader() {
+            @Override
+            Object readObject(ResultSet resultSet, int column) throws SQLException {
+                return resultSet.getObject(column);
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException {
+                Object value = resultSet.getObject(column);
+                if(value == null) {
+                    handler.onNull(columnIndex);
+                }
+                else {
+                    handler.onObject(columnIndex, value);
+                }
+            }
+
+            @Override
+            void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException {
+                buffer.setObject(columnIndex, resultSet.getObject(column));
+            }
+        };
+
+        static ColumnReader forColumn(int sqlType, String className) {
+            if(className == null) {
+                return OBJECT;
+            }
+            switch(sqlType) {
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                    return "java.lang.Integer".equals(className) ? INT : OBJECT;
+                case Types.BIGINT:
+                    return "java.lang.Long".equals(className) ? LONG : OBJECT;
+                case Types.DOUBLE:
+                case Types.FLOAT:
+                    return "java.lang.Double".equals(className) ? DOUBLE : OBJECT;
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.LONGNVARCHAR:
+                    return "java.lang.String".equals(className) ? STRING : OBJECT;
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                    return "[B".equals(className) ? BYTES : OBJECT;
+                default:
+                    return OBJECT;
+            }
+        }
+
+        abstract Object readObject(ResultSet resultSet, int column) throws SQLException;
+
+        abstract void read(ResultSet resultSet, int column, int columnIndex, PrimitiveResultHandler handler) throws SQLException;
+
+        abstract void read(ResultSet resultSet, int column, int columnIndex, RowBuffer buffer) throws SQLException;
+    }
+}
@@ -22,15 +22,22 @@ package com.googlecode.jdbw.impl;
 import com.googlecode.jdbw.*;
 import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
 import com.googlecode.jdbw.util.Cancellable;
+import com.googlecode.jdbw.util.CloseableIterator;
 import com.googlecode.jdbw.util.ExecuteResultHandlerAdapter;
-import com.googlecode.jdbw.util.NullValue;
+import com.googlecode.jdbw.util.PreparedStatementCache;
+import com.googlecode.jdbw.util.StatementInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class is an implementation of the {@code SQLExecutor} that provides most of the functionality required for
@@ -49,10 +56,55 @@ import java.util.List;
 public abstract class SQLExecutorImpl implements SQLExecutor {
     private static final Logger LOGGER = LoggerFactory.getLogger(SQLExecutorImpl.class);
 
+    //Modes used for looking up statements in the statement cache
+    private static final int GENERAL_STATEMENT = 0;
+    private static final int INSERT_STATEMENT = 1;
+    private static final int BATCH_UPDATE_STATEMENT = 2;
+
+    //Whether each executor class overrides setParameter(..), looked up once per class
+    private static final ConcurrentMap<Class<?>, Boolean> SET_PARAMETER_OVERRIDDEN = new ConcurrentHashMap<Class<?>, Boolean>();
+
     protected final Connection connection;
+    private final SQLDialect sqlDialect;
+    private final PreparedStatementCache statementCache;
+    private boolean multiRowInsertEnabled;
 
     protected SQLExecutorImpl(Connection connection) {
+        this(connection, null);
+    }
+
+    /**
+     * Creates an executor that knows which SQL dialect the server speaks. If the dialect supports multi-row inserts,
+     * batches of single-row inserts will be rewritten to insert many rows with each statement, see
+     * {@code setMultiRowInsertEnabled(..)}.
+     * @param connection Connection to send the queries over
+     * @param sqlDialect Dialect of the server, or {@code null} if not known
+     */
+    protected SQLExecutorImpl(Connection connection, SQLDialect sqlDialect) {
         this.connection = connection;
+        this.sqlDialect = sqlDialect;
+        this.statementCache = PreparedStatementCache.forConnection(connection);
+        this.multiRowInsertEnabled = true;
+    }
+
+    /**
+     * Turns the rewriting of batched single-row inserts into multi-row inserts on or off; it's on by default for
+     * dialects that support it. Note that the rewrite changes what happens when a row fails: since up to several
+     * hundred rows are sent in the same statement, one bad row (a duplicate key, a value that doesn't fit the column)
+     * fails all the other rows of its statement as well, and the batch stops there. Without the rewrite, how far the
+     * batch gets is up to the JDBC driver, which may go on with the rows after the failed one. Turn it off if you
+     * rely on the driver's per-row behaviour.
+     * @param multiRowInsertEnabled {@code false} to always send batched inserts one row per statement
+     */
+    public void setMultiRowInsertEnabled(boolean multiRowInsertEnabled) {
+        this.multiRowInsertEnabled = multiRowInsertEnabled;
+    }
+
+    /**
+     * @return {@code true} if batched single-row inserts may be rewritten into multi-row inserts
+     */
+    public boolean isMultiRowInsertEnabled() {
+        return multiRowInsertEnabled;
     }
 
     @Override
@@ -67,8 +119,30 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
 
     @Override
     public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, String SQL, Object... parameters) throws SQLException {
+        execute(handler, maxRowsToFetch, queryTimeoutInSeconds, 0, SQL, parameters);
+    }
+
+    @Override
+    public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object... parameters) throws SQLException {
+        boolean streaming = fetchSize > 0 && beginStreaming();
+        boolean successful = false;
+        try {
+            executeQuery(handler, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+            successful = true;
+        }
+        finally {
+            if (streaming) {
+                endStreaming(successful);
+            }
+        }
+    }
+
+    private void executeQuery(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object... parameters) throws SQLException {
         ResultSet resultSet = null;
-        final PreparedStatement statement = prepareExecuteStatement(SQL);
+        final int mode = canGetGeneratedKeys(SQL) ? INSERT_STATEMENT : GENERAL_STATEMENT;
+        final PreparedStatement statement = acquireStatement(SQL, mode);
+        final AtomicBoolean statementInUse = new AtomicBoolean(true);
+        boolean reusable = false;
         try {
             for (int i = 0; i < parameters.length; i++) {
                 setParameter(statement, parameters[i], i + 1);
@@ -78,16 +152,20 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
                 handler.onCancellableCallback(new Cancellable() {
                     @Override
                     public void cancel() throws Exception {
-                        statement.cancel();
+                        //The statement may have been handed to someone else through the statement cache
+                        if(statementInUse.get()) {
+                            statement.cancel();
+                        }
                     }
                 });
             }
             
             setQueryTimeout(statement, queryTimeoutInSeconds);
             setMaxRowsToFetch(statement, maxRowsToFetch);
+            setFetchSize(statement, maxRowsToFetch > 0 ? Math.min(fetchSize, maxRowsToFetch) : fetchSize);
             execute(statement);
 
-            if (canGetGeneratedKeys(SQL)) {
+            if (mode == INSERT_STATEMENT) {
                 ResultSet generatedKeys = getGeneratedKeys(statement);
                 if (generatedKeys != null) {
                     while (generatedKeys.next()) {
@@ -117,7 +195,8 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
 
                 boolean gotCancel = false;
                 ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-                if (!handler.onResultSet(newResultSetInformation(resultSetMetaData, resultSetCounter))) {
+                ResultSetInformation resultSetInformation = newResultSetInformation(resultSetMetaData, resultSetCounter);
+                if (!handler.onResultSet(resultSetInformation)) {
                     gotCancel = true;
                 }
 
@@ -126,20 +205,39 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
                     handler.onWarning(warning);
                 }
 
-                while (resultSet.next() && !gotCancel) {
-                    Object[] row = new Object[resultSetMetaData.getColumnCount()];
-                    for (int i = 0; i < row.length; i++) {
-                        row[i] = resultSet.getObject(i + 1);
+                RowDecoder rowDecoder = new RowDecoder(resultSetInformation);
+                if (handler instanceof RowCursorHandler) {
+                    RowCursorHandler cursorHandler = (RowCursorHandler) handler;
+                    RowBuffer rowBuffer = new RowBuffer(rowDecoder.getNumberOfColumns());
+                    while (!gotCancel && resultSet.next()) {
+                        rowDecoder.decodeRow(resultSet, rowBuffer);
+                        if (!cursorHandler.nextRow(rowBuffer)) {
+                            gotCancel = true;
+                        }
                     }
-                    if (!handler.nextRow(row)) {
-                        gotCancel = true;
+                }
+                else if (handler instanceof PrimitiveResultHandler) {
+                    PrimitiveResultHandler primitiveHandler = (PrimitiveResultHandler) handler;
+                    while (!gotCancel && resultSet.next()) {
+                        if (!rowDecoder.decodeRow(resultSet, primitiveHandler)) {
+                            gotCancel = true;
+                        }
+                    }
+                }
+                else {
+                    while (!gotCancel && resultSet.next()) {
+                        if (!handler.nextRow(rowDecoder.decodeRow(resultSet))) {
+                            gotCancel = true;
+                        }
                     }
                 }
                 statement.getMoreResults();
             }
             handler.onDone();
+            reusable = true;
         }
         finally {
+            statementInUse.set(false);
             if (resultSet != null) {
                 try {
                     close(resultSet);
@@ -148,12 +246,39 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
                     LOGGER.error("Unable to close result set after query", e);
                 }
             }
-            if (statement != null) {
-                try {
-                    close(statement);
+            releaseStatement(SQL, mode, statement, reusable);
+        }
+    }
+
+    @Override
+    public CloseableIterator<Object[]> iterate(int fetchSize, String SQL, Object... parameters) throws SQLException {
+        boolean streaming = fetchSize > 0 && beginStreaming();
+        PreparedStatement statement = null;
+        ResultSetIterator iterator = null;
+        try {
+            statement = acquireStatement(SQL, GENERAL_STATEMENT);
+            for (int i = 0; i < parameters.length; i++) {
+                setParameter(statement, parameters[i], i + 1);
+            }
+            setQueryTimeout(statement, 0);
+            setMaxRowsToFetch(statement, 0);
+            setFetchSize(statement, fetchSize);
+            execute(statement);
+
+            ResultSet resultSet = getResultSet(statement);
+            while (resultSet == null && (statement.getMoreResults() || getUpdateCount(statement) != -1)) {
+                resultSet = getResultSet(statement);
+            }
+            iterator = new ResultSetIterator(SQL, statement, resultSet, streaming);
+            return iterator;
+        }
+        finally {
+            if (iterator == null) {
+                if (statement != null) {
+                    releaseStatement(SQL, GENERAL_STATEMENT, statement, false);
                 }
-                catch (SQLException e) {
-                    LOGGER.error("Unable to close statement after query", e);
+                if (streaming) {
+                    endStreaming(false);
                 }
             }
         }
@@ -166,43 +291,248 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
 
     @Override
     public void batchWrite(BatchUpdateHandler handler, String SQL, List<Object[]> parameters) throws SQLException {
+        MultiRowInsert multiRowInsert = getMultiRowInsert(SQL, parameters);
+        if (multiRowInsert != null) {
+            batchWriteMultiRowInsert(handler, multiRowInsert, parameters);
+            return;
+        }
+
         PreparedStatement statement = null;
+        boolean reusable = false;
         try {
-            statement = prepareBatchUpdateStatement(SQL);
+            statement = acquireStatement(SQL, BATCH_UPDATE_STATEMENT);
 
+            RowBinder rowBinder = createRowBinder();
             for (Object[] row : parameters) {
-                for (int i = 0; i < row.length; i++) {
-                    setParameter(statement, row[i], i + 1);
-                }
+                rowBinder.bind(statement, row, 1);
                 addBatch(statement);
             }
 
-            int[] batchResult = executeBatch(statement);
-            handler.onBatchResult(batchResult);
-
-            ResultSet generatedKeys = getGeneratedKeys(statement);
-            if (generatedKeys != null) {
-                while (generatedKeys.next()) {
-                    handler.onGeneratedKey(generatedKeys.getObject(1));
-                }
-                generatedKeys.close();
+            flushBatch(handler, statement);
+            reusable = true;
+        }
+        finally {
+            if (statement != null) {
+                releaseStatement(SQL, BATCH_UPDATE_STATEMENT, statement, reusable);
             }
+        }
+    }
 
-            SQLWarning warning = getWarnings(statement);
-            if (warning != null) {
-                handler.onWarning(warning);
+    @Override
+    public void batchWrite(String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        batchWrite(new BatchUpdateHandlerAdapter(), SQL, parameters, chunkSize);
+    }
+
+    @Override
+    public void batchWrite(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Illegal batch chunk size " + chunkSize);
+        }
+        if (isMultiRowInsertCandidate(SQL)) {
+            batchWriteBufferedChunks(handler, SQL, parameters, chunkSize);
+            return;
+        }
+
+        PreparedStatement statement = null;
+        boolean reusable = false;
+        try {
+            statement = acquireStatement(SQL, BATCH_UPDATE_STATEMENT);
+
+            RowBinder rowBinder = createRowBinder();
+            int chunkNumber = 0;
+            int rowsInChunk = 0;
+            long totalRowsWritten = 0;
+            while (parameters.hasNext()) {
+                rowBinder.bind(statement, parameters.next(), 1);
+                addBatch(statement);
+                rowsInChunk++;
+
+                if (rowsInChunk == chunkSize || !parameters.hasNext()) {
+                    flushBatch(handler, statement);
+                    statement.clearWarnings();
+                    totalRowsWritten += rowsInChunk;
+                    rowsInChunk = 0;
+                    if (handler instanceof ChunkedBatchUpdateHandler) {
+                        ((ChunkedBatchUpdateHandler) handler).onChunkCompleted(++chunkNumber, totalRowsWritten);
+                    }
+                }
             }
+            reusable = true;
         }
         finally {
             if (statement != null) {
+                releaseStatement(SQL, BATCH_UPDATE_STATEMENT, statement, reusable);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows into a list one chunk at a time and writes every chunk through {@code batchWrite(..)}, so that
+     * each chunk can be sent as multi-row inserts
+     */
+    private void batchWriteBufferedChunks(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        List<Object[]> chunk = new ArrayList<Object[]>(chunkSize);
+        int chunkNumber = 0;
+        long totalRowsWritten = 0;
+        while (parameters.hasNext()) {
+            chunk.add(parameters.next());
+            if (chunk.size() == chunkSize || !parameters.hasNext()) {
+                batchWrite(handler, SQL, chunk);
+                totalRowsWritten += chunk.size();
+                chunk.clear();
+                if (handler instanceof ChunkedBatchUpdateHandler) {
+                    ((ChunkedBatchUpdateHandler) handler).onChunkCompleted(++chunkNumber, totalRowsWritten);
+                }
+            }
+        }
+    }
+
+    private boolean isMultiRowInsertCandidate(String SQL) {
+        return multiRowInsertEnabled &&
+                sqlDialect != null &&
+                sqlDialect.isMultiRowInsertSupported() &&
+                StatementInfo.forSQL(SQL).getKind() == StatementInfo.Kind.INSERT &&
+                MultiRowInsert.parse(SQL) != null;
+    }
+
+    /**
+     * @return The insert to rewrite the batch into, or {@code null} if the batch has to be sent as it is
+     */
+    private MultiRowInsert getMultiRowInsert(String SQL, List<Object[]> parameters) {
+        if (!multiRowInsertEnabled ||
+                parameters.size() < 2 ||
+                sqlDialect == null ||
+                !sqlDialect.isMultiRowInsertSupported() ||
+                StatementInfo.forSQL(SQL).getKind() != StatementInfo.Kind.INSERT) {
+            return null;
+        }
+        MultiRowInsert multiRowInsert = MultiRowInsert.parse(SQL);
+        if (multiRowInsert == null || multiRowInsert.getMaxRowsPerStatement(sqlDialect.getMaxParametersPerStatement()) < 2) {
+            return null;
+        }
+        for (Object[] row : parameters) {
+            if (row.length != multiRowInsert.getParametersPerRow()) {
+                return null;
+            }
+        }
+        return multiRowInsert;
+    }
+
+    /**
+     * Writes a batch of single-row inserts as multi-row inserts. The rows are sent as a JDBC batch of statements with
+     * as many rows each as the dialect allows, and then the rows that are left with a few smaller statements. The
+     * handler gets one result per row, as if the batch had been sent without rewriting.
+     */
+    private void batchWriteMultiRowInsert(BatchUpdateHandler handler, MultiRowInsert multiRowInsert, List<Object[]> parameters) throws SQLException {
+        int[] batchResult = new int[parameters.size()];
+        List<Object> generatedKeys = new ArrayList<Object>();
+        List<SQLWarning> warnings = new ArrayList<SQLWarning>();
+        Iterator<Object[]> rows = parameters.iterator();
+        RowBinder rowBinder = createRowBinder();
+        int rowsPerStatement = multiRowInsert.getMaxRowsPerStatement(sqlDialect.getMaxParametersPerStatement());
+        int offset = 0;
+        while (offset < batchResult.length) {
+            int remaining = batchResult.length - offset;
+            if (remaining < rowsPerStatement) {
+                rowsPerStatement = Integer.highestOneBit(remaining);
+            }
+            int numberOfStatements = remaining / rowsPerStatement;
+            String SQL = multiRowInsert.getSQL(rowsPerStatement);
+            PreparedStatement statement = acquireStatement(SQL, BATCH_UPDATE_STATEMENT);
+            boolean reusable = false;
+            try {
+                for (int i = 0; i < numberOfStatements; i++) {
+                    int parameterIndex = 1;
+                    for (int j = 0; j < rowsPerStatement; j++) {
+                        Object[] row = rows.next();
+                        rowBinder.bind(statement, row, parameterIndex);
+                        parameterIndex += row.length;
+                    }
+                    addBatch(statement);
+                }
+
+                int[] updateCounts;
                 try {
-                    close(statement);
+                    updateCounts = executeBatch(statement);
                 }
-                catch (SQLException e) {
-                    LOGGER.error("Unable to close statement after batch write", e);
+                catch (BatchUpdateException e) {
+                    throw toRowBatchUpdateException(e, batchResult, offset, rowsPerStatement);
+                }
+                for (int i = 0; i < numberOfStatements; i++) {
+                    int rowResult = i < updateCounts.length && updateCounts[i] == rowsPerStatement ? 1 : Statement.SUCCESS_NO_INFO;
+                    Arrays.fill(batchResult, offset, offset + rowsPerStatement, rowResult);
+                    offset += rowsPerStatement;
+                }
+
+                ResultSet keys = getGeneratedKeys(statement);
+                if (keys != null) {
+                    while (keys.next()) {
+                        generatedKeys.add(keys.getObject(1));
+                    }
+                    keys.close();
+                }
+                SQLWarning warning = getWarnings(statement);
+                if (warning != null) {
+                    warnings.add(warning);
                 }
+                reusable = true;
+            }
+            finally {
+                releaseStatement(SQL, BATCH_UPDATE_STATEMENT, statement, reusable);
             }
         }
+
+        handler.onBatchResult(batchResult);
+        for (Object generatedKey : generatedKeys) {
+            handler.onGeneratedKey(generatedKey);
+        }
+        for (SQLWarning warning : warnings) {
+            handler.onWarning(warning);
+        }
+    }
+
+    /**
+     * Translates the per-statement update counts of a failed multi-row insert into per-row update counts, so that the
+     * caller can tell which of its rows were written. All rows of the statement that failed are marked as failed.
+     */
+    private BatchUpdateException toRowBatchUpdateException(BatchUpdateException e, int[] batchResult, int offset, int rowsPerStatement) {
+        int[] statementCounts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+        int failedStatement = statementCounts.length;
+        for (int i = 0; i < statementCounts.length; i++) {
+            if (statementCounts[i] == Statement.EXECUTE_FAILED) {
+                failedStatement = i;
+                break;
+            }
+        }
+        int failedRow = offset + failedStatement * rowsPerStatement;
+        int[] rowCounts = Arrays.copyOf(batchResult, Math.min(batchResult.length, failedRow + rowsPerStatement));
+        for (int i = offset; i < rowCounts.length; i++) {
+            rowCounts[i] = i < failedRow ? Statement.SUCCESS_NO_INFO : Statement.EXECUTE_FAILED;
+        }
+        BatchUpdateException rowException = new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), rowCounts);
+        rowException.initCause(e);
+        return rowException;
+    }
+
+    /**
+     * Executes the rows added to a batch statement and reports the results to the handler
+     */
+    private void flushBatch(BatchUpdateHandler handler, PreparedStatement statement) throws SQLException {
+        int[] batchResult = executeBatch(statement);
+        handler.onBatchResult(batchResult);
+
+        ResultSet generatedKeys = getGeneratedKeys(statement);
+        if (generatedKeys != null) {
+            while (generatedKeys.next()) {
+                handler.onGeneratedKey(generatedKeys.getObject(1));
+            }
+            generatedKeys.close();
+        }
+
+        SQLWarning warning = getWarnings(statement);
+        if (warning != null) {
+            handler.onWarning(warning);
+        }
     }
 
     @Override
@@ -252,8 +582,7 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
     // servers which may or may not support all of JDBC. Please see 
     // MySQLExecutor for an example.
     protected boolean canGetGeneratedKeys(String SQL) {
-        return SQL.trim().length() >= "insert".length() &&
-                SQL.trim().substring(0, "insert".length()).toLowerCase().equals("insert");
+        return StatementInfo.forSQL(SQL).isGeneratedKeysApplicable();
     }
 
     protected boolean canCancelQueries() {
@@ -324,6 +653,37 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
         statement.setMaxRows(maxRowsToFetch);
     }
 
+    /**
+     * Sets the number of rows to fetch at a time from the server. This is called before every query, also when the
+     * fetch size is 0, since statements may be reused through the statement cache. Executors for servers that can't
+     * stream results through a plain fetch size should override this.
+     * @param statement Statement about to be executed
+     * @param fetchSize Fetch size requested by the caller, 0 means the driver default
+     * @throws SQLException If the driver failed to set the fetch size
+     */
+    protected void setFetchSize(PreparedStatement statement, int fetchSize) throws SQLException {
+        statement.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Called before executing a query with a fetch size, to let executors for servers that can only stream results
+     * under certain conditions prepare the connection. If this method returns {@code true}, {@code endStreaming(..)}
+     * will be called when the query is done.
+     * @return {@code true} if the connection was changed and needs to be restored through {@code endStreaming(..)}
+     * @throws SQLException If the connection couldn't be prepared for streaming
+     */
+    protected boolean beginStreaming() throws SQLException {
+        return false;
+    }
+
+    /**
+     * Restores the connection after a streaming query, if {@code beginStreaming()} returned {@code true}
+     * @param successful {@code true} if the query completed without errors
+     * @throws SQLException If the connection couldn't be restored
+     */
+    protected void endStreaming(boolean successful) throws SQLException {
+    }
+
     protected void execute(PreparedStatement statement) throws SQLException {
         statement.execute();
     }
@@ -340,12 +700,37 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
         return connection.prepareStatement(SQL, Statement.NO_GENERATED_KEYS);
     }
 
-    private PreparedStatement prepareExecuteStatement(String SQL) throws SQLException {
-        if (canGetGeneratedKeys(SQL)) {
-            return prepareInsertStatement(SQL);
+    private PreparedStatement acquireStatement(String SQL, int mode) throws SQLException {
+        if (statementCache != null) {
+            PreparedStatement statement = statementCache.take(SQL, mode);
+            if (statement != null) {
+                return statement;
+            }
         }
-        else {
-            return prepareGeneralStatement(SQL);
+        switch (mode) {
+            case INSERT_STATEMENT:
+                return prepareInsertStatement(SQL);
+            case BATCH_UPDATE_STATEMENT:
+                return prepareBatchUpdateStatement(SQL);
+            default:
+                return prepareGeneralStatement(SQL);
+        }
+    }
+
+    /**
+     * Gives a statement back to the connection's statement cache, or closes it if there is no cache or if the
+     * statement is in an unknown state after a failed call
+     */
+    private void releaseStatement(String SQL, int mode, PreparedStatement statement, boolean reusable) {
+        if (statementCache != null && reusable) {
+            statementCache.release(SQL, mode, statement);
+            return;
+        }
+        try {
+            close(statement);
+        }
+        catch (SQLException e) {
+            LOGGER.error("Unable to close statement", e);
         }
     }
 
@@ -357,66 +742,148 @@ public abstract class SQLExecutorImpl implements SQLExecutor {
         return statement.getGeneratedKeys();
     }
 
+    /**
+     * Sets a parameter of a statement, picking the setter from the class of the value. Batches normally don't go
+     * through this method for every value, they bind the rows through a {@code RowBinder} which picks the setters
+     * once for the first row and reuses them for the rows after it; if a subclass overrides this method, batches call
+     * it for every value instead.
+     * @param statement Statement to set the parameter on
+     * @param object Value of the parameter, this can be {@code null} or a {@code NullValue}
+     * @param i 1-based index of the parameter
+     * @throws SQLException If the driver failed to set the parameter
+     */
     protected void setParameter(PreparedStatement statement, Object object, int i) throws SQLException {
-        if (object == null) {
-            statement.setNull(i, java.sql.Types.VARCHAR);
-        }
-        else if (object instanceof NullValue.Binary) {
-            statement.setNull(i, java.sql.Types.BINARY);
-        }
-        else if (object instanceof NullValue.Decimal) {
-            statement.setNull(i, java.sql.Types.DECIMAL);
-        }
-        else if (object instanceof NullValue.Double) {
-            statement.setNull(i, java.sql.Types.DOUBLE);
-        }
-        else if (object instanceof NullValue.Integer) {
-            statement.setNull(i, java.sql.Types.INTEGER);
-        }
-        else if (object instanceof NullValue.String) {
-            statement.setNull(i, java.sql.Types.VARCHAR);
-        }
-        else if (object instanceof NullValue.Timestamp) {
-            statement.setNull(i, java.sql.Types.TIMESTAMP);
-        }
-        else if (object instanceof String) {
-            statement.setString(i, (String) object);
-        }
-        else if (object instanceof Byte) {
-            statement.setByte(i, (Byte) object);
-        }
-        else if (object instanceof Short) {
-            statement.setShort(i, (Short) object);
-        }
-        else if (object instanceof Integer) {
-            statement.setInt(i, (Integer) object);
-        }
-        else if (object instanceof Long) {
-            statement.setLong(i, (Long) object);
-        }
-        else if (object instanceof BigDecimal) {
-            statement.setBigDecimal(i, (BigDecimal) object);
+        ParameterBinder.forValue(object).bind(statement, i, object);
+    }
+
+    /**
+     * Creates the binder for the rows of a batch, which goes through {@code setParameter(..)} for every value if this
+     * class overrides it
+     */
+    private RowBinder createRowBinder() {
+        if (!isSetParameterOverridden()) {
+            return new RowBinder();
         }
-        else if (object instanceof Date) {
-            statement.setDate(i, (Date) object);
+        return new RowBinder() {
+            @Override
+            void bind(PreparedStatement statement, Object[] row, int firstParameterIndex) throws SQLException {
+                for (int i = 0; i < row.length; i++) {
+                    setParameter(statement, row[i], firstParameterIndex + i);
+                }
+            }
+        };
+    }
+
+    private boolean isSetParameterOverridden() {
+        Class<?> executorClass = getClass();
+        Boolean overridden = SET_PARAMETER_OVERRIDDEN.get(executorClass);
+        if (overridden == null) {
+            overridden = false;
+            for (Class<?> type = executorClass; type != SQLExecutorImpl.class; type = type.getSuperclass()) {
+                try {
+                    type.getDeclaredMethod("setParameter", PreparedStatement.class, Object.class, int.class);
+                    overridden = true;
+                    break;
+                }
+                catch (NoSuchMethodException e) {
+                    //Not declared on this class, look at the superclass
+                }
+            }
+            SET_PARAMETER_OVERRIDDEN.put(executorClass, overridden);
         }
-        else if (object instanceof Double) {
-            statement.setDouble(i, (Double) object);
+        return overridden;
+    }
+
+    /**
+     * Iterator returned by {@code iterate(..)}, reading one row ahead so that {@code hasNext()} can tell if there are
+     * more rows
+     */
+    private class ResultSetIterator implements CloseableIterator<Object[]> {
+        private final String SQL;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final RowDecoder rowDecoder;
+        private final boolean streaming;
+        private Object[] nextRow;
+        private boolean closed;
+
+        ResultSetIterator(String SQL, PreparedStatement statement, ResultSet resultSet, boolean streaming) throws SQLException {
+            this.SQL = SQL;
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.rowDecoder = resultSet == null ? null : new RowDecoder(newResultSetInformation(resultSet.getMetaData(), 0));
+            this.streaming = streaming;
+            this.nextRow = null;
+            this.closed = false;
         }
-        else if (object instanceof Float) {
-            statement.setFloat(i, (Float) object);
+
+        @Override
+        public boolean hasNext() {
+            if (nextRow != null) {
+                return true;
+            }
+            if (closed) {
+                return false;
+            }
+            try {
+                if (resultSet == null || !resultSet.next()) {
+                    close(true);
+                    return false;
+                }
+                nextRow = rowDecoder.decodeRow(resultSet);
+                return true;
+            }
+            catch (SQLException e) {
+                close(false);
+                throw new IllegalStateException("Error reading the next row of " + SQL, e);
+            }
         }
-        else if (object instanceof Boolean) {
-            statement.setBoolean(i, (Boolean) object);
+
+        @Override
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object[] row = nextRow;
+            nextRow = null;
+            return row;
         }
-        else if (object instanceof Timestamp) {
-            statement.setTimestamp(i, (Timestamp) object);
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove rows through the result iterator");
         }
-        else if (object instanceof java.util.Date) {
-            statement.setTimestamp(i, new Timestamp(((java.util.Date) object).getTime()));
+
+        @Override
+        public void close() {
+            nextRow = null;
+            close(true);
         }
-        else {
-            statement.setObject(i, object);
+
+        private void close(boolean successful) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean reusable = successful;
+            if (resultSet != null) {
+                try {
+                    SQLExecutorImpl.this.close(resultSet);
+                }
+                catch (SQLException e) {
+                    LOGGER.error("Unable to close result set after query", e);
+                    reusable = false;
+                }
+            }
+            releaseStatement(SQL, GENERAL_STATEMENT, statement, reusable);
+            if (streaming) {
+                try {
+                    endStreaming(successful);
+                }
+                catch (SQLException e) {
+                    LOGGER.error("Unable to restore the connection after streaming query", e);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.SQLExecutor;
+import com.googlecode.jdbw.util.StatementInfo;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write statements that a transaction has been asked to run but hasn't sent
+ * to the server yet. Consecutive statements with the same SQL are kept
+ * together so that they can be sent as one JDBC batch; statements are never
+ * reordered, since later statements may depend on earlier ones.
+ * <p>
+ * Every statement is numbered in the order it was added to the transaction,
+ * so that when a batch fails, the error can say which statement caused it.
+ *
+ * @author Martin Berglund
+ */
+class WriteBuffer {
+
+    private final List<Group> groups;
+    private int size;
+    private int nextStatementNumber;
+
+    WriteBuffer() {
+        this.groups = new ArrayList<Group>();
+        this.size = 0;
+        this.nextStatementNumber = 1;
+    }
+
+    /**
+     * Checks if a statement can be buffered, which is the case for {@code INSERT}, {@code UPDATE} and {@code DELETE}
+     */
+    static boolean isBufferable(String SQL) {
+        StatementInfo.Kind kind = StatementInfo.forSQL(SQL).getKind();
+        return kind == StatementInfo.Kind.INSERT || kind == StatementInfo.Kind.UPDATE || kind == StatementInfo.Kind.DELETE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(String SQL, Object[] parameters) {
+        getGroup(SQL).rows.add(parameters.clone());
+        size++;
+        nextStatementNumber++;
+    }
+
+    void addAll(String SQL, List<Object[]> parameters) {
+        List<Object[]> rows = getGroup(SQL).rows;
+        for(Object[] row: parameters) {
+            rows.add(row.clone());
+        }
+        size += parameters.size();
+        nextStatementNumber += parameters.size();
+    }
+
+    /**
+     * Sends all buffered statements to the server, in order. The buffer is
+     * empty afterwards, also if a batch fails.
+     * @throws SQLException If a batch fails, with a message saying which
+     * statement failed and the driver's exception as the cause
+     */
+    void flush(SQLExecutor executor) throws SQLException {
+        List<Group> pending = new ArrayList<Group>(groups);
+        clear();
+        for(Group group: pending) {
+            try {
+                if(group.rows.size() == 1) {
+                    executor.execute(group.SQL, group.rows.get(0));
+                }
+                else {
+                    executor.batchWrite(group.SQL, group.rows);
+                }
+            }
+            catch(SQLException e) {
+                throw group.describeError(e);
+            }
+        }
+    }
+
+    /**
+     * Throws away all buffered statements
+     */
+    void clear() {
+        groups.clear();
+        size = 0;
+    }
+
+    private Group getGroup(String SQL) {
+        if(!groups.isEmpty()) {
+            Group last = groups.get(groups.size() - 1);
+            if(last.SQL.equals(SQL)) {
+                return last;
+            }
+        }
+        Group group = new Group(SQL, nextStatementNumber);
+        groups.add(group);
+        return group;
+    }
+
+    /**
+     * Consecutive statements sharing the same SQL
+     */
+    private static class Group {
+        private final String SQL;
+        private final int firstStatementNumber;
+        private final List<Object[]> rows;
+
+        Group(String SQL, int firstStatementNumber) {
+            this.SQL = SQL;
+            this.firstStatementNumber = firstStatementNumber;
+            this.rows = new ArrayList<Object[]>();
+        }
+
+        SQLException describeError(SQLException e) {
+            int[] failed = getFailedRange(e);
+            String message;
+            if(failed[0] == failed[1]) {
+                message = "Deferred statement #" + (firstStatementNumber + failed[0]) + " of the transaction failed: " +
+                        SQL + " with parameters " + Arrays.toString(rows.get(failed[0]));
+            }
+            else {
+                message = "One of the deferred statements #" + (firstStatementNumber + failed[0]) + " to #" + 
+                        (firstStatementNumber + failed[1]) + " of the transaction failed: " + SQL;
+            }
+            return new SQLException(message + " (" + e.getMessage() + ")", e.getSQLState(), e.getErrorCode(), e);
+        }
+
+        /**
+         * Figures out which rows of the batch failed from the update counts of a {@code BatchUpdateException}; drivers
+         * either stop at the failing row or mark it with {@code EXECUTE_FAILED}
+         * @return Index of the first and last row that may have failed
+         */
+        private int[] getFailedRange(SQLException e) {
+            int[] everything = new int[] { 0, rows.size() - 1 };
+            if(!(e instanceof BatchUpdateException) || ((BatchUpdateException)e).getUpdateCounts() == null) {
+                return everything;
+            }
+            int[] updateCounts = ((BatchUpdateException)e).getUpdateCounts();
+            int first = -1;
+            int last = -1;
+            for(int i = 0; i < updateCounts.length; i++) {
+                if(updateCounts[i] == Statement.EXECUTE_FAILED) {
+                    if(first == -1) {
+                        first = i;
+                    }
+                    last = i;
+                }
+            }
+            if(first != -1) {
+                return new int[] { first, last };
+            }
+            if(updateCounts.length < rows.size()) {
+                return new int[] { updateCounts.length, updateCounts.length };
+            }
+            return everything;
+        }
+    }
+}
@@ -20,7 +20,6 @@ package com.googlecode.jdbw.objectstorage.impl;
 
 import com.googlecode.jdbw.objectstorage.FieldMapping;
 import com.googlecode.jdbw.objectstorage.ObjectFactory;
-import com.googlecode.jdbw.objectstorage.ObjectStorageException;
 import java.lang.reflect.Method;
 
 class BuilderProxyHandler extends ObjectProxyHandler {
@@ -37,20 +36,9 @@ class BuilderProxyHandler extends ObjectProxyHandler {
     }
     */
     
-    BuilderProxyHandler(FieldMapping fieldMapping, ObjectFactory objectFactory, Object key, Object template) {
-        this(fieldMapping, objectFactory, key);
-        for(Method method: fieldMapping.getObjectType().getMethods()) {
-            if(fieldMapping.getFieldName(method) == null || "getId".equals(method.getName())) {
-                continue;
-            }
-            try {
-                method.setAccessible(true);
-                setFieldValue(method, method.invoke(template));
-            }
-            catch(Exception e) {
-                throw new ObjectStorageException("Couldn't copy value from template due to " + e.getClass().getSimpleName(), e);
-            }
-        }
+    BuilderProxyHandler(FieldMapping fieldMapping, ObjectFactory objectFactory, Object key, Object[] initialValues) {
+        super(fieldMapping, key, initialValues);
+        this.objectFactory = objectFactory;
     }
 
     @Override
@@ -0,0 +1,148 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.FieldMapping;
+import com.googlecode.jdbw.objectstorage.ObjectFactory;
+import com.googlecode.jdbw.objectstorage.ObjectStorageException;
+import com.googlecode.jdbw.objectstorage.Storable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Alternative to {@code ImmutableObjectFactory} for object storages holding
+ * many objects. Instead of a {@code Proxy} with an invocation handler and two
+ * arrays per object, it generates a final class for each storable type, with
+ * one field per value and getters that return the field directly, so an
+ * object is a single small instance and a getter call is an ordinary method
+ * call. The objects are immutable and behave like the proxies otherwise:
+ * they are {@code SelfDescribingStorable}, they're equal to any object of the
+ * same storable type with the same id and setters throw
+ * {@code ObjectStorageException}.
+ * <p>
+ * The classes are loaded by a class loader of their own, so they can only
+ * implement storable interfaces that are public (or protected, if nested);
+ * for any other type this factory falls back to the proxies of
+ * {@code ImmutableObjectFactory}.
+ * <p>
+ * To use it, pass it to the {@code JDBCObjectStorage} or
+ * {@code DefaultObjectStorage} constructor.
+ *
+ * @author Martin Berglund
+ */
+public class CompactObjectFactory implements ObjectFactory {
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger(0);
+
+    private final ObjectFactory fallbackObjectFactory;
+    private final ConcurrentHashMap<Class, CompactClass> compactClasses;
+
+    public CompactObjectFactory() {
+        this.fallbackObjectFactory = new ImmutableObjectFactory();
+        this.compactClasses = new ConcurrentHashMap<Class, CompactClass>();
+    }
+
+    @Override
+    public <O extends Storable> O newObject(Class<O> type, FieldMapping fieldMapping, Object[] idAndValues) {
+        CompactClass compactClass = compactClasses.get(type);
+        if(compactClass == null || !compactClass.isFor(fieldMapping)) {
+            compactClass = new CompactClass(type, fieldMapping);
+            compactClasses.put(type, compactClass);
+        }
+        if(compactClass.constructor == null) {
+            return fallbackObjectFactory.newObject(type, fieldMapping, idAndValues);
+        }
+        if(idAndValues.length != compactClass.fieldNames.size() + 1) {
+            throw new ObjectStorageException("Expected " + (compactClass.fieldNames.size() + 1) + " values for " +
+                    type.getName() + " but got " + idAndValues.length);
+        }
+        try {
+            return (O)compactClass.constructor.newInstance(new Object[] { idAndValues });
+        }
+        catch(InvocationTargetException e) {
+            throw new ObjectStorageException("Couldn't create object of type " + type.getName(), e.getCause());
+        }
+        catch(Exception e) {
+            throw new ObjectStorageException("Couldn't create object of type " + type.getName() + " due to " +
+                    e.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * The generated class for a storable type and the field mapping it was generated for
+     */
+    private static class CompactClass {
+        private final FieldMapping fieldMapping;
+        private final List<String> fieldNames;
+        private final Constructor constructor;
+
+        CompactClass(Class<? extends Storable> type, FieldMapping fieldMapping) {
+            this.fieldMapping = fieldMapping;
+            this.fieldNames = fieldMapping.getFieldNames();
+            if(!StorableClassWriter.canImplement(type)) {
+                this.constructor = null;
+                return;
+            }
+            String className = type.getName() + "$Compact" + CLASS_COUNTER.incrementAndGet();
+            byte[] classFile = new StorableClassWriter(className, type, fieldMapping).write();
+            try {
+                this.constructor = new CompactClassLoader(type.getClassLoader())
+                        .define(className, classFile)
+                        .getConstructor(Object[].class);
+            }
+            catch(NoSuchMethodException e) {
+                throw new ObjectStorageException("Couldn't create class for " + type.getName(), e);
+            }
+            catch(LinkageError e) {
+                throw new ObjectStorageException("Couldn't create class for " + type.getName(), e);
+            }
+        }
+
+        /**
+         * The generated getters return the values by index, so the class can only be used for mappings with the
+         * same fields in the same order
+         */
+        boolean isFor(FieldMapping otherMapping) {
+            return otherMapping == fieldMapping || otherMapping.getFieldNames().equals(fieldNames);
+        }
+    }
+
+    /**
+     * Loads one generated class. The storable type's class loader is the parent, so that the class sees the same
+     * storable interface and field types as the rest of the application, with jdbw's own class loader as the
+     * fallback in case the parent can't see jdbw.
+     */
+    private static class CompactClassLoader extends ClassLoader {
+        CompactClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String className, byte[] classFile) {
+            return defineClass(className, classFile, 0, classFile.length);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return CompactObjectFactory.class.getClassLoader().loadClass(name);
+        }
+    }
+}
@@ -23,22 +23,39 @@ import com.googlecode.jdbw.objectstorage.Storable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Field mapping derived from the getters of the storable interface. The
+ * field names, types and indexes are worked out once, when the mapping is
+ * created, and every {@code Method} asked about is remembered together with
+ * its field name and index, so {@code getFieldName(Method)} and
+ * {@code getFieldIndex(Method)} are a single hash lookup after the first
+ * call; the object and builder proxies call these for every getter and
+ * setter invocation.
+ */
 public class DefaultFieldMapping implements FieldMapping {
 
     private final Class<? extends Storable> objectType;
     private final Map<String, Integer> fieldIndexMap;
     private final SortedMap<String, Class> fieldTypeMap;
+    private final ConcurrentHashMap<Method, MethodInfo> methodInfoMap;
+    private final List<String> fieldNames;
+    private final List<Class> fieldTypes;
 
     public DefaultFieldMapping(Class<? extends Storable> objectType) {
         this.objectType = objectType;
         this.fieldIndexMap = new TreeMap<String, Integer>();
         this.fieldTypeMap = new TreeMap<String, Class>();
+        this.methodInfoMap = new ConcurrentHashMap<Method, MethodInfo>();
         resolveFields();
+        this.fieldNames = Collections.unmodifiableList(new ArrayList<String>(fieldTypeMap.keySet()));
+        this.fieldTypes = Collections.unmodifiableList(new ArrayList<Class>(fieldTypeMap.values()));
     }
     
     @Override
@@ -48,7 +65,7 @@ public class DefaultFieldMapping implements FieldMapping {
 
     @Override
     public String getFieldName(Method method) {
-        return getFieldName(method.getName());
+        return getMethodInfo(method).fieldName;
     }
 
     @Override
@@ -69,17 +86,32 @@ public class DefaultFieldMapping implements FieldMapping {
 
     @Override
     public int getFieldIndex(Method method) {
-        return getFieldIndex(getFieldName(method.getName()));
+        MethodInfo methodInfo = getMethodInfo(method);
+        if(methodInfo.fieldIndex == null) {
+            //Not a known field, fail the same way as looking it up by name does
+            return getFieldIndex(methodInfo.fieldName);
+        }
+        return methodInfo.fieldIndex;
     }
     
     @Override
     public List<String> getFieldNames() {
-        return new ArrayList<String>(fieldTypeMap.keySet());
+        return fieldNames;
     }
 
     @Override
     public List<Class> getFieldTypes() {
-        return new ArrayList<Class>(fieldTypeMap.values());
+        return fieldTypes;
+    }
+
+    private MethodInfo getMethodInfo(Method method) {
+        MethodInfo methodInfo = methodInfoMap.get(method);
+        if(methodInfo == null) {
+            String fieldName = getFieldName(method.getName());
+            methodInfo = new MethodInfo(fieldName, fieldName != null ? fieldIndexMap.get(fieldName) : null);
+            methodInfoMap.put(method, methodInfo);
+        }
+        return methodInfo;
     }
     
     private void resolveFields() {
@@ -113,5 +145,18 @@ public class DefaultFieldMapping implements FieldMapping {
         for(String fieldName: fieldTypeMap.keySet()) {
             fieldIndexMap.put(fieldName, index++);
         }
+        for(Method method: objectType.getMethods()) {
+            getMethodInfo(method);
+        }
+    }
+
+    private static class MethodInfo {
+        private final String fieldName;
+        private final Integer fieldIndex;
+
+        MethodInfo(String fieldName, Integer fieldIndex) {
+            this.fieldName = fieldName;
+            this.fieldIndex = fieldIndex;
+        }
     }
 }
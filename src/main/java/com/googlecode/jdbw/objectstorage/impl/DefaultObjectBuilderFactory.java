@@ -32,10 +32,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DefaultObjectBuilderFactory implements ObjectBuilderFactory {
     
     private final ObjectFactory objectFactory;
+    private final ConcurrentHashMap<Class, FieldExtractor> fieldExtractors;
 
     public DefaultObjectBuilderFactory() {
         this(new ImmutableObjectFactory());
@@ -43,6 +45,7 @@ public class DefaultObjectBuilderFactory implements ObjectBuilderFactory {
     
     public DefaultObjectBuilderFactory(ObjectFactory objectFactory) {
         this.objectFactory = objectFactory;
+        this.fieldExtractors = new ConcurrentHashMap<Class, FieldExtractor>();
     }
 
     @Override
@@ -123,16 +126,35 @@ public class DefaultObjectBuilderFactory implements ObjectBuilderFactory {
     }
 
     private <K, O extends Storable<K>, B extends ObjectBuilder<O>> B newBuilderProxy(Class<B> builderType, K key, O template) throws IllegalArgumentException {
+        FieldMapping fieldMapping = getFieldMapping(resolveStorable(builderType));
         return (B)Proxy.newProxyInstance(
                     ClassLoader.getSystemClassLoader(), 
                     new Class[] { builderType }, 
-                    new BuilderProxyHandler(getFieldMapping(resolveStorable(builderType)), objectFactory, key, template));
+                    new BuilderProxyHandler(fieldMapping, objectFactory, key, getFieldExtractor(fieldMapping).extract(template)));
     }
 
     private <K, O extends Storable<K>, B extends ObjectBuilder<O>> B newBuilderProxy(Class<B> builderType, K key, Map<String, Object> initialValues) throws IllegalArgumentException {
+        FieldMapping fieldMapping = getFieldMapping(resolveStorable(builderType));
+        List<String> fieldNames = fieldMapping.getFieldNames();
+        Object[] values = new Object[fieldNames.size()];
+        for(Map.Entry<String, Object> entry: initialValues.entrySet()) {
+            if(!fieldNames.contains(entry.getKey())) {
+                throw new IllegalArgumentException("Unknown field " + entry.getKey() + " in " + fieldMapping.getObjectType().getSimpleName());
+            }
+            values[fieldMapping.getFieldIndex(entry.getKey())] = entry.getValue();
+        }
         return (B)Proxy.newProxyInstance(
                     ClassLoader.getSystemClassLoader(), 
                     new Class[] { builderType }, 
-                    new BuilderProxyHandler(getFieldMapping(resolveStorable(builderType)), objectFactory, key, initialValues));
+                    new BuilderProxyHandler(fieldMapping, objectFactory, key, values));
+    }
+
+    private FieldExtractor getFieldExtractor(FieldMapping fieldMapping) {
+        FieldExtractor fieldExtractor = fieldExtractors.get(fieldMapping.getObjectType());
+        if(fieldExtractor == null || !fieldExtractor.isFor(fieldMapping)) {
+            fieldExtractor = new FieldExtractor(fieldMapping);
+            fieldExtractors.put(fieldMapping.getObjectType(), fieldExtractor);
+        }
+        return fieldExtractor;
     }
 }
@@ -24,6 +24,7 @@ import com.googlecode.jdbw.objectstorage.FieldMappingFactory;
 import com.googlecode.jdbw.objectstorage.ObjectBuilderFactory;
 import com.googlecode.jdbw.objectstorage.ObjectCache;
 import com.googlecode.jdbw.objectstorage.ObjectCacheFactory;
+import com.googlecode.jdbw.objectstorage.ObjectFactory;
 import com.googlecode.jdbw.objectstorage.ObjectStorageException;
 import com.googlecode.jdbw.objectstorage.Storable;
 import java.lang.reflect.InvocationHandler;
@@ -37,6 +38,7 @@ public class DefaultObjectStorage extends AbstractObjectStorage {
     
     private final FieldMappingFactory fieldMappingFactory;
     private final ObjectCacheFactory objectCacheFactory;
+    private final ObjectFactory objectFactory;
     private final ConcurrentHashMap<Class, Cell> storageCells;
 
     public DefaultObjectStorage() {
@@ -48,8 +50,13 @@ public class DefaultObjectStorage extends AbstractObjectStorage {
     }
 
     public DefaultObjectStorage(FieldMappingFactory fieldMappingFactory, ObjectCacheFactory objectCacheFactory) {
+        this(fieldMappingFactory, objectCacheFactory, new ImmutableObjectFactory());
+    }
+
+    public DefaultObjectStorage(FieldMappingFactory fieldMappingFactory, ObjectCacheFactory objectCacheFactory, ObjectFactory objectFactory) {
         this.fieldMappingFactory = fieldMappingFactory;
         this.objectCacheFactory = objectCacheFactory;
+        this.objectFactory = objectFactory;
         storageCells = new ConcurrentHashMap<Class, Cell>();
     }
     
@@ -67,9 +74,9 @@ public class DefaultObjectStorage extends AbstractObjectStorage {
         if(object == null) {
             throw new IllegalArgumentException("Passing null object to contains(...) is not allowed");
         }
-        Class objectType = object.getClass();
-        if(object instanceof Proxy) {
-            objectType = ((ObjectProxyHandler)Proxy.getInvocationHandler(object)).getObjectType();
+        Class objectType = getStorableTypeFromObject(object);
+        if(objectType == null) {
+            objectType = object.getClass();
         }
         return contains(objectType, object.getId());
     }
@@ -124,7 +131,7 @@ public class DefaultObjectStorage extends AbstractObjectStorage {
 
     @Override
     public ObjectBuilderFactory getBuilderFactory() {
-        return new DefaultObjectBuilderFactory() {
+        return new DefaultObjectBuilderFactory(objectFactory) {
             @Override
             protected FieldMapping getFieldMapping(Class<? extends Storable> objectType) {
                 if(storageCells.containsKey(objectType)) {
@@ -142,9 +149,9 @@ public class DefaultObjectStorage extends AbstractObjectStorage {
         if(object == null) {
             throw new IllegalArgumentException("Passing null object to put(...) is not allowed");
         }
-        Class objectType = object.getClass();
-        if(object instanceof Proxy) {
-            objectType = ((ObjectProxyHandler)Proxy.getInvocationHandler(object)).getObjectType();
+        Class objectType = getStorableTypeFromObject(object);
+        if(objectType == null) {
+            objectType = object.getClass();
         }
         if(!storageCells.containsKey(objectType)) {
             throw new IllegalArgumentException("Trying to call put(...) on unregistered type " + objectType.getName());
@@ -21,10 +21,20 @@ package com.googlecode.jdbw.objectstorage.impl;
 import com.googlecode.jdbw.SQLDialect;
 import com.googlecode.jdbw.objectstorage.Storable;
 import com.googlecode.jdbw.objectstorage.TableMapping;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Table mapping where the table is named after the storable type and the
+ * columns after the fields. The SQL statements are built once per dialect
+ * and then reused. Statements taking a list of keys are only cached for
+ * key counts that are powers of two; {@code JDBCObjectStorage} pads its key
+ * lists to these sizes, so a few statement texts cover every call and the
+ * statement caches of the driver and the server keep working.
+ */
 public class DefaultTableMapping extends DefaultFieldMapping implements TableMapping {
     
     private final String tableName;
+    private final ConcurrentHashMap<Class, DialectSQL> dialectSQLMap;
     
     public DefaultTableMapping(Class<? extends Storable> objectType) {
         this(objectType, objectType.getSimpleName());
@@ -33,6 +43,7 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
     public DefaultTableMapping(Class<? extends Storable> objectType, String tableName) {
         super(objectType);
         this.tableName = tableName;
+        this.dialectSQLMap = new ConcurrentHashMap<Class, DialectSQL>();
     }
     
     @Override
@@ -47,6 +58,118 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
 
     @Override
     public String getSelectAll(SQLDialect dialect) {
+        DialectSQL dialectSQL = getDialectSQL(dialect);
+        if(dialectSQL.selectAll == null) {
+            dialectSQL.selectAll = buildSelectAll(dialect);
+        }
+        return dialectSQL.selectAll;
+    }
+
+    @Override
+    public String getSelectSome(SQLDialect dialect, int numberOfObjects) {
+        if(!isBucketSize(numberOfObjects)) {
+            return buildSelectSome(dialect, numberOfObjects);
+        }
+        ConcurrentHashMap<Integer, String> cache = getDialectSQL(dialect).selectSome;
+        String sql = cache.get(numberOfObjects);
+        if(sql == null) {
+            sql = buildSelectSome(dialect, numberOfObjects);
+            cache.put(numberOfObjects, sql);
+        }
+        return sql;
+    }
+
+    @Override
+    public String getSelectKeys(SQLDialect dialect, int numberOfObjects) {
+        if(!isBucketSize(numberOfObjects)) {
+            return buildSelectKeys(dialect, numberOfObjects);
+        }
+        ConcurrentHashMap<Integer, String> cache = getDialectSQL(dialect).selectKeys;
+        String sql = cache.get(numberOfObjects);
+        if(sql == null) {
+            sql = buildSelectKeys(dialect, numberOfObjects);
+            cache.put(numberOfObjects, sql);
+        }
+        return sql;
+    }
+
+    @Override
+    public String getSelectCount(SQLDialect sqlDialect) {
+        DialectSQL dialectSQL = getDialectSQL(sqlDialect);
+        if(dialectSQL.selectCount == null) {
+            dialectSQL.selectCount = buildSelectCount(sqlDialect);
+        }
+        return dialectSQL.selectCount;
+    }
+
+    @Override
+    public String getSelectContains(SQLDialect sqlDialect) {
+        DialectSQL dialectSQL = getDialectSQL(sqlDialect);
+        if(dialectSQL.selectContains == null) {
+            dialectSQL.selectContains = buildSelectContains(sqlDialect);
+        }
+        return dialectSQL.selectContains;
+    }
+
+    @Override
+    public String getInsert(SQLDialect dialect) {
+        DialectSQL dialectSQL = getDialectSQL(dialect);
+        if(dialectSQL.insert == null) {
+            dialectSQL.insert = buildInsert(dialect);
+        }
+        return dialectSQL.insert;
+    }
+
+    @Override
+    public String getUpdate(SQLDialect dialect) {
+        DialectSQL dialectSQL = getDialectSQL(dialect);
+        if(dialectSQL.update == null) {
+            dialectSQL.update = buildUpdate(dialect);
+        }
+        return dialectSQL.update;
+    }
+
+    @Override
+    public String getDelete(SQLDialect dialect, int numberOfObjectsToDelete) {
+        if(!isBucketSize(numberOfObjectsToDelete)) {
+            return buildDelete(dialect, numberOfObjectsToDelete);
+        }
+        ConcurrentHashMap<Integer, String> cache = getDialectSQL(dialect).delete;
+        String sql = cache.get(numberOfObjectsToDelete);
+        if(sql == null) {
+            sql = buildDelete(dialect, numberOfObjectsToDelete);
+            cache.put(numberOfObjectsToDelete, sql);
+        }
+        return sql;
+    }
+
+    @Override
+    public String getDeleteAll(SQLDialect dialect) {
+        DialectSQL dialectSQL = getDialectSQL(dialect);
+        if(dialectSQL.deleteAll == null) {
+            dialectSQL.deleteAll = buildDeleteAll(dialect);
+        }
+        return dialectSQL.deleteAll;
+    }
+
+    private DialectSQL getDialectSQL(SQLDialect dialect) {
+        //Server types hand out a new dialect object every time, but the dialects have no state
+        DialectSQL dialectSQL = dialectSQLMap.get(dialect.getClass());
+        if(dialectSQL == null) {
+            dialectSQL = new DialectSQL();
+            DialectSQL existing = dialectSQLMap.putIfAbsent(dialect.getClass(), dialectSQL);
+            if(existing != null) {
+                dialectSQL = existing;
+            }
+        }
+        return dialectSQL;
+    }
+
+    private static boolean isBucketSize(int numberOfObjects) {
+        return numberOfObjects > 0 && (numberOfObjects & (numberOfObjects - 1)) == 0;
+    }
+
+    private String buildSelectAll(SQLDialect dialect) {
         StringBuilder sb = new StringBuilder("SELECT ");
         sb.append(dialect.escapeIdentifier("id"));
         for(String fieldName: getFieldNames()) {
@@ -56,8 +179,7 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
         return sb.toString();
     }
 
-    @Override
-    public String getSelectSome(SQLDialect dialect, int numberOfObjects) {
+    private String buildSelectSome(SQLDialect dialect, int numberOfObjects) {
         if(numberOfObjects <= 0) {
             throw new IllegalArgumentException("Cannot call DefaultTableMapping.getSelectSome with numberOfObjects <= 0 ");
         }
@@ -76,8 +198,7 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
         return sb.toString();
     }
 
-    @Override
-    public String getSelectKeys(SQLDialect dialect, int numberOfObjects) {
+    private String buildSelectKeys(SQLDialect dialect, int numberOfObjects) {
         if(numberOfObjects <= 0) {
             throw new IllegalArgumentException("Cannot call DefaultTableMapping.getSelectKeys with numberOfObjects <= 0 ");
         }
@@ -93,20 +214,17 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
         return sb.toString();
     }
 
-    @Override
-    public String getSelectCount(SQLDialect sqlDialect) {
+    private String buildSelectCount(SQLDialect sqlDialect) {
         return "SELECT COUNT(" + sqlDialect.escapeIdentifier("id") + ") FROM " + sqlDialect.escapeIdentifier(getTableName());
     }
 
-    @Override
-    public String getSelectContains(SQLDialect sqlDialect) {
+    private String buildSelectContains(SQLDialect sqlDialect) {
         return "SELECT COUNT(" + sqlDialect.escapeIdentifier("id") + ") FROM " +
                 sqlDialect.escapeIdentifier(getTableName()) + " WHERE " +
                 sqlDialect.escapeIdentifier("id") + " = ?";
     }
 
-    @Override
-    public String getInsert(SQLDialect dialect) {
+    private String buildInsert(SQLDialect dialect) {
         StringBuilder sb = new StringBuilder("INSERT INTO ");
         sb.append(dialect.escapeIdentifier(getTableName()));
         sb.append(" (");
@@ -121,8 +239,7 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
         return sb.append(")").toString();
     }
 
-    @Override
-    public String getUpdate(SQLDialect dialect) {
+    private String buildUpdate(SQLDialect dialect) {
         StringBuilder sb = new StringBuilder("UPDATE ");
         sb.append(dialect.escapeIdentifier(getTableName()));
         sb.append(" SET ");
@@ -135,8 +252,7 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
         return sb.append(" = ?").toString();
     }
 
-    @Override
-    public String getDelete(SQLDialect dialect, int numberOfObjectsToDelete) {
+    private String buildDelete(SQLDialect dialect, int numberOfObjectsToDelete) {
         if(numberOfObjectsToDelete <= 0) {
             throw new IllegalArgumentException("Cannot call DefaultTableMapping.getDelete(...) with numberOfObjectsToDelete <= 0");
         }
@@ -149,8 +265,19 @@ public class DefaultTableMapping extends DefaultFieldMapping implements TableMap
         return sb.append(")").toString();
     }
 
-    @Override
-    public String getDeleteAll(SQLDialect dialect) {
+    private String buildDeleteAll(SQLDialect dialect) {
         return "DELETE FROM " + dialect.escapeIdentifier(getTableName());
     }
+
+    private static class DialectSQL {
+        private volatile String selectAll;
+        private volatile String selectCount;
+        private volatile String selectContains;
+        private volatile String insert;
+        private volatile String update;
+        private volatile String deleteAll;
+        private final ConcurrentHashMap<Integer, String> selectSome = new ConcurrentHashMap<Integer, String>();
+        private final ConcurrentHashMap<Integer, String> selectKeys = new ConcurrentHashMap<Integer, String>();
+        private final ConcurrentHashMap<Integer, String> delete = new ConcurrentHashMap<Integer, String>();
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.FieldMapping;
+import com.googlecode.jdbw.objectstorage.ObjectStorageException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * Copies the field values out of storable objects, in the order given by a
+ * {@code FieldMapping}. The getters are looked up and made accessible once,
+ * when the extractor is created, so extracting the values of an object is
+ * one {@code invoke} per field with no lookups. Objects created by
+ * {@code ImmutableObjectFactory} (and builders) already keep their values in
+ * field order, so for these the array is copied directly without calling any
+ * getters at all.
+ */
+class FieldExtractor {
+
+    private final FieldMapping fieldMapping;
+    private final List<String> fieldNames;
+    private final Method[] getters;
+    private volatile FieldMapping lastCompatibleMapping;
+
+    FieldExtractor(FieldMapping fieldMapping) {
+        this.fieldMapping = fieldMapping;
+        this.fieldNames = fieldMapping.getFieldNames();
+        this.getters = new Method[fieldNames.size()];
+        this.lastCompatibleMapping = fieldMapping;
+        for(Method method: fieldMapping.getObjectType().getMethods()) {
+            if(fieldMapping.getFieldName(method) == null ||
+                    "getId".equals(method.getName()) ||
+                    method.getParameterTypes().length != 0) {
+                continue;
+            }
+            method.setAccessible(true);
+            getters[fieldMapping.getFieldIndex(method)] = method;
+        }
+    }
+
+    /**
+     * Returns true if this extractor puts the values in the same order as {@code otherMapping} expects them
+     */
+    boolean isFor(FieldMapping otherMapping) {
+        if(otherMapping == fieldMapping || otherMapping == lastCompatibleMapping) {
+            return true;
+        }
+        if(otherMapping.getObjectType() == fieldMapping.getObjectType() && otherMapping.getFieldNames().equals(fieldNames)) {
+            lastCompatibleMapping = otherMapping;
+            return true;
+        }
+        return false;
+    }
+
+    int getNumberOfFields() {
+        return getters.length;
+    }
+
+    Object[] extract(Object object) {
+        Object[] values = new Object[getters.length];
+        extract(object, values, 0);
+        return values;
+    }
+
+    /**
+     * Writes the field values of {@code object} into {@code target}, starting at {@code offset}
+     */
+    void extract(Object object, Object[] target, int offset) {
+        if(Proxy.isProxyClass(object.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(object);
+            if(handler instanceof ObjectProxyHandler && isFor(((ObjectProxyHandler)handler).getFieldMapping())) {
+                System.arraycopy(((ObjectProxyHandler)handler).getFields(), 0, target, offset, getters.length);
+                return;
+            }
+        }
+        for(int i = 0; i < getters.length; i++) {
+            try {
+                target[offset + i] = getters[i].invoke(object);
+            }
+            catch(Exception e) {
+                throw new ObjectStorageException("Couldn't copy value from object due to " + e.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
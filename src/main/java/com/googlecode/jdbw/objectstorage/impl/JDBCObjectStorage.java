@@ -20,6 +20,7 @@ package com.googlecode.jdbw.objectstorage.impl;
 
 import com.googlecode.jdbw.DatabaseConnection;
 import com.googlecode.jdbw.DatabaseTransaction;
+import com.googlecode.jdbw.SQLDialect;
 import com.googlecode.jdbw.TransactionIsolation;
 import com.googlecode.jdbw.objectstorage.AbstractObjectStorage;
 import com.googlecode.jdbw.objectstorage.FieldMapping;
@@ -32,7 +33,6 @@ import com.googlecode.jdbw.objectstorage.TableMappingFactory;
 import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
 import com.googlecode.jdbw.util.SQLWorker;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -53,6 +53,7 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
     private final TableMappingFactory tableMappingFactory;
     private final ObjectFactory objectFactory;
     private final ConcurrentHashMap<Class, TableMapping> tableMappings;
+    private final ConcurrentHashMap<Class, FieldExtractor> fieldExtractors;
     private final int retryAttempts;
 
     public JDBCObjectStorage(DatabaseConnection databaseConnection) {
@@ -80,6 +81,7 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
         this.tableMappingFactory = tableMappingFactory;
         this.objectFactory = objectFactory;
         this.tableMappings = new ConcurrentHashMap<Class, TableMapping>();
+        this.fieldExtractors = new ConcurrentHashMap<Class, FieldExtractor>();
         this.retryAttempts = retryAttempts;
     }
 
@@ -93,11 +95,12 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
             throw new IllegalArgumentException("Cannot call JDBCObjectStorage.register(...) with null object");
         }
         tableMappings.putIfAbsent(objectType, tableMappingFactory.createTableMapping(objectType));
+        fieldExtractors.putIfAbsent(objectType, new FieldExtractor(tableMappings.get(objectType)));
     }
 
     @Override
     public ObjectBuilderFactory getBuilderFactory() {
-        return new DefaultObjectBuilderFactory() {
+        return new DefaultObjectBuilderFactory(objectFactory) {
             @Override
             protected FieldMapping getFieldMapping(Class<? extends Storable> objectType) {
                 if(tableMappings.containsKey(objectType)) {
@@ -144,13 +147,13 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
         }
         
         TableMapping tableMapping = tableMappings.get(type);        
-        String sql = tableMapping.getSelectSome(
-                databaseConnection.getServerType().getSQLDialect(),
-                ids.size());
-        List<Object[]> rows;
+        SQLDialect dialect = databaseConnection.getServerType().getSQLDialect();
+        List<Object[]> rows = new ArrayList<Object[]>();
         try {
-            Object[] keysAsArray = ids.toArray();
-            rows = new SQLWorker(databaseConnection.createAutoExecutor()).query(sql, keysAsArray);
+            SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+            for(Object[] keys: KeyBatches.split(ids, dialect.getMaxParametersPerStatement())) {
+                rows.addAll(worker.query(tableMapping.getSelectSome(dialect, keys.length), keys));
+            }
         }
         catch(SQLException e) {
             throw new ObjectStorageException("Database error when calling JDBCObjectStorage.getSome(...) with {type=" +
@@ -219,12 +222,27 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
             throw new IllegalArgumentException("Cannot call JDBCObjectStorage.remove(...) non-registered type " + objectType.getSimpleName());
         }
         
-        String sql = tableMappings.get(objectType).getDelete(
-                databaseConnection.getServerType().getSQLDialect(),
-                ids.size());
+        TableMapping tableMapping = tableMappings.get(objectType);
+        SQLDialect dialect = databaseConnection.getServerType().getSQLDialect();
+        List<Object[]> batches = KeyBatches.split(ids, dialect.getMaxParametersPerStatement());
         try {
-            Object[] keysAsArray = ids.toArray();
-            new SQLWorker(databaseConnection.createAutoExecutor()).write(sql, keysAsArray);
+            if(batches.size() == 1) {
+                new SQLWorker(databaseConnection.createAutoExecutor()).write(tableMapping.getDelete(dialect, batches.get(0).length), batches.get(0));
+            }
+            else if(batches.size() > 1) {
+                //Keep the removal atomic even though it takes several statements
+                DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+                try {
+                    for(Object[] keys: batches) {
+                        transaction.execute(tableMapping.getDelete(dialect, keys.length), keys);
+                    }
+                    transaction.commit();
+                }
+                catch(SQLException e) {
+                    transaction.rollback();
+                    throw e;
+                }
+            }
         }
         catch(SQLException e) {
             throw new ObjectStorageException("Database error when calling JDBCObjectStorage.remove(...) with {type=" +
@@ -281,22 +299,15 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
     }
     
     protected <O extends Storable> Object[] transform(FieldMapping fieldMapping, O object, boolean idAtFirst) {
-        Object[] result = new Object[fieldMapping.getFieldNames().size() + 1];
+        FieldExtractor fieldExtractor = fieldExtractors.get(fieldMapping.getObjectType());
+        if(fieldExtractor == null || !fieldExtractor.isFor(fieldMapping)) {
+            fieldExtractor = new FieldExtractor(fieldMapping);
+        }
+        Object[] result = new Object[fieldExtractor.getNumberOfFields() + 1];
         if(idAtFirst) {
             result[0] = object.getId();
         }
-        for(Method method: fieldMapping.getObjectType().getMethods()) {
-            if(fieldMapping.getFieldName(method) == null || "getId".equals(method.getName())) {
-                continue;
-            }
-            try {
-                method.setAccessible(true);
-                result[fieldMapping.getFieldIndex(method) + (idAtFirst ? 1 : 0)] = method.invoke(object);
-            }
-            catch(Exception e) {
-                throw new ObjectStorageException("Failed transform, couldn't copy value from object due to " + e.getClass().getSimpleName(), e);
-            }
-        }
+        fieldExtractor.extract(object, result, idAtFirst ? 1 : 0);
         if(!idAtFirst) {
             result[result.length - 1] = object.getId();
         }
@@ -328,15 +339,18 @@ public class JDBCObjectStorage extends AbstractObjectStorage {
     protected <O extends Object & Storable> void doPutAll(Class<O> objectType, Collection<O> objects, TableMapping tableMapping) throws SQLException {
         DatabaseTransaction transaction = null;
         try {
-            int count = 0;
-            Object[] allKeys = new Object[objects.size()];
+            List<Object> allKeys = new ArrayList<Object>(objects.size());
             for(O object: objects) {
-                allKeys[count++] = object.getId();
+                allKeys.add(object.getId());
             }
-            String sql = tableMapping.getSelectKeys(databaseConnection.getServerType().getSQLDialect(), objects.size());
+            SQLDialect dialect = databaseConnection.getServerType().getSQLDialect();
             transaction = databaseConnection.beginTransaction(TransactionIsolation.REPEATABLE_READ);
             SQLWorker worker = new SQLWorker(transaction);
-            Set<Object> existingRows = new HashSet<Object>(worker.leftColumn(sql, allKeys));
+            Set<Object> existingRows = new HashSet<Object>();
+            for(Object[] keys: KeyBatches.split(allKeys, dialect.getMaxParametersPerStatement())) {
+                existingRows.addAll(worker.leftColumn(tableMapping.getSelectKeys(dialect, keys.length), keys));
+            }
+            String sql;
             List<O> toBeUpdated = new ArrayList<O>();
             List<O> toBeInserted = new ArrayList<O>();
             for(O object: objects) {
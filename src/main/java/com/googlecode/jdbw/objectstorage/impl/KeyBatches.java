@@ -0,0 +1,69 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits a collection of keys into parameter arrays for {@code IN (...)}
+ * statements. Every array has a length that is a power of two, padded by
+ * repeating the last key, so only a handful of different statements are
+ * ever sent for a table; no array is longer than the largest power of two
+ * that fits within the parameter limit of the dialect, so any number of
+ * keys can be used.
+ */
+class KeyBatches {
+
+    private KeyBatches() {
+    }
+
+    static List<Object[]> split(Collection<?> keys, int maxParameters) {
+        Set<Object> uniqueKeys = new LinkedHashSet<Object>(keys);
+        int maxBatchSize = Integer.highestOneBit(Math.max(1, maxParameters));
+        List<Object[]> batches = new ArrayList<Object[]>();
+        Iterator<Object> iterator = uniqueKeys.iterator();
+        int remaining = uniqueKeys.size();
+        while(remaining > 0) {
+            int batchSize = Math.min(remaining, maxBatchSize);
+            Object[] batch = new Object[bucketSize(batchSize)];
+            for(int i = 0; i < batchSize; i++) {
+                batch[i] = iterator.next();
+            }
+            for(int i = batchSize; i < batch.length; i++) {
+                batch[i] = batch[batchSize - 1];
+            }
+            batches.add(batch);
+            remaining -= batchSize;
+        }
+        return batches;
+    }
+
+    /**
+     * Returns the smallest power of two which is at least {@code numberOfKeys}
+     */
+    static int bucketSize(int numberOfKeys) {
+        int bucketSize = Integer.highestOneBit(numberOfKeys);
+        return bucketSize == numberOfKeys ? bucketSize : bucketSize << 1;
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.FieldMapping;
+import com.googlecode.jdbw.objectstorage.ObjectStorageException;
+import com.googlecode.jdbw.objectstorage.SelfDescribingStorable;
+import com.googlecode.jdbw.objectstorage.Storable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the class file of a final class implementing a storable interface,
+ * for {@code CompactObjectFactory}. The class has one field for the id and
+ * one for each field of the {@code FieldMapping}, set by a constructor taking
+ * the id and values in one array, the way {@code ObjectFactory.newObject(..)}
+ * gets them. The getters return the fields directly. The rest of the methods
+ * behave like those of the proxies made by {@code ImmutableObjectFactory}:
+ * {@code equals} and {@code hashCode} go by the id, {@code storableType()}
+ * returns the storable interface and setters throw
+ * {@code ObjectStorageException}.
+ * <p>
+ * The fields are declared as {@code Object} and the getters cast or unbox
+ * the value when they return it, so a value of the wrong type or a
+ * {@code null} in a primitive field fails when the getter is called, just
+ * like with the proxies, instead of when the object is created.
+ */
+class StorableClassWriter {
+
+    //Java 5 class files: ldc of a class constant is allowed, and no stack map frames are needed
+    private static final int CLASS_FILE_VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int AALOAD = 0x32;
+    private static final int POP = 0x57;
+    private static final int DUP = 0x59;
+    private static final int IFEQ = 0x99;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int FRETURN = 0xae;
+    private static final int DRETURN = 0xaf;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+    private static final int CHECKCAST = 0xc0;
+    private static final int INSTANCEOF = 0xc1;
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ID_FIELD = "id";
+
+    private final String className;
+    private final Class<? extends Storable> type;
+    private final FieldMapping fieldMapping;
+    private final int numberOfFields;
+    private final ConstantPool constantPool;
+    private final ByteArrayOutputStream methods;
+    private final Set<String> writtenMethods;
+
+    /**
+     * @param className Binary name of the class to write
+     * @param type Storable interface the class implements
+     * @param fieldMapping Decides which getter returns which of the values passed to the constructor
+     */
+    StorableClassWriter(String className, Class<? extends Storable> type, FieldMapping fieldMapping) {
+        this.className = className.replace('.', '/');
+        this.type = type;
+        this.fieldMapping = fieldMapping;
+        this.numberOfFields = fieldMapping.getFieldNames().size();
+        this.constantPool = new ConstantPool();
+        this.methods = new ByteArrayOutputStream();
+        this.writtenMethods = new HashSet<String>();
+    }
+
+    /**
+     * Checks if a class written for {@code type} can be loaded by a class loader of its own; this is the case if the
+     * class can see the storable interface and every type its getters return
+     */
+    static boolean canImplement(Class<? extends Storable> type) {
+        if(!isAccessible(type)) {
+            return false;
+        }
+        for(Method method: type.getMethods()) {
+            if(!isAccessible(method.getReturnType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAccessible(Class<?> type) {
+        while(type.isArray()) {
+            type = type.getComponentType();
+        }
+        //A protected nested class is public in its class file, which is what the JVM checks
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers()) || Modifier.isProtected(type.getModifiers());
+    }
+
+    byte[] write() {
+        writeConstructor();
+        writeIdGetter();
+        writeStorableType();
+        writeEquals();
+        writeHashCode();
+        writeToString();
+        for(Method method: type.getMethods()) {
+            if(Modifier.isAbstract(method.getModifiers()) && !writtenMethods.contains(method.getName() + getDescriptor(method))) {
+                writeMethod(method);
+            }
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            //The constants used by the header and the fields have to be in the pool before it's written out
+            int thisClass = constantPool.classRef(className);
+            int superClass = constantPool.classRef(OBJECT);
+            int storableInterface = constantPool.classRef(getInternalName(type));
+            int selfDescribingInterface = constantPool.classRef(getInternalName(SelfDescribingStorable.class));
+            int[] fieldNames = new int[numberOfFields + 1];
+            for(int i = 0; i <= numberOfFields; i++) {
+                fieldNames[i] = constantPool.utf8(getFieldName(i - 1));
+            }
+            int fieldDescriptor = constantPool.utf8("L" + OBJECT + ";");
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            constantPool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(2);
+            out.writeShort(storableInterface);
+            out.writeShort(selfDescribingInterface);
+            out.writeShort(numberOfFields + 1);
+            for(int fieldName: fieldNames) {
+                out.writeShort(ACC_PRIVATE | ACC_FINAL);
+                out.writeShort(fieldName);
+                out.writeShort(fieldDescriptor);
+                out.writeShort(0);
+            }
+            out.writeShort(writtenMethods.size());
+            methods.writeTo(out);
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch(IOException e) {
+            //Can't happen with a ByteArrayOutputStream
+            throw new ObjectStorageException("Couldn't write class for " + type.getName(), e);
+        }
+    }
+
+    /**
+     * The constructor takes the id and the field values in one array and copies them into the fields
+     */
+    private void writeConstructor() {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(INVOKESPECIAL, constantPool.methodRef(OBJECT, "<init>", "()V"));
+        for(int i = 0; i <= numberOfFields; i++) {
+            code.op(ALOAD_0);
+            code.op(ALOAD_1);
+            code.push(i);
+            code.op(AALOAD);
+            code.op(PUTFIELD, fieldRef(i - 1));
+        }
+        code.op(RETURN);
+        writeMethod(ACC_PUBLIC, "<init>", "([L" + OBJECT + ";)V", 3, 2, code);
+    }
+
+    private void writeIdGetter() {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(GETFIELD, fieldRef(-1));
+        code.op(ARETURN);
+        writeMethod(ACC_PUBLIC, "getId", "()L" + OBJECT + ";", 1, 1, code);
+    }
+
+    private void writeStorableType() {
+        Code code = new Code();
+        code.op(LDC_W, constantPool.classRef(getInternalName(type)));
+        code.op(ARETURN);
+        writeMethod(ACC_PUBLIC, "storableType", "()Ljava/lang/Class;", 1, 1, code);
+    }
+
+    /**
+     * Objects are equal if the other object is of the same storable type and has the same id
+     */
+    private void writeEquals() {
+        Code code = new Code();
+        code.op(ALOAD_1);
+        code.op(INSTANCEOF, constantPool.classRef(getInternalName(type)));
+        int branch = code.size();
+        code.op(IFEQ, 0);
+        code.op(ALOAD_0);
+        code.op(GETFIELD, fieldRef(-1));
+        code.op(ALOAD_1);
+        code.op(CHECKCAST, constantPool.classRef(getInternalName(Storable.class)));
+        code.op(INVOKEINTERFACE, constantPool.interfaceMethodRef(getInternalName(Storable.class), "getId", "()L" + OBJECT + ";"));
+        code.u1(1);
+        code.u1(0);
+        code.op(INVOKEVIRTUAL, constantPool.methodRef(OBJECT, "equals", "(L" + OBJECT + ";)Z"));
+        code.op(IRETURN);
+        code.patchBranch(branch, code.size());
+        code.op(ICONST_0);
+        code.op(IRETURN);
+        writeMethod(ACC_PUBLIC, "equals", "(L" + OBJECT + ";)Z", 2, 2, code);
+    }
+
+    private void writeHashCode() {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(GETFIELD, fieldRef(-1));
+        code.op(INVOKEVIRTUAL, constantPool.methodRef(OBJECT, "hashCode", "()I"));
+        code.op(IRETURN);
+        writeMethod(ACC_PUBLIC, "hashCode", "()I", 1, 1, code);
+    }
+
+    private void writeToString() {
+        Code code = new Code();
+        code.op(NEW, constantPool.classRef("java/lang/StringBuilder"));
+        code.op(DUP);
+        code.op(LDC_W, constantPool.string(type.getSimpleName() + ":"));
+        code.op(INVOKESPECIAL, constantPool.methodRef("java/lang/StringBuilder", "<init>", "(Ljava/lang/String;)V"));
+        code.op(ALOAD_0);
+        code.op(GETFIELD, fieldRef(-1));
+        code.op(INVOKEVIRTUAL, constantPool.methodRef("java/lang/StringBuilder", "append",
+                "(L" + OBJECT + ";)Ljava/lang/StringBuilder;"));
+        code.op(INVOKEVIRTUAL, constantPool.methodRef("java/lang/StringBuilder", "toString", "()Ljava/lang/String;"));
+        code.op(ARETURN);
+        writeMethod(ACC_PUBLIC, "toString", "()Ljava/lang/String;", 3, 1, code);
+    }
+
+    /**
+     * Writes a method of the storable interface: a getter, {@code getId()} with a narrower return type, or a method
+     * which throws, for setters and anything else that isn't a field
+     */
+    private void writeMethod(Method method) {
+        int locals = 1;
+        for(Class parameterType: method.getParameterTypes()) {
+            locals += parameterType == long.class || parameterType == double.class ? 2 : 1;
+        }
+        Code code = new Code();
+        int field = getFieldIndex(method);
+        if("getId".equals(method.getName()) && method.getParameterTypes().length == 0) {
+            code.op(ALOAD_0);
+            code.op(GETFIELD, fieldRef(-1));
+            code.returnAs(method.getReturnType());
+        }
+        else if(field >= 0 && !method.getName().startsWith("set")) {
+            code.op(ALOAD_0);
+            code.op(GETFIELD, fieldRef(field));
+            code.returnAs(method.getReturnType());
+        }
+        else if(field >= 0) {
+            code.throwObjectStorageException("Error trying to modify immutable object");
+        }
+        else {
+            code.throwObjectStorageException("Unknown method call: " + type.getName() + "." + method.getName());
+        }
+        writeMethod(ACC_PUBLIC, method.getName(), getDescriptor(method), 3, locals, code);
+    }
+
+    private int getFieldIndex(Method method) {
+        String fieldName = fieldMapping.getFieldName(method);
+        if(fieldName == null || !fieldMapping.getFieldNames().contains(fieldName)) {
+            return -1;
+        }
+        return fieldMapping.getFieldIndex(method);
+    }
+
+    private void writeMethod(int access, String name, String descriptor, int maxStack, int maxLocals, Code code) {
+        writtenMethods.add(name + descriptor);
+        DataOutputStream out = new DataOutputStream(methods);
+        try {
+            out.writeShort(access);
+            out.writeShort(constantPool.utf8(name));
+            out.writeShort(constantPool.utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(constantPool.utf8("Code"));
+            out.writeInt(12 + code.size());
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.size());
+            code.writeTo(out);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.flush();
+        }
+        catch(IOException e) {
+            throw new ObjectStorageException("Couldn't write class for " + type.getName(), e);
+        }
+    }
+
+    /**
+     * @param index Index of the field in the field mapping, or -1 for the id
+     */
+    private int fieldRef(int index) {
+        return constantPool.fieldRef(className, getFieldName(index), "L" + OBJECT + ";");
+    }
+
+    private static String getFieldName(int index) {
+        return index == -1 ? ID_FIELD : "f" + index;
+    }
+
+    private static String getInternalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    private static String getDescriptor(Method method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for(Class parameterType: method.getParameterTypes()) {
+            descriptor.append(getDescriptor(parameterType));
+        }
+        return descriptor.append(")").append(getDescriptor(method.getReturnType())).toString();
+    }
+
+    private static String getDescriptor(Class<?> type) {
+        if(type == void.class) {
+            return "V";
+        }
+        else if(type == boolean.class) {
+            return "Z";
+        }
+        else if(type == byte.class) {
+            return "B";
+        }
+        else if(type == char.class) {
+            return "C";
+        }
+        else if(type == short.class) {
+            return "S";
+        }
+        else if(type == int.class) {
+            return "I";
+        }
+        else if(type == long.class) {
+            return "J";
+        }
+        else if(type == float.class) {
+            return "F";
+        }
+        else if(type == double.class) {
+            return "D";
+        }
+        else if(type.isArray()) {
+            return getInternalName(type);
+        }
+        return "L" + getInternalName(type) + ";";
+    }
+
+    /**
+     * Bytecode of one method
+     */
+    private class Code {
+        private final ByteArrayOutputStream bytes;
+
+        Code() {
+            this.bytes = new ByteArrayOutputStream();
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void u1(int value) {
+            bytes.write(value);
+        }
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        void op(int opcode, int operand) {
+            bytes.write(opcode);
+            bytes.write(operand >> 8);
+            bytes.write(operand);
+        }
+
+        void push(int value) {
+            if(value <= 5) {
+                op(ICONST_0 + value);
+            }
+            else if(value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                u1(value);
+            }
+            else if(value <= Short.MAX_VALUE) {
+                op(SIPUSH, value);
+            }
+            else {
+                throw new ObjectStorageException("Too many fields in " + type.getName());
+            }
+        }
+
+        /**
+         * Sets the target of the branch instruction at {@code branch}
+         */
+        void patchBranch(int branch, int target) {
+            byte[] code = bytes.toByteArray();
+            int offset = target - branch;
+            code[branch + 1] = (byte)(offset >> 8);
+            code[branch + 2] = (byte)offset;
+            bytes.reset();
+            bytes.write(code, 0, code.length);
+        }
+
+        /**
+         * Casts or unboxes the {@code Object} on top of the stack and returns it
+         */
+        void returnAs(Class<?> returnType) {
+            if(returnType == void.class) {
+                op(POP);
+                op(RETURN);
+            }
+            else if(returnType == Object.class) {
+                op(ARETURN);
+            }
+            else if(!returnType.isPrimitive()) {
+                op(CHECKCAST, constantPool.classRef(getInternalName(returnType)));
+                op(ARETURN);
+            }
+            else {
+                Class<?> wrapper = getWrapper(returnType);
+                op(CHECKCAST, constantPool.classRef(getInternalName(wrapper)));
+                op(INVOKEVIRTUAL, constantPool.methodRef(getInternalName(wrapper), returnType.getName() + "Value",
+                        "()" + getDescriptor(returnType)));
+                if(returnType == long.class) {
+                    op(LRETURN);
+                }
+                else if(returnType == float.class) {
+                    op(FRETURN);
+                }
+                else if(returnType == double.class) {
+                    op(DRETURN);
+                }
+                else {
+                    op(IRETURN);
+                }
+            }
+        }
+
+        void throwObjectStorageException(String message) {
+            String exception = getInternalName(ObjectStorageException.class);
+            op(NEW, constantPool.classRef(exception));
+            op(DUP);
+            op(LDC_W, constantPool.string(message));
+            op(INVOKESPECIAL, constantPool.methodRef(exception, "<init>", "(Ljava/lang/String;)V"));
+            op(ATHROW);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
+    }
+
+    private static Class<?> getWrapper(Class<?> primitiveType) {
+        if(primitiveType == boolean.class) {
+            return Boolean.class;
+        }
+        else if(primitiveType == byte.class) {
+            return Byte.class;
+        }
+        else if(primitiveType == char.class) {
+            return Character.class;
+        }
+        else if(primitiveType == short.class) {
+            return Short.class;
+        }
+        else if(primitiveType == int.class) {
+            return Integer.class;
+        }
+        else if(primitiveType == long.class) {
+            return Long.class;
+        }
+        else if(primitiveType == float.class) {
+            return Float.class;
+        }
+        return Double.class;
+    }
+
+    /**
+     * The constant pool of the class, each constant is only added once
+     */
+    private static class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int CLASS = 7;
+        private static final int STRING = 8;
+        private static final int FIELD_REF = 9;
+        private static final int METHOD_REF = 10;
+        private static final int INTERFACE_METHOD_REF = 11;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final Map<String, Integer> indexes;
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream out;
+        private int count;
+
+        ConstantPool() {
+            this.indexes = new HashMap<String, Integer>();
+            this.bytes = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(bytes);
+            this.count = 0;
+        }
+
+        int utf8(String value) {
+            Integer index = indexes.get(UTF8 + ":" + value);
+            if(index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            }
+            catch(IOException e) {
+                throw new ObjectStorageException("Couldn't write constant " + value, e);
+            }
+            return add(UTF8 + ":" + value);
+        }
+
+        int classRef(String internalName) {
+            return reference(CLASS, utf8(internalName));
+        }
+
+        int string(String value) {
+            return reference(STRING, utf8(value));
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return reference(FIELD_REF, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return reference(METHOD_REF, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) {
+            return reference(INTERFACE_METHOD_REF, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            return reference(NAME_AND_TYPE, utf8(name), utf8(descriptor));
+        }
+
+        /**
+         * Adds a constant made of references to other constants
+         */
+        private int reference(int tag, int... references) {
+            StringBuilder key = new StringBuilder().append(tag);
+            for(int reference: references) {
+                key.append(":").append(reference);
+            }
+            Integer index = indexes.get(key.toString());
+            if(index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                for(int reference: references) {
+                    out.writeShort(reference);
+                }
+            }
+            catch(IOException e) {
+                throw new ObjectStorageException("Couldn't write constant " + key, e);
+            }
+            return add(key.toString());
+        }
+
+        private int add(String key) {
+            int index = ++count;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count + 1);
+            bytes.writeTo(target);
+        }
+    }
+}
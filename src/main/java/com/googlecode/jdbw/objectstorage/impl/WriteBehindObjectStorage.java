@@ -0,0 +1,435 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.AbstractExternalObjectStorage;
+import com.googlecode.jdbw.objectstorage.ObjectStorage;
+import com.googlecode.jdbw.objectstorage.ObjectStorageException;
+import com.googlecode.jdbw.objectstorage.Storable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Object storage that updates the local storage right away and writes the
+ * changes to the remote storage later, on a background thread. Compared to
+ * {@code CachedRemoteObjectStorage}, {@code put} and {@code remove} only
+ * touch the local storage and a queue, so they return without waiting for
+ * the remote storage; the background thread picks up what has been queued,
+ * keeps only the last change to each object and sends the changes to the
+ * remote storage as one {@code putAll} and one {@code remove} per type.
+ * <p>
+ * The background thread wakes up once per flush interval, so the interval
+ * decides how many changes are collected into each batch. The queue has a
+ * fixed capacity; when it is full, {@code put} and {@code remove} wake the
+ * background thread and wait until it has made room, so a remote storage
+ * that can't keep up slows the writers down instead of filling up the heap.
+ * <p>
+ * The remote reads ({@code remoteGet..}, {@code remoteContains} and so on)
+ * and {@code removeAll} call {@code flush()} first, so they always see the
+ * changes made through this object storage. If writing to the remote
+ * storage fails, the changes that weren't written are kept and tried again
+ * on the next round, together with anything queued since, up to a maximum
+ * number of attempts (by default 3). A change that still can't be written
+ * after that is dropped, and the error is logged and thrown from the next
+ * call to {@code flush()}.
+ * <p>
+ * {@code removeAll} and the remote reads that copy what they read into the
+ * local storage hold the lock that {@code put} and {@code remove} take, from
+ * the flush until the local storage has been updated, so that a change made
+ * in the meantime isn't overwritten by the older state of the remote storage.
+ * Changes made while such a call is running wait for it to finish.
+ *
+ * @author Martin Berglund
+ */
+public class WriteBehindObjectStorage extends AbstractExternalObjectStorage {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindObjectStorage.class);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private final ObjectStorage remoteObjectStorage;
+    private final Queue<Change> queue;
+    private final Semaphore freeSlots;
+    private final AtomicInteger pendingChanges;
+    private final AtomicLong flushedChanges;
+    private final AtomicLong remoteBatches;
+    private final Object flushLock;
+    private final Object changeLock;
+    private final long flushIntervalMillis;
+    private final Thread flusher;
+    private volatile int maxAttempts;
+    private volatile boolean running;
+    private RuntimeException flushError;
+
+    public WriteBehindObjectStorage(ObjectStorage remoteObjectStorage, ObjectStorage localCache) {
+        this(remoteObjectStorage, localCache, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public WriteBehindObjectStorage(
+            ObjectStorage remoteObjectStorage,
+            ObjectStorage localCache,
+            int queueCapacity,
+            long flushInterval,
+            TimeUnit unit) {
+        super(localCache);
+        if(queueCapacity < 1) {
+            throw new IllegalArgumentException("Illegal queue capacity " + queueCapacity);
+        }
+        this.remoteObjectStorage = remoteObjectStorage;
+        this.queue = new ConcurrentLinkedQueue<Change>();
+        this.freeSlots = new Semaphore(queueCapacity);
+        this.pendingChanges = new AtomicInteger(0);
+        this.flushedChanges = new AtomicLong(0);
+        this.remoteBatches = new AtomicLong(0);
+        this.flushLock = new Object();
+        this.changeLock = new Object();
+        this.flushIntervalMillis = Math.max(1, unit.toMillis(flushInterval));
+        this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        this.running = true;
+        this.flushError = null;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "jdbw-write-behind-" + THREAD_COUNTER.incrementAndGet());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public <O extends Storable> void register(Class<O> objectType) {
+        remoteObjectStorage.register(objectType);
+        getLocalStorage().register(objectType);
+    }
+
+    @Override
+    public <O extends Storable> O put(O object) {
+        synchronized(changeLock) {
+            O stored = getLocalStorage().put(object);
+            enqueue(new Change(getStorableTypeFromObject(object), object.getId(), object));
+            return stored;
+        }
+    }
+
+    @Override
+    public <O extends Storable> List<O> putAll(Collection<O> objects) {
+        synchronized(changeLock) {
+            List<O> stored = getLocalStorage().putAll(objects);
+            for(O object: objects) {
+                if(object != null) {
+                    enqueue(new Change(getStorableTypeFromObject(object), object.getId(), object));
+                }
+            }
+            return stored;
+        }
+    }
+
+    @Override
+    public <K, O extends Storable<K>> void remove(Class<O> objectType, Collection<K> ids) {
+        synchronized(changeLock) {
+            localRemove(objectType, ids);
+            for(K id: ids) {
+                enqueue(new Change(objectType, id, null));
+            }
+        }
+    }
+
+    @Override
+    public <O extends Storable> void removeAll(Class<O> objectType) {
+        synchronized(changeLock) {
+            localRemoveAll(objectType);
+            flush();
+            remoteObjectStorage.removeAll(objectType);
+        }
+    }
+
+    @Override
+    public <O extends Storable> boolean remoteContains(O object) {
+        flush();
+        return remoteObjectStorage.contains(object);
+    }
+
+    @Override
+    public <K, O extends Storable<K>> boolean remoteContains(Class<O> type, K key) {
+        flush();
+        return remoteObjectStorage.contains(type, key);
+    }
+
+    @Override
+    public <K, O extends Storable<K>> List<O> remoteGetSome(Class<O> type, Collection<K> keys) {
+        synchronized(changeLock) {
+            flush();
+            List<O> objects = remoteObjectStorage.getSome(type, keys);
+            localPut(objects);
+            return objects;
+        }
+    }
+
+    @Override
+    public <O extends Storable> List<O> remoteGetAll(Class<O> type) {
+        //A change made between the flush and the local update would be wiped out by the remote snapshot
+        synchronized(changeLock) {
+            flush();
+            List<O> objects = remoteObjectStorage.getAll(type);
+            localRemoveAll(type);
+            localPut(objects);
+            return objects;
+        }
+    }
+
+    @Override
+    public <O extends Storable> int remoteGetSize(Class<O> type) {
+        flush();
+        return remoteObjectStorage.getSize(type);
+    }
+
+    /**
+     * Sets how many times the background thread tries to write a change to the remote storage before it gives up
+     * on it
+     * @param maxAttempts Maximum number of attempts, 1 to never retry
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if(maxAttempts < 1) {
+            throw new IllegalArgumentException("Illegal maximum number of attempts " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Writes every change queued so far to the remote storage, without waiting for the flush interval, and waits
+     * until this is done
+     * @throws ObjectStorageException If changes had to be dropped because writing them to the remote storage kept
+     * failing since the last call to flush()
+     */
+    public void flush() {
+        synchronized(flushLock) {
+            while(pendingChanges.get() > 0) {
+                //Also wakes the background thread up for the next attempt if the last one failed
+                LockSupport.unpark(flusher);
+                try {
+                    flushLock.wait(100);
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ObjectStorageException("Interrupted while waiting for the write-behind queue to drain", e);
+                }
+            }
+            if(flushError != null) {
+                RuntimeException error = flushError;
+                flushError = null;
+                throw new ObjectStorageException("Writing queued changes to the remote storage failed", error);
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining changes to the remote storage and stops the background thread
+     */
+    public void close() {
+        running = false;
+        flush();
+    }
+
+    /**
+     * @return Number of changes waiting to be written to the remote storage
+     */
+    public int getPendingChanges() {
+        return pendingChanges.get();
+    }
+
+    /**
+     * @return Number of changes taken off the queue so far, including the ones replaced by a later change to the
+     * same object
+     */
+    public long getFlushedChanges() {
+        return flushedChanges.get();
+    }
+
+    /**
+     * @return Number of {@code putAll} and {@code remove} calls made on the remote storage
+     */
+    public long getRemoteBatches() {
+        return remoteBatches.get();
+    }
+
+    private void enqueue(Change change) {
+        if(!running) {
+            throw new ObjectStorageException("WriteBehindObjectStorage has been closed");
+        }
+        if(!freeSlots.tryAcquire()) {
+            LockSupport.unpark(flusher);
+            freeSlots.acquireUninterruptibly();
+        }
+        pendingChanges.incrementAndGet();
+        queue.add(change);
+    }
+
+    private void flushLoop() {
+        //Changes that failed to be written and will be tried again; they still count as pending and hold their slots
+        List<Change> retries = new ArrayList<Change>();
+        while(running || pendingChanges.get() > 0) {
+            //Wait for the interval first, also when just started, so that the first batch isn't only the first change
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            List<Change> changes = new ArrayList<Change>(retries);
+            retries.clear();
+            Change change;
+            while((change = queue.poll()) != null) {
+                changes.add(change);
+            }
+            if(changes.isEmpty()) {
+                continue;
+            }
+            List<Change> unwritten = new ArrayList<Change>();
+            try {
+                writeToRemote(changes, unwritten);
+            }
+            catch(RuntimeException e) {
+                int dropped = 0;
+                for(Change failed: unwritten) {
+                    if(++failed.attempts < maxAttempts) {
+                        retries.add(failed);
+                    }
+                    else {
+                        dropped++;
+                    }
+                }
+                if(dropped > 0) {
+                    LOGGER.error("Unable to write " + dropped + " queued changes to the remote storage, giving up " +
+                            "on them", e);
+                    synchronized(flushLock) {
+                        flushError = e;
+                    }
+                }
+                else {
+                    LOGGER.warn("Unable to write " + unwritten.size() + " queued changes to the remote storage, " +
+                            "will try again", e);
+                }
+            }
+            finally {
+                int done = changes.size() - retries.size();
+                flushedChanges.addAndGet(done);
+                pendingChanges.addAndGet(-done);
+                freeSlots.release(done);
+                synchronized(flushLock) {
+                    flushLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the changes to the remote storage
+     * @param changes Changes to write, in the order they were made
+     * @param unwritten If writing fails, this list is filled with the changes that weren't written
+     */
+    @SuppressWarnings("unchecked")
+    private void writeToRemote(List<Change> changes, List<Change> unwritten) {
+        //Keep only the last change to each object, grouped by type in the order the types first appear
+        Map<Class, Map<Object, Change>> byType = new LinkedHashMap<Class, Map<Object, Change>>();
+        for(Change change: changes) {
+            Map<Object, Change> ofType = byType.get(change.type);
+            if(ofType == null) {
+                ofType = new LinkedHashMap<Object, Change>();
+                byType.put(change.type, ofType);
+            }
+            //Objects without an id yet (to be assigned by the remote storage) are never the same object
+            Object key = change.id != null ? change.id : new Object();
+            ofType.remove(key);
+            ofType.put(key, change);
+        }
+
+        //One remove and one putAll per type
+        List<List<Change>> batches = new ArrayList<List<Change>>();
+        for(Map<Object, Change> ofType: byType.values()) {
+            List<Change> toPut = new ArrayList<Change>();
+            List<Change> toRemove = new ArrayList<Change>();
+            for(Change change: ofType.values()) {
+                if(change.object != null) {
+                    toPut.add(change);
+                }
+                else {
+                    toRemove.add(change);
+                }
+            }
+            if(!toRemove.isEmpty()) {
+                batches.add(toRemove);
+            }
+            if(!toPut.isEmpty()) {
+                batches.add(toPut);
+            }
+        }
+
+        for(int i = 0; i < batches.size(); i++) {
+            List<Change> batch = batches.get(i);
+            try {
+                if(batch.get(0).object != null) {
+                    List<Storable> objects = new ArrayList<Storable>();
+                    for(Change change: batch) {
+                        objects.add(change.object);
+                    }
+                    remoteObjectStorage.putAll(objects);
+                }
+                else {
+                    List<Object> ids = new ArrayList<Object>();
+                    for(Change change: batch) {
+                        ids.add(change.id);
+                    }
+                    remoteObjectStorage.remove(batch.get(0).type, ids);
+                }
+                remoteBatches.incrementAndGet();
+            }
+            catch(RuntimeException e) {
+                for(int j = i; j < batches.size(); j++) {
+                    unwritten.addAll(batches.get(j));
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static class Change {
+        private final Class type;
+        private final Object id;
+        private final Storable object;
+        private int attempts;
+
+        Change(Class type, Object id, Storable object) {
+            this.type = type;
+            this.id = id;
+            this.object = object;
+            this.attempts = 0;
+        }
+    }
+}
@@ -39,7 +39,7 @@ public abstract class AbstractDatabaseType implements DatabaseServerType {
 
     @Override
     public SQLExecutor createExecutor(Connection connection) {
-        return new SQLExecutorImpl(connection) {};
+        return new SQLExecutorImpl(connection, getSQLDialect()) {};
     }
 
     @Override
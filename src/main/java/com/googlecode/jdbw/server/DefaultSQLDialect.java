@@ -147,6 +147,17 @@ public class DefaultSQLDialect implements SQLDialect {
         return "use " + escapeIdentifier(catalogName);
     }
 
+    @Override
+    public int getMaxParametersPerStatement() {
+        //Sybase ASE allows 2048 parameters, SQL Server 2100; stay below both
+        return 2000;
+    }
+
+    @Override
+    public boolean isMultiRowInsertSupported() {
+        return false;
+    }
+
     @Override
     public boolean isCompatible(int fromSqlType, int toSqlType) {
         if(fromSqlType == toSqlType) {
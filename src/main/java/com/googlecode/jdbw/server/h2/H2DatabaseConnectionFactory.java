@@ -25,7 +25,8 @@ import com.googlecode.jdbw.util.OneSharedConnectionDataSource;
 
 /**
  * Connection factory for H2 that automatically deals with certain connections not supporting more than one simultaneous
- * connection.
+ * connection. For those, {@code connect()} and {@code connect(DataSourceFactory)} will always use a
+ * {@code OneSharedConnectionDataSource} instead of a pool.
  * @author Martin Berglund
  */
 public class H2DatabaseConnectionFactory extends AuthenticatingDatabaseConnectionFactory {
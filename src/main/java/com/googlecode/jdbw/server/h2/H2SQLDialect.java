@@ -41,6 +41,16 @@ public class H2SQLDialect extends DefaultSQLDialect {
     public String getUseCatalogStatement(String catalogName) {
         return null;
     }
+
+    @Override
+    public int getMaxParametersPerStatement() {
+        return 32767;
+    }
+
+    @Override
+    public boolean isMultiRowInsertSupported() {
+        return true;
+    }
     
     @Override
     public String[] getCreateTableStatement(String schemaName, String name, List<Column> columns, List<Index> indexes) {
@@ -167,6 +167,19 @@ class MySQLDialect extends DefaultSQLDialect {
     public String getDefaultSchemaName() {
         return "schema";
     }
+
+    /**
+     * The MySQL protocol stores the number of parameters of a prepared statement in two bytes
+     */
+    @Override
+    public int getMaxParametersPerStatement() {
+        return 65535;
+    }
+
+    @Override
+    public boolean isMultiRowInsertSupported() {
+        return true;
+    }
     
     //This may be a column from any other database so don't make any assumptions!
     private String getMySQLDatatype(Column column, boolean decimalDates) {
@@ -18,6 +18,7 @@
  */
 package com.googlecode.jdbw.server.mysql;
 
+import com.googlecode.jdbw.SQLDialect;
 import com.googlecode.jdbw.impl.SQLExecutorImpl;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -33,8 +34,8 @@ import java.sql.Statement;
  */
 class MySQLExecutor extends SQLExecutorImpl {
 
-    MySQLExecutor(Connection connection) {
-        super(connection);
+    MySQLExecutor(Connection connection, SQLDialect sqlDialect) {
+        super(connection, sqlDialect);
     }
 
     @Override
@@ -44,6 +45,18 @@ class MySQLExecutor extends SQLExecutorImpl {
         return ps;
     }
 
+    /**
+     * The MySQL driver only streams results with a fetch size of Integer.MIN_VALUE, any other fetch size makes it read
+     * the whole result into memory. Statements from prepareGeneralStatement are always streaming, other statements are
+     * made streaming when a fetch size is requested.
+     */
+    @Override
+    protected void setFetchSize(PreparedStatement statement, int fetchSize) throws SQLException {
+        if(fetchSize > 0) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+        }
+    }
+
     @Override
     protected PreparedStatement prepareInsertStatement(String SQL) throws SQLException {
         return connection.prepareStatement(SQL, Statement.RETURN_GENERATED_KEYS);
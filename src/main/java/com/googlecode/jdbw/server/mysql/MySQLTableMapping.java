@@ -29,13 +29,22 @@ import com.googlecode.jdbw.objectstorage.impl.DelegatingTableMapping;
 class MySQLTableMapping extends DelegatingTableMapping {
 
     private final MySQLDialect dialect;
+    private volatile String insertOrUpdate;
     
     MySQLTableMapping(TableMapping backend) {
         super(backend);
         dialect = new MySQLDialect();
+        insertOrUpdate = null;
     }
 
     String getMySQLInsertOrUpdate() {
+        if(insertOrUpdate == null) {
+            insertOrUpdate = buildMySQLInsertOrUpdate();
+        }
+        return insertOrUpdate;
+    }
+
+    private String buildMySQLInsertOrUpdate() {
         StringBuilder sb = new StringBuilder("INSERT INTO ");
         sb.append(dialect.escapeIdentifier(getTableName()));
         sb.append(" (");
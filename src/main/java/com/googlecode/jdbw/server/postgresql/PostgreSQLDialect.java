@@ -11,4 +11,15 @@ public class PostgreSQLDialect extends DefaultSQLDialect {
     public String getUseCatalogStatement(String catalogName) {
         return null;
     }
+
+    @Override
+    public int getMaxParametersPerStatement() {
+        //The driver sends the number of parameters as a signed 16-bit integer
+        return 32767;
+    }
+
+    @Override
+    public boolean isMultiRowInsertSupported() {
+        return true;
+    }
 }
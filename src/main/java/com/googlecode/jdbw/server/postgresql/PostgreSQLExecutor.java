@@ -0,0 +1,67 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.server.postgresql;
+
+import com.googlecode.jdbw.SQLDialect;
+import com.googlecode.jdbw.impl.SQLExecutorImpl;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Special PostgreSQL SQL executor that makes streaming queries work. The
+ * PostgreSQL driver ignores the fetch size and reads the whole result into
+ * memory unless the query runs inside a transaction, since the server side
+ * cursor it uses for fetching in chunks is closed on commit. For queries with a
+ * fetch size running in auto-commit mode, auto-commit is turned off for the
+ * duration of the query and the query is committed (or rolled back, if it
+ * failed) when done.
+ *
+ * @author Martin Berglund
+ */
+class PostgreSQLExecutor extends SQLExecutorImpl {
+
+    PostgreSQLExecutor(Connection connection, SQLDialect sqlDialect) {
+        super(connection, sqlDialect);
+    }
+
+    @Override
+    protected boolean beginStreaming() throws SQLException {
+        if(!connection.getAutoCommit()) {
+            //Already in a transaction, the cursor will work as it is
+            return false;
+        }
+        connection.setAutoCommit(false);
+        return true;
+    }
+
+    @Override
+    protected void endStreaming(boolean successful) throws SQLException {
+        try {
+            if(successful) {
+                connection.commit();
+            }
+            else {
+                connection.rollback();
+            }
+        }
+        finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
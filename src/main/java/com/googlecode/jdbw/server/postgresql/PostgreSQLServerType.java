@@ -19,7 +19,9 @@
 package com.googlecode.jdbw.server.postgresql;
 
 import com.googlecode.jdbw.SQLDialect;
+import com.googlecode.jdbw.SQLExecutor;
 import com.googlecode.jdbw.server.AbstractDatabaseType;
+import java.sql.Connection;
 
 /**
  * DatabaseServerType implementation for PostgreSQL
@@ -37,6 +39,11 @@ public class PostgreSQLServerType extends AbstractDatabaseType {
         return new PostgreSQLDialect();
     }
     
+    @Override
+    public SQLExecutor createExecutor(Connection connection) {
+        return new PostgreSQLExecutor(connection, getSQLDialect());
+    }
+
     @Override
     public String getName() {
         return "PostgreSQL";
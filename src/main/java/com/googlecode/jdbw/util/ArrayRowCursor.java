@@ -0,0 +1,94 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.RowCursor;
+import java.math.BigDecimal;
+
+/**
+ * {@code RowCursor} on top of a row that has already been read into an array,
+ * used when a {@code RowCursorHandler} is given rows through
+ * {@code nextRow(Object[])}.
+ *
+ * @author Martin Berglund
+ */
+class ArrayRowCursor implements RowCursor {
+
+    private final Object[] row;
+
+    ArrayRowCursor(Object[] row) {
+        this.row = row;
+    }
+
+    @Override
+    public int getNumberOfColumns() {
+        return row.length;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return row[columnIndex] == null;
+    }
+
+    @Override
+    public Object getObject(int columnIndex) {
+        return row[columnIndex];
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        return row[columnIndex] == null ? null : row[columnIndex].toString();
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return row[columnIndex] == null ? 0 : toNumber(columnIndex).intValue();
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return row[columnIndex] == null ? 0 : toNumber(columnIndex).longValue();
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return row[columnIndex] == null ? 0 : toNumber(columnIndex).doubleValue();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return row.clone();
+    }
+
+    private Number toNumber(int columnIndex) {
+        Object value = row[columnIndex];
+        if(value instanceof Number) {
+            return (Number)value;
+        }
+        if(value instanceof String) {
+            try {
+                return new BigDecimal(((String)value).trim());
+            }
+            catch(NumberFormatException e) {
+            }
+        }
+        throw new ClassCastException("Column " + columnIndex + " has value " + value + " of type " +
+                value.getClass().getName() + " which is not a number");
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.BatchUpdateHandler;
+import com.googlecode.jdbw.ExecuteResultHandler;
+import com.googlecode.jdbw.SQLExecutor;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the calls of an {@code SQLExecutor} on a thread pool and hands back a
+ * {@code Future} for each call instead of blocking the caller. This lets you
+ * send many independent queries at once, without having to set up and manage
+ * threads for it yourself.
+ * <p>
+ * The number of calls running at the same time is limited, so that a burst of
+ * calls doesn't take every connection out of the data source; calls above the
+ * limit wait for a running call to finish. By default, the calls are run on a
+ * pool of daemon threads owned by the {@code AsyncSQLExecutor}, with one
+ * thread per allowed concurrent call, but you can also pass in an
+ * {@code ExecutorService} of your own.
+ * <p>
+ * Since the calls are running on different threads, the {@code SQLExecutor}
+ * must be safe to use from several threads at once, which an
+ * {@code AutoExecutor} is but a {@code DatabaseTransaction} is not.
+ *
+ * @see AsyncSQLWorker
+ * @see AutoExecutor
+ * @author Martin Berglund
+ */
+public class AsyncSQLExecutor {
+
+    /**
+     * Default limit of calls running at the same time
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 16;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private final SQLExecutor executor;
+    private final ExecutorService executorService;
+    private final boolean ownsExecutorService;
+    private final Semaphore concurrentCalls;
+
+    /**
+     * Creates an {@code AsyncSQLExecutor} with its own thread pool allowing
+     * {@code DEFAULT_MAX_CONCURRENT_CALLS} calls at the same time
+     * @param executor Executor to run the calls through, usually an {@code AutoExecutor}
+     */
+    public AsyncSQLExecutor(SQLExecutor executor) {
+        this(executor, DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    /**
+     * Creates an {@code AsyncSQLExecutor} with its own thread pool
+     * @param executor Executor to run the calls through, usually an {@code AutoExecutor}
+     * @param maxConcurrentCalls How many calls are allowed to run at the same time
+     */
+    public AsyncSQLExecutor(SQLExecutor executor, int maxConcurrentCalls) {
+        this(executor, Executors.newFixedThreadPool(checkMaxConcurrentCalls(maxConcurrentCalls), new DaemonThreadFactory()),
+                true, maxConcurrentCalls);
+    }
+
+    /**
+     * Creates an {@code AsyncSQLExecutor} running the calls on an {@code ExecutorService} supplied by the caller. The
+     * {@code ExecutorService} isn't shut down by {@code shutdown()}, this is left to the caller.
+     * @param executor Executor to run the calls through, usually an {@code AutoExecutor}
+     * @param executorService Where to run the calls
+     * @param maxConcurrentCalls How many calls are allowed to run at the same time
+     */
+    public AsyncSQLExecutor(SQLExecutor executor, ExecutorService executorService, int maxConcurrentCalls) {
+        this(executor, executorService, false, checkMaxConcurrentCalls(maxConcurrentCalls));
+    }
+
+    private AsyncSQLExecutor(SQLExecutor executor, ExecutorService executorService, boolean ownsExecutorService, int maxConcurrentCalls) {
+        this.executor = executor;
+        this.executorService = executorService;
+        this.ownsExecutorService = ownsExecutorService;
+        this.concurrentCalls = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    private static int checkMaxConcurrentCalls(int maxConcurrentCalls) {
+        if(maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Illegal number of concurrent calls " + maxConcurrentCalls);
+        }
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return The executor the calls are run through
+     */
+    public SQLExecutor getSQLExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs {@code SQLExecutor.execute(..)} in the background
+     * @param SQL SQL code to execute
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Future which completes when the statement has been executed, or fails with the {@code SQLException}
+     */
+    public Future<Void> execute(String SQL, Object... parameters) {
+        return execute(new ExecuteResultHandlerAdapter(), SQL, parameters);
+    }
+
+    /**
+     * Runs {@code SQLExecutor.execute(..)} in the background. The callbacks of the handler are called on the thread
+     * running the query.
+     * @param handler Callback interface that will receive the result of the query
+     * @param SQL SQL code to execute
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Future which completes when the handler has received the whole result, or fails with the
+     * {@code SQLException}
+     */
+    public Future<Void> execute(ExecuteResultHandler handler, String SQL, Object... parameters) {
+        return execute(handler, 0, 0, 0, SQL, parameters);
+    }
+
+    /**
+     * Runs {@code SQLExecutor.execute(..)} in the background. The callbacks of the handler are called on the thread
+     * running the query.
+     * @param handler Callback interface that will receive the result of the query
+     * @param maxRowsToFetch How many rows, at most, to fetch from the remote server, or 0 for no limit
+     * @param queryTimeoutInSeconds Timeout for the query, in seconds, or 0 for no timeout
+     * @param fetchSize How many rows to fetch from the server at a time, or 0 to use the driver default
+     * @param SQL SQL code to execute
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Future which completes when the handler has received the whole result, or fails with the
+     * {@code SQLException}
+     */
+    public Future<Void> execute(final ExecuteResultHandler handler, final int maxRowsToFetch, final int queryTimeoutInSeconds,
+            final int fetchSize, final String SQL, final Object... parameters) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                executor.execute(handler, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs {@code SQLExecutor.batchWrite(..)} in the background
+     * @param SQL SQL to use for all queries, use ? for the parameter substitution
+     * @param parameters List of parameters to use, one array per row
+     * @return Future which completes when the batch has been written, or fails with the {@code SQLException}
+     */
+    public Future<Void> batchWrite(String SQL, List<Object[]> parameters) {
+        return batchWrite(new BatchUpdateHandlerAdapter(), SQL, parameters);
+    }
+
+    /**
+     * Runs {@code SQLExecutor.batchWrite(..)} in the background. The callbacks of the handler are called on the thread
+     * writing the batch.
+     * @param handler Callback interface that will receive the result of the batch
+     * @param SQL SQL to use for all queries, use ? for the parameter substitution
+     * @param parameters List of parameters to use, one array per row
+     * @return Future which completes when the batch has been written, or fails with the {@code SQLException}
+     */
+    public Future<Void> batchWrite(final BatchUpdateHandler handler, final String SQL, final List<Object[]> parameters) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                executor.batchWrite(handler, SQL, parameters);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs a task in the background, counting it towards the limit of concurrent calls. Use this when you want to run
+     * several calls on the {@code SQLExecutor} as one task.
+     * @param task Task to run
+     * @param <V> Type of the value returned by the task
+     * @return Future which completes with the value returned by the task
+     */
+    public <V> Future<V> submit(final Callable<V> task) {
+        return executorService.submit(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                concurrentCalls.acquire();
+                try {
+                    return task.call();
+                }
+                finally {
+                    concurrentCalls.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new calls; the calls already submitted are still run. If the thread pool was supplied by the
+     * caller, this method does nothing.
+     */
+    public void shutdown() {
+        if(ownsExecutorService) {
+            executorService.shutdown();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jdbw-async-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * The asynchronous version of {@code SQLWorker}; every method sends the query
+ * in the background through an {@code AsyncSQLExecutor} and returns a
+ * {@code Future} for the result. If the query fails, the {@code Future} fails
+ * with the {@code SQLException} as the cause of the
+ * {@code ExecutionException}.
+ *
+ * @see SQLWorker
+ * @author Martin Berglund
+ */
+public class AsyncSQLWorker {
+
+    private final AsyncSQLExecutor asyncExecutor;
+    private final SQLWorker worker;
+
+    /**
+     * Creates a new AsyncSQLWorker sending queries through an {@code AsyncSQLExecutor}
+     * @param asyncExecutor Executor to send the queries through
+     */
+    public AsyncSQLWorker(AsyncSQLExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        this.worker = new SQLWorker(asyncExecutor.getSQLExecutor());
+    }
+
+    /**
+     * @see SQLWorker#query(String, Object...)
+     */
+    public Future<List<Object[]>> query(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<List<Object[]>>() {
+            @Override
+            public List<Object[]> call() throws Exception {
+                return worker.query(SQL, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see SQLWorker#queryAsStrings(String, Object...)
+     */
+    public Future<List<String[]>> queryAsStrings(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<List<String[]>>() {
+            @Override
+            public List<String[]> call() throws Exception {
+                return worker.queryAsStrings(SQL, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see SQLWorker#write(String, Object...)
+     */
+    public Future<Void> write(String SQL, Object... parameters) {
+        return asyncExecutor.execute(SQL, parameters);
+    }
+
+    /**
+     * @see SQLWorker#insert(String, Object...)
+     */
+    public Future<Object> insert(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return worker.insert(SQL, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see SQLWorker#top(String, Object...)
+     */
+    public Future<Object[]> top(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<Object[]>() {
+            @Override
+            public Object[] call() throws Exception {
+                return worker.top(SQL, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see SQLWorker#leftColumn(String, Object...)
+     */
+    public Future<List<Object>> leftColumn(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<List<Object>>() {
+            @Override
+            public List<Object> call() throws Exception {
+                return worker.leftColumn(SQL, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see SQLWorker#topLeftValue(String, Object...)
+     */
+    public Future<Object> topLeftValue(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return worker.topLeftValue(SQL, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see SQLWorker#topLeftValueAsString(String, Object...)
+     */
+    public Future<String> topLeftValueAsString(final String SQL, final Object... parameters) {
+        return asyncExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return worker.topLeftValueAsString(SQL, parameters);
+            }
+        });
+    }
+}
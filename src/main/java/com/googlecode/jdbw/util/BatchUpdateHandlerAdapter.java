@@ -19,17 +19,17 @@
 
 package com.googlecode.jdbw.util;
 
-import com.googlecode.jdbw.BatchUpdateHandler;
+import com.googlecode.jdbw.ChunkedBatchUpdateHandler;
 
 import java.sql.SQLWarning;
 
 /**
- * This is a convenience class that implements BatchUpdateHandler and provides a default method implementation for this
- * interface. You can then override only the methods that you care about.
+ * This is a convenience class that implements BatchUpdateHandler (and ChunkedBatchUpdateHandler) and provides a default
+ * method implementation for this interface. You can then override only the methods that you care about.
  *
  * @author Martin Berglund
  */
-public class BatchUpdateHandlerAdapter implements BatchUpdateHandler {
+public class BatchUpdateHandlerAdapter implements ChunkedBatchUpdateHandler {
     @Override
     public void onGeneratedKey(Object object) {
     }
@@ -41,4 +41,8 @@ public class BatchUpdateHandlerAdapter implements BatchUpdateHandler {
     @Override
     public void onBatchResult(int[] returnCodes) {
     }
+
+    @Override
+    public void onChunkCompleted(int chunkNumber, long totalRowsWritten) {
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of connection errors against a database and fails fast while the
+ * database is known to be down. After a number of consecutive connection
+ * errors the breaker opens and {@code allowRequest()} returns {@code false};
+ * once the open period has passed, one caller at a time is let through as a
+ * probe. A successful probe closes the breaker again, a failed one keeps it
+ * open for another period.
+ * <p>
+ * One breaker is meant to be shared by everything talking to the same
+ * database, all methods are thread-safe and don't take any locks.
+ *
+ * @author Martin Berglund
+ */
+public class CircuitBreaker {
+
+    /**
+     * Default number of consecutive connection errors before the breaker opens
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time in milliseconds to wait before letting a probe through an open breaker
+     */
+    public static final long DEFAULT_OPEN_MILLIS = 5000;
+
+    /**
+     * States of a circuit breaker
+     */
+    public static enum State {
+        /**
+         * Requests go through as normal
+         */
+        CLOSED,
+        /**
+         * The database is considered down, requests fail fast
+         */
+        OPEN,
+        /**
+         * A probe request has been let through to see if the database is back up
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicInteger consecutiveFailures;
+    private final AtomicLong nextProbeTime;
+    private volatile State state;
+
+    /**
+     * Creates a circuit breaker that opens after {@code DEFAULT_FAILURE_THRESHOLD} consecutive connection errors and
+     * stays open for {@code DEFAULT_OPEN_MILLIS} milliseconds
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a circuit breaker
+     * @param failureThreshold Number of consecutive connection errors that opens the breaker
+     * @param openTime How long to wait before letting a probe through an open breaker
+     * @param unit Unit of {@code openTime}
+     */
+    public CircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        if(failureThreshold < 1) {
+            throw new IllegalArgumentException("Illegal failure threshold " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = unit.toMillis(openTime);
+        this.consecutiveFailures = new AtomicInteger(0);
+        this.nextProbeTime = new AtomicLong(0);
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * @return Current state of the breaker
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Checks if a request should be sent to the database. If the breaker is
+     * open and the open period has passed, the calling thread is let through
+     * as the probe; if the probe never reports back, another one is let
+     * through after one more period.
+     * @return {@code true} if the request may go ahead, {@code false} if it
+     * should fail fast
+     */
+    public boolean allowRequest() {
+        if(state == State.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long probeTime = nextProbeTime.get();
+        if(now >= probeTime && nextProbeTime.compareAndSet(probeTime, now + openMillis)) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports that the database could be reached, which closes the breaker
+     */
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        if(state != State.CLOSED) {
+            state = State.CLOSED;
+        }
+    }
+
+    /**
+     * Reports a connection error, which opens the breaker if the threshold is
+     * reached or if the request was a probe
+     */
+    public void onFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        if(state == State.HALF_OPEN || failures >= failureThreshold) {
+            nextProbeTime.set(System.currentTimeMillis() + openMillis);
+            state = State.OPEN;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + state + ", " + consecutiveFailures.get() + " consecutive failures}";
+    }
+}
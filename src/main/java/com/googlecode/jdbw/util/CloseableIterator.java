@@ -0,0 +1,45 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.util.Iterator;
+
+/**
+ * An iterator holding on to resources, such as an open result set and the
+ * connection it was read from, that need to be released when you're done with
+ * it. The resources are released automatically once {@code hasNext()} has
+ * returned {@code false}; if you stop iterating before that, you must call
+ * {@code close()} yourself.
+ * <p>
+ * Since {@code Iterator} methods can't throw {@code SQLException}, database
+ * errors while iterating are thrown as {@code IllegalStateException} with the
+ * {@code SQLException} as the cause; the iterator is closed when this
+ * happens.
+ *
+ * @param <T> Type of the elements
+ * @author Martin Berglund
+ */
+public interface CloseableIterator<T> extends Iterator<T> {
+    /**
+     * Releases the resources held by the iterator, after which
+     * {@code hasNext()} returns {@code false}. Calling this more than once has
+     * no effect.
+     */
+    void close();
+}
@@ -18,8 +18,8 @@ abstract class DelegatingConnection implements Connection
     protected Connection _conn = null;
     protected boolean _closed = false;
     private boolean _cacheState = true;
-    private Boolean _autoCommitCached = null;
-    private Boolean _readOnlyCached = null;
+    protected Boolean _autoCommitCached = null;
+    protected Boolean _readOnlyCached = null;
 
     /**
      * Create a wrapper for the Connection which traces this
@@ -0,0 +1,125 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.RetryPolicy;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code RetryPolicy} that waits exponentially longer between each retry,
+ * up to a maximum delay. Each delay is shortened by a random fraction (the
+ * jitter) so that clients losing their connections at the same time don't
+ * retry in lockstep. Retrying stops after a maximum number of retries or when
+ * the next retry would start after the total retry budget has run out,
+ * whichever comes first.
+ * <p>
+ * With a multiplier of 1 and no jitter, this is the fixed interval retry that
+ * {@code AutoExecutor} has always used.
+ *
+ * @author Martin Berglund
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+    private final int maxRetries;
+    private final long maxRetryTimeMillis;
+    private final Random random;
+
+    /**
+     * Creates a retry policy starting at 100 milliseconds, doubling up to 10 seconds with 50% jitter, which gives up
+     * after retrying for one minute.
+     */
+    public ExponentialBackoffRetryPolicy() {
+        this(100, 10000, 2.0, 0.5, -1, 60000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a retry policy
+     * @param initialDelay Delay before the first retry
+     * @param maxDelay Longest delay between two retries
+     * @param multiplier How much longer to wait for each retry, must be at least 1
+     * @param jitter How large part of each delay, between 0 and 1, that may randomly be cut off
+     * @param maxRetries How many times to retry, -1 means unlimited
+     * @param maxRetryTime Total time to keep retrying, 0 means unlimited
+     * @param unit Unit of {@code initialDelay}, {@code maxDelay} and {@code maxRetryTime}
+     */
+    public ExponentialBackoffRetryPolicy(
+            long initialDelay,
+            long maxDelay,
+            double multiplier,
+            double jitter,
+            int maxRetries,
+            long maxRetryTime,
+            TimeUnit unit) {
+        if(multiplier < 1.0) {
+            throw new IllegalArgumentException("Illegal backoff multiplier " + multiplier);
+        }
+        if(jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("Illegal jitter " + jitter);
+        }
+        if(maxRetries < -1) {
+            throw new IllegalArgumentException("Illegal maximum number of retries " + maxRetries);
+        }
+        this.initialDelayMillis = unit.toMillis(initialDelay);
+        this.maxDelayMillis = Math.max(unit.toMillis(maxDelay), initialDelayMillis);
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.maxRetries = maxRetries;
+        this.maxRetryTimeMillis = unit.toMillis(maxRetryTime);
+        this.random = new Random();
+    }
+
+    /**
+     * Creates a retry policy waiting the same amount of time between all retries
+     * @param interval Delay before each retry
+     * @param unit Unit of {@code interval}
+     * @param maxRetries How many times to retry, -1 means unlimited
+     * @return Retry policy with a fixed interval
+     */
+    public static ExponentialBackoffRetryPolicy fixedInterval(long interval, TimeUnit unit, int maxRetries) {
+        return new ExponentialBackoffRetryPolicy(interval, interval, 1.0, 0.0, maxRetries, 0, unit);
+    }
+
+    @Override
+    public long getRetryDelay(int attempt, long elapsedMillis, SQLException error) {
+        if(maxRetries != -1 && attempt > maxRetries) {
+            return -1;
+        }
+        double delay = Math.min(initialDelayMillis * Math.pow(multiplier, attempt - 1), maxDelayMillis);
+        if(jitter > 0.0) {
+            delay -= delay * jitter * random.nextDouble();
+        }
+        long delayMillis = (long)delay;
+        if(maxRetryTimeMillis > 0 && elapsedMillis + delayMillis > maxRetryTimeMillis) {
+            return -1;
+        }
+        return delayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ExponentialBackoffRetryPolicy{" + initialDelayMillis + "ms to " + maxDelayMillis + "ms, x" + 
+                multiplier + ", jitter " + jitter + ", max " + maxRetries + " retries in " + maxRetryTimeMillis + "ms}";
+    }
+}
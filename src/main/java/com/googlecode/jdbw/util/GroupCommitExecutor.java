@@ -0,0 +1,389 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseTransaction;
+import com.googlecode.jdbw.TransactionIsolation;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects small writes from many threads and commits them together. With
+ * an {@code AutoExecutor}, every write is a transaction of its own and the
+ * server has to flush its log once per write; when many threads are writing
+ * at the same time, this is usually what limits the throughput. The
+ * {@code GroupCommitExecutor} instead hands the writes to a background
+ * thread, which waits a short while (or until enough rows have arrived),
+ * runs everything it got in one transaction, with all writes using the same
+ * SQL sent as one batch, and then commits once for all of them.
+ * <p>
+ * Every write gets a {@code Future}, which completes when the shared
+ * transaction has been committed. If the shared transaction fails because
+ * one of the statements was rejected, it is rolled back and the writes are
+ * retried one by one, each in a transaction of its own, so that only the
+ * futures of the writes which actually fail get the {@code SQLException}. If
+ * it fails because the connection to the server was lost, the futures of the
+ * whole group fail with that error right away, instead of every write
+ * running into the same problem on its own; it's up to the callers to
+ * submit them again.
+ * <p>
+ * Since writes with the same SQL are batched together, writes submitted
+ * without waiting for each other may reach the server in a different order
+ * than they were submitted in. If one write depends on another, wait for the
+ * future of the first one before submitting the second.
+ *
+ * @see AsyncSQLExecutor
+ * @author Martin Berglund
+ */
+public class GroupCommitExecutor {
+
+    /**
+     * Default time to wait for more writes after the first write of a group has arrived, in milliseconds
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+
+    /**
+     * Default number of rows at which the group is committed without waiting any longer
+     */
+    public static final int DEFAULT_MAX_GROUP_SIZE = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitExecutor.class);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final DatabaseConnection databaseConnection;
+    private final TransactionIsolation transactionIsolation;
+    private final long maxDelayNanos;
+    private final int maxGroupSize;
+    private final BlockingQueue<Write> queue;
+    private final Thread flusher;
+    private final Object submitLock;
+    private final AtomicLong groupCount;
+    private final AtomicLong writeCount;
+    private final AtomicLong retryCount;
+    private volatile boolean running;
+
+    /**
+     * Creates a {@code GroupCommitExecutor} using the default delay and group size
+     * @param databaseConnection Database to write to
+     */
+    public GroupCommitExecutor(DatabaseConnection databaseConnection) {
+        this(databaseConnection, TransactionIsolation.READ_COMMITTED, DEFAULT_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS,
+                DEFAULT_MAX_GROUP_SIZE);
+    }
+
+    /**
+     * Creates a {@code GroupCommitExecutor}
+     * @param databaseConnection Database to write to
+     * @param transactionIsolation Isolation level of the shared transactions
+     * @param maxDelay How long to wait for more writes after the first write of a group has arrived
+     * @param unit Unit of {@code maxDelay}
+     * @param maxGroupSize Number of rows at which the group is committed without waiting any longer
+     */
+    public GroupCommitExecutor(DatabaseConnection databaseConnection, TransactionIsolation transactionIsolation,
+            long maxDelay, TimeUnit unit, int maxGroupSize) {
+        if(maxDelay < 0) {
+            throw new IllegalArgumentException("Illegal delay " + maxDelay);
+        }
+        if(maxGroupSize < 1) {
+            throw new IllegalArgumentException("Illegal group size " + maxGroupSize);
+        }
+        this.databaseConnection = databaseConnection;
+        this.transactionIsolation = transactionIsolation;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.maxGroupSize = maxGroupSize;
+        this.queue = new LinkedBlockingQueue<Write>();
+        this.groupCount = new AtomicLong(0);
+        this.writeCount = new AtomicLong(0);
+        this.retryCount = new AtomicLong(0);
+        this.submitLock = new Object();
+        this.running = true;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "jdbw-group-commit-" + THREAD_COUNTER.incrementAndGet());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a write statement for the next group commit
+     * @param SQL SQL code to execute, must not return any result
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Future which completes when the write has been committed, or fails with the {@code SQLException}
+     */
+    public Future<Void> execute(String SQL, Object... parameters) {
+        return submit(new Write(SQL, Collections.singletonList(parameters.clone()), false));
+    }
+
+    /**
+     * Queues a batch of writes for the next group commit. All rows of the batch are committed, or fail, together.
+     * @param SQL SQL to use for all rows, use ? for the parameter substitution
+     * @param parameters List of parameters to use, one array per row
+     * @return Future which completes when the batch has been committed, or fails with the {@code SQLException}
+     */
+    public Future<Void> batchWrite(String SQL, List<Object[]> parameters) {
+        return submit(new Write(SQL, new ArrayList<Object[]>(parameters), true));
+    }
+
+    /**
+     * Stops accepting new writes; writes already queued are still committed
+     */
+    public void shutdown() {
+        synchronized(submitLock) {
+            running = false;
+        }
+    }
+
+    /**
+     * @return How many shared transactions have been committed
+     */
+    public long getGroupCount() {
+        return groupCount.get();
+    }
+
+    /**
+     * @return How many writes have been committed
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * @return How many writes had to be retried on their own after a shared transaction failed
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    private Future<Void> submit(Write write) {
+        //Checking and adding under the lock that shutdown() takes means that once the flusher has seen that it's shut
+        //down, nothing more can be added to the queue, so the flusher doesn't leave writes behind when it stops
+        synchronized(submitLock) {
+            if(!running) {
+                throw new IllegalStateException("GroupCommitExecutor has been shut down");
+            }
+            queue.add(write);
+        }
+        return write;
+    }
+
+    private void flushLoop() {
+        List<Write> group = new ArrayList<Write>();
+        while(running || !queue.isEmpty()) {
+            try {
+                Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                group.add(first);
+                int rows = first.rows.size();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while(rows < maxGroupSize) {
+                    Write next = queue.poll();
+                    if(next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if(remaining <= 0) {
+                            break;
+                        }
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if(next == null) {
+                            break;
+                        }
+                    }
+                    group.add(next);
+                    rows += next.rows.size();
+                }
+                commitGroup(group);
+            }
+            catch(InterruptedException e) {
+                LOGGER.warn("Group commit thread was interrupted", e);
+                commitGroup(group);
+            }
+            catch(RuntimeException e) {
+                LOGGER.error("Unexpected error in group commit thread", e);
+                for(Write write: group) {
+                    write.fail(e);
+                }
+            }
+            group.clear();
+        }
+    }
+
+    private void commitGroup(List<Write> group) {
+        Map<String, List<Write>> bySQL = new LinkedHashMap<String, List<Write>>();
+        for(Write write: group) {
+            if(write.isCancelled()) {
+                continue;
+            }
+            List<Write> writes = bySQL.get(write.SQL);
+            if(writes == null) {
+                writes = new ArrayList<Write>();
+                bySQL.put(write.SQL, writes);
+            }
+            writes.add(write);
+        }
+        if(bySQL.isEmpty()) {
+            return;
+        }
+
+        try {
+            DatabaseTransaction transaction = databaseConnection.beginTransaction(transactionIsolation);
+            try {
+                for(Map.Entry<String, List<Write>> entry: bySQL.entrySet()) {
+                    List<Write> writes = entry.getValue();
+                    if(writes.size() == 1 && !writes.get(0).batch) {
+                        transaction.execute(entry.getKey(), writes.get(0).rows.get(0));
+                    }
+                    else {
+                        List<Object[]> rows = new ArrayList<Object[]>();
+                        for(Write write: writes) {
+                            rows.addAll(write.rows);
+                        }
+                        transaction.batchWrite(entry.getKey(), rows);
+                    }
+                }
+                transaction.commit();
+            }
+            catch(SQLException e) {
+                rollback(transaction);
+                throw e;
+            }
+        }
+        catch(SQLException e) {
+            List<Write> writes = new ArrayList<Write>();
+            for(List<Write> sameSQL: bySQL.values()) {
+                writes.addAll(sameSQL);
+            }
+            if(writes.size() == 1 || isConnectionError(e)) {
+                for(Write write: writes) {
+                    write.fail(e);
+                }
+                return;
+            }
+            LOGGER.debug("Group commit of " + writes.size() + " writes failed, retrying them one by one", e);
+            SQLException connectionError = null;
+            for(Write write: writes) {
+                if(connectionError != null) {
+                    write.fail(connectionError);
+                    continue;
+                }
+                retryCount.incrementAndGet();
+                try {
+                    write.runAlone();
+                }
+                catch(SQLException writeError) {
+                    write.fail(writeError);
+                    if(isConnectionError(writeError)) {
+                        connectionError = writeError;
+                    }
+                }
+            }
+            return;
+        }
+
+        groupCount.incrementAndGet();
+        for(List<Write> writes: bySQL.values()) {
+            for(Write write: writes) {
+                writeCount.incrementAndGet();
+                write.complete();
+            }
+        }
+    }
+
+    /**
+     * Rolls back after an error; if that fails too, which it will if the connection is gone, the original error is
+     * the one that matters, so the rollback error is only logged
+     */
+    private void rollback(DatabaseTransaction transaction) {
+        try {
+            transaction.rollback();
+        }
+        catch(SQLException e) {
+            LOGGER.warn("Unable to roll back group commit transaction after a failed write", e);
+        }
+    }
+
+    private boolean isConnectionError(SQLException e) {
+        return databaseConnection.getServerType().isConnectionError(e);
+    }
+
+    private class Write extends FutureTask<Void> {
+        private final String SQL;
+        private final List<Object[]> rows;
+        private final boolean batch;
+
+        Write(String SQL, List<Object[]> rows, boolean batch) {
+            super(NO_OP, null);
+            this.SQL = SQL;
+            this.rows = rows;
+            this.batch = batch;
+        }
+
+        /**
+         * Runs this write in a transaction of its own, so that all rows of a batch are still committed together
+         */
+        void runAlone() throws SQLException {
+            DatabaseTransaction transaction = databaseConnection.beginTransaction(transactionIsolation);
+            try {
+                if(batch) {
+                    transaction.batchWrite(SQL, rows);
+                }
+                else {
+                    transaction.execute(SQL, rows.get(0));
+                }
+                transaction.commit();
+            }
+            catch(SQLException e) {
+                rollback(transaction);
+                throw e;
+            }
+            writeCount.incrementAndGet();
+            complete();
+        }
+
+        void complete() {
+            set(null);
+        }
+
+        void fail(Exception e) {
+            setException(e);
+        }
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.BatchUpdateHandler;
+import com.googlecode.jdbw.ExecuteResultHandler;
+import com.googlecode.jdbw.PrimitiveResultHandler;
+import com.googlecode.jdbw.ResultSetInformation;
+import com.googlecode.jdbw.RowCursorHandler;
+import com.googlecode.jdbw.SQLExecutor;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code SQLExecutor} that sends a second, identical query when a read is
+ * slower than usual, and uses whichever result arrives first. This cuts the
+ * tail latency caused by the occasional slow node or connection, at the cost
+ * of some extra load.
+ * <p>
+ * Only statements that {@code StatementInfo} classifies as read-only are
+ * hedged, everything else is passed straight on to the wrapped executor. A
+ * read is first sent on its own; if it hasn't completed within the hedge
+ * delay, the same query is sent again. The hedge delay is a percentile
+ * (by default the 95th) of the latencies of recent reads, so that only the
+ * slowest few reads are hedged. On top of that, hedges are capped to a share
+ * of all reads (by default 5%) so that hedging never adds more load than that,
+ * even if the database slows down as a whole. Once one of the queries has
+ * completed, the other is cancelled through its {@code Cancellable}.
+ * <p>
+ * The wrapped executor must be safe to call from several threads at once and
+ * should take a new connection for every call, which is what
+ * {@code AutoExecutor} does; with a {@code MultiNodeDataSource} or
+ * {@code RoutingDatabaseConnection} the hedge may go to a different node.
+ * Since the handler can only be given one result, the rows of each attempt
+ * are collected in memory and handed to the handler once the attempt has won,
+ * which makes hedged execution unsuitable for very large results; reads
+ * through {@code iterate(..)} are never hedged. Reads that can't be hedged,
+ * because too few reads have been timed yet or because there is no budget
+ * left for another hedge, run directly on the calling thread and stream their
+ * rows to the handler as usual.
+ *
+ * @author Martin Berglund
+ */
+public class HedgingSQLExecutor implements SQLExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgingSQLExecutor.class);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int MIN_SAMPLES = 32;
+    private static final int SAMPLES_PER_RECALCULATION = 64;
+
+    private final SQLExecutor executor;
+    private final ExecutorService executorService;
+    private final long[] latencySamples;
+    private final AtomicLong readCount;
+    private final AtomicLong hedgeCount;
+    private final AtomicLong hedgeWinCount;
+    private int nextSample;
+    private long sampleCount;
+    private volatile long hedgeDelayNanos;
+    private volatile double percentile;
+    private volatile double maxExtraLoad;
+    private volatile long minHedgeDelayNanos;
+
+    /**
+     * Creates a hedging executor with its own pool of daemon threads for running the queries
+     * @param executor Executor to run the queries through
+     */
+    public HedgingSQLExecutor(SQLExecutor executor) {
+        this(executor, Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jdbw-hedge-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    /**
+     * Creates a hedging executor
+     * @param executor Executor to run the queries through
+     * @param executorService Threads to run the queries on, the calling thread waits for the result
+     */
+    public HedgingSQLExecutor(SQLExecutor executor, ExecutorService executorService) {
+        this.executor = executor;
+        this.executorService = executorService;
+        this.latencySamples = new long[LATENCY_SAMPLES];
+        this.readCount = new AtomicLong(0);
+        this.hedgeCount = new AtomicLong(0);
+        this.hedgeWinCount = new AtomicLong(0);
+        this.nextSample = 0;
+        this.sampleCount = 0;
+        this.percentile = 0.95;
+        this.maxExtraLoad = 0.05;
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        this.hedgeDelayNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * Sets which percentile of recent read latencies to wait before sending the hedge
+     * @param percentile Percentile between 0 and 1, by default 0.95
+     */
+    public void setHedgeDelayPercentile(double percentile) {
+        if(percentile <= 0.0 || percentile >= 1.0) {
+            throw new IllegalArgumentException("Illegal percentile " + percentile);
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * Sets how many hedges may be sent, as a share of all reads
+     * @param maxExtraLoad Maximum share of extra queries, by default 0.05; 0 turns off hedging
+     */
+    public void setMaxExtraLoad(double maxExtraLoad) {
+        if(maxExtraLoad < 0.0 || maxExtraLoad > 1.0) {
+            throw new IllegalArgumentException("Illegal maximum extra load " + maxExtraLoad);
+        }
+        this.maxExtraLoad = maxExtraLoad;
+    }
+
+    /**
+     * Sets the shortest time to wait before sending a hedge, no matter how fast recent reads have been
+     * @param minHedgeDelay Minimum hedge delay, by default 1 millisecond
+     * @param unit Unit of {@code minHedgeDelay}
+     */
+    public void setMinHedgeDelay(long minHedgeDelay, TimeUnit unit) {
+        this.minHedgeDelayNanos = unit.toNanos(minHedgeDelay);
+    }
+
+    /**
+     * @return Current hedge delay in milliseconds, or {@code Long.MAX_VALUE} if too few reads have been made yet to
+     * know how long they usually take
+     */
+    public long getHedgeDelayMillis() {
+        long delay = hedgeDelayNanos;
+        return delay == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(delay);
+    }
+
+    /**
+     * @return Number of reads made through this executor
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * @return Number of hedges sent
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return Number of hedges that completed before the original query
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    /**
+     * @return The executor the queries are run through
+     */
+    public SQLExecutor getSQLExecutor() {
+        return executor;
+    }
+
+    /**
+     * Stops the threads running the queries
+     */
+    public void shutdown() {
+        executorService.shutdown();
+    }
+
+    @Override
+    public void execute(String SQL, Object... parameters) throws SQLException {
+        execute(new ExecuteResultHandlerAdapter(), SQL, parameters);
+    }
+
+    @Override
+    public void execute(ExecuteResultHandler handler, String SQL, Object... parameters) throws SQLException {
+        execute(handler, 0, 0, SQL, parameters);
+    }
+
+    @Override
+    public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, String SQL, Object... parameters) throws SQLException {
+        execute(handler, maxRowsToFetch, queryTimeoutInSeconds, 0, SQL, parameters);
+    }
+
+    @Override
+    public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object... parameters) throws SQLException {
+        if(!StatementInfo.forSQL(SQL).isReadOnly()) {
+            executor.execute(handler, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+            return;
+        }
+        long requestNumber = readCount.incrementAndGet();
+        long startTime = System.nanoTime();
+        long hedgeDelay = hedgeDelayNanos;
+        if(hedgeDelay == Long.MAX_VALUE || !hasHedgeBudget(requestNumber)) {
+            //This read can't be hedged, so there is nothing to gain from a worker thread or from buffering the rows
+            executor.execute(handler, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+            addLatencySample(System.nanoTime() - startTime);
+            return;
+        }
+        HedgedRead read = new HedgedRead();
+        handler.onCancellableCallback(read);
+
+        Attempt first = read.start(maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+        Attempt winner = read.awaitWinner(hedgeDelay);
+        if(winner == null && reserveHedge(requestNumber)) {
+            read.start(maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+        }
+        if(winner == null) {
+            winner = read.awaitWinner(Long.MAX_VALUE);
+        }
+        read.cancelLosers(winner);
+        if(winner.error != null) {
+            throw winner.error;
+        }
+        if(winner != first) {
+            hedgeWinCount.incrementAndGet();
+        }
+        addLatencySample(System.nanoTime() - startTime);
+        winner.replay(handler);
+    }
+
+    private boolean hasHedgeBudget(long requestNumber) {
+        return hedgeCount.get() + 1 <= maxExtraLoad * requestNumber;
+    }
+
+    /**
+     * Takes one hedge out of the budget, unless it's used up; concurrent reads can't both take the last one
+     */
+    private boolean reserveHedge(long requestNumber) {
+        while(true) {
+            long hedges = hedgeCount.get();
+            if(hedges + 1 > maxExtraLoad * requestNumber) {
+                return false;
+            }
+            if(hedgeCount.compareAndSet(hedges, hedges + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private synchronized void addLatencySample(long latencyNanos) {
+        latencySamples[nextSample] = latencyNanos;
+        nextSample = (nextSample + 1) % latencySamples.length;
+        sampleCount++;
+        if(sampleCount >= MIN_SAMPLES && (sampleCount - MIN_SAMPLES) % SAMPLES_PER_RECALCULATION == 0) {
+            long[] sorted = Arrays.copyOf(latencySamples, (int)Math.min(sampleCount, latencySamples.length));
+            Arrays.sort(sorted);
+            long delay = sorted[(int)Math.min(sorted.length - 1, (long)(sorted.length * percentile))];
+            hedgeDelayNanos = Math.max(delay, minHedgeDelayNanos);
+        }
+    }
+
+    @Override
+    public CloseableIterator<Object[]> iterate(int fetchSize, String SQL, Object... parameters) throws SQLException {
+        return executor.iterate(fetchSize, SQL, parameters);
+    }
+
+    @Override
+    public void batchWrite(List<String> batchedSQL) throws SQLException {
+        executor.batchWrite(batchedSQL);
+    }
+
+    @Override
+    public void batchWrite(BatchUpdateHandler handler, List<String> batchedSQL) throws SQLException {
+        executor.batchWrite(handler, batchedSQL);
+    }
+
+    @Override
+    public void batchWrite(String SQL, List<Object[]> parameters) throws SQLException {
+        executor.batchWrite(SQL, parameters);
+    }
+
+    @Override
+    public void batchWrite(BatchUpdateHandler handler, String SQL, List<Object[]> parameters) throws SQLException {
+        executor.batchWrite(handler, SQL, parameters);
+    }
+
+    @Override
+    public void batchWrite(String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        executor.batchWrite(SQL, parameters, chunkSize);
+    }
+
+    @Override
+    public void batchWrite(BatchUpdateHandler handler, String SQL, Iterator<Object[]> parameters, int chunkSize) throws SQLException {
+        executor.batchWrite(handler, SQL, parameters, chunkSize);
+    }
+
+    /**
+     * One read and its attempts; the first attempt to succeed wins, errors only win once every attempt has failed.
+     * Cancelling the read cancels all attempts.
+     */
+    private class HedgedRead implements Cancellable {
+        private final List<Attempt> attempts;
+        private Attempt winner;
+        private int failed;
+
+        HedgedRead() {
+            this.attempts = new ArrayList<Attempt>(2);
+            this.winner = null;
+            this.failed = 0;
+        }
+
+        Attempt start(int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object[] parameters) {
+            Attempt attempt = new Attempt(this, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+            synchronized(this) {
+                attempts.add(attempt);
+            }
+            executorService.execute(attempt);
+            return attempt;
+        }
+
+        synchronized void onCompleted(Attempt attempt) {
+            if(winner != null) {
+                return;
+            }
+            if(attempt.error == null) {
+                winner = attempt;
+            }
+            else if(++failed == attempts.size()) {
+                winner = attempts.get(0).error != null ? attempts.get(0) : attempt;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits for an attempt to win, or for the timeout to pass
+         * @return The winner, or {@code null} if there is none yet
+         */
+        synchronized Attempt awaitWinner(long timeoutNanos) throws SQLException {
+            long deadline = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeoutNanos;
+            while(winner == null) {
+                try {
+                    if(deadline == Long.MAX_VALUE) {
+                        wait();
+                    }
+                    else {
+                        long remaining = deadline - System.nanoTime();
+                        if(remaining <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelLosers(null);
+                    throw new SQLException("Interrupted while waiting for a query to complete", e);
+                }
+            }
+            return winner;
+        }
+
+        void cancelLosers(Attempt winner) {
+            List<Attempt> losers;
+            synchronized(this) {
+                losers = new ArrayList<Attempt>(attempts);
+            }
+            for(Attempt attempt: losers) {
+                if(attempt != winner) {
+                    attempt.cancel();
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelLosers(null);
+        }
+    }
+
+    /**
+     * One execution of the query, collecting everything the executor reports so it can be replayed to the real
+     * handler if this attempt wins
+     */
+    private class Attempt extends ExecuteResultHandlerAdapter implements Runnable {
+        private final HedgedRead read;
+        private final int maxRowsToFetch;
+        private final int queryTimeoutInSeconds;
+        private final int fetchSize;
+        private final String SQL;
+        private final Object[] parameters;
+        private final List<Object> events;
+        private volatile boolean cancelled;
+        private Cancellable cancellable;
+        private SQLException error;
+
+        Attempt(HedgedRead read, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object[] parameters) {
+            this.read = read;
+            this.maxRowsToFetch = maxRowsToFetch;
+            this.queryTimeoutInSeconds = queryTimeoutInSeconds;
+            this.fetchSize = fetchSize;
+            this.SQL = SQL;
+            this.parameters = parameters;
+            this.events = new ArrayList<Object>();
+            this.cancelled = false;
+            this.cancellable = null;
+            this.error = null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                executor.execute(this, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+            }
+            catch(SQLException e) {
+                error = e;
+            }
+            catch(RuntimeException e) {
+                error = new SQLException("Unexpected error while running hedged query", e);
+            }
+            read.onCompleted(this);
+        }
+
+        @Override
+        public boolean onResultSet(ResultSetInformation information) {
+            events.add(information);
+            return !cancelled;
+        }
+
+        @Override
+        public boolean nextRow(Object[] row) {
+            events.add(row);
+            return !cancelled;
+        }
+
+        @Override
+        public void onUpdateCount(int updateCount) {
+            events.add(new UpdateCount(updateCount));
+        }
+
+        @Override
+        public void onGeneratedKey(Object object) {
+            events.add(new GeneratedKey(object));
+        }
+
+        @Override
+        public void onWarning(SQLWarning warning) {
+            events.add(warning);
+        }
+
+        @Override
+        public synchronized void onCancellableCallback(Cancellable cancelCallback) {
+            cancellable = cancelCallback;
+            if(cancelled) {
+                cancelQuietly();
+            }
+        }
+
+        synchronized void cancel() {
+            if(!cancelled) {
+                cancelled = true;
+                cancelQuietly();
+            }
+        }
+
+        private void cancelQuietly() {
+            if(cancellable == null) {
+                return;
+            }
+            try {
+                cancellable.cancel();
+            }
+            catch(Exception e) {
+                LOGGER.debug("Unable to cancel hedged query", e);
+            }
+        }
+
+        /**
+         * Hands everything collected by this attempt to a handler, in the order it was received
+         */
+        void replay(ExecuteResultHandler handler) {
+            boolean readingRows = false;
+            for(Object event: events) {
+                if(event instanceof ResultSetInformation) {
+                    readingRows = handler.onResultSet((ResultSetInformation)event);
+                }
+                else if(event instanceof Object[]) {
+                    if(readingRows) {
+                        readingRows = replayRow(handler, (Object[])event);
+                    }
+                }
+                else if(event instanceof UpdateCount) {
+                    handler.onUpdateCount(((UpdateCount)event).updateCount);
+                }
+                else if(event instanceof GeneratedKey) {
+                    handler.onGeneratedKey(((GeneratedKey)event).key);
+                }
+                else if(event instanceof SQLWarning) {
+                    handler.onWarning((SQLWarning)event);
+                }
+            }
+            handler.onDone();
+        }
+
+        private boolean replayRow(ExecuteResultHandler handler, Object[] row) {
+            if(handler instanceof RowCursorHandler) {
+                return ((RowCursorHandler)handler).nextRow(new ArrayRowCursor(row));
+            }
+            else if(handler instanceof PrimitiveResultHandler) {
+                PrimitiveResultHandler primitiveHandler = (PrimitiveResultHandler)handler;
+                for(int i = 0; i < row.length; i++) {
+                    Object value = row[i];
+                    if(value == null) {
+                        primitiveHandler.onNull(i);
+                    }
+                    else if(value instanceof Integer) {
+                        primitiveHandler.onInt(i, (Integer)value);
+                    }
+                    else if(value instanceof Long) {
+                        primitiveHandler.onLong(i, (Long)value);
+                    }
+                    else if(value instanceof Double) {
+                        primitiveHandler.onDouble(i, (Double)value);
+                    }
+                    else if(value instanceof String) {
+                        primitiveHandler.onString(i, (String)value);
+                    }
+                    else if(value instanceof byte[]) {
+                        primitiveHandler.onBytes(i, (byte[])value);
+                    }
+                    else {
+                        primitiveHandler.onObject(i, value);
+                    }
+                }
+                return primitiveHandler.onEndOfRow();
+            }
+            else {
+                return handler.nextRow(row);
+            }
+        }
+    }
+
+    private static class UpdateCount {
+        private final int updateCount;
+
+        UpdateCount(int updateCount) {
+            this.updateCount = updateCount;
+        }
+    }
+
+    private static class GeneratedKey {
+        private final Object key;
+
+        GeneratedKey(Object key) {
+            this.key = key;
+        }
+    }
+}
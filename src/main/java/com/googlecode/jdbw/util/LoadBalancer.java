@@ -0,0 +1,38 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Picks which of several equivalent {@code DataSource}s the next statement
+ * should be sent to. Implementations must be thread-safe.
+ *
+ * @see RoundRobinLoadBalancer
+ * @author Martin Berglund
+ */
+public interface LoadBalancer {
+    /**
+     * Picks the data source to use for the next statement
+     * @param dataSources Data sources to choose from, never empty
+     * @return One of the data sources in the list
+     */
+    DataSource select(List<DataSource> dataSources);
+}
@@ -0,0 +1,379 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@code DataSource} that spreads connections over several equivalent
+ * database nodes, each represented by a {@code DataSource} of its own.
+ * <p>
+ * For every node, an exponentially weighted moving average is kept of how
+ * long its connections are held (which for {@code AutoExecutor} is the time to
+ * run one statement) and of how often it fails. Each {@code getConnection()}
+ * picks two nodes at random and uses the one with the lower score, where the
+ * score grows with the average latency, the number of connections currently
+ * borrowed from the node and its error rate. This "power of two choices"
+ * keeps load away from slow nodes without sending everything to the single
+ * fastest one.
+ * <p>
+ * A node is marked down when a connection can't be opened to it or when
+ * {@code reportConnectionError(..)} is called for one of its connections, which
+ * {@code MultiNodeDatabaseConnection} does for statements failing with a
+ * connection error. Nodes that are down are not used as long as any node is
+ * up, and a background thread probes them with {@code Connection.isValid(..)}
+ * until they respond again.
+ *
+ * @author Martin Berglund
+ */
+public class MultiNodeDataSource implements DataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiNodeDataSource.class);
+    private static final AtomicInteger PROBE_THREAD_COUNTER = new AtomicInteger(0);
+
+    /**
+     * Weight of the newest sample in the moving averages
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Default time in milliseconds between probes of nodes that are down
+     */
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1000;
+
+    private final List<Node> nodes;
+    private final Random random;
+    private final ScheduledExecutorService prober;
+
+    /**
+     * Creates a data source over several nodes, probing nodes that are down every
+     * {@code DEFAULT_PROBE_INTERVAL_MILLIS} milliseconds
+     * @param nodeDataSources Data sources of the nodes, must not be empty
+     */
+    public MultiNodeDataSource(List<DataSource> nodeDataSources) {
+        this(nodeDataSources, DEFAULT_PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a data source over several nodes
+     * @param nodeDataSources Data sources of the nodes, must not be empty
+     * @param probeInterval How often to probe nodes that are down
+     * @param unit Unit of {@code probeInterval}
+     */
+    public MultiNodeDataSource(List<DataSource> nodeDataSources, long probeInterval, TimeUnit unit) {
+        if(nodeDataSources.isEmpty()) {
+            throw new IllegalArgumentException("Cannot create a MultiNodeDataSource without any nodes");
+        }
+        List<Node> nodeList = new ArrayList<Node>();
+        for(DataSource dataSource: nodeDataSources) {
+            nodeList.add(new Node(dataSource));
+        }
+        this.nodes = Collections.unmodifiableList(nodeList);
+        this.random = new Random();
+
+        final String threadName = "jdbw-multinode-" + PROBE_THREAD_COUNTER.incrementAndGet() + "-prober";
+        this.prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long probeIntervalMillis = unit.toMillis(probeInterval);
+        this.prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probeDownNodes();
+            }
+        }, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return All nodes of this data source, in the order they were given
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        List<Node> tried = new ArrayList<Node>(2);
+        SQLException lastError = null;
+        while(tried.size() < nodes.size()) {
+            Node node = selectNode(tried);
+            tried.add(node);
+            Connection connection;
+            try {
+                connection = node.dataSource.getConnection();
+            }
+            catch(SQLException e) {
+                LOGGER.warn("Unable to connect to " + node + ", marking it as down", e);
+                node.onError();
+                lastError = e;
+                continue;
+            }
+            node.inFlight.incrementAndGet();
+            return new NodeConnection(connection, node);
+        }
+        throw lastError;
+    }
+
+    /**
+     * Tells the data source that a statement on one of its connections failed
+     * with a connection error, which marks the node the connection came from
+     * as down
+     * @param connection Connection obtained from this data source
+     */
+    public void reportConnectionError(Connection connection) {
+        if(connection instanceof NodeConnection) {
+            NodeConnection nodeConnection = (NodeConnection)connection;
+            nodeConnection.failed = true;
+            LOGGER.warn("Connection error on " + nodeConnection.node + ", marking it as down");
+            nodeConnection.node.onError();
+        }
+    }
+
+    /**
+     * Stops probing nodes that are down. The data sources of the nodes are not closed.
+     */
+    public void close() {
+        prober.shutdown();
+    }
+
+    /**
+     * Picks a node using power of two choices, among the nodes that are up if there are any
+     */
+    private Node selectNode(List<Node> excluded) {
+        List<Node> candidates = new ArrayList<Node>(nodes.size());
+        for(Node node: nodes) {
+            if(!node.down && !excluded.contains(node)) {
+                candidates.add(node);
+            }
+        }
+        if(candidates.isEmpty()) {
+            //Every node is down (or already tried), so try the rest anyway rather than fail without trying
+            for(Node node: nodes) {
+                if(!excluded.contains(node)) {
+                    candidates.add(node);
+                }
+            }
+        }
+        if(candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if(second >= first) {
+            second++;
+        }
+        Node a = candidates.get(first);
+        Node b = candidates.get(second);
+        return a.getScore() <= b.getScore() ? a : b;
+    }
+
+    private void probeDownNodes() {
+        for(Node node: nodes) {
+            if(!node.down) {
+                continue;
+            }
+            Connection connection = null;
+            try {
+                connection = node.dataSource.getConnection();
+                if(connection.isValid(5)) {
+                    LOGGER.info(node + " is responding again");
+                    node.down = false;
+                }
+            }
+            catch(SQLException e) {
+                LOGGER.debug(node + " is still down", e);
+            }
+            finally {
+                if(connection != null) {
+                    try {
+                        connection.close();
+                    }
+                    catch(SQLException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("Not supported yet.");
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName());
+    }
+
+    /**
+     * One database node and the statistics kept for it
+     */
+    public static class Node {
+        private final DataSource dataSource;
+        private final AtomicInteger inFlight;
+        private double latencyNanos;
+        private double errorRate;
+        private volatile boolean down;
+
+        Node(DataSource dataSource) {
+            this.dataSource = dataSource;
+            this.inFlight = new AtomicInteger(0);
+            this.latencyNanos = 0;
+            this.errorRate = 0;
+            this.down = false;
+        }
+
+        /**
+         * @return Data source of this node
+         */
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        /**
+         * @return Moving average of how long connections to this node are held, in milliseconds
+         */
+        public synchronized double getLatencyMillis() {
+            return latencyNanos / 1000000.0;
+        }
+
+        /**
+         * @return Moving average of the share of connections to this node that failed, between 0 and 1
+         */
+        public synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        /**
+         * @return Number of connections to this node currently borrowed
+         */
+        public int getActiveConnections() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return {@code true} if this node is currently considered down
+         */
+        public boolean isDown() {
+            return down;
+        }
+
+        synchronized double getScore() {
+            return (latencyNanos + 1.0) * (inFlight.get() + 1) * (1.0 + 10.0 * errorRate);
+        }
+
+        synchronized void onSuccess(long elapsedNanos) {
+            latencyNanos = latencyNanos == 0 ? elapsedNanos : latencyNanos + ALPHA * (elapsedNanos - latencyNanos);
+            errorRate = errorRate * (1.0 - ALPHA);
+        }
+
+        synchronized void onError() {
+            errorRate = errorRate * (1.0 - ALPHA) + ALPHA;
+            down = true;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" + dataSource + "}";
+        }
+    }
+
+    /**
+     * Connection borrowed from one of the nodes, which reports how long it was held when closed
+     */
+    private static class NodeConnection extends DelegatingConnection implements PreparedStatementCache.Owner {
+        private final Node node;
+        private final long borrowedAt;
+        private volatile boolean failed;
+
+        NodeConnection(Connection connection, Node node) {
+            super(connection);
+            this.node = node;
+            this.borrowedAt = System.nanoTime();
+            this.failed = false;
+        }
+
+        @Override
+        public PreparedStatementCache getPreparedStatementCache() {
+            return PreparedStatementCache.forConnection(_conn);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if(_closed) {
+                return;
+            }
+            _closed = true;
+            node.inFlight.decrementAndGet();
+            if(!failed) {
+                node.onSuccess(System.nanoTime() - borrowedAt);
+            }
+            _conn.close();
+        }
+    }
+}
@@ -47,10 +47,24 @@ public class OneSharedConnectionDataSource implements DataSource {
      * A {@code DataSourceFactory} implementation that will create {@code OneSharedConnectionDataSource} objects
      */
     public static class Factory implements DataSourceFactory {
+        private final int statementCacheSize;
+
+        public Factory() {
+            this(PreparedStatementCache.DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Creates a factory for {@code OneSharedConnectionDataSource} objects
+         * @param statementCacheSize How many prepared statements to keep open on the shared connection
+         */
+        public Factory(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+        }
+
         @Override
         public DataSource newDataSource(String jdbcUrl, Properties properties) {
             try {
-                return new OneSharedConnectionDataSource(DriverManager.getConnection(jdbcUrl, properties));
+                return new OneSharedConnectionDataSource(DriverManager.getConnection(jdbcUrl, properties), statementCacheSize);
             }
             catch(SQLException e) {
                 throw new RuntimeException(e);
@@ -64,14 +78,33 @@ public class OneSharedConnectionDataSource implements DataSource {
     }
     
     private final ArrayBlockingQueue<Connection> connectionQueue;
+    private final PreparedStatementCache statementCache;
 
     /**
      * Creates a {@code OneSharedConnectionDataSource} object based on a {@code Connection} passed in.
      * @param connection Connection that the new {@code OneSharedConnectionDataSource} will use
      */
     public OneSharedConnectionDataSource(Connection connection) {
+        this(connection, PreparedStatementCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a {@code OneSharedConnectionDataSource} object based on a {@code Connection} passed in, keeping up to
+     * {@code statementCacheSize} prepared statements open on it for reuse.
+     * @param connection Connection that the new {@code OneSharedConnectionDataSource} will use
+     * @param statementCacheSize How many prepared statements to cache, 0 disables the statement cache
+     */
+    public OneSharedConnectionDataSource(Connection connection, int statementCacheSize) {
         this.connectionQueue = new ArrayBlockingQueue<Connection>(1);
-        this.connectionQueue.add(connection);
+        this.connectionQueue.add(new SessionStateConnection(connection));
+        this.statementCache = new PreparedStatementCache(statementCacheSize);
+    }
+
+    /**
+     * @return The prepared statement cache attached to the shared connection
+     */
+    public PreparedStatementCache getPreparedStatementCache() {
+        return statementCache;
     }
 
     /**
@@ -81,6 +114,7 @@ public class OneSharedConnectionDataSource implements DataSource {
      */
     public void close() {
         try {
+            statementCache.close();
             connectionQueue.poll().close();
         }
         catch(SQLException e) {
@@ -91,13 +125,7 @@ public class OneSharedConnectionDataSource implements DataSource {
     @Override
     public Connection getConnection() throws SQLException {
         try {
-            return new DelegatingConnection(connectionQueue.take()) {
-                @Override
-                public void close() throws SQLException {
-                    //We don't need to call .offer(...) here since the capacity is only 1
-                    connectionQueue.add(_conn);
-                }
-            };
+            return new SharedConnection(connectionQueue.take());
         }
         catch(InterruptedException e) {
             return null;
@@ -142,4 +170,21 @@ public class OneSharedConnectionDataSource implements DataSource {
     public <T> T unwrap(Class<T> iface) throws SQLException {
         throw new UnsupportedOperationException("Not supported yet.");
     }
+
+    private class SharedConnection extends DelegatingConnection implements PreparedStatementCache.Owner {
+        SharedConnection(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        public PreparedStatementCache getPreparedStatementCache() {
+            return statementCache;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            //We don't need to call .offer(...) here since the capacity is only 1
+            connectionQueue.add(_conn);
+        }
+    }
 }
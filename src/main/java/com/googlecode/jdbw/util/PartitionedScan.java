@@ -0,0 +1,378 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.ExecuteResultHandler;
+import com.googlecode.jdbw.ResultSetInformation;
+import com.googlecode.jdbw.SQLDialect;
+import com.googlecode.jdbw.metadata.Column;
+import com.googlecode.jdbw.metadata.Index;
+import com.googlecode.jdbw.metadata.Nullability;
+import com.googlecode.jdbw.metadata.Table;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a whole table over several connections at once, by splitting the
+ * range of the primary key into a number of partitions and running one query
+ * per partition. If the driver doesn't report the primary key as such, the
+ * first unique index on a column that can't be {@code NULL} is used instead.
+ * The key range is found by asking the server for the lowest
+ * and highest key, so this works on tables with a primary key whose first
+ * column is an integer; keys that are evenly spread out give partitions of
+ * about the same size.
+ * <p>
+ * With {@code scan(..)}, the partitions are read at the same time and the rows
+ * are sent to the handler as they come in, in no particular order. The handler
+ * is never called by more than one thread at a time. With
+ * {@code iterateInOrder()}, the rows are handed out in the order of the
+ * primary key, one partition after the other; the query for a partition is
+ * only sent once the partition before it has been read to the end, so that no
+ * streaming result is left waiting (and timing out on the server) while the
+ * others are read.
+ * <p>
+ * Every partition takes one connection from the data source of the
+ * {@code DatabaseConnection}, so the number of partitions shouldn't be larger
+ * than the number of connections the data source can give out.
+ *
+ * @author Martin Berglund
+ */
+public class PartitionedScan {
+
+    private final DatabaseConnection databaseConnection;
+    private final String tableName;
+    private final String keyColumn;
+    private final int numberOfPartitions;
+    private final int fetchSize;
+
+    /**
+     * Creates a partitioned scan over a table
+     * @param databaseConnection Connection to the database the table is in
+     * @param table Table to read, must have a primary key (or a unique index) starting with an integer column
+     * @param numberOfPartitions How many partitions to split the table into, at most
+     * @throws SQLException If the primary key of the table couldn't be read
+     * @throws IllegalArgumentException If the table doesn't have a suitable primary key
+     */
+    public PartitionedScan(DatabaseConnection databaseConnection, Table table, int numberOfPartitions) throws SQLException {
+        if(numberOfPartitions < 1) {
+            throw new IllegalArgumentException("Illegal number of partitions " + numberOfPartitions);
+        }
+        //Not all drivers report the primary key as such, but any unique index on a column that can't be null will do
+        Index key = table.getUniqueKey();
+        if(key == null || key.getNrOfColumns() == 0) {
+            throw new IllegalArgumentException(table + " has no primary key to partition on");
+        }
+        Column column = key.getColumn(0);
+        if(!key.isPrimaryKey() && column.getNullable() != Nullability.NOT_NULLABLE) {
+            throw new IllegalArgumentException("Cannot partition " + table + " on " + column.getName() +
+                    ", it has no primary key and the first column of " + key.getName() + " is nullable");
+        }
+        if(!isIntegerType(column)) {
+            throw new IllegalArgumentException("Cannot partition " + table + " on " + column.getName() +
+                    ", only integer keys are supported");
+        }
+        SQLDialect dialect = databaseConnection.getServerType().getSQLDialect();
+        this.databaseConnection = databaseConnection;
+        this.tableName = getQualifiedName(dialect, table);
+        this.keyColumn = dialect.escapeIdentifier(column.getName());
+        this.numberOfPartitions = numberOfPartitions;
+        this.fetchSize = SQLWorker.DEFAULT_STREAM_FETCH_SIZE;
+    }
+
+    private static boolean isIntegerType(Column column) {
+        switch(column.getSqlType()) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return true;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return column.getDecimalDigits() == 0;
+            default:
+                return false;
+        }
+    }
+
+    private static String getQualifiedName(SQLDialect dialect, Table table) {
+        String schemaName = table.getSchema().getName();
+        if(schemaName == null || schemaName.equals(dialect.getDefaultSchemaName())) {
+            return dialect.escapeIdentifier(table.getName());
+        }
+        return dialect.escapeIdentifier(schemaName) + "." + dialect.escapeIdentifier(table.getName());
+    }
+
+    /**
+     * Reads all rows of the table, with the partitions read in parallel. The rows are sent to the handler in no
+     * particular order, but the handler is only called from one thread at a time. {@code onResultSet(..)} is called
+     * once, before the first row, and {@code onDone()} once when all partitions have been read. If the handler
+     * returns {@code false} from {@code nextRow(..)}, all partitions stop reading.
+     * @param handler Handler to send the rows to
+     * @throws SQLException If reading any of the partitions failed
+     */
+    public void scan(ExecuteResultHandler handler) throws SQLException {
+        List<Partition> partitions = getPartitions();
+        if(partitions.isEmpty()) {
+            handler.onDone();
+            return;
+        }
+        AsyncSQLExecutor asyncExecutor = new AsyncSQLExecutor(databaseConnection.createAutoExecutor(), partitions.size());
+        try {
+            MergingHandler mergingHandler = new MergingHandler(handler);
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for(Partition partition: partitions) {
+                results.add(asyncExecutor.execute(mergingHandler.forPartition(), 0, 0, fetchSize,
+                        partition.getSQL(), partition.getParameters()));
+            }
+            for(Future<Void> result: results) {
+                waitFor(result, mergingHandler, results);
+            }
+            handler.onDone();
+        }
+        finally {
+            asyncExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Reads all rows of the table, in the order of the primary key. The partitions are read one after the other as
+     * you step through the iterator, the query for the next partition is sent when the one before it has been read
+     * to the end; only one connection is used at a time. Close the iterator if you don't read it to the end, to give
+     * back the connection.
+     * @return Iterator over all rows of the table
+     * @throws SQLException If sending the query for the first partition failed
+     */
+    public CloseableIterator<Object[]> iterateInOrder() throws SQLException {
+        final List<Partition> partitions = getPartitions();
+        final SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        final CloseableIterator<Object[]> first = partitions.isEmpty() ? null : openInOrder(worker, partitions.get(0));
+        return new CloseableIterator<Object[]>() {
+            private int nextPartition = 1;
+            private CloseableIterator<Object[]> current = first;
+
+            @Override
+            public boolean hasNext() {
+                while(current != null) {
+                    if(current.hasNext()) {
+                        return true;
+                    }
+                    current.close();
+                    current = null;
+                    if(nextPartition < partitions.size()) {
+                        Partition partition = partitions.get(nextPartition++);
+                        try {
+                            current = openInOrder(worker, partition);
+                        }
+                        catch(SQLException e) {
+                            throw new IllegalStateException("Error reading partition " + partition + " of " + tableName, e);
+                        }
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Object[] next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove rows through a partitioned scan");
+            }
+
+            @Override
+            public void close() {
+                if(current != null) {
+                    current.close();
+                    current = null;
+                }
+                nextPartition = partitions.size();
+            }
+        };
+    }
+
+    private CloseableIterator<Object[]> openInOrder(SQLWorker worker, Partition partition) throws SQLException {
+        return worker.stream(fetchSize, partition.getSQL() + " ORDER BY " + keyColumn, partition.getParameters());
+    }
+
+    /**
+     * Splits the key range of the table into partitions, based on the lowest and highest key
+     * @return Partitions covering the whole key range, in key order; empty if the table is empty
+     * @throws SQLException If the key range couldn't be read
+     */
+    List<Partition> getPartitions() throws SQLException {
+        Object[] range = new SQLWorker(databaseConnection.createAutoExecutor()).top(
+                "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + tableName);
+        List<Partition> partitions = new ArrayList<Partition>();
+        if(range == null || range[0] == null || range[1] == null) {
+            return partitions;
+        }
+        BigInteger min = new BigInteger(range[0].toString());
+        BigInteger max = new BigInteger(range[1].toString());
+        BigInteger span = max.subtract(min).add(BigInteger.ONE);
+        int count = span.min(BigInteger.valueOf(numberOfPartitions)).intValue();
+        BigInteger start = min;
+        for(int i = 1; i <= count; i++) {
+            if(i == count) {
+                partitions.add(new Partition(start, max, true));
+            }
+            else {
+                BigInteger end = min.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)));
+                partitions.add(new Partition(start, end, false));
+                start = end;
+            }
+        }
+        return partitions;
+    }
+
+    private void waitFor(Future<Void> result, MergingHandler mergingHandler, List<Future<Void>> results) throws SQLException {
+        try {
+            result.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopAll(mergingHandler, results);
+            throw new SQLException("Interrupted while waiting for partitioned scan of " + tableName, e);
+        }
+        catch(ExecutionException e) {
+            stopAll(mergingHandler, results);
+            if(e.getCause() instanceof SQLException) {
+                throw (SQLException)e.getCause();
+            }
+            throw new SQLException("Partitioned scan of " + tableName + " failed", e.getCause());
+        }
+    }
+
+    private static void stopAll(MergingHandler mergingHandler, List<Future<Void>> results) {
+        mergingHandler.stop();
+        for(Future<Void> result: results) {
+            result.cancel(false);
+        }
+    }
+
+    /**
+     * Key range of one partition; the lower bound is included, the upper bound is only included for the last
+     * partition
+     */
+    class Partition {
+        private final BigInteger from;
+        private final BigInteger to;
+        private final boolean last;
+
+        Partition(BigInteger from, BigInteger to, boolean last) {
+            this.from = from;
+            this.to = to;
+            this.last = last;
+        }
+
+        String getSQL() {
+            return "SELECT * FROM " + tableName + " WHERE " + keyColumn + " >= ? AND " + keyColumn + (last ? " <= ?" : " < ?");
+        }
+
+        Object[] getParameters() {
+            return new Object[] { toParameter(from), toParameter(to) };
+        }
+
+        private Object toParameter(BigInteger value) {
+            return value.bitLength() < 64 ? (Object)value.longValue() : new BigDecimal(value);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + from + ", " + to + (last ? "]" : ")");
+        }
+    }
+
+    /**
+     * Funnels the rows of all partitions into one handler, one row at a time
+     */
+    private static class MergingHandler {
+        private final ExecuteResultHandler handler;
+        private boolean resultSetSent;
+        private volatile boolean stopped;
+
+        MergingHandler(ExecuteResultHandler handler) {
+            this.handler = handler;
+            this.resultSetSent = false;
+            this.stopped = false;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        ExecuteResultHandler forPartition() {
+            return new ExecuteResultHandlerAdapter() {
+                @Override
+                public boolean onResultSet(ResultSetInformation information) {
+                    synchronized(MergingHandler.this) {
+                        if(!resultSetSent) {
+                            resultSetSent = true;
+                            if(!handler.onResultSet(information)) {
+                                stopped = true;
+                            }
+                        }
+                    }
+                    return !stopped;
+                }
+
+                @Override
+                public boolean nextRow(Object[] row) {
+                    if(stopped) {
+                        return false;
+                    }
+                    synchronized(MergingHandler.this) {
+                        //Another partition may have stopped the scan while this one waited for the lock
+                        if(stopped) {
+                            return false;
+                        }
+                        if(!handler.nextRow(row)) {
+                            stopped = true;
+                        }
+                    }
+                    return !stopped;
+                }
+
+                @Override
+                public void onWarning(SQLWarning warning) {
+                    synchronized(MergingHandler.this) {
+                        handler.onWarning(warning);
+                    }
+                }
+
+                @Override
+                public void onDone() {
+                }
+            };
+        }
+    }
+}
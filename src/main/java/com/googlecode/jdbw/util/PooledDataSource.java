@@ -0,0 +1,721 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DataSourceFactory;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection pool built into JDBW, opening connections through
+ * {@code DriverManager} and keeping up to a maximum number of them open for
+ * reuse. Every pooled connection carries its own {@code PreparedStatementCache}.
+ * <p>
+ * Borrowing a connection doesn't take any locks as long as there is an idle
+ * connection in the pool: a thread first tries to get back the connection it
+ * used last time, which is usually still idle, and otherwise claims the first
+ * idle connection it can find with a compare-and-set. Only when the pool is
+ * exhausted does the thread wait for a connection to be returned.
+ * <p>
+ * Connections that have been idle for longer than the idle timeout, or that
+ * have been open for longer than the maximum lifetime, are closed by a
+ * background thread. A connection that hasn't been used for a while is checked
+ * with {@code Connection.isValid(..)} before it's handed out; connections used
+ * within the validation interval are trusted without checking.
+ * <p>
+ * When a connection is given back, any open transaction is rolled back and
+ * the auto-commit, read-only, transaction isolation, catalog and schema
+ * settings are put back to what they were when the connection was opened, so
+ * that nothing the last borrower changed carries over to the next one.
+ * <p>
+ * Each physical connection remembers its session state across borrows, so
+ * setting auto-commit or the transaction isolation level to the value it
+ * already has doesn't reach the driver.
+ *
+ * @author Martin Berglund
+ */
+public class PooledDataSource implements DataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledDataSource.class);
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+    /**
+     * Default maximum number of connections in the pool
+     */
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = 2;
+
+    /**
+     * A {@code DataSourceFactory} implementation that will create {@code PooledDataSource} objects
+     */
+    public static class Factory implements DataSourceFactory {
+        private int maxPoolSize;
+        private int statementCacheSize;
+        private long idleTimeoutMillis;
+        private long maxLifetimeMillis;
+        private long validationIntervalMillis;
+        private long connectionTimeoutMillis;
+
+        /**
+         * Creates a factory for pools of {@code DEFAULT_MAX_POOL_SIZE} connections
+         */
+        public Factory() {
+            this(DEFAULT_MAX_POOL_SIZE);
+        }
+
+        /**
+         * Creates a factory for {@code PooledDataSource} objects
+         * @param maxPoolSize Maximum number of connections in each pool
+         */
+        public Factory(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+            this.statementCacheSize = PreparedStatementCache.DEFAULT_CAPACITY;
+            this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+            this.maxLifetimeMillis = TimeUnit.MINUTES.toMillis(30);
+            this.validationIntervalMillis = TimeUnit.SECONDS.toMillis(5);
+            this.connectionTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+        }
+
+        /**
+         * @param statementCacheSize How many prepared statements to keep open per connection, 0 disables the cache
+         * @return Itself
+         */
+        public Factory setStatementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        /**
+         * @see PooledDataSource#setIdleTimeout(long, TimeUnit)
+         * @return Itself
+         */
+        public Factory setIdleTimeout(long idleTimeout, TimeUnit unit) {
+            this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+            return this;
+        }
+
+        /**
+         * @see PooledDataSource#setMaxLifetime(long, TimeUnit)
+         * @return Itself
+         */
+        public Factory setMaxLifetime(long maxLifetime, TimeUnit unit) {
+            this.maxLifetimeMillis = unit.toMillis(maxLifetime);
+            return this;
+        }
+
+        /**
+         * @see PooledDataSource#setValidationInterval(long, TimeUnit)
+         * @return Itself
+         */
+        public Factory setValidationInterval(long validationInterval, TimeUnit unit) {
+            this.validationIntervalMillis = unit.toMillis(validationInterval);
+            return this;
+        }
+
+        /**
+         * @see PooledDataSource#setConnectionTimeout(long, TimeUnit)
+         * @return Itself
+         */
+        public Factory setConnectionTimeout(long connectionTimeout, TimeUnit unit) {
+            this.connectionTimeoutMillis = unit.toMillis(connectionTimeout);
+            return this;
+        }
+
+        @Override
+        public DataSource newDataSource(String jdbcUrl, Properties properties) {
+            PooledDataSource dataSource = new PooledDataSource(jdbcUrl, properties, maxPoolSize, statementCacheSize);
+            dataSource.setIdleTimeout(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            dataSource.setMaxLifetime(maxLifetimeMillis, TimeUnit.MILLISECONDS);
+            dataSource.setValidationInterval(validationIntervalMillis, TimeUnit.MILLISECONDS);
+            dataSource.setConnectionTimeout(connectionTimeoutMillis, TimeUnit.MILLISECONDS);
+            return dataSource;
+        }
+
+        @Override
+        public void close(DataSource previouslyConstructedDataSource) {
+            ((PooledDataSource)previouslyConstructedDataSource).close();
+        }
+    }
+
+    private final String jdbcUrl;
+    private final Properties properties;
+    private final int maxPoolSize;
+    private final int statementCacheSize;
+    private final CopyOnWriteArrayList<PooledEntry> entries;
+    private final ThreadLocal<PooledEntry> lastUsedEntry;
+    private final AtomicInteger totalConnections;
+    private final AtomicInteger waitingThreads;
+    private final AtomicLong borrowCount;
+    private final AtomicLong waitCount;
+    private final AtomicLong createdCount;
+    private final AtomicLong closedCount;
+    private final Object returnSignal;
+    private final ScheduledExecutorService housekeeper;
+    private volatile long idleTimeoutMillis;
+    private volatile long maxLifetimeMillis;
+    private volatile long validationIntervalMillis;
+    private volatile long connectionTimeoutMillis;
+    private volatile boolean closed;
+
+    /**
+     * Creates a connection pool with default settings
+     * @param jdbcUrl JDBC url to connect to
+     * @param properties Connection properties passed to the JDBC driver
+     * @param maxPoolSize Maximum number of connections to keep open
+     */
+    public PooledDataSource(String jdbcUrl, Properties properties, int maxPoolSize) {
+        this(jdbcUrl, properties, maxPoolSize, PreparedStatementCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a connection pool with default settings
+     * @param jdbcUrl JDBC url to connect to
+     * @param properties Connection properties passed to the JDBC driver
+     * @param maxPoolSize Maximum number of connections to keep open
+     * @param statementCacheSize How many prepared statements to keep open per connection, 0 disables the cache
+     */
+    public PooledDataSource(String jdbcUrl, Properties properties, int maxPoolSize, int statementCacheSize) {
+        if(maxPoolSize < 1) {
+            throw new IllegalArgumentException("Illegal maximum pool size " + maxPoolSize);
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.properties = properties;
+        this.maxPoolSize = maxPoolSize;
+        this.statementCacheSize = statementCacheSize;
+        this.entries = new CopyOnWriteArrayList<PooledEntry>();
+        this.lastUsedEntry = new ThreadLocal<PooledEntry>();
+        this.totalConnections = new AtomicInteger(0);
+        this.waitingThreads = new AtomicInteger(0);
+        this.borrowCount = new AtomicLong(0);
+        this.waitCount = new AtomicLong(0);
+        this.createdCount = new AtomicLong(0);
+        this.closedCount = new AtomicLong(0);
+        this.returnSignal = new Object();
+        this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+        this.maxLifetimeMillis = TimeUnit.MINUTES.toMillis(30);
+        this.validationIntervalMillis = TimeUnit.SECONDS.toMillis(5);
+        this.connectionTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+        this.closed = false;
+
+        final String threadName = "jdbw-pool-" + POOL_COUNTER.incrementAndGet() + "-housekeeper";
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets how long a connection may stay idle in the pool before it's closed
+     * @param idleTimeout Idle timeout, 0 to never close idle connections
+     * @param unit Unit of {@code idleTimeout}
+     */
+    public void setIdleTimeout(long idleTimeout, TimeUnit unit) {
+        this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    }
+
+    /**
+     * Sets how long a connection may be kept open in total; connections older than this are closed when they are
+     * returned to the pool or found idle
+     * @param maxLifetime Maximum lifetime of a connection, 0 for no limit
+     * @param unit Unit of {@code maxLifetime}
+     */
+    public void setMaxLifetime(long maxLifetime, TimeUnit unit) {
+        this.maxLifetimeMillis = unit.toMillis(maxLifetime);
+    }
+
+    /**
+     * Sets how long a connection may be unused before it's validated with {@code Connection.isValid(..)} on the next
+     * borrow
+     * @param validationInterval Validation interval, 0 to validate on every borrow
+     * @param unit Unit of {@code validationInterval}
+     */
+    public void setValidationInterval(long validationInterval, TimeUnit unit) {
+        this.validationIntervalMillis = unit.toMillis(validationInterval);
+    }
+
+    /**
+     * Sets how long {@code getConnection()} waits for a connection when the pool is exhausted, before it throws an
+     * {@code SQLException}
+     * @param connectionTimeout Maximum time to wait
+     * @param unit Unit of {@code connectionTimeout}
+     */
+    public void setConnectionTimeout(long connectionTimeout, TimeUnit unit) {
+        this.connectionTimeoutMillis = unit.toMillis(connectionTimeout);
+    }
+
+    /**
+     * @return Maximum number of connections the pool keeps open
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @return Number of connections currently open, in use or idle
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return Number of connections currently borrowed
+     */
+    public int getActiveConnections() {
+        int active = 0;
+        for(PooledEntry entry: entries) {
+            if(entry.state.get() == IN_USE) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * @return Number of open connections not currently borrowed
+     */
+    public int getIdleConnections() {
+        int idle = 0;
+        for(PooledEntry entry: entries) {
+            if(entry.state.get() == IDLE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return Number of threads currently waiting for a connection
+     */
+    public int getWaitingThreads() {
+        return waitingThreads.get();
+    }
+
+    /**
+     * @return Number of times a connection has been borrowed from the pool
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return Number of times a borrowing thread had to wait for a connection to be returned
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    /**
+     * @return Number of physical connections opened by the pool
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return Number of physical connections closed by the pool
+     */
+    public long getClosedCount() {
+        return closedCount.get();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long deadline = System.currentTimeMillis() + connectionTimeoutMillis;
+        boolean waited = false;
+        while(true) {
+            if(closed) {
+                throw new SQLException("Connection pool for " + jdbcUrl + " is closed");
+            }
+            PooledEntry entry = claimIdleEntry();
+            boolean opened = false;
+            if(entry == null) {
+                entry = createEntry();
+                opened = entry != null;
+            }
+            if(entry != null) {
+                //A connection we just opened is handed out as it is, even if it outlived a very short max lifetime
+                if(opened || isUsable(entry)) {
+                    borrowCount.incrementAndGet();
+                    if(waited) {
+                        waitCount.incrementAndGet();
+                    }
+                    return new PooledConnection(entry);
+                }
+                remove(entry);
+                continue;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if(remaining <= 0) {
+                throw new SQLException("Timed out waiting for a connection to " + jdbcUrl + ", all " + maxPoolSize +
+                        " connections are in use");
+            }
+            waited = true;
+            waitingThreads.incrementAndGet();
+            try {
+                synchronized(returnSignal) {
+                    //Check again now that we hold the lock, so we don't miss a connection returned just now
+                    if(!hasIdleEntry() && totalConnections.get() >= maxPoolSize) {
+                        returnSignal.wait(remaining);
+                    }
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection to " + jdbcUrl, e);
+            }
+            finally {
+                waitingThreads.decrementAndGet();
+            }
+        }
+    }
+
+    private PooledEntry claimIdleEntry() {
+        PooledEntry entry = lastUsedEntry.get();
+        if(entry != null && entry.state.compareAndSet(IDLE, IN_USE)) {
+            return entry;
+        }
+        for(PooledEntry candidate: entries) {
+            if(candidate.state.compareAndSet(IDLE, IN_USE)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasIdleEntry() {
+        for(PooledEntry entry: entries) {
+            if(entry.state.get() == IDLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opens a new connection if the pool isn't full
+     * @return The new entry, already marked as in use, or {@code null} if the pool is full
+     */
+    private PooledEntry createEntry() throws SQLException {
+        while(true) {
+            int total = totalConnections.get();
+            if(total >= maxPoolSize) {
+                return null;
+            }
+            if(totalConnections.compareAndSet(total, total + 1)) {
+                break;
+            }
+        }
+        try {
+            Connection connection = new SessionStateConnection(DriverManager.getConnection(jdbcUrl, properties));
+            PooledEntry entry;
+            try {
+                entry = new PooledEntry(connection, new PreparedStatementCache(statementCacheSize));
+            }
+            catch(SQLException e) {
+                connection.close();
+                throw e;
+            }
+            createdCount.incrementAndGet();
+            entries.add(entry);
+            return entry;
+        }
+        catch(SQLException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+        catch(RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        long now = System.currentTimeMillis();
+        if(isExpired(entry, now)) {
+            return false;
+        }
+        if(now - entry.lastUsed < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return entry.connection.isValid(5);
+        }
+        catch(SQLException e) {
+            LOGGER.warn("Unable to validate pooled connection to " + jdbcUrl, e);
+            return false;
+        }
+        catch(AbstractMethodError e) {
+            //JDBC 3 driver, we'll have to trust the connection
+            return true;
+        }
+    }
+
+    private boolean isExpired(PooledEntry entry, long now) {
+        return maxLifetimeMillis > 0 && now - entry.created >= maxLifetimeMillis;
+    }
+
+    private void giveBack(PooledEntry entry) {
+        try {
+            resetSession(entry);
+        }
+        catch(SQLException e) {
+            LOGGER.warn("Unable to reset pooled connection to " + jdbcUrl + ", closing it", e);
+            remove(entry);
+            signalReturn();
+            return;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        if(closed || isExpired(entry, entry.lastUsed)) {
+            remove(entry);
+        }
+        else {
+            lastUsedEntry.set(entry);
+            entry.state.set(IDLE);
+        }
+        signalReturn();
+    }
+
+    /**
+     * Rolls back any open transaction and puts back the session settings the connection had when it was opened. The
+     * physical connection is a {@code SessionStateConnection}, so the settings that didn't change are read from its
+     * cache and cost nothing.
+     */
+    private void resetSession(PooledEntry entry) throws SQLException {
+        Connection connection = entry.connection;
+        if(!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+        if(connection.getAutoCommit() != entry.initialAutoCommit) {
+            connection.setAutoCommit(entry.initialAutoCommit);
+        }
+        if(connection.isReadOnly() != entry.initialReadOnly) {
+            connection.setReadOnly(entry.initialReadOnly);
+        }
+        if(connection.getTransactionIsolation() != entry.initialTransactionIsolation) {
+            connection.setTransactionIsolation(entry.initialTransactionIsolation);
+        }
+        if(!isSameName(connection.getCatalog(), entry.initialCatalog)) {
+            connection.setCatalog(entry.initialCatalog);
+        }
+        if(entry.schemaSupported && !isSameName(connection.getSchema(), entry.initialSchema)) {
+            connection.setSchema(entry.initialSchema);
+        }
+    }
+
+    private static boolean isSameName(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void signalReturn() {
+        if(waitingThreads.get() > 0) {
+            synchronized(returnSignal) {
+                returnSignal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes a connection and takes it out of the pool; the caller must have claimed the entry first
+     */
+    private void remove(PooledEntry entry) {
+        entry.state.set(REMOVED);
+        if(entries.remove(entry)) {
+            totalConnections.decrementAndGet();
+        }
+        entry.statementCache.close();
+        try {
+            entry.connection.close();
+        }
+        catch(SQLException e) {
+            LOGGER.warn("Unable to close pooled connection to " + jdbcUrl, e);
+        }
+        closedCount.incrementAndGet();
+    }
+
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for(PooledEntry entry: entries) {
+            boolean idleTooLong = idleTimeoutMillis > 0 && now - entry.lastUsed >= idleTimeoutMillis;
+            if((idleTooLong || isExpired(entry, now)) && entry.state.compareAndSet(IDLE, IN_USE)) {
+                remove(entry);
+                signalReturn();
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Connections currently in use are closed when they
+     * are given back.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdown();
+        for(PooledEntry entry: entries) {
+            if(entry.state.compareAndSet(IDLE, IN_USE)) {
+                remove(entry);
+            }
+        }
+        synchronized(returnSignal) {
+            returnSignal.notifyAll();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("Not supported yet.");
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public String toString() {
+        return "PooledDataSource{" + jdbcUrl + ", " + getActiveConnections() + " active, " + getIdleConnections() +
+                " idle, max " + maxPoolSize + "}";
+    }
+
+    /**
+     * One physical connection in the pool, with the session settings it had when it was opened
+     */
+    private static class PooledEntry {
+        private final Connection connection;
+        private final PreparedStatementCache statementCache;
+        private final AtomicInteger state;
+        private final long created;
+        private final boolean initialAutoCommit;
+        private final boolean initialReadOnly;
+        private final int initialTransactionIsolation;
+        private final String initialCatalog;
+        private final String initialSchema;
+        private final boolean schemaSupported;
+        private volatile long lastUsed;
+
+        PooledEntry(Connection connection, PreparedStatementCache statementCache) throws SQLException {
+            this.connection = connection;
+            this.statementCache = statementCache;
+            this.state = new AtomicInteger(IN_USE);
+            this.created = System.currentTimeMillis();
+            this.initialAutoCommit = connection.getAutoCommit();
+            this.initialReadOnly = connection.isReadOnly();
+            this.initialTransactionIsolation = connection.getTransactionIsolation();
+            this.initialCatalog = connection.getCatalog();
+            String schema = null;
+            boolean supported;
+            try {
+                schema = connection.getSchema();
+                supported = true;
+            }
+            catch(SQLException e) {
+                supported = false;
+            }
+            catch(AbstractMethodError e) {
+                //Driver older than JDBC 4.1
+                supported = false;
+            }
+            this.initialSchema = schema;
+            this.schemaSupported = supported;
+            this.lastUsed = created;
+        }
+    }
+
+    /**
+     * Connection handed out to the users of the pool, which puts the physical connection back in the pool on close
+     */
+    private class PooledConnection extends DelegatingConnection implements PreparedStatementCache.Owner {
+        private final PooledEntry entry;
+
+        PooledConnection(PooledEntry entry) {
+            super(entry.connection);
+            this.entry = entry;
+        }
+
+        @Override
+        public PreparedStatementCache getPreparedStatementCache() {
+            return entry.statementCache;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if(_closed) {
+                return;
+            }
+            _closed = true;
+            giveBack(entry);
+        }
+    }
+}
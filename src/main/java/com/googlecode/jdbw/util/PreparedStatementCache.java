@@ -0,0 +1,283 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, least-recently-used cache of {@code PreparedStatement}s belonging
+ * to one physical database connection. Statements are looked up by their SQL
+ * text together with a mode, which tells how the statement was prepared (for
+ * example with or without returning generated keys).
+ * <p>
+ * A statement is removed from the cache while it is being used and is put back
+ * when the caller is done with it, so two users of the same connection will
+ * never be handed the same statement at the same time. When the cache is full,
+ * the statement that was least recently put back is closed and dropped.
+ * <p>
+ * The cache is attached to the connection by the data source that owns the
+ * physical connection; the connection handed out to clients implements
+ * {@code PreparedStatementCache.Owner} and {@code SQLExecutorImpl} picks the
+ * cache up from there. This way the statements are shared between all
+ * executors that are using the same physical connection.
+ *
+ * @see OneSharedConnectionDataSource
+ * @author Martin Berglund
+ */
+public class PreparedStatementCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+    /**
+     * Default maximum number of statements to keep open per connection
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Implemented by connections that carries a statement cache with them
+     */
+    public static interface Owner {
+        /**
+         * @return The statement cache for the physical connection behind this
+         * connection
+         */
+        PreparedStatementCache getPreparedStatementCache();
+    }
+
+    /**
+     * Returns the statement cache attached to a connection, if there is one
+     * @param connection Connection to look up the cache for
+     * @return Statement cache of the connection or {@code null} if the
+     * connection doesn't have any
+     */
+    public static PreparedStatementCache forConnection(Connection connection) {
+        if(connection instanceof Owner) {
+            return ((Owner)connection).getPreparedStatementCache();
+        }
+        return null;
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private boolean closed;
+
+    /**
+     * Creates a new statement cache with the default capacity
+     */
+    public PreparedStatementCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new statement cache
+     * @param capacity Maximum number of statements to keep open, if 0 no
+     * statements will be cached
+     */
+    public PreparedStatementCache(int capacity) {
+        if(capacity < 0) {
+            throw new IllegalArgumentException("Illegal statement cache capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>();
+        this.hitCount = 0;
+        this.missCount = 0;
+        this.evictionCount = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Takes a cached statement out of the cache. The statement is not available
+     * to anyone else until it has been given back through {@code release(..)}.
+     * @param SQL SQL the statement was prepared with
+     * @param mode How the statement was prepared
+     * @return A cached statement or {@code null} if there was no open statement
+     * for this SQL and mode in the cache
+     */
+    public PreparedStatement take(String SQL, int mode) {
+        PreparedStatement statement;
+        synchronized(this) {
+            statement = statements.remove(new Key(SQL, mode));
+        }
+        if(statement != null && isClosed(statement)) {
+            statement = null;
+        }
+        synchronized(this) {
+            if(statement != null) {
+                hitCount++;
+            }
+            else {
+                missCount++;
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * Gives a statement back to the cache, once the caller is done with it. If
+     * there is already an equivalent statement in the cache, or the cache is
+     * closed, the statement will be closed instead. If the cache is full, the
+     * least recently used statement is evicted and closed.
+     * @param SQL SQL the statement was prepared with
+     * @param mode How the statement was prepared
+     * @param statement Statement to give back
+     */
+    public void release(String SQL, int mode, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+            statement.clearWarnings();
+        }
+        catch(SQLException e) {
+            close(statement);
+            return;
+        }
+
+        PreparedStatement toClose = null;
+        synchronized(this) {
+            Key key = new Key(SQL, mode);
+            if(closed || capacity == 0 || statements.containsKey(key)) {
+                toClose = statement;
+            }
+            else {
+                statements.put(key, statement);
+                if(statements.size() > capacity) {
+                    Iterator<PreparedStatement> iterator = statements.values().iterator();
+                    toClose = iterator.next();
+                    iterator.remove();
+                    evictionCount++;
+                }
+            }
+        }
+        if(toClose != null) {
+            close(toClose);
+        }
+    }
+
+    /**
+     * Closes all statements in the cache, statements given back after this
+     * will be closed immediately.
+     */
+    public void close() {
+        List<PreparedStatement> toClose;
+        synchronized(this) {
+            closed = true;
+            toClose = new ArrayList<PreparedStatement>(statements.values());
+            statements.clear();
+        }
+        for(PreparedStatement statement: toClose) {
+            close(statement);
+        }
+    }
+
+    /**
+     * @return Maximum number of statements this cache will hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Number of statements currently in the cache (statements that are
+     * taken out of the cache are not counted)
+     */
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * @return Number of times a statement could be reused from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of times there was no statement in the cache and the
+     * caller had to prepare a new one
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Number of statements that has been closed because the cache was
+     * full
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PreparedStatementCache{size=" + statements.size() + ", capacity=" + capacity +
+                ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+
+    private boolean isClosed(PreparedStatement statement) {
+        try {
+            return statement.isClosed();
+        }
+        catch(SQLException e) {
+            return true;
+        }
+    }
+
+    private void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        }
+        catch(SQLException e) {
+            LOGGER.error("Unable to close cached statement", e);
+        }
+    }
+
+    private static class Key {
+        private final String SQL;
+        private final int mode;
+
+        Key(String SQL, int mode) {
+            this.SQL = SQL;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return mode == other.mode && SQL.equals(other.SQL);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * SQL.hashCode() + mode;
+        }
+    }
+}
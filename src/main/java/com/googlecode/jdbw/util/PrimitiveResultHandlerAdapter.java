@@ -0,0 +1,96 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.PrimitiveResultHandler;
+
+/**
+ * This is a convenience class that implements PrimitiveResultHandler and
+ * provides a default method implementation for this interface. You can then
+ * override only the methods that you care about. If the handler is used with
+ * an {@code SQLExecutor} that only knows about {@code nextRow(Object[])},
+ * each value of the row is sent to the {@code on...} method matching its
+ * class, followed by {@code onEndOfRow()}.
+ *
+ * @author Martin Berglund
+ */
+public class PrimitiveResultHandlerAdapter extends ExecuteResultHandlerAdapter implements PrimitiveResultHandler {
+
+    @Override
+    public boolean nextRow(Object[] row) {
+        for(int columnIndex = 0; columnIndex < row.length; columnIndex++) {
+            Object value = row[columnIndex];
+            if(value == null) {
+                onNull(columnIndex);
+            }
+            else if(value instanceof Integer) {
+                onInt(columnIndex, (Integer)value);
+            }
+            else if(value instanceof Long) {
+                onLong(columnIndex, (Long)value);
+            }
+            else if(value instanceof Double) {
+                onDouble(columnIndex, (Double)value);
+            }
+            else if(value instanceof String) {
+                onString(columnIndex, (String)value);
+            }
+            else if(value instanceof byte[]) {
+                onBytes(columnIndex, (byte[])value);
+            }
+            else {
+                onObject(columnIndex, value);
+            }
+        }
+        return onEndOfRow();
+    }
+
+    @Override
+    public void onInt(int columnIndex, int value) {
+    }
+
+    @Override
+    public void onLong(int columnIndex, long value) {
+    }
+
+    @Override
+    public void onDouble(int columnIndex, double value) {
+    }
+
+    @Override
+    public void onString(int columnIndex, String value) {
+    }
+
+    @Override
+    public void onBytes(int columnIndex, byte[] value) {
+    }
+
+    @Override
+    public void onObject(int columnIndex, Object value) {
+    }
+
+    @Override
+    public void onNull(int columnIndex) {
+    }
+
+    @Override
+    public boolean onEndOfRow() {
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * {@code LoadBalancer} that goes through the data sources in turn.
+ *
+ * @author Martin Berglund
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    private final AtomicInteger counter;
+
+    public RoundRobinLoadBalancer() {
+        this.counter = new AtomicInteger(0);
+    }
+
+    @Override
+    public DataSource select(List<DataSource> dataSources) {
+        int next = counter.getAndIncrement() & Integer.MAX_VALUE;
+        return dataSources.get(next % dataSources.size());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.ResultSetInformation;
+import com.googlecode.jdbw.SQLExecutor;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the rows of a query to {@code RowSubscriber}s, with the
+ * subscriber controlling the pace. Rows are only read from the result set when
+ * the subscriber has asked for them; when it hasn't, the thread reading the
+ * result set waits and the server or driver holds on to the rest of the
+ * result. Together with a fetch size this lets you process very large results
+ * in bounded memory, even if the consumer is slow.
+ * <p>
+ * Every call to {@code subscribe(..)} runs the query once, on a thread taken
+ * from the {@code Executor} passed to the constructor (or on a new thread if no
+ * {@code Executor} was given). When the subscriber cancels before the query has
+ * returned any result, the statement is cancelled through the
+ * {@code Cancellable} handed out by the executor; after that, the result set
+ * is closed without reading the remaining rows. The
+ * connection is given back once the query is done, when used with an
+ * {@code AutoExecutor}. If the thread running the query is interrupted while
+ * waiting for the subscriber to request more rows, the query is stopped and
+ * the subscriber gets an {@code SQLException} caused by the interruption.
+ *
+ * @see RowSubscriber
+ * @author Martin Berglund
+ */
+public class RowPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RowPublisher.class);
+
+    private final SQLExecutor executor;
+    private final Executor queryThreads;
+    private final int fetchSize;
+    private final String SQL;
+    private final Object[] parameters;
+
+    /**
+     * Creates a publisher running the query on a new thread for every subscriber
+     * @param executor Executor to send the query through, usually an {@code AutoExecutor}
+     * @param SQL SQL code of the query
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     */
+    public RowPublisher(SQLExecutor executor, String SQL, Object... parameters) {
+        this(executor, null, 0, SQL, parameters);
+    }
+
+    /**
+     * Creates a publisher
+     * @param executor Executor to send the query through, usually an {@code AutoExecutor}
+     * @param queryThreads Where to run the query, or {@code null} to start a new thread for every subscriber
+     * @param fetchSize Number of rows to fetch at a time from the server, 0 for the driver default
+     * @param SQL SQL code of the query
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     */
+    public RowPublisher(SQLExecutor executor, Executor queryThreads, int fetchSize, String SQL, Object... parameters) {
+        this.executor = executor;
+        this.queryThreads = queryThreads;
+        this.fetchSize = fetchSize;
+        this.SQL = SQL;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Runs the query and publishes the rows to a subscriber. The subscriber's
+     * {@code onSubscribe(..)} is called before this method returns, the rest
+     * of the methods are called from the thread running the query.
+     * @param subscriber Subscriber to publish the rows to
+     */
+    public void subscribe(RowSubscriber subscriber) {
+        final Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        Runnable query = new Runnable() {
+            @Override
+            public void run() {
+                subscription.run();
+            }
+        };
+        if(queryThreads != null) {
+            queryThreads.execute(query);
+        }
+        else {
+            Thread thread = new Thread(query, "jdbw-publisher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private class Subscription extends ExecuteResultHandlerAdapter implements RowSubscription {
+        private final RowSubscriber subscriber;
+        private long demand;
+        private boolean cancelled;
+        private boolean cancelledBySubscriber;
+        private InterruptedException interruption;
+        private Cancellable cancellable;
+        private boolean readingRows;
+        private Throwable requestError;
+
+        Subscription(RowSubscriber subscriber) {
+            this.subscriber = subscriber;
+            this.demand = 0;
+            this.cancelled = false;
+            this.cancelledBySubscriber = false;
+            this.interruption = null;
+            this.cancellable = null;
+            this.readingRows = false;
+            this.requestError = null;
+        }
+
+        void run() {
+            Throwable error = null;
+            try {
+                executor.execute(this, 0, 0, fetchSize, SQL, parameters);
+            }
+            catch(Throwable e) {
+                error = e;
+            }
+            //An illegal request is reported from here, so that onError can't overlap with onNext
+            Throwable illegalRequest = getRequestError();
+            if(illegalRequest != null) {
+                subscriber.onError(illegalRequest);
+            }
+            else if(isCancelledBySubscriber()) {
+                return;
+            }
+            else if(getInterruption() != null) {
+                subscriber.onError(new SQLException("Interrupted while waiting for rows to be requested", getInterruption()));
+            }
+            else if(error != null) {
+                subscriber.onError(error);
+            }
+            else {
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public synchronized void onCancellableCallback(Cancellable cancellable) {
+            this.cancellable = cancellable;
+        }
+
+        @Override
+        public synchronized boolean onResultSet(ResultSetInformation information) {
+            readingRows = true;
+            return !cancelled;
+        }
+
+        @Override
+        public boolean nextRow(Object[] row) {
+            synchronized(this) {
+                while(demand == 0 && !cancelled) {
+                    try {
+                        wait();
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        //Stops the query like a cancel, but the subscriber hasn't cancelled and still needs a
+                        //terminal signal
+                        interruption = e;
+                        cancelled = true;
+                    }
+                }
+                if(cancelled) {
+                    return false;
+                }
+                if(demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+            subscriber.onNext(row);
+            return !isCancelled();
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                synchronized(this) {
+                    if(requestError == null && !cancelled) {
+                        requestError = new IllegalArgumentException("Illegal number of rows requested: " + n);
+                    }
+                }
+                cancel();
+                return;
+            }
+            synchronized(this) {
+                demand += n;
+                if(demand < 0) {
+                    demand = Long.MAX_VALUE;
+                }
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Cancellable toCancel;
+            synchronized(this) {
+                if(cancelledBySubscriber) {
+                    return;
+                }
+                cancelledBySubscriber = true;
+                if(cancelled) {
+                    return;
+                }
+                cancelled = true;
+                //Once the rows are coming, the query is stopped by returning false from nextRow; cancelling the
+                //statement then could leave the cancel request pending for the next statement on the connection
+                toCancel = readingRows ? null : cancellable;
+                notifyAll();
+            }
+            if(toCancel != null) {
+                try {
+                    toCancel.cancel();
+                }
+                catch(Exception e) {
+                    LOGGER.warn("Unable to cancel query", e);
+                }
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized boolean isCancelledBySubscriber() {
+            return cancelledBySubscriber;
+        }
+
+        private synchronized InterruptedException getInterruption() {
+            return interruption;
+        }
+
+        private synchronized Throwable getRequestError() {
+            return requestError;
+        }
+    }
+}
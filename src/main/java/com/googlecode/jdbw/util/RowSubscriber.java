@@ -0,0 +1,55 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+/**
+ * Receives the rows published by a {@code RowPublisher}. This follows the
+ * {@code Subscriber} of the Reactive Streams specification: after
+ * {@code onSubscribe(..)}, {@code onNext(..)} is called once per row but never
+ * more times than what has been requested through the subscription, and
+ * finally either {@code onComplete()} or {@code onError(..)} is called, unless
+ * the subscription was cancelled.
+ *
+ * @see RowPublisher
+ * @author Martin Berglund
+ */
+public interface RowSubscriber {
+    /**
+     * Called once, before any other method, with the subscription to request rows through
+     * @param subscription Subscription for requesting rows or cancelling
+     */
+    void onSubscribe(RowSubscription subscription);
+
+    /**
+     * Called for every row, in the order they come from the database server
+     * @param row Values of the row
+     */
+    void onNext(Object[] row);
+
+    /**
+     * Called if the query failed; no more methods will be called after this
+     * @param error Why the query failed, usually an {@code SQLException}
+     */
+    void onError(Throwable error);
+
+    /**
+     * Called when all rows have been delivered; no more methods will be called after this
+     */
+    void onComplete();
+}
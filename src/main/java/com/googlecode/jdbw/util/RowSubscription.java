@@ -0,0 +1,48 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+/**
+ * Handed to a {@code RowSubscriber} to control the flow of rows coming from a
+ * {@code RowPublisher}; it follows the {@code Subscription} of the Reactive
+ * Streams specification. Both methods may be called from any thread, also from
+ * inside {@code RowSubscriber.onNext(..)}.
+ *
+ * @see RowPublisher
+ * @author Martin Berglund
+ */
+public interface RowSubscription {
+    /**
+     * Asks for more rows. The rows asked for are added to the rows asked for
+     * earlier but not yet delivered.
+     * @param n Number of rows, must be larger than 0; a value of
+     * {@code Long.MAX_VALUE} means that the subscriber wants all rows. For
+     * any other value the subscription is cancelled and the subscriber gets
+     * an {@code IllegalArgumentException} through {@code onError(..)}, from
+     * the thread running the query.
+     */
+    void request(long n);
+
+    /**
+     * Stops the delivery of rows, cancelling the query if it's still running.
+     * Rows may still be delivered for a short while after this has been
+     * called.
+     */
+    void cancel();
+}
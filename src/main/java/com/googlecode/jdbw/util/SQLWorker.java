@@ -19,6 +19,7 @@
 package com.googlecode.jdbw.util;
 
 import com.googlecode.jdbw.ResultSetInformation;
+import com.googlecode.jdbw.RowCursor;
 import com.googlecode.jdbw.SQLExecutor;
 import java.lang.reflect.Array;
 import java.math.BigInteger;
@@ -37,6 +38,11 @@ import java.util.List;
  */
 public class SQLWorker {
 
+    /**
+     * Default number of rows to fetch at a time from the server for the {@code stream} methods
+     */
+    public static final int DEFAULT_STREAM_FETCH_SIZE = 1000;
+
     private final SQLExecutor executor;
 
     /**
@@ -80,18 +86,14 @@ public class SQLWorker {
      * @throws SQLException If any database error occurred
      */
     public List<String[]> queryAsStrings(String SQL, Object... parameters) throws SQLException {
-        List<String[]> result = new ArrayList<String[]>();
-        for (Object[] row : query(SQL, parameters)) {
-            String[] stringRow = new String[row.length];
-            for (int i = 0; i < row.length; i++) {
-                if (row[i] == null) {
-                    stringRow[i] = null;
-                } else {
-                    stringRow[i] = row[i].toString();
-                }
+        final List<String[]> result = new ArrayList<String[]>();
+        executor.execute(new RowCursorHandlerAdapter() {
+            @Override
+            public boolean nextRow(RowCursor cursor) {
+                result.add(toStrings(cursor));
+                return true;
             }
-            result.add(stringRow);
-        }
+        }, SQL, parameters);
         return result;
     }
 
@@ -163,15 +165,16 @@ public class SQLWorker {
      * @throws SQLException If any database error occurred
      */
     public String[] topAsString(String SQL, Object... parameters) throws SQLException {
-        final Object[] rowAsObjects = top(SQL, parameters);
-        if(rowAsObjects == null) {
-            return null;
-        }
-        final String[] rowAsStrings = new String[rowAsObjects.length];
-        for (int i = 0; i < rowAsObjects.length; i++) {
-            rowAsStrings[i] = rowAsObjects[i] != null ? rowAsObjects[i].toString() : null;
-        }
-        return rowAsStrings;
+        final List<String[]> result = new ArrayList<String[]>(1);
+        executor.execute(new RowCursorHandlerAdapter() {
+            @Override
+            public boolean nextRow(RowCursor cursor) {
+                result.add(toStrings(cursor));
+                return false;
+            }
+        }, 1, 0, SQL, parameters);
+
+        return result.isEmpty() ? null : result.get(0);
     }
 
     /**
@@ -183,11 +186,14 @@ public class SQLWorker {
      * @throws SQLException If any database error occurred
      */
     public List<Object> leftColumn(String SQL, Object... parameters) throws SQLException {
-        List<Object[]> allRows = query(SQL, parameters);
-        List<Object> result = new ArrayList<Object>();
-        for (Object[] row : allRows) {
-            result.add(row[0]);
-        }
+        final List<Object> result = new ArrayList<Object>();
+        executor.execute(new RowCursorHandlerAdapter() {
+            @Override
+            public boolean nextRow(RowCursor cursor) {
+                result.add(cursor.getObject(0));
+                return true;
+            }
+        }, SQL, parameters);
         return result;
     }
 
@@ -201,18 +207,104 @@ public class SQLWorker {
      * @throws SQLException If any database error occurred
      */
     public List<String> leftColumnAsString(String SQL, Object... parameters) throws SQLException {
-        List<Object> leftColumn = leftColumn(SQL, parameters);
-        List<String> result = new ArrayList<String>(leftColumn.size());
-        for (Object value : leftColumn) {
-            if (value == null) {
-                result.add(null);
-            } else {
-                result.add(value.toString());
+        final List<String> result = new ArrayList<String>();
+        executor.execute(new RowCursorHandlerAdapter() {
+            @Override
+            public boolean nextRow(RowCursor cursor) {
+                result.add(cursor.getString(0));
+                return true;
             }
-        }
+        }, SQL, parameters);
         return result;
     }
 
+    /**
+     * Sends a query to the database and returns an iterator reading the rows as you step through it, instead of
+     * loading the whole result set into memory like {@code query(..)} does. The statement and connection are held
+     * until the iterator has been read to the end or is closed, so close it if you stop before the end.
+     *
+     * @param SQL SQL to send to the database server
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Iterator over the rows of the result set
+     * @throws SQLException If any database error occurred
+     */
+    public CloseableIterator<Object[]> stream(String SQL, Object... parameters) throws SQLException {
+        return stream(DEFAULT_STREAM_FETCH_SIZE, SQL, parameters);
+    }
+
+    /**
+     * Sends a query to the database and returns an iterator reading the rows as you step through it, fetching
+     * {@code fetchSize} rows at a time from the server.
+     *
+     * @param fetchSize How many rows to fetch from the server at a time, or 0 for the driver default
+     * @param SQL SQL to send to the database server
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Iterator over the rows of the result set
+     * @throws SQLException If any database error occurred
+     * @see #stream(String, Object...)
+     */
+    public CloseableIterator<Object[]> stream(int fetchSize, String SQL, Object... parameters) throws SQLException {
+        return executor.iterate(fetchSize, SQL, parameters);
+    }
+
+    /**
+     * Same as {@code stream(..)}, but every row is converted into a String array, like in {@code queryAsStrings(..)}
+     *
+     * @param SQL SQL to send to the database server
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Iterator over the rows of the result set as String arrays
+     * @throws SQLException If any database error occurred
+     * @see #stream(String, Object...)
+     */
+    public CloseableIterator<String[]> streamAsStrings(String SQL, Object... parameters) throws SQLException {
+        return new MappingIterator<String[]>(stream(SQL, parameters), new ObjectMapper<Object[], String[]>() {
+            @Override
+            public String[] invoke(Object[] row) {
+                String[] result = new String[row.length];
+                for (int i = 0; i < row.length; i++) {
+                    result[i] = row[i] == null ? null : row[i].toString();
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Same as {@code stream(..)}, but only the first column of every row is returned
+     *
+     * @param SQL SQL to send to the database server
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Iterator over the first column of every row
+     * @throws SQLException If any database error occurred
+     * @see #stream(String, Object...)
+     */
+    public CloseableIterator<Object> streamLeftColumn(String SQL, Object... parameters) throws SQLException {
+        return new MappingIterator<Object>(stream(SQL, parameters), new ObjectMapper<Object[], Object>() {
+            @Override
+            public Object invoke(Object[] row) {
+                return row[0];
+            }
+        });
+    }
+
+    /**
+     * Same as {@code stream(..)}, but only the first column of every row is returned, as a String
+     *
+     * @param SQL SQL to send to the database server
+     * @param parameters Parameters to substitute ?:s for in the SQL string
+     * @return Iterator over the first column of every row, as Strings
+     * @throws SQLException If any database error occurred
+     * @see #stream(String, Object...)
+     */
+    public CloseableIterator<String> streamLeftColumnAsString(String SQL, Object... parameters) throws SQLException {
+        return new MappingIterator<String>(stream(SQL, parameters), new ObjectMapper<Object[], String>() {
+            @Override
+            public String invoke(Object[] row) {
+                return row[0] == null ? null : row[0].toString();
+            }
+        });
+    }
+
     /**
      * Sends a query to the database and returns the first column of the first row
      *
@@ -222,12 +314,15 @@ public class SQLWorker {
      * @throws SQLException If any database error occurred
      */
     public Object topLeftValue(String SQL, Object... parameters) throws SQLException {
-        Object[] row = top(SQL, parameters);
-        if (row == null) {
-            return null;
-        } else {
-            return row[0];
-        }
+        final Object[] value = new Object[1];
+        executor.execute(new RowCursorHandlerAdapter() {
+            @Override
+            public boolean nextRow(RowCursor cursor) {
+                value[0] = cursor.getObject(0);
+                return false;
+            }
+        }, 1, 0, SQL, parameters);
+        return value[0];
     }
 
     /**
@@ -362,7 +457,45 @@ public class SQLWorker {
         T invoke(S param);
     }
 
-    private static class ResultSetConverter<V> extends ExecuteResultHandlerAdapter {
+    private static String[] toStrings(RowCursor cursor) {
+        String[] row = new String[cursor.getNumberOfColumns()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = cursor.getString(i);
+        }
+        return row;
+    }
+
+    private static class MappingIterator<T> implements CloseableIterator<T> {
+        private final CloseableIterator<Object[]> rows;
+        private final ObjectMapper<Object[], T> mapper;
+
+        MappingIterator(CloseableIterator<Object[]> rows, ObjectMapper<Object[], T> mapper) {
+            this.rows = rows;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return mapper.invoke(rows.next());
+        }
+
+        @Override
+        public void remove() {
+            rows.remove();
+        }
+
+        @Override
+        public void close() {
+            rows.close();
+        }
+    }
+
+    private static class ResultSetConverter<V> extends RowCursorHandlerAdapter {
         private final Class<V> typeClass;
         private final ObjectMapper<Object, V> converter;
         DataSet.Builder<V> builder;
@@ -379,14 +512,14 @@ public class SQLWorker {
         }
 
         @Override
-        public boolean nextRow(Object[] row) {
-            V[] newRow = (V[])Array.newInstance(typeClass, row.length);
-            for(int i = 0; i < row.length; i++) {
-                if(row[i] == null) {
+        public boolean nextRow(RowCursor cursor) {
+            V[] newRow = (V[])Array.newInstance(typeClass, cursor.getNumberOfColumns());
+            for(int i = 0; i < newRow.length; i++) {
+                if(cursor.isNull(i)) {
                     newRow[i] = null;
                 }
                 else {
-                    newRow[i] = converter.invoke(row[i]);
+                    newRow[i] = converter.invoke(cursor.getObject(i));
                 }
             }
             builder.addRow(newRow);
@@ -0,0 +1,156 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Connection wrapper that remembers the session state of a physical connection
+ * (auto-commit, transaction isolation, catalog, read-only and schema) and
+ * doesn't pass on calls setting any of these to the value it already has. On
+ * many drivers each of these calls is a round trip to the server, and JDBW
+ * sets auto-commit and isolation before every statement it runs.
+ * <p>
+ * There should be exactly one of these per physical connection, created when
+ * the connection is opened, so that the state survives the connection being
+ * given back to and borrowed again from a data source. If the session state
+ * is changed behind the wrapper's back, for example through an SQL
+ * {@code SET} statement, call {@code clearCachedState()}. Auto-commit and
+ * read-only are kept in the caches of {@code DelegatingConnection}, the rest
+ * in this class.
+ *
+ * @author Martin Berglund
+ */
+class SessionStateConnection extends DelegatingConnection {
+
+    private Integer transactionIsolation;
+    private String catalog;
+    private boolean catalogKnown;
+    private String schema;
+    private boolean schemaKnown;
+
+    SessionStateConnection(Connection connection) {
+        super(connection);
+        this.transactionIsolation = null;
+        this.catalog = null;
+        this.catalogKnown = false;
+        this.schema = null;
+        this.schemaKnown = false;
+    }
+
+    @Override
+    public synchronized boolean getAutoCommit() throws SQLException {
+        return super.getAutoCommit();
+    }
+
+    @Override
+    public synchronized void setAutoCommit(boolean autoCommit) throws SQLException {
+        if(getCacheState() && _autoCommitCached != null && _autoCommitCached == autoCommit) {
+            return;
+        }
+        super.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public synchronized int getTransactionIsolation() throws SQLException {
+        if(!getCacheState() || transactionIsolation == null) {
+            transactionIsolation = _conn.getTransactionIsolation();
+        }
+        return transactionIsolation;
+    }
+
+    @Override
+    public synchronized void setTransactionIsolation(int level) throws SQLException {
+        if(getCacheState() && transactionIsolation != null && transactionIsolation == level) {
+            return;
+        }
+        transactionIsolation = null;
+        _conn.setTransactionIsolation(level);
+        transactionIsolation = level;
+    }
+
+    @Override
+    public synchronized boolean isReadOnly() throws SQLException {
+        return super.isReadOnly();
+    }
+
+    @Override
+    public synchronized void setReadOnly(boolean readOnly) throws SQLException {
+        if(getCacheState() && _readOnlyCached != null && _readOnlyCached == readOnly) {
+            return;
+        }
+        super.setReadOnly(readOnly);
+    }
+
+    @Override
+    public synchronized String getCatalog() throws SQLException {
+        if(!getCacheState() || !catalogKnown) {
+            catalog = _conn.getCatalog();
+            catalogKnown = true;
+        }
+        return catalog;
+    }
+
+    @Override
+    public synchronized void setCatalog(String catalog) throws SQLException {
+        if(getCacheState() && catalogKnown && isSameName(this.catalog, catalog)) {
+            return;
+        }
+        catalogKnown = false;
+        _conn.setCatalog(catalog);
+        //Drivers may silently ignore or normalize the catalog name, so read it back on the next call
+    }
+
+    @Override
+    public synchronized String getSchema() throws SQLException {
+        if(!getCacheState() || !schemaKnown) {
+            schema = _conn.getSchema();
+            schemaKnown = true;
+        }
+        return schema;
+    }
+
+    @Override
+    public synchronized void setSchema(String schema) throws SQLException {
+        if(getCacheState() && schemaKnown && isSameName(this.schema, schema)) {
+            return;
+        }
+        schemaKnown = false;
+        _conn.setSchema(schema);
+    }
+
+    @Override
+    public synchronized void clearCachedState() {
+        super.clearCachedState();
+        transactionIsolation = null;
+        catalogKnown = false;
+        schemaKnown = false;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        _closed = true;
+        _conn.close();
+    }
+
+    private static boolean isSameName(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Information about an SQL statement that can be worked out from the SQL text
+ * alone: what kind of statement it is, how many parameters it takes and
+ * whether generated keys can be read after running it. The information is
+ * kept in a bounded cache shared by the whole JVM, so the SQL text of a
+ * statement that is run over and over again is only looked at the first time.
+ * <p>
+ * The classification is made from the first keyword of the statement (after
+ * any comments and opening parenthesis) and parameters are counted as the
+ * question marks that aren't inside string literals, quoted identifiers or
+ * comments. It doesn't try to fully parse the SQL, so for unusual statements
+ * the kind can end up as {@code OTHER}. Whether a query is read-only is
+ * decided from the other keywords in it; any keyword that could mean the query
+ * writes or locks something makes it count as not read-only, even if it turns
+ * out to be harmless.
+ *
+ * @author Martin Berglund
+ */
+public class StatementInfo {
+
+    /**
+     * The kind of an SQL statement
+     */
+    public static enum Kind {
+        /**
+         * A query, starting with SELECT or SHOW, or with WITH if none of the
+         * common table expressions insert, update or delete anything
+         */
+        SELECT,
+        INSERT,
+        UPDATE,
+        DELETE,
+        /**
+         * A statement changing the schema or privileges, such as CREATE, ALTER or DROP
+         */
+        DDL,
+        /**
+         * Several statements separated by semicolons
+         */
+        MULTI,
+        /**
+         * Anything not falling into the kinds above, such as stored procedure calls
+         */
+        OTHER
+    }
+
+    /**
+     * Maximum number of statements to remember; when the cache is full it's
+     * emptied and starts over, to keep it cheap for the common case where
+     * a program runs the same few statements all the time
+     */
+    static final int MAX_CACHED_STATEMENTS = 4096;
+
+    /**
+     * Statements longer than this are generated SQL not likely to be seen
+     * again and are never cached
+     */
+    static final int MAX_CACHED_SQL_LENGTH = 4096;
+
+    /**
+     * Keywords that change data, a WITH statement containing any of these
+     * isn't classified as a query
+     */
+    private static final String[] DATA_MODIFYING_KEYWORDS = { "insert", "update", "delete", "merge" };
+
+    /**
+     * Keywords that make a query write or lock something: SELECT .. INTO,
+     * SELECT .. FOR UPDATE, FOR SHARE, LOCK IN SHARE MODE and the sequence
+     * functions
+     */
+    private static final String[] LOCKING_OR_WRITING_KEYWORDS = { "into", "update", "share", "lock", "nextval", "setval" };
+
+    private static final ConcurrentMap<String, StatementInfo> CACHE = new ConcurrentHashMap<String, StatementInfo>();
+
+    private final Kind kind;
+    private final int numberOfParameters;
+    private final boolean generatedKeysApplicable;
+    private final boolean readOnly;
+
+    private StatementInfo(Kind kind, int numberOfParameters, boolean generatedKeysApplicable, boolean readOnly) {
+        this.kind = kind;
+        this.numberOfParameters = numberOfParameters;
+        this.generatedKeysApplicable = generatedKeysApplicable;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Returns the information for an SQL statement, from the cache if the
+     * statement has been seen before
+     * @param SQL SQL statement to look up
+     * @return Information about the statement
+     */
+    public static StatementInfo forSQL(String SQL) {
+        StatementInfo info = CACHE.get(SQL);
+        if(info != null) {
+            return info;
+        }
+        info = analyze(SQL);
+        if(SQL.length() <= MAX_CACHED_SQL_LENGTH) {
+            if(CACHE.size() >= MAX_CACHED_STATEMENTS) {
+                CACHE.clear();
+            }
+            CACHE.put(SQL, info);
+        }
+        return info;
+    }
+
+    /**
+     * @return What kind of statement this is
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return Number of parameters (question marks) in the statement
+     */
+    public int getNumberOfParameters() {
+        return numberOfParameters;
+    }
+
+    /**
+     * @return True if the statement is an insert, for which JDBW will ask the
+     * driver for generated keys
+     */
+    public boolean isGeneratedKeysApplicable() {
+        return generatedKeysApplicable;
+    }
+
+    /**
+     * @return True if the statement is a query that doesn't change or lock
+     * anything in the database, so that it's always safe to run it again or
+     * to run it against a replica. Queries with {@code INTO},
+     * {@code FOR UPDATE}, {@code FOR SHARE} or {@code LOCK IN SHARE MODE} and
+     * queries calling {@code nextval(..)} are not read-only.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementInfo{" + kind + ", parameters=" + numberOfParameters + "}";
+    }
+
+    static StatementInfo analyze(String SQL) {
+        int length = SQL.length();
+        int parameters = 0;
+        int firstWordStart = -1;
+        int firstWordEnd = -1;
+        boolean modifiesData = false;
+        boolean locksOrWrites = false;
+        boolean multi = false;
+        boolean endOfStatement = false;
+        for(int i = 0; i < length; i++) {
+            char c = SQL.charAt(i);
+            if(c == '-' && i + 1 < length && SQL.charAt(i + 1) == '-') {
+                i = skipTo(SQL, i + 2, "\n");
+                continue;
+            }
+            else if(c == '/' && i + 1 < length && SQL.charAt(i + 1) == '*') {
+                i = skipTo(SQL, i + 2, "*/") + 1;
+                continue;
+            }
+            else if(Character.isWhitespace(c)) {
+                continue;
+            }
+            else if(endOfStatement) {
+                multi = true;
+            }
+
+            if(c == '\'' || c == '"' || c == '`') {
+                i = skipTo(SQL, i + 1, String.valueOf(c));
+            }
+            else if(c == '?') {
+                parameters++;
+            }
+            else if(c == ';') {
+                endOfStatement = true;
+            }
+            else if(Character.isLetter(c)) {
+                int wordEnd = i + 1;
+                while(wordEnd < length && (Character.isLetterOrDigit(SQL.charAt(wordEnd)) || SQL.charAt(wordEnd) == '_')) {
+                    wordEnd++;
+                }
+                if(firstWordStart == -1) {
+                    firstWordStart = i;
+                    firstWordEnd = wordEnd;
+                }
+                else {
+                    modifiesData |= isOneOf(SQL, i, wordEnd, DATA_MODIFYING_KEYWORDS);
+                    locksOrWrites |= isOneOf(SQL, i, wordEnd, LOCKING_OR_WRITING_KEYWORDS);
+                }
+                i = wordEnd - 1;
+            }
+        }
+
+        boolean generatedKeys = startsWithIgnoreCase(SQL.trim(), "insert");
+        if(multi) {
+            return new StatementInfo(Kind.MULTI, parameters, generatedKeys, false);
+        }
+        Kind kind = Kind.OTHER;
+        if(firstWordStart != -1) {
+            kind = classify(SQL.substring(firstWordStart, firstWordEnd), modifiesData);
+        }
+        return new StatementInfo(kind, parameters, generatedKeys, kind == Kind.SELECT && !locksOrWrites);
+    }
+
+    private static Kind classify(String keyword, boolean modifiesData) {
+        if(keyword.equalsIgnoreCase("select") || keyword.equalsIgnoreCase("show")) {
+            return Kind.SELECT;
+        }
+        else if(keyword.equalsIgnoreCase("with")) {
+            //The common table expressions can be data-modifying in PostgreSQL, as can the statement after them
+            return modifiesData ? Kind.OTHER : Kind.SELECT;
+        }
+        else if(keyword.equalsIgnoreCase("insert")) {
+            return Kind.INSERT;
+        }
+        else if(keyword.equalsIgnoreCase("update")) {
+            return Kind.UPDATE;
+        }
+        else if(keyword.equalsIgnoreCase("delete")) {
+            return Kind.DELETE;
+        }
+        else if(keyword.equalsIgnoreCase("create") || keyword.equalsIgnoreCase("alter") ||
+                keyword.equalsIgnoreCase("drop") || keyword.equalsIgnoreCase("truncate") ||
+                keyword.equalsIgnoreCase("rename") || keyword.equalsIgnoreCase("grant") ||
+                keyword.equalsIgnoreCase("revoke")) {
+            return Kind.DDL;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * @return Index of the last character of {@code end}, or the last index of the SQL if it can't be found
+     */
+    private static int skipTo(String SQL, int from, String end) {
+        int index = SQL.indexOf(end, from);
+        if(index == -1) {
+            return SQL.length() - 1;
+        }
+        return index + end.length() - 1;
+    }
+
+    private static boolean isOneOf(String SQL, int wordStart, int wordEnd, String[] keywords) {
+        int wordLength = wordEnd - wordStart;
+        for(String keyword : keywords) {
+            if(keyword.length() == wordLength && SQL.regionMatches(true, wordStart, keyword, 0, wordLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWithIgnoreCase(String string, String prefix) {
+        return string.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ChunkedBatchWriteTest {
+
+    private JdbcConnectionPool dataSource;
+    private DatabaseConnection databaseConnection;
+    private SQLWorker worker;
+
+    @Before
+    public void buildUp() throws SQLException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:chunks;DB_CLOSE_DELAY=-1", "", "");
+        databaseConnection = new DatabaseConnectionImpl(dataSource, DatabaseServerTypes.H2_IN_MEMORY);
+        worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("CREATE TABLE \"Item\" (\"id\" INT PRIMARY KEY, \"name\" VARCHAR)");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        worker.write("DROP TABLE \"Item\"");
+        databaseConnection.close();
+        dataSource.dispose();
+    }
+
+    /**
+     * Test of batchWrite(Iterator, chunkSize) for inserts, which are sent as
+     * multi-row inserts one chunk at a time
+     */
+    @Test
+    public void insertChunksAreReportedOneByOne() throws SQLException {
+        System.out.println("insertChunksAreReportedOneByOne");
+        RecordingHandler handler = new RecordingHandler();
+        databaseConnection.createAutoExecutor().batchWrite(handler,
+                "INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows(1, 25), 10);
+
+        assertEquals(Arrays.asList("result 10", "chunk 1/10", "result 10", "chunk 2/20", "result 5", "chunk 3/25"), handler.events);
+        assertEquals(25, worker.topLeftValueAsInt("SELECT COUNT(*) FROM \"Item\"").intValue());
+    }
+
+    /**
+     * Test of batchWrite(Iterator, chunkSize) for statements that are sent as
+     * JDBC batches
+     */
+    @Test
+    public void updateChunksAreReportedOneByOne() throws SQLException {
+        System.out.println("updateChunksAreReportedOneByOne");
+        databaseConnection.createAutoExecutor().batchWrite(
+                "INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows(1, 7), 100);
+        List<Object[]> updates = new ArrayList<Object[]>();
+        for(int i = 1; i <= 7; i++) {
+            updates.add(new Object[] { "updated" + i, i });
+        }
+        RecordingHandler handler = new RecordingHandler();
+        databaseConnection.createAutoExecutor().batchWrite(handler,
+                "UPDATE \"Item\" SET \"name\" = ? WHERE \"id\" = ?", updates.iterator(), 3);
+
+        assertEquals(Arrays.asList("result 3", "chunk 1/3", "result 3", "chunk 2/6", "result 1", "chunk 3/7"), handler.events);
+        assertEquals("updated7", worker.topLeftValueAsString("SELECT \"name\" FROM \"Item\" WHERE \"id\" = 7"));
+    }
+
+    /**
+     * Test of AutoExecutor.batchWrite(.., commitEachChunk), the chunks before a
+     * failed chunk must stay committed while the failed chunk is rolled back
+     */
+    @Test
+    public void eachChunkIsCommittedOnItsOwn() throws SQLException {
+        System.out.println("eachChunkIsCommittedOnItsOwn");
+        List<Object[]> rows = new ArrayList<Object[]>();
+        Iterator<Object[]> iterator = rows(1, 25);
+        while(iterator.hasNext()) {
+            rows.add(iterator.next());
+        }
+        //Duplicate of the first row in the third chunk
+        rows.add(new Object[] { 1, "duplicate" });
+
+        RecordingHandler handler = new RecordingHandler();
+        AutoExecutor executor = databaseConnection.createAutoExecutor();
+        try {
+            executor.batchWrite(handler, "INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows.iterator(), 10, true);
+            fail("Third chunk should have failed");
+        }
+        catch(SQLException e) {
+            //Expected
+        }
+
+        assertEquals(Arrays.asList("result 10", "chunk 1/10", "result 10", "chunk 2/20"), handler.events);
+        assertEquals(20, worker.topLeftValueAsInt("SELECT COUNT(*) FROM \"Item\"").intValue());
+        assertEquals(0, worker.topLeftValueAsInt("SELECT COUNT(*) FROM \"Item\" WHERE \"id\" > 20").intValue());
+    }
+
+    private static Iterator<Object[]> rows(int from, int to) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for(int i = from; i <= to; i++) {
+            rows.add(new Object[] { i, "item" + i });
+        }
+        return rows.iterator();
+    }
+
+    private static class RecordingHandler extends BatchUpdateHandlerAdapter {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onBatchResult(int[] returnCodes) {
+            events.add("result " + returnCodes.length);
+        }
+
+        @Override
+        public void onChunkCompleted(int chunkNumber, long totalRowsWritten) {
+            events.add("chunk " + chunkNumber + "/" + totalRowsWritten);
+        }
+    }
+}
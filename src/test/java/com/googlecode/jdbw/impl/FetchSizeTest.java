@@ -0,0 +1,228 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.SQLExecutor;
+import com.googlecode.jdbw.util.CloseableIterator;
+import com.googlecode.jdbw.util.ExecuteResultHandlerAdapter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of queries with a fetch size, running the server specific executors on
+ * top of an H2 connection that records the calls made to it
+ */
+public class FetchSizeTest {
+
+    private Connection connection;
+    private List<String> calls;
+
+    @Before
+    public void buildUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        calls = Collections.synchronizedList(new ArrayList<String>());
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE \"Item\" (\"id\" INT PRIMARY KEY)");
+        statement.execute("INSERT INTO \"Item\" VALUES (1), (2), (3)");
+        statement.close();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * PostgreSQL only streams inside a transaction, auto-commit must be turned
+     * off for the query and restored after it
+     */
+    @Test
+    public void postgreSQLStreamingQueryRunsInTransaction() throws SQLException {
+        System.out.println("postgreSQLStreamingQueryRunsInTransaction");
+        SQLExecutor executor = DatabaseServerTypes.POSTGRESQL.createExecutor(recordingConnection());
+        final List<Boolean> autoCommitDuringQuery = new ArrayList<Boolean>();
+        executor.execute(new ExecuteResultHandlerAdapter() {
+            @Override
+            public boolean nextRow(Object[] row) {
+                try {
+                    autoCommitDuringQuery.add(connection.getAutoCommit());
+                }
+                catch(SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                return true;
+            }
+        }, 0, 0, 2, "SELECT \"id\" FROM \"Item\"");
+
+        assertEquals(Arrays.asList(false, false, false), autoCommitDuringQuery);
+        assertEquals(Arrays.asList("setAutoCommit(false)", "setFetchSize(2)", "commit", "setAutoCommit(true)"), calls);
+        assertTrue(connection.getAutoCommit());
+    }
+
+    /**
+     * A failing streaming query must be rolled back and auto-commit restored
+     */
+    @Test
+    public void postgreSQLFailedStreamingQueryIsRolledBack() throws SQLException {
+        System.out.println("postgreSQLFailedStreamingQueryIsRolledBack");
+        SQLExecutor executor = DatabaseServerTypes.POSTGRESQL.createExecutor(recordingConnection());
+        try {
+            executor.execute(new ExecuteResultHandlerAdapter(), 0, 0, 2, "SELECT \"missing\" FROM \"Item\"");
+            fail("Query should have failed");
+        }
+        catch(SQLException e) {
+            //Expected
+        }
+        assertEquals(Arrays.asList("setAutoCommit(false)", "rollback", "setAutoCommit(true)"), calls);
+        assertTrue(connection.getAutoCommit());
+    }
+
+    /**
+     * Queries without a fetch size, or already in a transaction, must leave
+     * auto-commit alone
+     */
+    @Test
+    public void postgreSQLLeavesAutoCommitAloneWhenNotNeeded() throws SQLException {
+        System.out.println("postgreSQLLeavesAutoCommitAloneWhenNotNeeded");
+        SQLExecutor executor = DatabaseServerTypes.POSTGRESQL.createExecutor(recordingConnection());
+        executor.execute(new ExecuteResultHandlerAdapter(), 0, 0, 0, "SELECT \"id\" FROM \"Item\"");
+        assertEquals(Arrays.asList("setFetchSize(0)"), calls);
+
+        calls.clear();
+        connection.setAutoCommit(false);
+        executor.execute(new ExecuteResultHandlerAdapter(), 0, 0, 2, "SELECT \"id\" FROM \"Item\"");
+        assertEquals(Arrays.asList("setFetchSize(2)"), calls);
+        assertFalse(connection.getAutoCommit());
+        connection.rollback();
+        connection.setAutoCommit(true);
+    }
+
+    /**
+     * The transaction of a streaming iterator must be committed when the
+     * iterator is closed
+     */
+    @Test
+    public void postgreSQLStreamingIteratorCommitsOnClose() throws SQLException {
+        System.out.println("postgreSQLStreamingIteratorCommitsOnClose");
+        SQLExecutor executor = DatabaseServerTypes.POSTGRESQL.createExecutor(recordingConnection());
+        CloseableIterator<Object[]> iterator = executor.iterate(2, "SELECT \"id\" FROM \"Item\" ORDER BY \"id\"");
+        assertEquals(1, iterator.next()[0]);
+        assertFalse(connection.getAutoCommit());
+        iterator.close();
+        assertEquals(Arrays.asList("setAutoCommit(false)", "setFetchSize(2)", "commit", "setAutoCommit(true)"), calls);
+        assertTrue(connection.getAutoCommit());
+    }
+
+    /**
+     * MySQL only streams with a fetch size of Integer.MIN_VALUE; general
+     * statements always stream and a fetch size of 0 must not turn that off
+     */
+    @Test
+    public void mySQLUsesMinValueFetchSize() throws SQLException {
+        System.out.println("mySQLUsesMinValueFetchSize");
+        SQLExecutor executor = DatabaseServerTypes.MYSQL.createExecutor(recordingConnection());
+        executor.execute(new ExecuteResultHandlerAdapter(), 0, 0, 0, "SELECT \"id\" FROM \"Item\"");
+        assertEquals(Arrays.asList("setFetchSize(" + Integer.MIN_VALUE + ")"), calls);
+
+        calls.clear();
+        executor.execute(new ExecuteResultHandlerAdapter(), 0, 0, 100, "SELECT \"id\" FROM \"Item\"");
+        assertEquals(Arrays.asList(
+                "setFetchSize(" + Integer.MIN_VALUE + ")",
+                "setFetchSize(" + Integer.MIN_VALUE + ")"), calls);
+        assertTrue(connection.getAutoCommit());
+    }
+
+    /**
+     * The fetch size must never be larger than the maximum number of rows
+     */
+    @Test
+    public void fetchSizeIsCappedByMaxRows() throws SQLException {
+        System.out.println("fetchSizeIsCappedByMaxRows");
+        SQLExecutor executor = DatabaseServerTypes.H2_IN_MEMORY.createExecutor(recordingConnection());
+        final List<Object> ids = new ArrayList<Object>();
+        executor.execute(new ExecuteResultHandlerAdapter() {
+            @Override
+            public boolean nextRow(Object[] row) {
+                ids.add(row[0]);
+                return true;
+            }
+        }, 2, 0, 100, "SELECT \"id\" FROM \"Item\" ORDER BY \"id\"");
+        assertEquals(Arrays.<Object>asList(1, 2), ids);
+        assertEquals(Arrays.asList("setFetchSize(2)"), calls);
+    }
+
+    /**
+     * @return Connection to the test database that adds transaction calls and
+     * fetch sizes to {@code calls}, fetch sizes are not passed on to H2
+     */
+    private Connection recordingConnection() {
+        return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if(name.equals("setAutoCommit") || name.equals("commit") || name.equals("rollback")) {
+                    calls.add(name + (args == null ? "" : "(" + args[0] + ")"));
+                }
+                Object result = forward(connection, method, args);
+                if(name.equals("prepareStatement")) {
+                    return recordingStatement((PreparedStatement)result);
+                }
+                return result;
+            }
+        });
+    }
+
+    private PreparedStatement recordingStatement(final PreparedStatement statement) {
+        return (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if(method.getName().equals("setFetchSize")) {
+                    calls.add("setFetchSize(" + args[0] + ")");
+                    return null;
+                }
+                return forward(statement, method, args);
+            }
+        });
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.util.BatchUpdateHandlerAdapter;
+import com.googlecode.jdbw.util.ExecuteResultHandlerAdapter;
+import com.googlecode.jdbw.util.OneSharedConnectionDataSource;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MultiRowInsertTest {
+
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:")),
+                DatabaseServerTypes.H2_IN_MEMORY);
+        new SQLWorker(databaseConnection.createAutoExecutor()).write(
+                "CREATE TABLE \"Item\" (\"id\" INT PRIMARY KEY, \"name\" VARCHAR)");
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of parse and getSQL
+     */
+    @Test
+    public void singleRowInsertIsExpanded() {
+        System.out.println("singleRowInsertIsExpanded");
+        MultiRowInsert insert = MultiRowInsert.parse("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)");
+        assertNotNull(insert);
+        assertEquals(2, insert.getParametersPerRow());
+        assertEquals("INSERT INTO \"Item\" (\"id\", \"name\") VALUES (?, ?), (?, ?), (?, ?)", insert.getSQL(3));
+        assertEquals(4, insert.getMaxRowsPerStatement(11));
+        assertEquals(MultiRowInsert.MAX_ROWS_PER_STATEMENT, insert.getMaxRowsPerStatement(65535));
+
+        assertNull(MultiRowInsert.parse("INSERT INTO \"Item\" VALUES(?, 'constant')"));
+        assertNull(MultiRowInsert.parse("INSERT INTO \"Item\" SELECT * FROM \"Other\""));
+        assertNull(MultiRowInsert.parse("UPDATE \"Item\" SET \"name\" = ?"));
+    }
+
+    /**
+     * Test of batchWrite with a batch that is rewritten into multi-row inserts
+     */
+    @Test
+    public void batchOfInsertsIsWrittenAsMultiRowInserts() throws SQLException {
+        System.out.println("batchOfInsertsIsWrittenAsMultiRowInserts");
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for(int i = 0; i < 1203; i++) {
+            rows.add(new Object[] { i, i % 7 == 0 ? null : "item" + i });
+        }
+        final List<int[]> results = new ArrayList<int[]>();
+        databaseConnection.createAutoExecutor().batchWrite(new BatchUpdateHandlerAdapter() {
+            @Override
+            public void onBatchResult(int[] result) {
+                results.add(result);
+            }
+        }, "INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows);
+
+        assertEquals(1, results.size());
+        assertEquals(1203, results.get(0).length);
+        for(int result : results.get(0)) {
+            assertEquals(1, result);
+        }
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        assertEquals("1203", worker.topLeftValueAsString("SELECT COUNT(*) FROM \"Item\""));
+        assertEquals("172", worker.topLeftValueAsString("SELECT COUNT(*) FROM \"Item\" WHERE \"name\" IS NULL"));
+        assertEquals("item1202", worker.topLeftValueAsString("SELECT \"name\" FROM \"Item\" WHERE \"id\" = 1202"));
+    }
+
+    /**
+     * Test of setMultiRowInsertEnabled(false), a failing row only fails the
+     * rows of its own statement, so with the rewrite turned off the rows
+     * around it are written by the driver as one statement each
+     */
+    @Test
+    public void multiRowInsertCanBeTurnedOff() throws SQLException {
+        System.out.println("multiRowInsertCanBeTurnedOff");
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for(int i = 0; i < 5; i++) {
+            rows.add(new Object[] { i == 2 ? 0 : i, "item" + i });
+        }
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+
+        try {
+            databaseConnection.createAutoExecutor().batchWrite("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows);
+            fail("Duplicate key should have failed the batch");
+        }
+        catch(SQLException e) {
+            //Expected
+        }
+        assertEquals("0", worker.topLeftValueAsString("SELECT COUNT(*) FROM \"Item\""));
+
+        AutoExecutor executor = databaseConnection.createAutoExecutor();
+        executor.setMultiRowInsertEnabled(false);
+        try {
+            executor.batchWrite("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows);
+            fail("Duplicate key should have failed the batch");
+        }
+        catch(SQLException e) {
+            //Expected
+        }
+        assertEquals("4", worker.topLeftValueAsString("SELECT COUNT(*) FROM \"Item\""));
+    }
+
+    /**
+     * Test of batchWrite on an executor that overrides setParameter, every
+     * value of the batch goes through the override, with and without the
+     * multi-row insert rewrite
+     */
+    @Test
+    public void batchesGoThroughOverriddenSetParameter() throws SQLException {
+        System.out.println("batchesGoThroughOverriddenSetParameter");
+        Connection connection = DriverManager.getConnection("jdbc:h2:mem:");
+        try {
+            SQLExecutorImpl executor = new SQLExecutorImpl(connection, DatabaseServerTypes.H2_IN_MEMORY.getSQLDialect()) {
+                @Override
+                protected void setParameter(PreparedStatement statement, Object object, int i) throws SQLException {
+                    super.setParameter(statement, object instanceof String ? ((String)object).toUpperCase() : object, i);
+                }
+            };
+            executor.execute(new ExecuteResultHandlerAdapter(), "CREATE TABLE \"Item\" (\"id\" INT PRIMARY KEY, \"name\" VARCHAR)");
+            List<Object[]> rows = new ArrayList<Object[]>();
+            for(int i = 0; i < 20; i++) {
+                rows.add(new Object[] { i, "item" + i });
+            }
+            executor.batchWrite("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows);
+            executor.batchWrite("UPDATE \"Item\" SET \"name\" = ? WHERE \"id\" = ?", Arrays.asList(
+                    new Object[] { "renamed0", 0 },
+                    new Object[] { "renamed1", 1 }).iterator(), 10);
+
+            final List<String> names = new ArrayList<String>();
+            executor.execute(new ExecuteResultHandlerAdapter() {
+                @Override
+                public boolean nextRow(Object[] row) {
+                    names.add((String)row[0]);
+                    return true;
+                }
+            }, "SELECT \"name\" FROM \"Item\" ORDER BY \"id\"");
+            assertEquals(20, names.size());
+            assertEquals("RENAMED0", names.get(0));
+            assertEquals("RENAMED1", names.get(1));
+            assertEquals("ITEM19", names.get(19));
+        }
+        finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.SQLExecutor;
+import com.googlecode.jdbw.util.NullValue;
+import com.googlecode.jdbw.util.OneSharedConnectionDataSource;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParameterBinderTest {
+
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:")),
+                DatabaseServerTypes.H2_IN_MEMORY);
+        new SQLWorker(databaseConnection.createAutoExecutor()).write(
+                "CREATE TABLE \"Value\" (\"id\" INT PRIMARY KEY, \"amount\" DECIMAL(10, 2), \"created\" TIMESTAMP)");
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of batchWrite with values changing class between rows
+     */
+    @Test
+    public void bindersFollowTheClassOfTheValues() throws SQLException {
+        System.out.println("bindersFollowTheClassOfTheValues");
+        List<Object[]> rows = Arrays.asList(
+                new Object[] { 1, null, new NullValue.Timestamp() },
+                new Object[] { 2, new BigDecimal("1.50"), new java.util.Date(0) },
+                new Object[] { (short)3, 2, new java.sql.Timestamp(1000) },
+                new Object[] { 4L, new NullValue.Decimal(), null });
+        SQLExecutor executor = databaseConnection.createAutoExecutor();
+        executor.batchWrite("UPDATE \"Value\" SET \"amount\" = 0 WHERE \"id\" = ? AND \"amount\" = ? OR \"created\" = ?", rows);
+        executor.batchWrite("INSERT INTO \"Value\" (\"id\", \"amount\", \"created\") VALUES(?, ?, ?)", rows);
+
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        assertArrayEquals(new String[] { "1", null, null }, worker.topAsString("SELECT * FROM \"Value\" WHERE \"id\" = 1"));
+        assertEquals("1.50", worker.topLeftValueAsString("SELECT \"amount\" FROM \"Value\" WHERE \"id\" = 2"));
+        assertEquals("2.00", worker.topLeftValueAsString("SELECT \"amount\" FROM \"Value\" WHERE \"id\" = 3"));
+        assertEquals("1", worker.topLeftValueAsString("SELECT COUNT(*) FROM \"Value\" WHERE \"created\" = ?", new java.sql.Timestamp(1000)));
+        assertEquals("4", worker.topLeftValueAsString("SELECT COUNT(*) FROM \"Value\""));
+    }
+
+    /**
+     * Test of forValue with the NullValue classes, each of them must be bound
+     * with setNull(..) using its own SQL type, also when subclassed
+     */
+    @Test
+    public void nullValuesAreBoundWithTheirSQLType() throws SQLException {
+        System.out.println("nullValuesAreBoundWithTheirSQLType");
+        Object[] values = new Object[] {
+            null,
+            new NullValue.String(),
+            new NullValue.Integer(),
+            new NullValue.Double(),
+            new NullValue.Decimal(),
+            new NullValue.Timestamp(),
+            new NullValue.Binary(),
+            new NullValue.Integer() { }
+        };
+        final List<String> calls = new ArrayList<String>();
+        PreparedStatement statement = (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                calls.add(method.getName() + Arrays.asList(args));
+                return null;
+            }
+        });
+        for(int i = 0; i < values.length; i++) {
+            ParameterBinder.forValue(values[i]).bind(statement, i + 1, values[i]);
+        }
+
+        assertEquals(Arrays.asList(
+                "setNull[1, " + Types.VARCHAR + "]",
+                "setNull[2, " + Types.VARCHAR + "]",
+                "setNull[3, " + Types.INTEGER + "]",
+                "setNull[4, " + Types.DOUBLE + "]",
+                "setNull[5, " + Types.DECIMAL + "]",
+                "setNull[6, " + Types.TIMESTAMP + "]",
+                "setNull[7, " + Types.BINARY + "]",
+                "setNull[8, " + Types.INTEGER + "]"), calls);
+    }
+
+    /**
+     * Test of isCacheable, binders are only remembered for classes that can
+     * never be unloaded
+     */
+    @Test
+    public void onlyJDKAndNullValueClassesAreCached() {
+        System.out.println("onlyJDKAndNullValueClassesAreCached");
+        assertTrue(ParameterBinder.isCacheable(String.class));
+        assertTrue(ParameterBinder.isCacheable(java.sql.Timestamp.class));
+        assertTrue(ParameterBinder.isCacheable(NullValue.Integer.class));
+        assertFalse(ParameterBinder.isCacheable(ApplicationDate.class));
+        assertFalse(ParameterBinder.isCacheable(new NullValue.Integer() { }.getClass()));
+        assertSame(ParameterBinder.forClass(java.util.Date.class), ParameterBinder.forClass(ApplicationDate.class));
+    }
+
+    private static class ApplicationDate extends java.util.Date {
+    }
+}
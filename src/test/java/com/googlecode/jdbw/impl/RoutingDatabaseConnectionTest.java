@@ -0,0 +1,140 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.DatabaseTransaction;
+import com.googlecode.jdbw.TransactionIsolation;
+import com.googlecode.jdbw.util.CircuitBreaker;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RoutingDatabaseConnectionTest {
+
+    private JdbcConnectionPool[] nodes;
+    private RoutingDatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        String[] names = { "primary", "replica1", "replica2" };
+        nodes = new JdbcConnectionPool[names.length];
+        for(int i = 0; i < names.length; i++) {
+            nodes[i] = JdbcConnectionPool.create("jdbc:h2:mem:routing_" + names[i] + ";DB_CLOSE_DELAY=-1", "", "");
+            SQLWorker worker = new SQLWorker(new DatabaseConnectionImpl(nodes[i], DatabaseServerTypes.H2_IN_MEMORY).createAutoExecutor());
+            worker.write("CREATE TABLE node (name VARCHAR)");
+            worker.write("INSERT INTO node VALUES (?)", names[i]);
+        }
+        databaseConnection = new RoutingDatabaseConnection(
+                nodes[0],
+                Arrays.<DataSource>asList(nodes[1], nodes[2]),
+                DatabaseServerTypes.H2_IN_MEMORY);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for(JdbcConnectionPool node: nodes) {
+            new SQLWorker(new DatabaseConnectionImpl(node, DatabaseServerTypes.H2_IN_MEMORY).createAutoExecutor()).write("DROP TABLE node");
+            node.dispose();
+        }
+    }
+
+    /**
+     * Test of createAutoExecutor, reads are spread over the replicas
+     */
+    @Test
+    public void readsGoToReplicas() throws SQLException {
+        System.out.println("readsGoToReplicas");
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        Set<String> readFrom = new HashSet<String>();
+        for(int i = 0; i < 4; i++) {
+            readFrom.add(worker.topLeftValueAsString("SELECT name FROM node"));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("replica1", "replica2")), readFrom);
+    }
+
+    /**
+     * Test of createAutoExecutor and beginTransaction, writes and transactions go to the primary
+     */
+    @Test
+    public void writesGoToPrimary() throws SQLException {
+        System.out.println("writesGoToPrimary");
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("UPDATE node SET name = ?", "written");
+        DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+        try {
+            SQLWorker transactionWorker = new SQLWorker(transaction);
+            assertEquals("written", transactionWorker.topLeftValueAsString("SELECT name FROM node"));
+        }
+        finally {
+            transaction.rollback();
+        }
+        assertFalse("written".equals(worker.topLeftValueAsString("SELECT name FROM node")));
+    }
+
+    /**
+     * Test of setReadYourWritesWindow, a thread keeps reading from the primary after a write
+     */
+    @Test
+    public void readYourWritesStaysOnPrimary() throws SQLException {
+        System.out.println("readYourWritesStaysOnPrimary");
+        databaseConnection.setReadYourWritesWindow(1, TimeUnit.HOURS);
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        assertTrue(worker.topLeftValueAsString("SELECT name FROM node").startsWith("replica"));
+        worker.write("UPDATE node SET name = ?", "written");
+        for(int i = 0; i < 3; i++) {
+            assertEquals("written", worker.topLeftValueAsString("SELECT name FROM node"));
+        }
+    }
+
+    /**
+     * Test of the circuit breaker, an open primary breaker stops writes but
+     * not reads from the replicas
+     */
+    @Test
+    public void primaryBreakerOnlyAppliesToThePrimary() throws SQLException {
+        System.out.println("primaryBreakerOnlyAppliesToThePrimary");
+        CircuitBreaker circuitBreaker = databaseConnection.getPrimary().getCircuitBreaker();
+        for(int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        try {
+            worker.write("UPDATE node SET name = ?", "written");
+            fail("Write should have failed fast on the open breaker");
+        }
+        catch(SQLTransientConnectionException e) {
+            //Expected
+        }
+        assertTrue(worker.topLeftValueAsString("SELECT name FROM node").startsWith("replica"));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.RowCursor;
+import com.googlecode.jdbw.util.OneSharedConnectionDataSource;
+import com.googlecode.jdbw.util.RowCursorHandlerAdapter;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RowCursorTest {
+
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:")),
+                DatabaseServerTypes.H2_IN_MEMORY);
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("CREATE TABLE \"Item\" (\"id\" INT PRIMARY KEY, \"count\" BIGINT, \"price\" DOUBLE, \"name\" VARCHAR)");
+        worker.write("INSERT INTO \"Item\" VALUES(1, 10, 1.5, 'first')");
+        worker.write("INSERT INTO \"Item\" VALUES(2, NULL, NULL, NULL)");
+        worker.write("INSERT INTO \"Item\" VALUES(3, 30, 3.5, 'third')");
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of execute(..) with a RowCursorHandler, the same cursor must be
+     * handed out for every row with the values of the current row, including
+     * NULL values overwriting the values of the previous row
+     */
+    @Test
+    public void cursorIsReusedForEveryRow() throws SQLException {
+        System.out.println("cursorIsReusedForEveryRow");
+        final List<RowCursor> cursors = new ArrayList<RowCursor>();
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        final List<String> numbers = new ArrayList<String>();
+        databaseConnection.createAutoExecutor().execute(new RowCursorHandlerAdapter() {
+            @Override
+            public boolean nextRow(RowCursor cursor) {
+                cursors.add(cursor);
+                rows.add(cursor.toArray());
+                numbers.add(cursor.getInt(0) + "/" + cursor.getLong(1) + "/" + cursor.getDouble(2) + "/" +
+                        cursor.isNull(1) + "/" + cursor.getString(3));
+                return true;
+            }
+        }, "SELECT \"id\", \"count\", \"price\", \"name\" FROM \"Item\" ORDER BY \"id\"");
+
+        assertEquals(3, cursors.size());
+        assertSame(cursors.get(0), cursors.get(1));
+        assertSame(cursors.get(1), cursors.get(2));
+        assertEquals(Arrays.asList("1/10/1.5/false/first", "2/0/0.0/true/null", "3/30/3.5/false/third"), numbers);
+
+        //The arrays copied out of the cursor must not be affected by later rows
+        assertArrayEquals(new Object[] { 1, 10L, 1.5, "first" }, rows.get(0));
+        assertArrayEquals(new Object[] { 2, null, null, null }, rows.get(1));
+        assertArrayEquals(new Object[] { 3, 30L, 3.5, "third" }, rows.get(2));
+
+        //After the query the cursor holds the last row
+        assertArrayEquals(new Object[] { 3, 30L, 3.5, "third" }, cursors.get(0).toArray());
+    }
+
+    /**
+     * Test of RowBuffer, a column changing kind between rows must not leak the
+     * previous value
+     */
+    @Test
+    public void rowBufferOverwritesPreviousRow() {
+        System.out.println("rowBufferOverwritesPreviousRow");
+        RowBuffer buffer = new RowBuffer(2);
+        buffer.setObject(0, "text");
+        buffer.setLong(1, 5L);
+        assertArrayEquals(new Object[] { "text", 5L }, buffer.toArray());
+
+        buffer.setInt(0, 7);
+        buffer.setNull(1);
+        assertFalse(buffer.isNull(0));
+        assertTrue(buffer.isNull(1));
+        assertEquals(7, buffer.getInt(0));
+        assertEquals(0L, buffer.getLong(1));
+        assertArrayEquals(new Object[] { 7, null }, buffer.toArray());
+
+        buffer.setDouble(0, 2.5);
+        buffer.setObject(1, null);
+        assertEquals("2.5", buffer.getString(0));
+        assertNull(buffer.getString(1));
+        assertArrayEquals(new Object[] { 2.5, null }, buffer.toArray());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.util.OneSharedConnectionDataSource;
+import com.googlecode.jdbw.util.PrimitiveResultHandlerAdapter;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RowDecoderTest {
+
+    private static final String SELECT_ALL = "SELECT \"i\", \"s\", \"l\", \"d\", \"v\", \"b\", \"n\", \"dt\", \"bool\" FROM \"Value\" ORDER BY \"id\"";
+
+    private Connection connection;
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(connection),
+                DatabaseServerTypes.H2_IN_MEMORY);
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("CREATE TABLE \"Value\" (\"id\" INT PRIMARY KEY, \"i\" INT, \"s\" SMALLINT, \"l\" BIGINT, " +
+                "\"d\" DOUBLE, \"v\" VARCHAR, \"b\" VARBINARY, \"n\" DECIMAL(10, 2), \"dt\" DATE, \"bool\" BOOLEAN)");
+        worker.write("INSERT INTO \"Value\" VALUES(1, 42, 7, 9000000000, 1.5, 'text', X'0102', 12.34, DATE '2012-01-31', TRUE)");
+        worker.write("INSERT INTO \"Value\" VALUES(2, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL)");
+        worker.write("INSERT INTO \"Value\" VALUES(3, 0, 0, 0, 0, '', X'', 0, DATE '1970-01-01', FALSE)");
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of decodeRow(ResultSet), every value must be equal to and of the
+     * same class as the value from getObject(..)
+     */
+    @Test
+    public void decodedRowsAreEqualToGetObject() throws SQLException {
+        System.out.println("decodedRowsAreEqualToGetObject");
+        List<Object[]> expected = new ArrayList<Object[]>();
+        List<Object[]> decoded = new ArrayList<Object[]>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(SELECT_ALL);
+            while(resultSet.next()) {
+                Object[] row = new Object[resultSet.getMetaData().getColumnCount()];
+                for(int i = 0; i < row.length; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+                expected.add(row);
+            }
+            resultSet.close();
+
+            resultSet = statement.executeQuery(SELECT_ALL);
+            RowDecoder rowDecoder = new RowDecoder(new ResultSetInformationImpl(resultSet.getMetaData(), 0));
+            while(resultSet.next()) {
+                decoded.add(rowDecoder.decodeRow(resultSet));
+            }
+            resultSet.close();
+        }
+        finally {
+            statement.close();
+        }
+
+        assertEquals(3, decoded.size());
+        for(int row = 0; row < expected.size(); row++) {
+            assertRowEquals(expected.get(row), decoded.get(row));
+        }
+    }
+
+    /**
+     * Test of execute(..) with a PrimitiveResultHandler, NULL values must go
+     * to onNull(..) and nothing else
+     */
+    @Test
+    public void primitiveResultHandlerGetsOnNullForNullValues() throws SQLException {
+        System.out.println("primitiveResultHandlerGetsOnNullForNullValues");
+        final List<String> calls = new ArrayList<String>();
+        databaseConnection.createAutoExecutor().execute(new PrimitiveResultHandlerAdapter() {
+            @Override
+            public void onInt(int columnIndex, int value) {
+                calls.add("int " + columnIndex + "=" + value);
+            }
+
+            @Override
+            public void onLong(int columnIndex, long value) {
+                calls.add("long " + columnIndex + "=" + value);
+            }
+
+            @Override
+            public void onDouble(int columnIndex, double value) {
+                calls.add("double " + columnIndex + "=" + value);
+            }
+
+            @Override
+            public void onString(int columnIndex, String value) {
+                calls.add("string " + columnIndex + "=" + value);
+            }
+
+            @Override
+            public void onNull(int columnIndex) {
+                calls.add("null " + columnIndex);
+            }
+
+            @Override
+            public boolean onEndOfRow() {
+                calls.add("end");
+                return true;
+            }
+        }, "SELECT \"i\", \"l\", \"d\", \"v\" FROM \"Value\" WHERE \"id\" IN (1, 2, 3) ORDER BY \"id\"");
+
+        assertEquals(Arrays.asList(
+                "int 0=42", "long 1=9000000000", "double 2=1.5", "string 3=text", "end",
+                "null 0", "null 1", "null 2", "null 3", "end",
+                "int 0=0", "long 1=0", "double 2=0.0", "string 3=", "end"), calls);
+    }
+
+    private static void assertRowEquals(Object[] expected, Object[] actual) {
+        assertEquals(expected.length, actual.length);
+        for(int i = 0; i < expected.length; i++) {
+            if(expected[i] == null) {
+                assertNull("column " + i, actual[i]);
+            }
+            else if(expected[i] instanceof byte[]) {
+                assertTrue("column " + i, Arrays.equals((byte[])expected[i], (byte[])actual[i]));
+            }
+            else {
+                assertEquals("column " + i, expected[i].getClass(), actual[i].getClass());
+                assertEquals("column " + i, expected[i], actual[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.impl;
+
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.DatabaseTransaction;
+import com.googlecode.jdbw.TransactionIsolation;
+import com.googlecode.jdbw.util.CloseableIterator;
+import com.googlecode.jdbw.util.SQLWorker;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WriteBufferTest {
+
+    private JdbcConnectionPool dataSource;
+    private DatabaseConnectionImpl databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:writebuffer;DB_CLOSE_DELAY=-1", "", "");
+        databaseConnection = new DatabaseConnectionImpl(dataSource, DatabaseServerTypes.H2_IN_MEMORY);
+        new SQLWorker(databaseConnection.createAutoExecutor()).write("CREATE TABLE item (id INT PRIMARY KEY, name VARCHAR)");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        new SQLWorker(databaseConnection.createAutoExecutor()).write("DROP TABLE item");
+        dataSource.dispose();
+    }
+
+    /**
+     * Test of setWriteBuffering, buffered writes are sent before a read in the same transaction
+     */
+    @Test
+    public void bufferedWritesAreVisibleToReads() throws SQLException {
+        System.out.println("bufferedWritesAreVisibleToReads");
+        DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+        transaction.setWriteBuffering(100);
+        for(int i = 0; i < 10; i++) {
+            transaction.execute("INSERT INTO item VALUES (?, ?)", i, "item" + i);
+        }
+        transaction.execute("UPDATE item SET name = ? WHERE id = ?", "changed", 3);
+        transaction.batchWrite("DELETE FROM item WHERE id = ?", Arrays.asList(new Object[] { 0 }, new Object[] { 1 }));
+
+        SQLWorker worker = new SQLWorker(transaction);
+        assertEquals(8, worker.topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+        assertEquals("changed", worker.topLeftValueAsString("SELECT name FROM item WHERE id = ?", 3));
+        transaction.commit();
+
+        assertEquals(8, new SQLWorker(databaseConnection.createAutoExecutor()).topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+    }
+
+    /**
+     * Test of iterate, buffered writes are sent before the query is opened
+     */
+    @Test
+    public void bufferedWritesAreVisibleToIterate() throws SQLException {
+        System.out.println("bufferedWritesAreVisibleToIterate");
+        DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+        transaction.setWriteBuffering(100);
+        transaction.execute("INSERT INTO item VALUES (?, ?)", 1, "first");
+        transaction.execute("INSERT INTO item VALUES (?, ?)", 2, "second");
+        CloseableIterator<Object[]> iterator = transaction.iterate(0, "SELECT id FROM item ORDER BY id");
+        try {
+            int rows = 0;
+            while(iterator.hasNext()) {
+                iterator.next();
+                rows++;
+            }
+            assertEquals(2, rows);
+        }
+        finally {
+            iterator.close();
+            transaction.rollback();
+        }
+    }
+
+    /**
+     * Test of batchWrite, rows changed by the caller after the call don't change what is written
+     */
+    @Test
+    public void bufferedBatchRowsAreCopied() throws SQLException {
+        System.out.println("bufferedBatchRowsAreCopied");
+        DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+        transaction.setWriteBuffering(100);
+        Object[] row = new Object[] { 1, "first" };
+        List<Object[]> rows = Arrays.asList(row, new Object[] { 2, "second" });
+        transaction.batchWrite("INSERT INTO item VALUES (?, ?)", rows);
+        row[1] = "changed";
+        transaction.commit();
+
+        assertEquals("first", new SQLWorker(databaseConnection.createAutoExecutor()).topLeftValueAsString("SELECT name FROM item WHERE id = ?", 1));
+    }
+
+    /**
+     * Test of flush, the error names the statement of the transaction that failed
+     */
+    @Test
+    public void errorPointsToFailingStatement() throws SQLException {
+        System.out.println("errorPointsToFailingStatement");
+        DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+        transaction.setWriteBuffering(100);
+        transaction.execute("INSERT INTO item VALUES (?, ?)", 1, "first");
+        transaction.execute("UPDATE item SET name = ? WHERE id = ?", "renamed", 1);
+        transaction.execute("INSERT INTO item VALUES (?, ?)", 2, "second");
+        transaction.execute("INSERT INTO item VALUES (?, ?)", 1, "duplicate");
+        try {
+            transaction.flush();
+            fail("Expected the duplicate key to fail");
+        }
+        catch(SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("#4"));
+            assertEquals("23505", e.getSQLState());
+            assertNotNull(e.getCause());
+        }
+        finally {
+            transaction.rollback();
+        }
+    }
+
+    /**
+     * Test of rollback, buffered writes are thrown away
+     */
+    @Test
+    public void rollbackDiscardsBuffer() throws SQLException {
+        System.out.println("rollbackDiscardsBuffer");
+        DatabaseTransaction transaction = databaseConnection.beginTransaction(TransactionIsolation.READ_COMMITTED);
+        transaction.setWriteBuffering(100);
+        transaction.execute("INSERT INTO item VALUES (?, ?)", 1, "first");
+        transaction.rollback();
+
+        assertEquals(0, new SQLWorker(databaseConnection.createAutoExecutor()).topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+    }
+}
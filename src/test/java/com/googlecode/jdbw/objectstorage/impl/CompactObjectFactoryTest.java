@@ -0,0 +1,154 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.H2DatabaseTestBase;
+import com.googlecode.jdbw.objectstorage.ObjectStorage;
+import com.googlecode.jdbw.objectstorage.ObjectStorageException;
+import com.googlecode.jdbw.objectstorage.SelfDescribingStorable;
+import com.googlecode.jdbw.objectstorage.Storable;
+import java.lang.reflect.Proxy;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Martin Berglund
+ */
+public class CompactObjectFactoryTest extends H2DatabaseTestBase {
+
+    public static interface Counter extends Storable<Long> {
+        long getCount();
+        boolean isActive();
+        Counter setCount(long count);
+    }
+
+    private static interface Hidden extends Storable<Integer> {
+        String getName();
+    }
+
+    /**
+     * Test of newObject method, of class CompactObjectFactory.
+     */
+    @Test
+    public void testNewObject() {
+        System.out.println("newObject");
+        CompactObjectFactory instance = new CompactObjectFactory();
+        Person elvis = instance.newObject(Person.class, new DefaultFieldMapping(Person.class),
+                new Object[] { 1, 42, ELVIS_BIRTHDAY, "Elvis Presley" });
+        assertFalse(Proxy.isProxyClass(elvis.getClass()));
+        assertEquals((Integer)1, elvis.getId());
+        assertEquals(42, elvis.getAge());
+        assertEquals(ELVIS_BIRTHDAY, elvis.getBirthday());
+        assertEquals("Elvis Presley", elvis.getName());
+        assertEquals(Person.class, ((SelfDescribingStorable)elvis).storableType());
+        assertEquals("Person:1", elvis.toString());
+        assertEquals(createElvis(), elvis);
+        assertEquals(elvis, createElvis());
+        assertEquals(createElvis().hashCode(), elvis.hashCode());
+        assertFalse(elvis.equals(createJaques()));
+        assertFalse(elvis.equals(null));
+
+        Person other = instance.newObject(Person.class, new DefaultFieldMapping(Person.class),
+                new Object[] { 2, 49, JAQUES_BIRTHDAY, "Jaques Brel" });
+        assertSame(elvis.getClass(), other.getClass());
+    }
+
+    /**
+     * Test of newObject method, of class CompactObjectFactory, primitive and long fields and setters
+     */
+    @Test
+    public void testPrimitivesAndImmutability() {
+        System.out.println("primitivesAndImmutability");
+        CompactObjectFactory instance = new CompactObjectFactory();
+        Counter counter = instance.newObject(Counter.class, new DefaultFieldMapping(Counter.class),
+                new Object[] { 7L, true, 5000000000L });
+        assertEquals((Long)7L, counter.getId());
+        assertEquals(5000000000L, counter.getCount());
+        assertTrue(counter.isActive());
+        try {
+            counter.setCount(1);
+            fail("Expected the object to be immutable");
+        }
+        catch(ObjectStorageException e) {
+        }
+
+        Counter empty = instance.newObject(Counter.class, new DefaultFieldMapping(Counter.class),
+                new Object[] { 8L, null, null });
+        try {
+            empty.getCount();
+            fail("Expected a null primitive to fail when read");
+        }
+        catch(NullPointerException e) {
+        }
+    }
+
+    /**
+     * Test of newObject method, of class CompactObjectFactory, types the generated class can't see get proxies
+     */
+    @Test
+    public void testFallback() {
+        System.out.println("fallback");
+        Hidden hidden = new CompactObjectFactory().newObject(Hidden.class, new DefaultFieldMapping(Hidden.class),
+                new Object[] { 1, "hidden" });
+        assertTrue(Proxy.isProxyClass(hidden.getClass()));
+        assertEquals("hidden", hidden.getName());
+    }
+
+    /**
+     * Test of using CompactObjectFactory with DefaultObjectStorage
+     */
+    @Test
+    public void testWithObjectStorage() {
+        System.out.println("withObjectStorage");
+        ObjectStorage storage = new DefaultObjectStorage(
+                new DefaultFieldMappingFactory(), new ConcurrentHashMapObjectCache.Factory(), new CompactObjectFactory());
+        storage.register(Person.class);
+        Person jaques = createJaques(storage.getBuilderFactory());
+        assertFalse(Proxy.isProxyClass(jaques.getClass()));
+        storage.put(jaques);
+        assertTrue(storage.contains(jaques));
+        assertSame(jaques, storage.get(Person.class, 2));
+        Person older = storage.getBuilderFactory().newClone(Person.Builder.class, jaques).setAge(50).build();
+        assertEquals(50, older.getAge());
+        assertEquals("Jaques Brel", older.getName());
+        storage.put(older);
+        assertEquals(50, storage.get(Person.class, 2).getAge());
+        storage.remove(older);
+        assertEquals(0, storage.getSize(Person.class));
+    }
+
+    /**
+     * Test of using CompactObjectFactory with JDBCObjectStorage
+     */
+    @Test
+    public void testWithJDBCObjectStorage() {
+        System.out.println("withJDBCObjectStorage");
+        JDBCObjectStorage storage = new JDBCObjectStorage(getDatabaseConnection(), new DefaultTableMappingFactory(),
+                new CompactObjectFactory());
+        storage.register(Person.class);
+        Person elvis = storage.get(Person.class, 1);
+        assertFalse(Proxy.isProxyClass(elvis.getClass()));
+        assertEquals("Elvis Presley", elvis.getName());
+        assertEquals(42, elvis.getAge());
+
+        storage.put(storage.getBuilderFactory().newClone(Person.Builder.class, elvis).setAge(43).build());
+        assertEquals(43, getObjectStorage().get(Person.class, 1).getAge());
+    }
+}
@@ -143,4 +143,29 @@ public class DefaultFieldMappingTest extends TestBase {
         Set<Class> result = new HashSet<Class>(instance.getFieldTypes());
         assertEquals(expResult, result);
     }
+
+    /**
+     * Test of getFieldIndex method, of class DefaultFieldMapping, with setters of the builder interface.
+     */
+    @Test
+    public void testGetFieldIndex_BuilderMethod() throws NoSuchMethodException {
+        System.out.println("getFieldIndex");
+        DefaultFieldMapping instance = new DefaultFieldMapping(Person.class);
+        Method setter = Person.Builder.class.getMethod("setName", String.class);
+        assertEquals(instance.getFieldIndex("name"), instance.getFieldIndex(setter));
+        assertEquals(instance.getFieldIndex(Person.class.getMethod("getName")), instance.getFieldIndex(setter));
+        assertEquals("name", instance.getFieldName(setter));
+        assertNull(instance.getFieldName(Person.Builder.class.getMethod("build")));
+    }
+
+    /**
+     * Test of getFieldNames method, of class DefaultFieldMapping, the list is shared and can't be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetFieldNames_Unmodifiable() {
+        System.out.println("getFieldNames");
+        DefaultFieldMapping instance = new DefaultFieldMapping(Person.class);
+        assertSame(instance.getFieldNames(), instance.getFieldNames());
+        instance.getFieldNames().add("extra");
+    }
 }
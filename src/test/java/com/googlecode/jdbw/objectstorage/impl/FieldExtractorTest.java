@@ -0,0 +1,84 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.TestBase;
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Martin Berglund
+ */
+public class FieldExtractorTest extends TestBase {
+
+    /**
+     * Test of extract method, of class FieldExtractor, with an object created by the object factory
+     */
+    @Test
+    public void testExtractFromProxy() {
+        System.out.println("extractFromProxy");
+        FieldExtractor instance = new FieldExtractor(new DefaultFieldMapping(Person.class));
+        Object[] values = instance.extract(createElvis());
+        assertArrayEquals(new Object[] { 42, ELVIS_BIRTHDAY, "Elvis Presley" }, values);
+    }
+
+    /**
+     * Test of extract method, of class FieldExtractor, with a regular implementation of the storable interface
+     */
+    @Test
+    public void testExtractFromObject() {
+        System.out.println("extractFromObject");
+        FieldExtractor instance = new FieldExtractor(new DefaultFieldMapping(Person.class));
+        Object[] target = new Object[4];
+        instance.extract(new Person() {
+            @Override
+            public Integer getId() {
+                return 3;
+            }
+
+            @Override
+            public String getName() {
+                return "Kyo Sakamoto";
+            }
+
+            @Override
+            public int getAge() {
+                return 43;
+            }
+
+            @Override
+            public Date getBirthday() {
+                return SAKAMOTO_BIRTHDAY;
+            }
+        }, target, 1);
+        assertArrayEquals(new Object[] { null, 43, SAKAMOTO_BIRTHDAY, "Kyo Sakamoto" }, target);
+    }
+
+    /**
+     * Test of isFor method, of class FieldExtractor.
+     */
+    @Test
+    public void testIsFor() {
+        System.out.println("isFor");
+        FieldExtractor instance = new FieldExtractor(new DefaultFieldMapping(Person.class));
+        assertTrue(instance.isFor(new DefaultTableMapping(Person.class)));
+    }
+}
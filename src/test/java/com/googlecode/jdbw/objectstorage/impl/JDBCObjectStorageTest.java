@@ -23,6 +23,7 @@ import com.googlecode.jdbw.objectstorage.ObjectBuilderFactory;
 import com.googlecode.jdbw.objectstorage.Storable;
 import com.googlecode.jdbw.util.SQLWorker;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -284,6 +285,32 @@ public class JDBCObjectStorageTest extends H2DatabaseTestBase {
         assertEquals(0, getWorker().topLeftValueAsInt("SELECT COUNT(*) FROM \"Person\"").intValue());
     }
     
+    /**
+     * Test of getSome and remove methods, of class JDBCObjectStorage, with more keys than fit in one bucket.
+     */
+    @Test
+    public void testManyKeys() throws SQLException {
+        System.out.println("manyKeys");
+        JDBCObjectStorage instance = getObjectStorage();
+        ObjectBuilderFactory builderFactory = instance.getBuilderFactory();
+        List<Person> persons = new ArrayList<Person>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for(int id = 100; id < 3100; id++) {
+            persons.add(builderFactory.newObject(Person.Builder.class, id).setName("Person " + id).setAge(id % 100).build());
+            ids.add(id);
+        }
+        instance.putAll(persons);
+        assertEquals(3003, getWorker().topLeftValueAsInt("SELECT COUNT(*) FROM \"Person\"").intValue());
+
+        ids.add(1);
+        ids.add(5000);
+        assertEquals(3001, instance.getSome(Person.class, ids).size());
+        assertTrue(instance.getSome(Person.class, Collections.<Integer>emptyList()).isEmpty());
+
+        instance.remove(Person.class, ids);
+        assertEquals(2, getWorker().topLeftValueAsInt("SELECT COUNT(*) FROM \"Person\"").intValue());
+    }
+
     private static class PersonIdComparator implements Comparator<Person> {
         @Override
         public int compare(Person o1, Person o2) {
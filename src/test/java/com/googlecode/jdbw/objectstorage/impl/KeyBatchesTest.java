@@ -0,0 +1,73 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Martin Berglund
+ */
+public class KeyBatchesTest {
+
+    /**
+     * Test of split method, of class KeyBatches.
+     */
+    @Test
+    public void testSplit() {
+        System.out.println("split");
+        List<Integer> keys = new ArrayList<Integer>();
+        for(int i = 0; i < 2500; i++) {
+            keys.add(i);
+        }
+        keys.add(0);
+        List<Object[]> batches = KeyBatches.split(keys, 2000);
+        assertEquals(3, batches.size());
+        assertEquals(1024, batches.get(0).length);
+        assertEquals(1024, batches.get(1).length);
+        assertEquals(512, batches.get(2).length);
+        assertEquals(2499, batches.get(2)[451]);
+        assertEquals(2499, batches.get(2)[511]);
+
+        HashSet<Object> seen = new HashSet<Object>();
+        for(Object[] batch: batches) {
+            seen.addAll(Arrays.asList(batch));
+        }
+        assertEquals(2500, seen.size());
+        assertTrue(KeyBatches.split(new ArrayList<Integer>(), 2000).isEmpty());
+    }
+
+    /**
+     * Test of bucketSize method, of class KeyBatches.
+     */
+    @Test
+    public void testBucketSize() {
+        System.out.println("bucketSize");
+        assertEquals(1, KeyBatches.bucketSize(1));
+        assertEquals(2, KeyBatches.bucketSize(2));
+        assertEquals(4, KeyBatches.bucketSize(3));
+        assertEquals(1024, KeyBatches.bucketSize(1000));
+        assertEquals(1024, KeyBatches.bucketSize(1024));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ * 
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.objectstorage.impl;
+
+import com.googlecode.jdbw.objectstorage.ObjectStorage;
+import com.googlecode.jdbw.objectstorage.ObjectStorageException;
+import com.googlecode.jdbw.objectstorage.Storable;
+import com.googlecode.jdbw.objectstorage.TestBase;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Martin Berglund
+ */
+public class WriteBehindObjectStorageTest extends TestBase {
+
+    private final ObjectStorage localStorage;
+    private final ObjectStorage remoteStorage;
+    private final WriteBehindObjectStorage writeBehindStorage;
+
+    public WriteBehindObjectStorageTest() {
+        this.localStorage = new DefaultObjectStorage();
+        this.remoteStorage = new DefaultObjectStorage();
+        //Long interval, so that nothing is written before flush() is called
+        this.writeBehindStorage = new WriteBehindObjectStorage(remoteStorage, localStorage, 100, 1, TimeUnit.HOURS);
+    }
+
+    @Before
+    public void setUp() {
+        writeBehindStorage.register(Person.class);
+    }
+
+    @After
+    public void tearDown() {
+        writeBehindStorage.close();
+    }
+
+    /**
+     * Test of put method, of class WriteBehindObjectStorage.
+     */
+    @Test
+    public void testPut() {
+        System.out.println("put");
+        Person elvis = createElvis();
+        writeBehindStorage.put(elvis);
+        assertEquals(elvis, localStorage.get(Person.class, elvis.getId()));
+        assertEquals(1, writeBehindStorage.getPendingChanges());
+
+        writeBehindStorage.flush();
+        assertEquals(0, writeBehindStorage.getPendingChanges());
+        assertEquals(elvis, remoteStorage.get(Person.class, elvis.getId()));
+    }
+
+    /**
+     * Test of flush method, changes to the same object are merged and written in one batch per kind
+     */
+    @Test
+    public void testCoalescing() {
+        System.out.println("coalescing");
+        DefaultObjectBuilderFactory builderFactory = new DefaultObjectBuilderFactory();
+        for(int age = 1; age <= 10; age++) {
+            writeBehindStorage.put(builderFactory.newObject(Person.Builder.class, 1).setName("Elvis Presley").setAge(age).build());
+        }
+        writeBehindStorage.putAll(createJaques(), createSakamoto());
+        writeBehindStorage.remove(Person.class, 2);
+        assertEquals(13, writeBehindStorage.getPendingChanges());
+        assertEquals(2, localStorage.getSize(Person.class));
+
+        writeBehindStorage.flush();
+        assertEquals(2, remoteStorage.getSize(Person.class));
+        assertEquals(10, remoteStorage.get(Person.class, 1).getAge());
+        assertNull(remoteStorage.get(Person.class, 2));
+        assertEquals(2, writeBehindStorage.getRemoteBatches());
+    }
+
+    /**
+     * Test of put method, a full queue makes the writer wait for the background thread
+     */
+    @Test
+    public void testBackpressure() {
+        System.out.println("backpressure");
+        DefaultObjectBuilderFactory builderFactory = new DefaultObjectBuilderFactory();
+        for(int id = 1; id <= 250; id++) {
+            writeBehindStorage.put(builderFactory.newObject(Person.Builder.class, id).setName("Person " + id).build());
+            assertTrue(writeBehindStorage.getPendingChanges() <= 100);
+        }
+        assertEquals(250, writeBehindStorage.remoteGetSize(Person.class));
+        assertTrue(writeBehindStorage.getRemoteBatches() >= 3);
+    }
+
+    /**
+     * Test of flush method, changes that failed to be written are tried again
+     */
+    @Test(timeout = 10000)
+    public void testRetry() {
+        System.out.println("retry");
+        FailingObjectStorage failingStorage = new FailingObjectStorage(2);
+        WriteBehindObjectStorage storage = new WriteBehindObjectStorage(failingStorage, new DefaultObjectStorage(), 100, 1, TimeUnit.HOURS);
+        try {
+            storage.register(Person.class);
+            Person elvis = createElvis();
+            storage.put(elvis);
+            storage.flush();
+            assertEquals(3, failingStorage.putAttempts.get());
+            assertEquals(elvis, failingStorage.get(Person.class, elvis.getId()));
+            assertEquals(0, storage.getPendingChanges());
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Test of flush method, changes are dropped and the error is reported once the attempts are used up
+     */
+    @Test(timeout = 10000)
+    public void testRetryGivesUp() {
+        System.out.println("retryGivesUp");
+        FailingObjectStorage failingStorage = new FailingObjectStorage(Integer.MAX_VALUE);
+        WriteBehindObjectStorage storage = new WriteBehindObjectStorage(failingStorage, new DefaultObjectStorage(), 100, 1, TimeUnit.HOURS);
+        try {
+            storage.register(Person.class);
+            storage.setMaxAttempts(2);
+            storage.put(createElvis());
+            try {
+                storage.flush();
+                fail("Expected the flush to fail");
+            }
+            catch(ObjectStorageException e) {
+                assertEquals(2, failingStorage.putAttempts.get());
+            }
+            assertEquals(0, storage.getPendingChanges());
+            assertEquals(0, failingStorage.getSize(Person.class));
+            storage.flush();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPutDuringRemoteGetAll() throws InterruptedException {
+        System.out.println("putDuringRemoteGetAll");
+        BlockingObjectStorage blockingStorage = new BlockingObjectStorage();
+        final ObjectStorage local = new DefaultObjectStorage();
+        final WriteBehindObjectStorage storage = new WriteBehindObjectStorage(blockingStorage, local, 100, 1, TimeUnit.HOURS);
+        try {
+            storage.register(Person.class);
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    storage.remoteGetAll(Person.class);
+                }
+            });
+            reader.start();
+            assertTrue(blockingStorage.readStarted.await(5, TimeUnit.SECONDS));
+
+            final Person elvis = createElvis();
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    storage.put(elvis);
+                }
+            });
+            writer.start();
+            //Give the put a chance to go through while the remote read is still running
+            Thread.sleep(100);
+            blockingStorage.releaseRead.countDown();
+            reader.join();
+            writer.join();
+            assertEquals(elvis, local.get(Person.class, elvis.getId()));
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    private static class BlockingObjectStorage extends DefaultObjectStorage {
+        private final CountDownLatch readStarted = new CountDownLatch(1);
+        private final CountDownLatch releaseRead = new CountDownLatch(1);
+
+        @Override
+        public <O extends Storable> List<O> getAll(Class<O> type) {
+            readStarted.countDown();
+            try {
+                releaseRead.await();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getAll(type);
+        }
+    }
+
+    private static class FailingObjectStorage extends DefaultObjectStorage {
+        private final int failures;
+        private final AtomicInteger putAttempts;
+
+        FailingObjectStorage(int failures) {
+            this.failures = failures;
+            this.putAttempts = new AtomicInteger(0);
+        }
+
+        @Override
+        public <O extends Storable> List<O> putAll(Collection<O> objects) {
+            if(putAttempts.incrementAndGet() <= failures) {
+                throw new ObjectStorageException("Remote storage is unavailable");
+            }
+            return super.putAll(objects);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AsyncSQLWorkerTest {
+
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:")),
+                DatabaseServerTypes.H2_IN_MEMORY);
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of topLeftValueAsString and of failing queries
+     */
+    @Test
+    public void queriesRunInTheBackground() throws Exception {
+        System.out.println("queriesRunInTheBackground");
+        AsyncSQLExecutor asyncExecutor = new AsyncSQLExecutor(databaseConnection.createAutoExecutor(), 4);
+        AsyncSQLWorker worker = new AsyncSQLWorker(asyncExecutor);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for(int i = 0; i < 100; i++) {
+            results.add(worker.topLeftValueAsString("SELECT ? * 2", i));
+        }
+        for(int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i * 2), results.get(i).get());
+        }
+
+        Future<Object> failed = worker.topLeftValue("SELECT * FROM \"NoSuchTable\"");
+        try {
+            failed.get();
+            fail("Query on missing table succeeded");
+        }
+        catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        asyncExecutor.shutdown();
+    }
+
+    /**
+     * Test of the limit on concurrent calls
+     */
+    @Test
+    public void concurrentCallsAreLimited() throws Exception {
+        System.out.println("concurrentCallsAreLimited");
+        ExecutorService threadPool = Executors.newFixedThreadPool(8);
+        AsyncSQLExecutor asyncExecutor = new AsyncSQLExecutor(databaseConnection.createAutoExecutor(), threadPool, 2);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for(int i = 0; i < 20; i++) {
+            results.add(asyncExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int now = running.incrementAndGet();
+                    synchronized(maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    return null;
+                }
+            }));
+        }
+        for(Future<Void> result : results) {
+            result.get();
+        }
+        assertTrue(maxRunning.get() <= 2);
+        threadPool.shutdown();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.TransactionIsolation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private OneSharedConnectionDataSource realDataSource;
+    private DataSource dataSource;
+    private boolean databaseDown;
+    private int connectionAttempts;
+
+    @Before
+    public void buildUp() throws SQLException {
+        realDataSource = new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:"));
+        databaseDown = false;
+        connectionAttempts = 0;
+        dataSource = (DataSource)Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if(method.getName().equals("getConnection")) {
+                            connectionAttempts++;
+                            if(databaseDown) {
+                                throw new SQLRecoverableException("Connection refused");
+                            }
+                        }
+                        try {
+                            return method.invoke(realDataSource, args);
+                        }
+                        catch(InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        realDataSource.close();
+    }
+
+    /**
+     * Test of AutoExecutor, the connection error is thrown once the retry policy gives up
+     */
+    @Test
+    public void exhaustedRetriesThrowConnectionError() throws SQLException {
+        System.out.println("exhaustedRetriesThrowConnectionError");
+        databaseDown = true;
+        AutoExecutor executor = new AutoExecutor(dataSource, DatabaseServerTypes.H2_IN_MEMORY,
+                TransactionIsolation.READ_UNCOMMITTED, ExponentialBackoffRetryPolicy.fixedInterval(1, TimeUnit.MILLISECONDS, 2), null);
+        try {
+            executor.execute("SELECT 1");
+            fail("Expected the connection error to be thrown");
+        }
+        catch(SQLRecoverableException e) {
+        }
+        assertEquals(3, connectionAttempts);
+    }
+
+    /**
+     * Test of AutoExecutor with a circuit breaker, failing fast while the breaker is open
+     */
+    @Test
+    public void openBreakerFailsFast() throws SQLException {
+        System.out.println("openBreakerFailsFast");
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 1, TimeUnit.HOURS);
+        AutoExecutor executor = new AutoExecutor(dataSource, DatabaseServerTypes.H2_IN_MEMORY,
+                TransactionIsolation.READ_UNCOMMITTED, ExponentialBackoffRetryPolicy.fixedInterval(1, TimeUnit.MILLISECONDS, 5), circuitBreaker);
+        databaseDown = true;
+        try {
+            executor.execute("SELECT 1");
+            fail("Expected the circuit breaker to open");
+        }
+        catch(SQLTransientConnectionException e) {
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, connectionAttempts);
+
+        databaseDown = false;
+        try {
+            executor.execute("SELECT 1");
+            fail("Expected the circuit breaker to still be open");
+        }
+        catch(SQLTransientConnectionException e) {
+        }
+        assertEquals(2, connectionAttempts);
+    }
+
+    /**
+     * Test of allowRequest, only one probe is let through once the open period has passed
+     */
+    @Test
+    public void probeClosesBreaker() throws SQLException {
+        System.out.println("probeClosesBreaker");
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0, TimeUnit.MILLISECONDS);
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        AutoExecutor executor = new AutoExecutor(dataSource, DatabaseServerTypes.H2_IN_MEMORY,
+                TransactionIsolation.READ_UNCOMMITTED, new ExponentialBackoffRetryPolicy(), circuitBreaker);
+        executor.execute("SELECT 1");
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    /**
+     * Test of ExponentialBackoffRetryPolicy, delays grow up to the maximum and stop at the retry budget
+     */
+    @Test
+    public void backoffGrowsAndStops() {
+        System.out.println("backoffGrowsAndStops");
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(100, 400, 2.0, 0.0, -1, 1000, TimeUnit.MILLISECONDS);
+        SQLException error = new SQLRecoverableException();
+        assertEquals(100, policy.getRetryDelay(1, 0, error));
+        assertEquals(200, policy.getRetryDelay(2, 100, error));
+        assertEquals(400, policy.getRetryDelay(3, 300, error));
+        assertEquals(400, policy.getRetryDelay(10, 500, error));
+        assertTrue(policy.getRetryDelay(11, 700, error) < 0);
+
+        ExponentialBackoffRetryPolicy jittered = new ExponentialBackoffRetryPolicy(100, 400, 2.0, 0.5, 3, 0, TimeUnit.MILLISECONDS);
+        for(int i = 0; i < 100; i++) {
+            long delay = jittered.getRetryDelay(3, 0, error);
+            assertTrue(delay >= 200 && delay <= 400);
+        }
+        assertTrue(jittered.getRetryDelay(4, 0, error) < 0);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.TransactionIsolation;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GroupCommitExecutorTest {
+
+    private JdbcConnectionPool dataSource;
+    private DatabaseConnectionImpl databaseConnection;
+    private SQLWorker worker;
+
+    @Before
+    public void buildUp() throws SQLException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:groupCommit;DB_CLOSE_DELAY=-1", "", "");
+        databaseConnection = new DatabaseConnectionImpl(dataSource, DatabaseServerTypes.H2_IN_MEMORY);
+        worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("CREATE TABLE item (id INT PRIMARY KEY, name VARCHAR)");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        worker.write("DROP TABLE item");
+        dataSource.dispose();
+    }
+
+    /**
+     * Test of execute, writes from many threads are committed in shared transactions
+     */
+    @Test
+    public void concurrentWritesShareCommits() throws Exception {
+        System.out.println("concurrentWritesShareCommits");
+        final GroupCommitExecutor executor = new GroupCommitExecutor(databaseConnection);
+        final int threads = 8;
+        final int writesPerThread = 50;
+        List<Thread> writers = new ArrayList<Thread>();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for(int t = 0; t < threads; t++) {
+            final int offset = t * writesPerThread;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i < writesPerThread; i++) {
+                            executor.execute("INSERT INTO item VALUES (?, ?)", offset + i, "item").get();
+                        }
+                    }
+                    catch(Exception e) {
+                        synchronized(errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for(Thread writer: writers) {
+            writer.start();
+        }
+        for(Thread writer: writers) {
+            writer.join();
+        }
+        executor.shutdown();
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(threads * writesPerThread, worker.topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+        assertEquals(threads * writesPerThread, executor.getWriteCount());
+        assertTrue(executor.getGroupCount() < threads * writesPerThread);
+    }
+
+    /**
+     * Test of execute, when the shared transaction fails only the failing write gets the error
+     */
+    @Test
+    public void failingWriteIsIsolated() throws Exception {
+        System.out.println("failingWriteIsIsolated");
+        worker.write("INSERT INTO item VALUES (?, ?)", 2, "existing");
+        GroupCommitExecutor executor = new GroupCommitExecutor(databaseConnection, TransactionIsolation.READ_COMMITTED,
+                200, TimeUnit.MILLISECONDS, 1000);
+        Future<Void> first = executor.execute("INSERT INTO item VALUES (?, ?)", 1, "first");
+        Future<Void> duplicate = executor.execute("INSERT INTO item VALUES (?, ?)", 2, "duplicate");
+        Future<Void> batch = executor.batchWrite("INSERT INTO item VALUES (?, ?)",
+                Arrays.asList(new Object[] { 3, "third" }, new Object[] { 4, "fourth" }));
+        first.get();
+        batch.get();
+        try {
+            duplicate.get();
+            fail("Expected the duplicate key to fail");
+        }
+        catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        executor.shutdown();
+
+        assertEquals(4, worker.topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+        assertEquals("existing", worker.topLeftValueAsString("SELECT name FROM item WHERE id = ?", 2));
+        assertEquals(3, executor.getRetryCount());
+    }
+
+    /**
+     * Test of execute, the rows of a batch retried on its own are still committed, or fail, together
+     */
+    @Test
+    public void isolatedBatchIsCommittedTogether() throws Exception {
+        System.out.println("isolatedBatchIsCommittedTogether");
+        worker.write("INSERT INTO item VALUES (?, ?)", 2, "existing");
+        GroupCommitExecutor executor = new GroupCommitExecutor(databaseConnection, TransactionIsolation.READ_COMMITTED,
+                200, TimeUnit.MILLISECONDS, 1000);
+        Future<Void> first = executor.execute("INSERT INTO item VALUES (?, ?)", 1, "first");
+        Future<Void> batch = executor.batchWrite("INSERT INTO item VALUES (?, ?)",
+                Arrays.asList(new Object[] { 3, "third" }, new Object[] { 2, "duplicate" }));
+        first.get();
+        try {
+            batch.get();
+            fail("Expected the duplicate key to fail");
+        }
+        catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        executor.shutdown();
+
+        assertEquals(2, worker.topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+        assertEquals(0, worker.topLeftValueAsInt("SELECT COUNT(*) FROM item WHERE id = ?", 3).intValue());
+    }
+
+    /**
+     * Test of execute, when the connection is lost the whole group fails without retrying every write
+     */
+    @Test(timeout = 10000)
+    public void connectionErrorFailsTheWholeGroup() throws Exception {
+        System.out.println("connectionErrorFailsTheWholeGroup");
+        final AtomicBoolean down = new AtomicBoolean(false);
+        DataSource flakyDataSource = (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if(down.get() && method.getName().equals("getConnection")) {
+                    throw new SQLTransientConnectionException("Server is down");
+                }
+                try {
+                    return method.invoke(dataSource, args);
+                }
+                catch(InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+        GroupCommitExecutor executor = new GroupCommitExecutor(
+                new DatabaseConnectionImpl(flakyDataSource, DatabaseServerTypes.H2_IN_MEMORY),
+                TransactionIsolation.READ_COMMITTED, 200, TimeUnit.MILLISECONDS, 1000);
+        down.set(true);
+        List<Future<Void>> writes = new ArrayList<Future<Void>>();
+        for(int i = 0; i < 3; i++) {
+            writes.add(executor.execute("INSERT INTO item VALUES (?, ?)", i, "item"));
+        }
+        for(Future<Void> write: writes) {
+            try {
+                write.get();
+                fail("Expected the write to fail");
+            }
+            catch(ExecutionException e) {
+                assertTrue(e.getCause() instanceof SQLTransientConnectionException);
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(0, executor.getRetryCount());
+        assertEquals(0, executor.getWriteCount());
+    }
+
+    /**
+     * Test of execute, an error from the rollback doesn't hide the error that caused it
+     */
+    @Test(timeout = 10000)
+    public void failedRollbackKeepsTheOriginalError() throws Exception {
+        System.out.println("failedRollbackKeepsTheOriginalError");
+        DataSource brokenDataSource = (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = invokeOn(dataSource, method, args);
+                if(method.getName().equals("getConnection")) {
+                    return breakConnection((Connection)result);
+                }
+                return result;
+            }
+        });
+        GroupCommitExecutor executor = new GroupCommitExecutor(
+                new DatabaseConnectionImpl(brokenDataSource, DatabaseServerTypes.H2_IN_MEMORY),
+                TransactionIsolation.READ_COMMITTED, 200, TimeUnit.MILLISECONDS, 1000);
+        Future<Void> first = executor.execute("INSERT INTO item VALUES (?, ?)", 1, "first");
+        Future<Void> second = executor.execute("INSERT INTO item VALUES (?, ?)", 2, "second");
+        for(Future<Void> write: Arrays.asList(first, second)) {
+            try {
+                write.get();
+                fail("Expected the write to fail");
+            }
+            catch(ExecutionException e) {
+                assertTrue(e.getCause().toString(), e.getCause() instanceof SQLTransientConnectionException);
+            }
+        }
+        executor.shutdown();
+        assertEquals(0, executor.getRetryCount());
+    }
+
+    /**
+     * Test of shutdown, every write accepted while shutting down is still committed
+     */
+    @Test(timeout = 20000)
+    public void writesAcceptedDuringShutdownComplete() throws Exception {
+        System.out.println("writesAcceptedDuringShutdownComplete");
+        final GroupCommitExecutor executor = new GroupCommitExecutor(databaseConnection, TransactionIsolation.READ_COMMITTED,
+                0, TimeUnit.MILLISECONDS, 1000);
+        final List<Future<Void>> writes = new ArrayList<Future<Void>>();
+        final CountDownLatch started = new CountDownLatch(4);
+        List<Thread> writers = new ArrayList<Thread>();
+        for(int t = 0; t < 4; t++) {
+            final int offset = t * 1000000;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        for(int i = 0; ; i++) {
+                            Future<Void> write = executor.execute("INSERT INTO item VALUES (?, ?)", offset + i, "item");
+                            synchronized(writes) {
+                                writes.add(write);
+                            }
+                        }
+                    }
+                    catch(IllegalStateException e) {
+                        //Shut down
+                    }
+                }
+            });
+        }
+        for(Thread writer: writers) {
+            writer.start();
+        }
+        started.await();
+        Thread.sleep(50);
+        executor.shutdown();
+        for(Thread writer: writers) {
+            writer.join();
+        }
+        synchronized(writes) {
+            for(Future<Void> write: writes) {
+                write.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(writes.size(), worker.topLeftValueAsInt("SELECT COUNT(*) FROM item").intValue());
+        }
+    }
+
+    /**
+     * Makes statements fail with a connection error, and the rollback after them fail as well
+     */
+    private Connection breakConnection(final Connection connection) {
+        return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if(method.getName().startsWith("prepare")) {
+                    throw new SQLTransientConnectionException("Connection reset");
+                }
+                if(method.getName().equals("rollback")) {
+                    throw new SQLException("Connection is closed");
+                }
+                return invokeOn(connection, method, args);
+            }
+        });
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
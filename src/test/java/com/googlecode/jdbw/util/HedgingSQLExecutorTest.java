@@ -0,0 +1,145 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.AutoExecutor;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.ExecuteResultHandler;
+import com.googlecode.jdbw.TransactionIsolation;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HedgingSQLExecutorTest {
+
+    private JdbcConnectionPool connectionPool;
+    private AtomicBoolean slowNext;
+    private AtomicInteger executions;
+    private AtomicReference<Thread> executingThread;
+    private HedgingSQLExecutor hedgingExecutor;
+
+    @Before
+    public void buildUp() throws SQLException {
+        connectionPool = JdbcConnectionPool.create("jdbc:h2:mem:hedging;DB_CLOSE_DELAY=-1", "", "");
+        slowNext = new AtomicBoolean(false);
+        executions = new AtomicInteger(0);
+        executingThread = new AtomicReference<Thread>();
+        AutoExecutor autoExecutor = new AutoExecutor(connectionPool, DatabaseServerTypes.H2_IN_MEMORY, TransactionIsolation.READ_COMMITTED) {
+            @Override
+            public void execute(ExecuteResultHandler handler, int maxRowsToFetch, int queryTimeoutInSeconds, int fetchSize, String SQL, Object... parameters) throws SQLException {
+                executions.incrementAndGet();
+                executingThread.set(Thread.currentThread());
+                if(slowNext.compareAndSet(true, false)) {
+                    try {
+                        Thread.sleep(2000);
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.execute(handler, maxRowsToFetch, queryTimeoutInSeconds, fetchSize, SQL, parameters);
+            }
+        };
+        hedgingExecutor = new HedgingSQLExecutor(autoExecutor);
+        hedgingExecutor.setMaxExtraLoad(0.5);
+        new SQLWorker(autoExecutor).write("CREATE TABLE hedged (id INT, name VARCHAR)");
+        new SQLWorker(autoExecutor).write("INSERT INTO hedged VALUES (1, 'one'), (2, 'two')");
+        executions.set(0);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        hedgingExecutor.execute("DROP TABLE hedged");
+        hedgingExecutor.shutdown();
+        connectionPool.dispose();
+    }
+
+    /**
+     * Test of execute, a read slower than usual is answered by the hedge
+     */
+    @Test(timeout = 10000)
+    public void slowReadIsHedged() throws SQLException {
+        System.out.println("slowReadIsHedged");
+        SQLWorker worker = new SQLWorker(hedgingExecutor);
+        hedgingExecutor.setMinHedgeDelay(200, TimeUnit.MILLISECONDS);
+        for(int i = 0; i < 40; i++) {
+            assertEquals(2, worker.query("SELECT id, name FROM hedged").size());
+        }
+        assertTrue(hedgingExecutor.getHedgeDelayMillis() < 1000);
+        assertEquals(40, executions.get());
+
+        slowNext.set(true);
+        long startTime = System.currentTimeMillis();
+        List<Object[]> rows = worker.query("SELECT id, name FROM hedged ORDER BY id");
+        assertTrue(System.currentTimeMillis() - startTime < 1500);
+        assertEquals(2, rows.size());
+        assertEquals("two", rows.get(1)[1]);
+        assertEquals(1, hedgingExecutor.getHedgeWinCount());
+        assertEquals(42, executions.get());
+    }
+
+    /**
+     * Test of execute, writes are never hedged and hedges never exceed the extra load budget
+     */
+    @Test(timeout = 10000)
+    public void writesAndBudgetLimitHedging() throws SQLException {
+        System.out.println("writesAndBudgetLimitHedging");
+        SQLWorker worker = new SQLWorker(hedgingExecutor);
+        hedgingExecutor.setMinHedgeDelay(0, TimeUnit.MILLISECONDS);
+        for(int i = 0; i < 100; i++) {
+            worker.write("UPDATE hedged SET name = ? WHERE id = 1", "one" + i);
+            worker.query("SELECT * FROM hedged");
+        }
+        assertEquals(100, hedgingExecutor.getReadCount());
+        assertTrue(hedgingExecutor.getHedgeCount() <= 50);
+        assertEquals(200 + hedgingExecutor.getHedgeCount(), executions.get());
+        assertEquals("one99", worker.topLeftValueAsString("SELECT name FROM hedged WHERE id = 1"));
+    }
+
+    /**
+     * Test of execute, reads that can't be hedged run on the calling thread
+     */
+    @Test(timeout = 10000)
+    public void unhedgeableReadsRunOnTheCallingThread() throws SQLException {
+        System.out.println("unhedgeableReadsRunOnTheCallingThread");
+        SQLWorker worker = new SQLWorker(hedgingExecutor);
+        assertEquals(2, worker.query("SELECT id, name FROM hedged").size());
+        assertSame(Thread.currentThread(), executingThread.get());
+
+        for(int i = 0; i < 40; i++) {
+            worker.query("SELECT id, name FROM hedged");
+        }
+        assertTrue(hedgingExecutor.getHedgeDelayMillis() < 1000);
+        assertNotSame(Thread.currentThread(), executingThread.get());
+
+        long hedges = hedgingExecutor.getHedgeCount();
+        hedgingExecutor.setMaxExtraLoad(0);
+        assertEquals(2, worker.query("SELECT id, name FROM hedged").size());
+        assertSame(Thread.currentThread(), executingThread.get());
+        assertEquals(hedges, hedgingExecutor.getHedgeCount());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.MultiNodeDatabaseConnection;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MultiNodeDataSourceTest {
+
+    private static final int NUMBER_OF_NODES = 3;
+
+    private List<JdbcConnectionPool> servers;
+    private List<FlakyNode> nodes;
+    private List<DataSource> nodeDataSources;
+
+    @Before
+    public void buildUp() {
+        servers = new ArrayList<JdbcConnectionPool>();
+        nodes = new ArrayList<FlakyNode>();
+        nodeDataSources = new ArrayList<DataSource>();
+        for(int i = 0; i < NUMBER_OF_NODES; i++) {
+            JdbcConnectionPool server = JdbcConnectionPool.create("jdbc:h2:mem:multiNode" + i + ";DB_CLOSE_DELAY=-1", "", "");
+            FlakyNode node = new FlakyNode(server);
+            servers.add(server);
+            nodes.add(node);
+            nodeDataSources.add(node.getDataSource());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for(JdbcConnectionPool server: servers) {
+            server.dispose();
+        }
+    }
+
+    /**
+     * Test of getConnection, every node gets used
+     */
+    @Test
+    public void connectionsAreSpreadOverNodes() throws SQLException {
+        System.out.println("connectionsAreSpreadOverNodes");
+        MultiNodeDataSource dataSource = new MultiNodeDataSource(nodeDataSources);
+        try {
+            Set<String> urls = new HashSet<String>();
+            for(int i = 0; i < 100; i++) {
+                Connection connection = dataSource.getConnection();
+                urls.add(connection.getMetaData().getURL());
+                connection.close();
+            }
+            assertEquals(NUMBER_OF_NODES, urls.size());
+            for(MultiNodeDataSource.Node node: dataSource.getNodes()) {
+                assertFalse(node.isDown());
+                assertEquals(0, node.getActiveConnections());
+            }
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Test of getConnection, a node that can't be connected to is marked down and probed back in
+     */
+    @Test(timeout = 10000)
+    public void downNodeIsAvoidedAndProbedBack() throws Exception {
+        System.out.println("downNodeIsAvoidedAndProbedBack");
+        MultiNodeDataSource dataSource = new MultiNodeDataSource(nodeDataSources, 50, TimeUnit.MILLISECONDS);
+        try {
+            nodes.get(0).refuseConnections = true;
+            for(int i = 0; i < 50; i++) {
+                dataSource.getConnection().close();
+            }
+            MultiNodeDataSource.Node node = dataSource.getNodes().get(0);
+            assertTrue(node.isDown());
+            assertTrue(node.getErrorRate() > 0);
+            assertTrue(nodes.get(0).connectionAttempts <= 2);
+
+            nodes.get(0).refuseConnections = false;
+            while(node.isDown()) {
+                Thread.sleep(10);
+            }
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Test of MultiNodeDatabaseConnection, a statement failing with a connection error is retried on another node
+     */
+    @Test(timeout = 10000)
+    public void connectionErrorFailsOverToAnotherNode() throws SQLException {
+        System.out.println("connectionErrorFailsOverToAnotherNode");
+        MultiNodeDatabaseConnection databaseConnection = new MultiNodeDatabaseConnection(nodeDataSources, DatabaseServerTypes.H2_IN_MEMORY);
+        try {
+            nodes.get(1).breakStatements = true;
+            SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+            for(int i = 0; i < 30; i++) {
+                assertEquals("1", worker.topLeftValueAsString("SELECT 1"));
+            }
+            assertTrue(databaseConnection.getMultiNodeDataSource().getNodes().get(1).isDown());
+        }
+        finally {
+            databaseConnection.close();
+        }
+    }
+
+    /**
+     * Test of MultiNodeDatabaseConnection, errors from one node don't stop statements from running on the others
+     */
+    @Test(timeout = 10000)
+    public void failingNodeDoesNotOpenTheCircuitBreaker() throws SQLException {
+        System.out.println("failingNodeDoesNotOpenTheCircuitBreaker");
+        //With a single node every statement goes to the failing node
+        MultiNodeDatabaseConnection databaseConnection = new MultiNodeDatabaseConnection(
+                Collections.singletonList(nodeDataSources.get(1)), DatabaseServerTypes.H2_IN_MEMORY);
+        databaseConnection.setRetryPolicy(ExponentialBackoffRetryPolicy.fixedInterval(1, TimeUnit.MILLISECONDS, 0));
+        try {
+            nodes.get(1).breakStatements = true;
+            SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+            for(int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD * 2; i++) {
+                try {
+                    worker.topLeftValueAsString("SELECT 1");
+                    fail("Statement on a broken node should fail");
+                }
+                catch(SQLException e) {
+                    assertFalse(e instanceof SQLTransientConnectionException);
+                }
+            }
+            assertEquals(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD * 2, nodes.get(1).statementFailures);
+            assertEquals(CircuitBreaker.State.CLOSED, databaseConnection.getCircuitBreaker().getState());
+
+            nodes.get(1).breakStatements = false;
+            assertEquals("1", worker.topLeftValueAsString("SELECT 1"));
+        }
+        finally {
+            databaseConnection.close();
+        }
+    }
+
+    /**
+     * Node that can be told to refuse connections or to fail all statements with a connection error
+     */
+    private static class FlakyNode {
+        private final DataSource server;
+        private volatile boolean refuseConnections;
+        private volatile boolean breakStatements;
+        private volatile int connectionAttempts;
+        private volatile int statementFailures;
+
+        FlakyNode(DataSource server) {
+            this.server = server;
+        }
+
+        DataSource getDataSource() {
+            return (DataSource)Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { DataSource.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if(method.getName().equals("getConnection")) {
+                                connectionAttempts++;
+                                if(refuseConnections) {
+                                    throw new SQLRecoverableException("Connection refused");
+                                }
+                                return wrap(server.getConnection());
+                            }
+                            return invokeOn(server, method, args);
+                        }
+                    });
+        }
+
+        private Connection wrap(final Connection connection) {
+            return (Connection)Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if(breakStatements && method.getName().startsWith("prepare")) {
+                                statementFailures++;
+                                throw new SQLRecoverableException("Connection reset");
+                            }
+                            return invokeOn(connection, method, args);
+                        }
+                    });
+        }
+
+        private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            }
+            catch(InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
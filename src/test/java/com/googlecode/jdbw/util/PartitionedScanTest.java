@@ -0,0 +1,171 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import com.googlecode.jdbw.metadata.Table;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PartitionedScanTest {
+
+    private JdbcConnectionPool connectionPool;
+    private DatabaseConnection databaseConnection;
+    private Table table;
+
+    @Before
+    public void buildUp() throws SQLException {
+        connectionPool = JdbcConnectionPool.create("jdbc:h2:mem:partitionedScan;DB_CLOSE_DELAY=-1", "", "");
+        databaseConnection = new DatabaseConnectionImpl(connectionPool, DatabaseServerTypes.H2_IN_MEMORY);
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("CREATE TABLE \"Item\" (\"id\" BIGINT PRIMARY KEY, \"name\" VARCHAR)");
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for(long id = -50; id < 1000; id += 3) {
+            rows.add(new Object[] { id, "item" + id });
+        }
+        databaseConnection.createAutoExecutor().batchWrite("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", rows);
+        table = DatabaseServerTypes.H2_IN_MEMORY.createMetaDataResolver(connectionPool)
+                .getCatalogs().get(0).getSchema("PUBLIC").getTable("Item");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        new SQLWorker(databaseConnection.createAutoExecutor()).write("DROP TABLE \"Item\"");
+        databaseConnection.close();
+        connectionPool.dispose();
+    }
+
+    /**
+     * Test of scan, reading the partitions in parallel
+     */
+    @Test(timeout = 10000)
+    public void scanReadsEveryRowOnce() throws SQLException {
+        System.out.println("scanReadsEveryRowOnce");
+        PartitionedScan scan = new PartitionedScan(databaseConnection, table, 4);
+        assertEquals(4, scan.getPartitions().size());
+        final Set<Long> ids = new HashSet<Long>();
+        final int[] count = new int[1];
+        scan.scan(new ExecuteResultHandlerAdapter() {
+            @Override
+            public boolean nextRow(Object[] row) {
+                ids.add((Long)row[0]);
+                count[0]++;
+                return true;
+            }
+        });
+        assertEquals(350, count[0]);
+        assertEquals(350, ids.size());
+    }
+
+    /**
+     * Test of scan, once the handler has asked to stop no partition hands it another row
+     */
+    @Test(timeout = 10000)
+    public void scanStopsAfterHandlerReturnsFalse() throws SQLException {
+        System.out.println("scanStopsAfterHandlerReturnsFalse");
+        PartitionedScan scan = new PartitionedScan(databaseConnection, table, 4);
+        final int[] count = new int[1];
+        scan.scan(new ExecuteResultHandlerAdapter() {
+            @Override
+            public boolean nextRow(Object[] row) {
+                count[0]++;
+                return false;
+            }
+        });
+        assertEquals(1, count[0]);
+    }
+
+    /**
+     * Test of scan, a PrimitiveResultHandlerAdapter gets the values of the merged rows one column at a time
+     */
+    @Test(timeout = 10000)
+    public void scanWithPrimitiveHandler() throws SQLException {
+        System.out.println("scanWithPrimitiveHandler");
+        PartitionedScan scan = new PartitionedScan(databaseConnection, table, 4);
+        final Set<Long> ids = new HashSet<Long>();
+        final int[] counts = new int[2];
+        scan.scan(new PrimitiveResultHandlerAdapter() {
+            @Override
+            public void onLong(int columnIndex, long value) {
+                assertEquals(0, columnIndex);
+                ids.add(value);
+            }
+
+            @Override
+            public void onString(int columnIndex, String value) {
+                assertEquals(1, columnIndex);
+                counts[0]++;
+            }
+
+            @Override
+            public boolean onEndOfRow() {
+                counts[1]++;
+                return true;
+            }
+        });
+        assertEquals(350, ids.size());
+        assertEquals(350, counts[0]);
+        assertEquals(350, counts[1]);
+    }
+
+    /**
+     * Test of iterateInOrder, only the partition being read may hold a
+     * connection
+     */
+    @Test(timeout = 10000)
+    public void iterateInOrderFollowsTheKey() throws SQLException {
+        System.out.println("iterateInOrderFollowsTheKey");
+        CloseableIterator<Object[]> rows = new PartitionedScan(databaseConnection, table, 3).iterateInOrder();
+        long expected = -50;
+        while(rows.hasNext()) {
+            Object[] row = rows.next();
+            assertEquals(expected, row[0]);
+            assertEquals("item" + expected, row[1]);
+            assertEquals(1, connectionPool.getActiveConnections());
+            expected += 3;
+        }
+        assertEquals(1000, expected);
+        assertEquals(0, connectionPool.getActiveConnections());
+    }
+
+    /**
+     * Test of closing the iterator of iterateInOrder before the end
+     */
+    @Test(timeout = 10000)
+    public void closingIterateInOrderGivesBackTheConnection() throws SQLException {
+        System.out.println("closingIterateInOrderGivesBackTheConnection");
+        CloseableIterator<Object[]> rows = new PartitionedScan(databaseConnection, table, 3).iterateInOrder();
+        for(int i = 0; i < 200; i++) {
+            rows.next();
+        }
+        rows.close();
+        assertFalse(rows.hasNext());
+        assertEquals(0, connectionPool.getActiveConnections());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PooledDataSourceTest {
+
+    private PooledDataSource dataSource;
+
+    @Before
+    public void buildUp() {
+        dataSource = new PooledDataSource("jdbc:h2:mem:pooledDataSource;DB_CLOSE_DELAY=-1", new Properties(), 2);
+        dataSource.setConnectionTimeout(200, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * Test of getConnection, a returned connection is reused by the same thread
+     */
+    @Test
+    public void connectionIsReused() throws SQLException {
+        System.out.println("connectionIsReused");
+        Connection connection = dataSource.getConnection();
+        assertEquals(1, dataSource.getActiveConnections());
+        connection.close();
+        connection.close();
+        assertEquals(0, dataSource.getActiveConnections());
+        assertEquals(1, dataSource.getIdleConnections());
+
+        dataSource.getConnection().close();
+        assertEquals(1, dataSource.getCreatedCount());
+        assertEquals(2, dataSource.getBorrowCount());
+        assertEquals(1, dataSource.getTotalConnections());
+    }
+
+    /**
+     * Test of giving back a connection, session settings changed by the
+     * borrower must not carry over to the next borrower
+     */
+    @Test
+    public void sessionStateIsResetOnReturn() throws SQLException {
+        System.out.println("sessionStateIsResetOnReturn");
+        Connection connection = dataSource.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        boolean readOnly = connection.isReadOnly();
+        int isolation = connection.getTransactionIsolation();
+        connection.setAutoCommit(!autoCommit);
+        connection.setReadOnly(!readOnly);
+        connection.setTransactionIsolation(isolation == Connection.TRANSACTION_SERIALIZABLE ?
+                Connection.TRANSACTION_READ_COMMITTED : Connection.TRANSACTION_SERIALIZABLE);
+        connection.close();
+
+        connection = dataSource.getConnection();
+        assertEquals(1, dataSource.getCreatedCount());
+        assertEquals(autoCommit, connection.getAutoCommit());
+        assertEquals(readOnly, connection.isReadOnly());
+        assertEquals(isolation, connection.getTransactionIsolation());
+        connection.close();
+    }
+
+    /**
+     * Test of getConnection, the pool doesn't grow past its maximum size
+     */
+    @Test(timeout = 10000)
+    public void exhaustedPoolTimesOut() throws SQLException {
+        System.out.println("exhaustedPoolTimesOut");
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertEquals(2, dataSource.getTotalConnections());
+        try {
+            dataSource.getConnection();
+            fail("Expected the pool to be exhausted");
+        }
+        catch(SQLException e) {
+        }
+        first.close();
+        dataSource.getConnection().close();
+        second.close();
+        assertEquals(2, dataSource.getCreatedCount());
+    }
+
+    /**
+     * Test of getConnection, a waiting thread gets the connection given back by another thread
+     */
+    @Test(timeout = 10000)
+    public void waitingThreadGetsReturnedConnection() throws Exception {
+        System.out.println("waitingThreadGetsReturnedConnection");
+        dataSource.setConnectionTimeout(5, TimeUnit.SECONDS);
+        final Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+        Thread returner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while(dataSource.getWaitingThreads() == 0) {
+                        Thread.sleep(10);
+                    }
+                    first.close();
+                }
+                catch(Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        returner.start();
+        dataSource.getConnection().close();
+        returner.join();
+        assertEquals(1, dataSource.getWaitCount());
+        assertEquals(2, dataSource.getCreatedCount());
+    }
+
+    /**
+     * Test of setMaxLifetime, an expired connection is replaced when given back
+     */
+    @Test
+    public void expiredConnectionIsClosed() throws SQLException {
+        System.out.println("expiredConnectionIsClosed");
+        dataSource.setMaxLifetime(1, TimeUnit.MILLISECONDS);
+        Connection connection = dataSource.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        sleep(5);
+        connection.close();
+        assertTrue(physical.isClosed());
+        assertEquals(1, dataSource.getClosedCount());
+        assertEquals(0, dataSource.getTotalConnections());
+    }
+
+    /**
+     * Test of a DatabaseConnection backed by the pool, uncommitted work is rolled back when a connection is given back
+     */
+    @Test
+    public void uncommittedWorkIsRolledBack() throws SQLException {
+        System.out.println("uncommittedWorkIsRolledBack");
+        DatabaseConnection databaseConnection = new DatabaseConnectionImpl(dataSource, DatabaseServerTypes.H2_IN_MEMORY);
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.write("CREATE TABLE pooled (id INT)");
+        try {
+            Connection connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            connection.createStatement().executeUpdate("INSERT INTO pooled VALUES (1)");
+            connection.close();
+            assertEquals(0, Integer.parseInt(worker.topLeftValueAsString("SELECT COUNT(*) FROM pooled")));
+        }
+        finally {
+            worker.write("DROP TABLE pooled");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
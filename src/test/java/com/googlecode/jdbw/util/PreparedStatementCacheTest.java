@@ -0,0 +1,103 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PreparedStatementCacheTest {
+
+    private OneSharedConnectionDataSource dataSource;
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        dataSource = new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:"), 2);
+        databaseConnection = new DatabaseConnectionImpl(dataSource, DatabaseServerTypes.H2_IN_MEMORY);
+        new SQLWorker(databaseConnection.createAutoExecutor()).write(
+                "CREATE TABLE \"Item\" (\"id\" INT PRIMARY KEY, \"name\" VARCHAR)");
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of take and release, through SQLExecutorImpl
+     */
+    @Test
+    public void statementsAreReusedBetweenExecutors() throws SQLException {
+        System.out.println("statementsAreReusedBetweenExecutors");
+        PreparedStatementCache cache = dataSource.getPreparedStatementCache();
+        long hitsBefore = cache.getHitCount();
+        for(int i = 0; i < 5; i++) {
+            SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+            worker.insert("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)", i, "item" + i);
+            assertEquals("item" + i, worker.topLeftValueAsString("SELECT \"name\" FROM \"Item\" WHERE \"id\" = ?", i));
+        }
+        assertEquals(8, cache.getHitCount() - hitsBefore);
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Test of the eviction of least recently used statements
+     */
+    @Test
+    public void leastRecentlyUsedStatementIsEvicted() throws SQLException {
+        System.out.println("leastRecentlyUsedStatementIsEvicted");
+        PreparedStatementCache cache = dataSource.getPreparedStatementCache();
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        worker.query("SELECT 1");
+        worker.query("SELECT 2");
+        long evictionsBefore = cache.getEvictionCount();
+        worker.query("SELECT 3");
+        assertEquals(1, cache.getEvictionCount() - evictionsBefore);
+
+        long hitsBefore = cache.getHitCount();
+        worker.query("SELECT 3");
+        worker.query("SELECT 1");
+        assertEquals(1, cache.getHitCount() - hitsBefore);
+    }
+
+    /**
+     * Test of batch writes through the cached statements
+     */
+    @Test
+    public void batchStatementsAreCached() throws SQLException {
+        System.out.println("batchStatementsAreCached");
+        PreparedStatementCache cache = dataSource.getPreparedStatementCache();
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        long hitsBefore = cache.getHitCount();
+        for(int i = 0; i < 3; i++) {
+            databaseConnection.createAutoExecutor().batchWrite("INSERT INTO \"Item\" (\"id\", \"name\") VALUES(?, ?)",
+                    Arrays.asList(new Object[] { i * 2, "a" }, new Object[] { i * 2 + 1, "b" }));
+        }
+        assertEquals(2, cache.getHitCount() - hitsBefore);
+        assertEquals(6, worker.topLeftValueAsInt("SELECT COUNT(*) FROM \"Item\"").intValue());
+    }
+}
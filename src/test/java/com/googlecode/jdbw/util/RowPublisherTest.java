@@ -0,0 +1,197 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RowPublisherTest {
+
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:")),
+                DatabaseServerTypes.H2_IN_MEMORY);
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of subscribe, requesting one row at a time
+     */
+    @Test(timeout = 10000)
+    public void rowsAreDeliveredOnDemand() throws Exception {
+        System.out.println("rowsAreDeliveredOnDemand");
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        new RowPublisher(databaseConnection.createAutoExecutor(), "SELECT X FROM SYSTEM_RANGE(1, 1000)").subscribe(subscriber);
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals(1000, subscriber.rows.size());
+        assertEquals(1000L, ((Number)subscriber.rows.get(999)[0]).longValue());
+    }
+
+    /**
+     * Test of cancelling the subscription half-way
+     */
+    @Test(timeout = 10000)
+    public void cancelStopsTheQueryAndReleasesTheConnection() throws Exception {
+        System.out.println("cancelStopsTheQueryAndReleasesTheConnection");
+        CollectingSubscriber subscriber = new CollectingSubscriber(10);
+        new RowPublisher(databaseConnection.createAutoExecutor(), "SELECT X FROM SYSTEM_RANGE(1, 1000)").subscribe(subscriber);
+        assertFalse(subscriber.done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(10, subscriber.rows.size());
+
+        //The connection is only released once the query is done, so this would block forever otherwise
+        assertEquals("1", new SQLWorker(databaseConnection.createAutoExecutor()).topLeftValueAsString("SELECT 1"));
+        assertEquals(10, subscriber.rows.size());
+        assertFalse(subscriber.completed);
+    }
+
+    /**
+     * Test of request(..) with an illegal number of rows, the error must be
+     * delivered from the query thread after the last onNext
+     */
+    @Test(timeout = 10000)
+    public void illegalRequestIsReportedFromTheQueryThread() throws Exception {
+        System.out.println("illegalRequestIsReportedFromTheQueryThread");
+        final List<String> events = new ArrayList<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        new RowPublisher(databaseConnection.createAutoExecutor(), "SELECT X FROM SYSTEM_RANGE(1, 1000)").subscribe(new RowSubscriber() {
+            private RowSubscription subscription;
+            private Thread queryThread;
+
+            @Override
+            public void onSubscribe(RowSubscription subscription) {
+                this.subscription = subscription;
+                subscription.request(5);
+            }
+
+            @Override
+            public synchronized void onNext(Object[] row) {
+                queryThread = Thread.currentThread();
+                events.add("next " + row[0]);
+                if(events.size() == 2) {
+                    subscription.request(0);
+                    events.add("requested 0");
+                }
+            }
+
+            @Override
+            public synchronized void onError(Throwable error) {
+                events.add(error.getClass().getSimpleName() + (Thread.currentThread() == queryThread ? " on query thread" : ""));
+                done.countDown();
+            }
+
+            @Override
+            public synchronized void onComplete() {
+                events.add("complete");
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("next 1", "next 2", "requested 0", "IllegalArgumentException on query thread"), events);
+    }
+
+    /**
+     * Test of interrupting the query thread while it waits for the subscriber
+     * to request more rows, the subscriber must still get a terminal signal
+     */
+    @Test(timeout = 10000)
+    public void interruptedQueryThreadReportsAnError() throws Exception {
+        System.out.println("interruptedQueryThreadReportsAnError");
+        final AtomicReference<Thread> queryThread = new AtomicReference<Thread>();
+        final CountDownLatch firstRow = new CountDownLatch(1);
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE) {
+            @Override
+            public synchronized void onNext(Object[] row) {
+                //Takes the row without asking for more, so the query thread waits
+                queryThread.set(Thread.currentThread());
+                firstRow.countDown();
+            }
+        };
+        new RowPublisher(databaseConnection.createAutoExecutor(), "SELECT X FROM SYSTEM_RANGE(1, 1000)").subscribe(subscriber);
+        assertTrue(firstRow.await(5, TimeUnit.SECONDS));
+        queryThread.get().interrupt();
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertFalse(subscriber.completed);
+        assertTrue(subscriber.error instanceof SQLException);
+        assertTrue(subscriber.error.getCause() instanceof InterruptedException);
+    }
+
+    private static class CollectingSubscriber implements RowSubscriber {
+        private final long cancelAfter;
+        private final List<Object[]> rows = new ArrayList<Object[]>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean completed = false;
+        private volatile Throwable error = null;
+        private RowSubscription subscription;
+
+        CollectingSubscriber(long cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(RowSubscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public synchronized void onNext(Object[] row) {
+            rows.add(row);
+            if(rows.size() == cancelAfter) {
+                subscription.cancel();
+            }
+            else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
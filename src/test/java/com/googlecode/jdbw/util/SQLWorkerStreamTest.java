@@ -0,0 +1,88 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.DatabaseConnection;
+import com.googlecode.jdbw.DatabaseServerTypes;
+import com.googlecode.jdbw.impl.DatabaseConnectionImpl;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SQLWorkerStreamTest {
+
+    private DatabaseConnection databaseConnection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        databaseConnection = new DatabaseConnectionImpl(
+                new OneSharedConnectionDataSource(DriverManager.getConnection("jdbc:h2:mem:")),
+                DatabaseServerTypes.H2_IN_MEMORY);
+    }
+
+    @After
+    public void tearDown() {
+        databaseConnection.close();
+    }
+
+    /**
+     * Test of stream, read to the end
+     */
+    @Test(timeout = 10000)
+    public void streamReadsAllRows() throws SQLException {
+        System.out.println("streamReadsAllRows");
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        CloseableIterator<Object[]> rows = worker.stream("SELECT X, 'row' || X FROM SYSTEM_RANGE(1, ?)", 500);
+        long sum = 0;
+        int count = 0;
+        while(rows.hasNext()) {
+            Object[] row = rows.next();
+            sum += ((Number)row[0]).longValue();
+            assertEquals("row" + row[0], row[1]);
+            count++;
+        }
+        assertEquals(500, count);
+        assertEquals(500 * 501 / 2, sum);
+
+        //The connection is only given back when the iterator is exhausted, so this would block forever otherwise
+        assertEquals("1", worker.topLeftValueAsString("SELECT 1"));
+    }
+
+    /**
+     * Test of streamLeftColumnAsString, closed before the end
+     */
+    @Test(timeout = 10000)
+    public void closingStreamReleasesTheConnection() throws SQLException {
+        System.out.println("closingStreamReleasesTheConnection");
+        SQLWorker worker = new SQLWorker(databaseConnection.createAutoExecutor());
+        CloseableIterator<String> values = worker.streamLeftColumnAsString("SELECT X FROM SYSTEM_RANGE(1, 1000)");
+        assertEquals("1", values.next());
+        assertEquals("2", values.next());
+        values.close();
+        assertFalse(values.hasNext());
+        assertEquals("1", worker.topLeftValueAsString("SELECT 1"));
+
+        CloseableIterator<Object> empty = worker.streamLeftColumn("SELECT X FROM SYSTEM_RANGE(1, 0)");
+        assertFalse(empty.hasNext());
+        assertEquals("2", worker.topLeftValueAsString("SELECT 2"));
+    }
+}
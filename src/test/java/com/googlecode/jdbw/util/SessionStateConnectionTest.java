@@ -0,0 +1,131 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SessionStateConnectionTest {
+
+    private Connection physicalConnection;
+    private List<String> calls;
+    private SessionStateConnection connection;
+
+    @Before
+    public void buildUp() throws SQLException {
+        physicalConnection = DriverManager.getConnection("jdbc:h2:mem:");
+        calls = new ArrayList<String>();
+        Connection recordingConnection = (Connection)Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        calls.add(method.getName());
+                        try {
+                            return method.invoke(physicalConnection, args);
+                        }
+                        catch(InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        connection = new SessionStateConnection(recordingConnection);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+        assertTrue(physicalConnection.isClosed());
+    }
+
+    /**
+     * Test of setAutoCommit and setTransactionIsolation, setting the current value again doesn't reach the driver
+     */
+    @Test
+    public void unchangedStateIsNotSentAgain() throws SQLException {
+        System.out.println("unchangedStateIsNotSentAgain");
+        for(int i = 0; i < 3; i++) {
+            connection.setAutoCommit(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            connection.setReadOnly(false);
+        }
+        assertEquals(1, count("setAutoCommit"));
+        assertEquals(1, count("setTransactionIsolation"));
+        assertEquals(1, count("setReadOnly"));
+        assertTrue(connection.getAutoCommit());
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+        assertEquals(0, count("getAutoCommit"));
+
+        connection.setAutoCommit(false);
+        connection.setAutoCommit(false);
+        assertEquals(2, count("setAutoCommit"));
+        assertFalse(physicalConnection.getAutoCommit());
+        connection.rollback();
+    }
+
+    /**
+     * Test of getCatalog, the value is read from the driver once and remembered
+     */
+    @Test
+    public void catalogIsReadOnce() throws SQLException {
+        System.out.println("catalogIsReadOnce");
+        String catalog = connection.getCatalog();
+        assertEquals(catalog, connection.getCatalog());
+        connection.setCatalog(catalog);
+        assertEquals(1, count("getCatalog"));
+        assertEquals(0, count("setCatalog"));
+    }
+
+    /**
+     * Test of clearCachedState, state is read from the driver again afterwards
+     */
+    @Test
+    public void clearedStateIsReadAgain() throws SQLException {
+        System.out.println("clearedStateIsReadAgain");
+        connection.setAutoCommit(true);
+        physicalConnection.setAutoCommit(false);
+        assertTrue(connection.getAutoCommit());
+        connection.clearCachedState();
+        assertFalse(connection.getAutoCommit());
+        connection.setAutoCommit(true);
+        assertTrue(physicalConnection.getAutoCommit());
+    }
+
+    private int count(String methodName) {
+        int count = 0;
+        for(String call: calls) {
+            if(call.equals(methodName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of jdbw (http://code.google.com/p/jdbw/).
+ *
+ * jdbw is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2007-2012 Martin Berglund
+ */
+package com.googlecode.jdbw.util;
+
+import com.googlecode.jdbw.util.StatementInfo.Kind;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StatementInfoTest {
+
+    /**
+     * Test of getKind
+     */
+    @Test
+    public void statementsAreClassifiedByFirstKeyword() {
+        System.out.println("statementsAreClassifiedByFirstKeyword");
+        assertEquals(Kind.SELECT, StatementInfo.forSQL("select * from t").getKind());
+        assertEquals(Kind.SELECT, StatementInfo.forSQL("/* list */ (SELECT 1) UNION (SELECT 2)").getKind());
+        assertEquals(Kind.INSERT, StatementInfo.forSQL("  INSERT INTO t VALUES(?)").getKind());
+        assertEquals(Kind.UPDATE, StatementInfo.forSQL("-- comment\nUPDATE t SET a = ?").getKind());
+        assertEquals(Kind.DELETE, StatementInfo.forSQL("delete from t;").getKind());
+        assertEquals(Kind.DDL, StatementInfo.forSQL("CREATE TABLE t (a INT)").getKind());
+        assertEquals(Kind.MULTI, StatementInfo.forSQL("DELETE FROM t; INSERT INTO t VALUES(1)").getKind());
+        assertEquals(Kind.OTHER, StatementInfo.forSQL("{call proc(?)}").getKind());
+    }
+
+    /**
+     * Test of getNumberOfParameters and isGeneratedKeysApplicable
+     */
+    @Test
+    public void parametersOutsideLiteralsAreCounted() {
+        System.out.println("parametersOutsideLiteralsAreCounted");
+        StatementInfo info = StatementInfo.forSQL("insert into \"a?\" values(?, 'it''s?', ? /* ? */) -- ?");
+        assertEquals(2, info.getNumberOfParameters());
+        assertTrue(info.isGeneratedKeysApplicable());
+        assertFalse(StatementInfo.forSQL("SELECT ';' FROM t WHERE a = ?").isGeneratedKeysApplicable());
+        assertEquals(Kind.SELECT, StatementInfo.forSQL("SELECT ';' FROM t WHERE a = ?").getKind());
+        assertSame(info, StatementInfo.forSQL("insert into \"a?\" values(?, 'it''s?', ? /* ? */) -- ?"));
+    }
+
+    /**
+     * Test of getKind and isReadOnly for queries that write or lock
+     */
+    @Test
+    public void onlyPureQueriesAreReadOnly() {
+        System.out.println("onlyPureQueriesAreReadOnly");
+        assertTrue(StatementInfo.forSQL("SELECT \"update\", for_update FROM t WHERE a = 'FOR UPDATE'").isReadOnly());
+        assertTrue(StatementInfo.forSQL("SHOW TABLES").isReadOnly());
+
+        StatementInfo info = StatementInfo.forSQL("WITH x AS (SELECT a FROM t) SELECT * FROM x");
+        assertEquals(Kind.SELECT, info.getKind());
+        assertTrue(info.isReadOnly());
+
+        info = StatementInfo.forSQL("WITH d AS (DELETE FROM t RETURNING *) SELECT * FROM d");
+        assertEquals(Kind.OTHER, info.getKind());
+        assertFalse(info.isReadOnly());
+        info = StatementInfo.forSQL("WITH x AS (SELECT a FROM t) INSERT INTO u SELECT a FROM x");
+        assertEquals(Kind.OTHER, info.getKind());
+        assertFalse(info.isReadOnly());
+        info = StatementInfo.forSQL("with x as (select a from t) update u set b = 1 where a in (select a from x)");
+        assertEquals(Kind.OTHER, info.getKind());
+        assertFalse(info.isReadOnly());
+
+        info = StatementInfo.forSQL("VALUES nextval('seq')");
+        assertEquals(Kind.OTHER, info.getKind());
+        assertFalse(info.isReadOnly());
+        assertFalse(StatementInfo.forSQL("SELECT nextval('seq')").isReadOnly());
+
+        info = StatementInfo.forSQL("SELECT * FROM t WHERE a = ? FOR UPDATE");
+        assertEquals(Kind.SELECT, info.getKind());
+        assertFalse(info.isReadOnly());
+        assertFalse(StatementInfo.forSQL("SELECT * FROM t FOR NO KEY UPDATE").isReadOnly());
+        assertFalse(StatementInfo.forSQL("select * from t for share").isReadOnly());
+        assertFalse(StatementInfo.forSQL("SELECT * FROM t LOCK IN SHARE MODE").isReadOnly());
+        assertFalse(StatementInfo.forSQL("SELECT * INTO newtable FROM t").isReadOnly());
+
+        assertFalse(StatementInfo.forSQL("UPDATE t SET a = 1").isReadOnly());
+        assertFalse(StatementInfo.forSQL("SELECT 1; SELECT 2").isReadOnly());
+        assertFalse(StatementInfo.forSQL("{call proc(?)}").isReadOnly());
+    }
+}